@@ -0,0 +1,56 @@
+package uk.gov.dvsa.motr.subscription;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Objects;
+
+/**
+ * Key of the sharded due date index. Subscriptions due on the same day are spread over {@link #SHARD_COUNT} index
+ * partitions by suffixing the MM-dd due day with a shard derived from the subscription's table key, e.g. "03-28#5".
+ * Every writer of the subscription table has to keep the attribute in step with mot_due_date, and readers have to query
+ * every shard of a day to see all of its subscriptions.
+ */
+public class DueDateShardKey {
+
+    public static final String ATTRIBUTE = "mot_due_date_md_shard";
+    public static final String INDEX_NAME = "due-date-md-shard-vehicle-type-gsi";
+    public static final int SHARD_COUNT = 8;
+
+    private static final DateTimeFormatter DAY_MONTH_FORMATTER = DateTimeFormatter.ofPattern("MM-dd");
+    private static final String SEPARATOR = "#";
+
+    public static String of(LocalDate dueDate, String vrm, String email) {
+
+        return forShard(dueDate, shardOf(vrm, email));
+    }
+
+    public static String forShard(LocalDate dueDate, int shard) {
+
+        if (shard < 0 || shard >= SHARD_COUNT) {
+            throw new IllegalArgumentException("Shard must be between 0 and " + (SHARD_COUNT - 1) + ", was " + shard);
+        }
+
+        return dueDate.format(DAY_MONTH_FORMATTER) + SEPARATOR + shard;
+    }
+
+    /**
+     * The shard only depends on the table key, so a subscription stays in the same shard when its due date changes
+     */
+    public static int shardOf(String vrm, String email) {
+
+        return Math.floorMod(mix(Objects.hash(vrm, email)), SHARD_COUNT);
+    }
+
+    /**
+     * Murmur3 finaliser, spreads keys that only differ in a few characters over all the low bits
+     */
+    private static int mix(int hash) {
+
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
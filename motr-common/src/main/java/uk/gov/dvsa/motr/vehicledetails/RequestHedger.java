@@ -0,0 +1,179 @@
+package uk.gov.dvsa.motr.vehicledetails;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends a second, identical request when the first has not been answered within the given percentile of recent response
+ * times, and uses whichever answer arrives first. This cuts the slowest responses short without waiting for a timeout.
+ * Hedging only starts once enough responses have been timed to know what slow means, and each request earns only a
+ * fraction of a hedge, so the extra load on the API never exceeds that fraction of the requests made.
+ */
+public class RequestHedger {
+
+    static final int MIN_SAMPLES = 20;
+
+    private static final int LATENCY_WINDOW = 200;
+    private static final double MAX_HEDGE_CREDIT = 10;
+
+    private double percentile;
+    private double budgetRatio;
+    private ExecutorService executor;
+
+    private long[] latencies = new long[LATENCY_WINDOW];
+    private int samples = 0;
+    private double hedgeCredit = 0;
+
+    private AtomicLong requests = new AtomicLong(0);
+    private AtomicLong hedged = new AtomicLong(0);
+    private AtomicLong hedgeWins = new AtomicLong(0);
+
+    /**
+     * @param percentile  percentile of recent response times to wait for before hedging, e.g. 95
+     * @param budgetRatio most hedged requests allowed per request made, e.g. 0.05
+     */
+    public RequestHedger(double percentile, double budgetRatio) {
+
+        this.percentile = percentile;
+        this.budgetRatio = budgetRatio;
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "vehicle-details-hedge");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @FunctionalInterface
+    public interface Request<T, E extends Exception> {
+
+        T send() throws E;
+    }
+
+    /**
+     * @return the first answer to the request or its hedge, or the first failure when both fail
+     */
+    public <T, E extends Exception> T send(Request<T, E> request) throws E {
+
+        requests.incrementAndGet();
+        earnHedgeCredit();
+        long hedgeDelayNanos = hedgeDelayNanos();
+        long startedAt = System.nanoTime();
+
+        if (hedgeDelayNanos < 0) {
+            T result = request.send();
+            recordLatency(System.nanoTime() - startedAt);
+            return result;
+        }
+
+        CompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        Future<T> primary = completion.submit(request::send);
+        Future<T> hedge = null;
+        try {
+            Future<T> done = completion.poll(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+            if (done == null && takeHedgeCredit()) {
+                hedge = completion.submit(request::send);
+                hedged.incrementAndGet();
+            }
+
+            int outstanding = hedge == null ? 1 : 2;
+            Throwable firstFailure = null;
+            while (outstanding > 0) {
+                done = done == null ? completion.take() : done;
+                outstanding--;
+                try {
+                    T result = done.get();
+                    if (done == hedge) {
+                        hedgeWins.incrementAndGet();
+                    }
+                    recordLatency(System.nanoTime() - startedAt);
+                    return result;
+                } catch (ExecutionException e) {
+                    firstFailure = firstFailure == null ? e.getCause() : firstFailure;
+                }
+                done = null;
+            }
+            throw this.<E>rethrow(firstFailure);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted whilst waiting for a response", e);
+        } finally {
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    public long getRequests() {
+
+        return requests.get();
+    }
+
+    public long getHedged() {
+
+        return hedged.get();
+    }
+
+    public long getHedgeWins() {
+
+        return hedgeWins.get();
+    }
+
+    /**
+     * @return how long a request currently waits before it is hedged, or -1 while there are too few responses timed
+     */
+    public long getHedgeDelayMs() {
+
+        long hedgeDelayNanos = hedgeDelayNanos();
+        return hedgeDelayNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos);
+    }
+
+    private synchronized long hedgeDelayNanos() {
+
+        if (samples < MIN_SAMPLES) {
+            return -1;
+        }
+
+        long[] window = Arrays.copyOf(latencies, Math.min(samples, LATENCY_WINDOW));
+        Arrays.sort(window);
+        int index = (int) Math.ceil(percentile / 100 * window.length) - 1;
+        return window[Math.max(0, Math.min(window.length - 1, index))];
+    }
+
+    private synchronized void earnHedgeCredit() {
+
+        hedgeCredit = Math.min(MAX_HEDGE_CREDIT, hedgeCredit + budgetRatio);
+    }
+
+    private synchronized boolean takeHedgeCredit() {
+
+        if (hedgeCredit < 1) {
+            return false;
+        }
+        hedgeCredit--;
+        return true;
+    }
+
+    private synchronized void recordLatency(long latencyNanos) {
+
+        latencies[samples % LATENCY_WINDOW] = latencyNanos;
+        samples++;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <E extends Exception> E rethrow(Throwable failure) throws E {
+
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        throw (E) failure;
+    }
+}
@@ -4,16 +4,30 @@ import org.glassfish.jersey.client.ClientConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.Response;
 
 /**
- * HTTP client to retrieve vehicle and test data
+ * HTTP client to retrieve vehicle and test data. Each lookup can be made blocking, or asynchronously so the caller's thread
+ * is not held while the request is in flight. Both share the client's connection pool.
  */
 public class VehicleDetailsClient {
 
@@ -23,13 +37,18 @@ public class VehicleDetailsClient {
     private static final String DVLA_ID_PATH_PARAM = "dvlaId";
     private static final String REG_NUMBER_PATH_PARAM = "registration";
     private static final String API_KEY_HEADER = "x-api-key";
+    private static final int DEFAULT_MAX_BATCH_SIZE = 10;
 
     private Client client;
     private String uriByMotTestNumber;
     private String uriByDvlaId;
     private String uriByRegNumber;
     private String uriHgvPsvByVrm;
+    private String uriBatchByMotTestNumber;
+    private String uriBatchByDvlaId;
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
     private String apiKey;
+    private RequestHedger requestHedger;
 
     public VehicleDetailsClient(ClientConfig clientConfig, String apiKey) {
 
@@ -88,18 +107,154 @@ public class VehicleDetailsClient {
         }
     }
 
+    /**
+     * Fetch vehicle information for given registration mark without blocking.
+     *
+     * @param vrm vehicle registration mark
+     * @return vehicle data, or a future completed with {@link VehicleDetailsClientException} on an unexpected response
+     */
+    public CompletableFuture<Optional<VehicleDetails>> fetchByVrmAsync(String vrm) {
+
+        return fetchAsync(vrm, uriByRegNumber, REG_NUMBER_PATH_PARAM);
+    }
+
+    /**
+     * Fetch vehicle information based on the MOT test number without blocking.
+     *
+     * @param motTestNumber MOT test number
+     * @return vehicle data, or a future completed with {@link VehicleDetailsClientException} on an unexpected response
+     */
+    public CompletableFuture<Optional<VehicleDetails>> fetchByMotTestNumberAsync(String motTestNumber) {
+
+        return fetchAsync(motTestNumber, uriByMotTestNumber, MOT_TESTS_PATH_PARAM);
+    }
+
+    /**
+     * Fetch vehicle information, when the previous MOT test number isn't known, without blocking.
+     *
+     * @param dvlaId id of Vehicle imported from DVLA
+     * @return vehicle data, or a future completed with {@link VehicleDetailsClientException} on an unexpected response
+     */
+    public CompletableFuture<Optional<VehicleDetails>> fetchByDvlaIdAsync(String dvlaId) {
+
+        return fetchAsync(dvlaId, uriByDvlaId, DVLA_ID_PATH_PARAM);
+    }
+
+    /**
+     * Fetch HGV or PSV vehicle information without blocking.
+     *
+     * @param vrm vehicle registration mark
+     * @return vehicle data, or a future completed with {@link HgvPsvDetailsClientException} on an unexpected response
+     */
+    public CompletableFuture<Optional<VehicleDetails>> fetchHgvPsvByVrmAsync(String vrm) {
+
+        CompletableFuture<Optional<VehicleDetails>> result = new CompletableFuture<>();
+        fetchAsync(vrm, uriHgvPsvByVrm, REG_NUMBER_PATH_PARAM).whenComplete((vehicleDetails, failure) -> {
+            if (failure == null) {
+                result.complete(vehicleDetails);
+            } else {
+                result.completeExceptionally(new HgvPsvDetailsClientException((VehicleDetailsClientException) failure));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Fetch vehicle information for several MOT test numbers, in batches when a batch URI is configured and otherwise
+     * with a single request per test number, all in flight at once.
+     *
+     * @param motTestNumbers MOT test numbers
+     * @return vehicle data by MOT test number, leaving out any test number whose single request failed
+     * @throws VehicleDetailsClientException thrown when a batch request gets an unexpected response (5XX, garbled response,
+     *     timeout, etc)
+     */
+    public Map<String, Optional<VehicleDetails>> fetchByMotTestNumbers(Collection<String> motTestNumbers)
+            throws VehicleDetailsClientException {
+
+        return fetchBatch(motTestNumbers, uriBatchByMotTestNumber, MOT_TESTS_PATH_PARAM, this::fetchByMotTestNumberAsync);
+    }
+
+    /**
+     * Fetch vehicle information for several DVLA ids, in batches when a batch URI is configured and otherwise with a single
+     * request per id, all in flight at once.
+     *
+     * @param dvlaIds ids of Vehicles imported from DVLA
+     * @return vehicle data by DVLA id, leaving out any id whose single request failed
+     * @throws VehicleDetailsClientException thrown when a batch request gets an unexpected response (5XX, garbled response,
+     *     timeout, etc)
+     */
+    public Map<String, Optional<VehicleDetails>> fetchByDvlaIds(Collection<String> dvlaIds) throws VehicleDetailsClientException {
+
+        return fetchBatch(dvlaIds, uriBatchByDvlaId, DVLA_ID_PATH_PARAM, this::fetchByDvlaIdAsync);
+    }
+
     private Optional<VehicleDetails> fetch(String val, String uri, String pathParam) throws VehicleDetailsClientException {
 
         if (uri == null) {
             throw new VehicleDetailsClientException("URI not configured for API method in MOTR");
         }
 
+        if (requestHedger == null) {
+            return request(val, uri, pathParam);
+        }
+        return requestHedger.send(() -> request(val, uri, pathParam));
+    }
+
+    private Optional<VehicleDetails> request(String val, String uri, String pathParam) throws VehicleDetailsClientException {
+
         Response response;
         try {
-            WebTarget target = this.client.target(uri)
-                    .resolveTemplate(pathParam, val);
+            response = prepareRequest(val, uri, pathParam).get();
+
+        } catch (ProcessingException processingException) {
+
+            throw new VehicleDetailsClientException(processingException);
+        }
+
+        return processResponse(response);
+    }
+
+    private Map<String, Optional<VehicleDetails>> fetchBatch(Collection<String> values, String batchUri, String queryParam,
+            Function<String, CompletableFuture<Optional<VehicleDetails>>> singleLookup) throws VehicleDetailsClientException {
+
+        List<String> distinctValues = new ArrayList<>(new LinkedHashSet<>(values));
+        Map<String, Optional<VehicleDetails>> results = new HashMap<>();
+
+        if (batchUri == null) {
+            Map<String, CompletableFuture<Optional<VehicleDetails>>> lookups = new LinkedHashMap<>();
+            distinctValues.forEach(value -> lookups.put(value, singleLookup.apply(value)));
 
-            response = this.client.target(target.getUri())
+            for (Map.Entry<String, CompletableFuture<Optional<VehicleDetails>>> lookup : lookups.entrySet()) {
+                try {
+                    results.put(lookup.getKey(), lookup.getValue().get());
+                } catch (ExecutionException e) {
+                    logger.debug("Lookup of {} failed", lookup.getKey(), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new VehicleDetailsClientException(e);
+                }
+            }
+            return results;
+        }
+
+        for (int from = 0; from < distinctValues.size(); from += maxBatchSize) {
+            List<String> batch = distinctValues.subList(from, Math.min(distinctValues.size(), from + maxBatchSize));
+            results.putAll(requestBatch(batch, batchUri, queryParam));
+        }
+        return results;
+    }
+
+    /**
+     * Asks for every value in one request, which the endpoint answers with the vehicles found keyed by the value they were
+     * found by, leaving out the values it found nothing for
+     */
+    private Map<String, Optional<VehicleDetails>> requestBatch(List<String> values, String uri, String queryParam)
+            throws VehicleDetailsClientException {
+
+        Response response;
+        try {
+            response = this.client.target(uri)
+                    .queryParam(queryParam, values.toArray())
                     .request()
                     .header(API_KEY_HEADER, apiKey)
                     .get();
@@ -109,7 +264,71 @@ public class VehicleDetailsClient {
             throw new VehicleDetailsClientException(processingException);
         }
 
-        return processResponse(response);
+        if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+            throw unexpectedResponse(response);
+        }
+
+        Map<String, VehicleDetails> found;
+        try {
+            found = response.readEntity(new GenericType<Map<String, VehicleDetails>>() {});
+        } catch (Exception readingException) {
+            throw new VehicleDetailsClientException(readingException);
+        }
+
+        Map<String, Optional<VehicleDetails>> results = new HashMap<>();
+        values.forEach(value -> results.put(value, Optional.ofNullable(found.get(value))));
+        return results;
+    }
+
+    /**
+     * Sends the request on the client's async executor. The future is only ever completed with a
+     * {@link VehicleDetailsClientException}, which it holds unwrapped.
+     */
+    private CompletableFuture<Optional<VehicleDetails>> fetchAsync(String val, String uri, String pathParam) {
+
+        CompletableFuture<Optional<VehicleDetails>> result = new CompletableFuture<>();
+
+        if (uri == null) {
+            result.completeExceptionally(new VehicleDetailsClientException("URI not configured for API method in MOTR"));
+            return result;
+        }
+
+        try {
+            prepareRequest(val, uri, pathParam).async().get(new InvocationCallback<Response>() {
+
+                @Override
+                public void completed(Response response) {
+
+                    try {
+                        result.complete(processResponse(response));
+                    } catch (VehicleDetailsClientException e) {
+                        result.completeExceptionally(e);
+                    }
+                }
+
+                @Override
+                public void failed(Throwable failure) {
+
+                    result.completeExceptionally(new VehicleDetailsClientException(
+                            failure instanceof Exception ? (Exception) failure : new ProcessingException(failure)));
+                }
+            });
+        } catch (ProcessingException processingException) {
+
+            result.completeExceptionally(new VehicleDetailsClientException(processingException));
+        }
+
+        return result;
+    }
+
+    private Invocation.Builder prepareRequest(String val, String uri, String pathParam) {
+
+        WebTarget target = this.client.target(uri)
+                .resolveTemplate(pathParam, val);
+
+        return this.client.target(target.getUri())
+                .request()
+                .header(API_KEY_HEADER, apiKey);
     }
 
     private Optional<VehicleDetails> processResponse(Response response) throws VehicleDetailsClientException {
@@ -131,17 +350,22 @@ public class VehicleDetailsClient {
             return Optional.empty();
         } else {
 
-            String content = "";
-            try {
-                if (response.hasEntity()) {
-                    content = response.readEntity(String.class);
-                }
-            } catch (Exception readingException) {
-                throw new VehicleDetailsClientException(readingException);
-            }
+            throw unexpectedResponse(response);
+        }
+    }
+
+    private VehicleDetailsClientException unexpectedResponse(Response response) {
 
-            throw new VehicleDetailsEndpointResponseException(responseStatus, content);
+        String content = "";
+        try {
+            if (response.hasEntity()) {
+                content = response.readEntity(String.class);
+            }
+        } catch (Exception readingException) {
+            return new VehicleDetailsClientException(readingException);
         }
+
+        return new VehicleDetailsEndpointResponseException(response.getStatus(), content);
     }
 
     public VehicleDetailsClient withByMotTestNumberUri(String uriByMotTestNumber) {
@@ -167,4 +391,61 @@ public class VehicleDetailsClient {
         this.uriHgvPsvByVrm = hgvPsvByVrmUri;
         return this;
     }
+
+    /**
+     * @param uriBatchByMotTestNumber endpoint taking MOT test numbers as repeated "number" query parameters
+     */
+    public VehicleDetailsClient withBatchByMotTestNumberUri(String uriBatchByMotTestNumber) {
+
+        this.uriBatchByMotTestNumber = uriBatchByMotTestNumber;
+        return this;
+    }
+
+    /**
+     * @param uriBatchByDvlaId endpoint taking DVLA ids as repeated "dvlaId" query parameters
+     */
+    public VehicleDetailsClient withBatchByDvlaIdUri(String uriBatchByDvlaId) {
+
+        this.uriBatchByDvlaId = uriBatchByDvlaId;
+        return this;
+    }
+
+    /**
+     * @param maxBatchSize most values asked for in a single batch request, larger lookups being split
+     */
+    public VehicleDetailsClient withMaxBatchSize(int maxBatchSize) {
+
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        return this;
+    }
+
+    /**
+     * Hedges slow blocking requests, sending a second request when the first is slower than usual
+     */
+    public VehicleDetailsClient withRequestHedger(RequestHedger requestHedger) {
+
+        this.requestHedger = requestHedger;
+        return this;
+    }
+
+    public Optional<RequestHedger> getRequestHedger() {
+
+        return Optional.ofNullable(requestHedger);
+    }
+
+    /**
+     * @return true when MOT test numbers are looked up in batches rather than with a single request per test number
+     */
+    public boolean hasBatchByMotTestNumberUri() {
+
+        return uriBatchByMotTestNumber != null;
+    }
+
+    /**
+     * @return true when DVLA ids are looked up in batches rather than with a single request per id
+     */
+    public boolean hasBatchByDvlaIdUri() {
+
+        return uriBatchByDvlaId != null;
+    }
 }
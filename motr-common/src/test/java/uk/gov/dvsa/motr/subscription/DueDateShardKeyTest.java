@@ -0,0 +1,51 @@
+package uk.gov.dvsa.motr.subscription;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DueDateShardKeyTest {
+
+    private static final LocalDate DUE_DATE = LocalDate.of(2018, 3, 28);
+
+    @Test
+    public void whenKeyIsBuilt_thenItIsTheDueDayFollowedByTheShard() {
+
+        int shard = DueDateShardKey.shardOf("VRM1", "test@example.com");
+
+        assertEquals("03-28#" + shard, DueDateShardKey.of(DUE_DATE, "VRM1", "test@example.com"));
+    }
+
+    @Test
+    public void whenSubscriptionDueDateChanges_thenItStaysInTheSameShard() {
+
+        String before = DueDateShardKey.of(DUE_DATE, "VRM1", "test@example.com");
+        String after = DueDateShardKey.of(DUE_DATE.plusYears(1).plusDays(3), "VRM1", "test@example.com");
+
+        assertEquals(before.substring(before.indexOf('#')), after.substring(after.indexOf('#')));
+    }
+
+    @Test
+    public void whenManySubscriptionsAreSharded_thenEveryShardIsUsed() {
+
+        Set<Integer> shards = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            int shard = DueDateShardKey.shardOf("VRM" + i, "test" + i + "@example.com");
+            assertTrue(shard >= 0 && shard < DueDateShardKey.SHARD_COUNT);
+            shards.add(shard);
+        }
+
+        assertEquals(DueDateShardKey.SHARD_COUNT, shards.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenShardIsOutOfRange_thenKeyIsRejected() {
+
+        DueDateShardKey.forShard(DUE_DATE, DueDateShardKey.SHARD_COUNT);
+    }
+}
@@ -0,0 +1,74 @@
+package uk.gov.dvsa.motr.vehicledetails;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestHedgerTest {
+
+    @Test
+    public void whenTooFewResponsesAreTimed_thenRequestsAreNotHedged() throws Exception {
+
+        RequestHedger hedger = new RequestHedger(95, 1);
+
+        assertEquals("answer", hedger.send(() -> "answer"));
+        assertEquals(0, hedger.getHedged());
+        assertEquals(-1, hedger.getHedgeDelayMs());
+    }
+
+    @Test
+    public void whenRequestIsSlowerThanUsual_thenTheHedgeAnswersIt() throws Exception {
+
+        RequestHedger hedger = warmedUp(new RequestHedger(95, 1));
+        AtomicInteger sent = new AtomicInteger(0);
+
+        String answer = hedger.send(() -> {
+            if (sent.getAndIncrement() == 0) {
+                Thread.sleep(2000);
+                return "slow";
+            }
+            return "fast";
+        });
+
+        assertEquals("fast", answer);
+        assertEquals(1, hedger.getHedged());
+        assertEquals(1, hedger.getHedgeWins());
+    }
+
+    @Test
+    public void whenHedgeBudgetIsSpent_thenSlowRequestsAreNotHedged() throws Exception {
+
+        RequestHedger hedger = warmedUp(new RequestHedger(95, 0.01));
+
+        for (int i = 0; i < 5; i++) {
+            hedger.send(() -> {
+                Thread.sleep(20);
+                return "slow";
+            });
+        }
+
+        assertTrue(hedger.getHedged() <= 1);
+    }
+
+    @Test(expected = VehicleDetailsClientException.class)
+    public void whenRequestAndHedgeBothFail_thenTheFailureIsThrown() throws Exception {
+
+        RequestHedger hedger = warmedUp(new RequestHedger(95, 1));
+
+        hedger.send(() -> {
+            Thread.sleep(100);
+            throw new VehicleDetailsClientException("failed");
+        });
+    }
+
+    private RequestHedger warmedUp(RequestHedger hedger) throws Exception {
+
+        for (int i = 0; i < RequestHedger.MIN_SAMPLES; i++) {
+            hedger.send(() -> "warm-up");
+        }
+        return hedger;
+    }
+}
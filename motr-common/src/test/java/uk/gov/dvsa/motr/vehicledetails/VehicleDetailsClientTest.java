@@ -15,7 +15,10 @@ import org.junit.runner.RunWith;
 
 import java.io.IOException;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.anyUrl;
@@ -24,10 +27,12 @@ import static com.github.tomakehurst.wiremock.client.WireMock.get;
 import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import static java.nio.charset.Charset.defaultCharset;
@@ -179,6 +184,131 @@ public class VehicleDetailsClientTest {
         verify(getRequestedFor(urlEqualTo("/vehicle-details-endpoint/11111111111")));
     }
 
+    @Test
+    public void fetchesVehicleDetailsAsynchronously() throws Exception {
+
+        stubFor(onRequest().willReturn(aResponse().withBody(validResponse())
+                .withHeader("Content-Type", "application/json")));
+
+        VehicleDetails details = withByMotTestNumberClient().fetchByMotTestNumberAsync("11111111111").get().get();
+
+        assertEquals("MERCEDES-BENZ", details.getMake());
+        assertEquals("VRM12345", details.getRegNumber());
+    }
+
+    @Test
+    public void completesWithEmptyWhenEndpointRespondsWith404Asynchronously() throws Exception {
+
+        stubFor(onRequest().willReturn(aResponse().withStatus(404)));
+
+        assertFalse(withByMotTestNumberClient().fetchByMotTestNumberAsync("11111111111").get().isPresent());
+    }
+
+    @Test
+    public void completesExceptionallyWhenEndpointRespondsWithUnexpectedStatusCodeAsynchronously() throws Exception {
+
+        stubFor(onRequest().willReturn(aResponse().withStatus(503).withBody("test.body")));
+
+        try {
+
+            withByMotTestNumberClient().fetchByMotTestNumberAsync("11111111111").get();
+            fail();
+
+        } catch (ExecutionException ex) {
+
+            assertEquals(503, ((VehicleDetailsEndpointResponseException) ex.getCause()).getStatusCode());
+        }
+    }
+
+    @UseDataProvider("badResponses")
+    @Test
+    public void completesExceptionallyWhenEndpointRespondsWithFaultAsynchronously(Fault fault) throws Exception {
+
+        stubFor(onRequest().willReturn(aResponse().withFault(fault)));
+
+        try {
+
+            withByMotTestNumberClient().fetchByMotTestNumberAsync("11111111111").get();
+            fail();
+
+        } catch (ExecutionException ex) {
+
+            assertTrue(ex.getCause() instanceof VehicleDetailsClientException);
+        }
+    }
+
+    @Test
+    public void completesHgvPsvLookupWithHgvPsvExceptionAsynchronously() throws Exception {
+
+        try {
+
+            new VehicleDetailsClient(new ClientConfig(), "api-key").fetchHgvPsvByVrmAsync("11111111111").get();
+            fail();
+
+        } catch (ExecutionException ex) {
+
+            assertTrue(ex.getCause() instanceof HgvPsvDetailsClientException);
+        }
+    }
+
+    @Test
+    public void fetchesBatchOfMotTestNumbersInOneRequest() throws Exception {
+
+        stubFor(get(urlPathEqualTo("/vehicle-details-endpoint/batch"))
+                .withHeader("x-api-key", equalTo("api-key"))
+                .willReturn(aResponse().withBody("{\"11111111111\": " + validResponse() + "}")
+                        .withHeader("Content-Type", "application/json")));
+
+        Map<String, Optional<VehicleDetails>> results = withByMotTestNumberClient()
+                .withBatchByMotTestNumberUri("http://localhost:8098/vehicle-details-endpoint/batch")
+                .fetchByMotTestNumbers(Arrays.asList("11111111111", "22222222222", "11111111111"));
+
+        assertEquals(2, results.size());
+        assertEquals("VRM12345", results.get("11111111111").get().getRegNumber());
+        assertFalse(results.get("22222222222").isPresent());
+        verify(1, getRequestedFor(urlEqualTo("/vehicle-details-endpoint/batch?number=11111111111&number=22222222222")));
+    }
+
+    @Test
+    public void splitsBatchesLargerThanTheMaximumBatchSize() throws Exception {
+
+        stubFor(get(urlPathEqualTo("/vehicle-details-endpoint/batch"))
+                .willReturn(aResponse().withBody("{}").withHeader("Content-Type", "application/json")));
+
+        withByMotTestNumberClient()
+                .withBatchByMotTestNumberUri("http://localhost:8098/vehicle-details-endpoint/batch")
+                .withMaxBatchSize(2)
+                .fetchByMotTestNumbers(Arrays.asList("1", "2", "3"));
+
+        verify(2, getRequestedFor(urlPathEqualTo("/vehicle-details-endpoint/batch")));
+    }
+
+    @Test(expected = VehicleDetailsEndpointResponseException.class)
+    public void throwsEndpointExceptionWhenBatchEndpointRespondsWithUnexpectedStatusCode() throws Exception {
+
+        stubFor(get(urlPathEqualTo("/vehicle-details-endpoint/batch")).willReturn(aResponse().withStatus(503)));
+
+        withByMotTestNumberClient()
+                .withBatchByMotTestNumberUri("http://localhost:8098/vehicle-details-endpoint/batch")
+                .fetchByMotTestNumbers(Arrays.asList("11111111111", "22222222222"));
+    }
+
+    @Test
+    public void fallsBackToSingleRequestsWhenNoBatchUriIsConfigured() throws Exception {
+
+        stubFor(onRequest().willReturn(aResponse().withBody(validResponse())
+                .withHeader("Content-Type", "application/json")));
+        stubFor(get(urlEqualTo("/vehicle-details-endpoint/22222222222")).willReturn(aResponse().withStatus(404)));
+        stubFor(get(urlEqualTo("/vehicle-details-endpoint/33333333333")).willReturn(aResponse().withStatus(500)));
+
+        Map<String, Optional<VehicleDetails>> results = withByMotTestNumberClient()
+                .fetchByMotTestNumbers(Arrays.asList("11111111111", "22222222222", "33333333333"));
+
+        assertEquals("VRM12345", results.get("11111111111").get().getRegNumber());
+        assertFalse(results.get("22222222222").isPresent());
+        assertFalse(results.containsKey("33333333333"));
+    }
+
     private MappingBuilder onRequest() {
 
         return get(urlEqualTo("/vehicle-details-endpoint/11111111111"))
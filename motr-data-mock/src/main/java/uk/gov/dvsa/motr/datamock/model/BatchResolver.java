@@ -0,0 +1,43 @@
+package uk.gov.dvsa.motr.datamock.model;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import javax.ws.rs.core.Response;
+
+public class BatchResolver {
+
+    private Function<String, Response> resolver;
+
+    public BatchResolver(Function<String, Response> resolver) {
+
+        this.resolver = resolver;
+    }
+
+    /**
+     * Resolves every value as a single search would, keying the vehicles found by the value they were found by. Values that
+     * are not found are left out, and any other error fails the whole batch with its status.
+     */
+    public Response resolve(List<String> values) {
+
+        Map<String, Object> found = new LinkedHashMap<>();
+
+        for (String value : values) {
+            Response response = resolver.apply(value);
+
+            if (response.getStatus() == Response.Status.NOT_FOUND.getStatusCode()) {
+                continue;
+            }
+
+            if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+                return Response.status(response.getStatus()).build();
+            }
+
+            found.put(value, response.getEntity());
+        }
+
+        return Response.ok(found).build();
+    }
+}
@@ -1,14 +1,18 @@
 package uk.gov.dvsa.motr.datamock.resource;
 
+import uk.gov.dvsa.motr.datamock.model.BatchResolver;
 import uk.gov.dvsa.motr.datamock.model.ByDvlaIdResolver;
 import uk.gov.dvsa.motr.datamock.model.ByTestNumberResolver;
 import uk.gov.dvsa.motr.datamock.model.ByVrmResolver;
 
+import java.util.List;
+
 import javax.inject.Singleton;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
 
 
@@ -31,6 +35,13 @@ public class SearchResource {
         return new ByTestNumberResolver().resolve(number);
     }
 
+    @GET
+    @Path("/mot-tests")
+    public Response searchMotTestNumbers(@QueryParam("number") List<String> numbers) {
+
+        return new BatchResolver(new ByTestNumberResolver()::resolve).resolve(numbers);
+    }
+
     @GET
     @Path("/dvla-id/{dvlaId}")
     public Response searchDvlaId(@PathParam("dvlaId") String dvlaId) {
@@ -38,6 +49,13 @@ public class SearchResource {
         return new ByDvlaIdResolver().resolve(dvlaId);
     }
 
+    @GET
+    @Path("/dvla-ids")
+    public Response searchDvlaIds(@QueryParam("dvlaId") List<String> dvlaIds) {
+
+        return new BatchResolver(new ByDvlaIdResolver()::resolve).resolve(dvlaIds);
+    }
+
     @GET
     @Path("/commercial/registration/{vrm}")
     public Response searchCommercial(@PathParam("vrm") String vrm) {
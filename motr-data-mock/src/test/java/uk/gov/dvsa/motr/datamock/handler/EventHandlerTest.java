@@ -11,6 +11,8 @@ import com.tngtech.java.junit.dataprovider.UseDataProvider;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Collections;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 
@@ -74,6 +76,38 @@ public class EventHandlerTest {
         assertEquals("MERCEDES-BENZ", asJson(response.getBody()).get("make").asText());
     }
 
+    @Test
+    public void batchSearchByTestNumberReturnsMockDataKeyedByTestNumber() {
+
+        AwsProxyResponse response = new EventHandler().handle(batchRequest("mot-tests", "number", "12345"), null);
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals("WDD2040022A65", asJson(response.getBody()).get("12345").get("registration").asText());
+    }
+
+    @Test
+    public void batchSearchByDvlaIdLeavesOutVehiclesNotFound() {
+
+        AwsProxyResponse response = new EventHandler().handle(batchRequest("dvla-ids", "dvlaId", "ERROR404"), null);
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals(0, asJson(response.getBody()).size());
+    }
+
+    @DataProvider
+    public static Object[][] batchErrorDataProvider() {
+        return new Object[][]{{403}, {503}};
+    }
+
+    @UseDataProvider("batchErrorDataProvider")
+    @Test
+    public void batchSearchByTestNumberReturnsErrorAsRequired(int statusCode) {
+
+        AwsProxyResponse response = new EventHandler().handle(batchRequest("mot-tests", "number", "ERROR" + statusCode), null);
+
+        assertEquals(statusCode, response.getStatusCode());
+    }
+
     private JsonNode asJson(String string) {
 
         try {
@@ -107,6 +141,15 @@ public class EventHandlerTest {
         return request;
     }
 
+    private AwsProxyRequest batchRequest(String search, String parameter, String value) {
+
+        AwsProxyRequest request = new AwsProxyRequest();
+        request.setPath("/mot-test-reminder-mock/motr/v2/search/" + search);
+        request.setQueryStringParameters(Collections.singletonMap(parameter, value));
+        request.setHttpMethod("GET");
+        return request;
+    }
+
     private AwsProxyRequest searchByVrmRequest(String value) {
 
         AwsProxyRequest request = new AwsProxyRequest();
@@ -6,7 +6,10 @@ import uk.gov.dvsa.motr.notifier.SystemVariable;
 
 import java.util.Optional;
 
+import static uk.gov.dvsa.motr.notifier.SystemVariable.ACKNOWLEDGE_WORKER_COUNT;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.APPLY_WORKER_COUNT;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.CHECKSUM_SALT;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.DB_TABLE_REMINDER_LEDGER;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.DB_TABLE_SUBSCRIPTION;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.EU_GO_LIVE_DATE;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.GOV_NOTIFY_API_TOKEN;
@@ -17,12 +20,22 @@ import static uk.gov.dvsa.motr.notifier.SystemVariable.LOG_LEVEL;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.MESSAGE_RECEIVE_TIMEOUT;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.MESSAGE_VISIBILITY_TIMEOUT;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.MOTH_DIRECT_URL_PREFIX;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.MOT_API_DVLA_ID_BATCH_URI;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.MOT_API_DVLA_ID_URI;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.MOT_API_HGV_PSV_URI;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.MOT_API_MOT_TEST_NUMBER_BATCH_URI;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.MOT_API_MOT_TEST_NUMBER_URI;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.MOT_TEST_REMINDER_INFO_TOKEN;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.NOTIFY_EMAIL_BURST;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.NOTIFY_EMAIL_RATE_PER_SECOND;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.NOTIFY_SENDER_CONCURRENCY;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.NOTIFY_SMS_BURST;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.NOTIFY_SMS_RATE_PER_SECOND;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.NOTIFY_WORKER_COUNT;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.ONE_DAY_AFTER_NOTIFICATION_TEMPLATE_ID_POST_EU;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.ONE_MONTH_NOTIFICATION_TEMPLATE_ID_POST_EU;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.PERSIST_WORKER_COUNT;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.RECEIVER_COUNT;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.REGION;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.REMAINING_TIME_THRESHOLD;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.SMS_HGV_PSV_ONE_MONTH_NOTIFICATION_TEMPLATE_ID;
@@ -30,9 +43,11 @@ import static uk.gov.dvsa.motr.notifier.SystemVariable.SMS_HGV_PSV_TWO_MONTH_NOT
 import static uk.gov.dvsa.motr.notifier.SystemVariable.SMS_ONE_DAY_AFTER_NOTIFICATION_TEMPLATE_ID_POST_EU;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.SMS_ONE_MONTH_NOTIFICATION_TEMPLATE_ID_POST_EU;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.SMS_TWO_WEEK_NOTIFICATION_TEMPLATE_ID_POST_EU;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.STAGE_QUEUE_CAPACITY;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.SUBSCRIPTIONS_QUEUE_URL;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.TWO_WEEK_NOTIFICATION_TEMPLATE_ID_POST_EU;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.VEHICLE_API_CLIENT_TIMEOUT;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.VEHICLE_API_HEDGE_PERCENTILE;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.WEB_BASE_URL;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.WORKER_COUNT;
 
@@ -44,11 +59,14 @@ public class TestEnvironmentVariables extends EnvironmentVariables {
         set(LOG_LEVEL, "INFO");
         set(REGION, region());
         set(DB_TABLE_SUBSCRIPTION, subscriptionTableName());
+        set(DB_TABLE_REMINDER_LEDGER, reminderLedgerTableName());
         set(SUBSCRIPTIONS_QUEUE_URL, sqsEndpoint());
         set(MOT_TEST_REMINDER_INFO_TOKEN, motTestReminderInfoToken());
         set(MOT_API_MOT_TEST_NUMBER_URI, motTestNumberApiEndpoint());
         set(MOT_API_DVLA_ID_URI, dvlaIdApiEndpoint());
         set(MOT_API_HGV_PSV_URI, hgvPsvApiEndpoint());
+        set(MOT_API_MOT_TEST_NUMBER_BATCH_URI, "");
+        set(MOT_API_DVLA_ID_BATCH_URI, "");
         set(HGV_PSV_TWO_MONTH_NOTIFICATION_TEMPLATE_ID, notifyHgvPsvTwoMonthTemplateId());
         set(HGV_PSV_ONE_MONTH_NOTIFICATION_TEMPLATE_ID, notifyHgvPsvOneMonthTemplateId());
         set(ONE_MONTH_NOTIFICATION_TEMPLATE_ID_POST_EU, notifyOneMonthTemplateIdPostEu());
@@ -64,10 +82,22 @@ public class TestEnvironmentVariables extends EnvironmentVariables {
 
         set(GOV_NOTIFY_API_TOKEN, govNotifyApiToken());
         set(WORKER_COUNT, "1");
+        set(PERSIST_WORKER_COUNT, "1");
+        set(NOTIFY_WORKER_COUNT, "1");
+        set(APPLY_WORKER_COUNT, "1");
+        set(NOTIFY_EMAIL_RATE_PER_SECOND, "50");
+        set(NOTIFY_EMAIL_BURST, "50");
+        set(NOTIFY_SMS_RATE_PER_SECOND, "50");
+        set(NOTIFY_SMS_BURST, "50");
+        set(NOTIFY_SENDER_CONCURRENCY, "1");
+        set(ACKNOWLEDGE_WORKER_COUNT, "1");
+        set(STAGE_QUEUE_CAPACITY, "10");
+        set(RECEIVER_COUNT, "1");
         set(MESSAGE_RECEIVE_TIMEOUT, "10");
         set(MESSAGE_VISIBILITY_TIMEOUT, "60");
         set(REMAINING_TIME_THRESHOLD, "20");
         set(VEHICLE_API_CLIENT_TIMEOUT, "10");
+        set(VEHICLE_API_HEDGE_PERCENTILE, "0");
         set(WEB_BASE_URL, "");
         set(MOTH_DIRECT_URL_PREFIX, mothDirectUrlPrefix());
         set(CHECKSUM_SALT, checksumSalt());
@@ -92,6 +122,11 @@ public class TestEnvironmentVariables extends EnvironmentVariables {
         return lookupProperty("test.dynamoDB.integration.table.subscription");
     }
 
+    public static String reminderLedgerTableName() {
+
+        return lookupProperty("test.dynamoDB.integration.table.reminder.ledger");
+    }
+
     public static String region() {
 
         return lookupProperty("test.dynamoDB.integration.region");
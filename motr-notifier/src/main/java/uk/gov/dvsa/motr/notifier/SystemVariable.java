@@ -7,19 +7,34 @@ public enum SystemVariable implements ConfigKey {
     LOG_LEVEL("LOG_LEVEL"),
     REGION("REGION"),
     DB_TABLE_SUBSCRIPTION("DB_TABLE_SUBSCRIPTION"),
+    DB_TABLE_REMINDER_LEDGER("DB_TABLE_REMINDER_LEDGER"),
     SUBSCRIPTIONS_QUEUE_URL("SUBSCRIPTIONS_QUEUE_URL"),
     MOT_TEST_REMINDER_INFO_TOKEN("MOT_TEST_REMINDER_INFO_TOKEN"),
     MOT_API_MOT_TEST_NUMBER_URI("MOT_API_MOT_TEST_NUMBER_URI"),
     MOT_API_DVLA_ID_URI("MOT_API_DVLA_ID_URI"),
     MOT_API_HGV_PSV_URI("MOT_API_HGV_PSV_URI"),
+    MOT_API_MOT_TEST_NUMBER_BATCH_URI("MOT_API_MOT_TEST_NUMBER_BATCH_URI"),
+    MOT_API_DVLA_ID_BATCH_URI("MOT_API_DVLA_ID_BATCH_URI"),
     HGV_PSV_TWO_MONTH_NOTIFICATION_TEMPLATE_ID("HGV_PSV_TWO_MONTH_NOTIFICATION_TEMPLATE_ID"),
     HGV_PSV_ONE_MONTH_NOTIFICATION_TEMPLATE_ID("HGV_PSV_ONE_MONTH_NOTIFICATION_TEMPLATE_ID"),
     SMS_HGV_PSV_TWO_MONTH_NOTIFICATION_TEMPLATE_ID("SMS_HGV_PSV_TWO_MONTH_NOTIFICATION_TEMPLATE_ID"),
     SMS_HGV_PSV_ONE_MONTH_NOTIFICATION_TEMPLATE_ID("SMS_HGV_PSV_ONE_MONTH_NOTIFICATION_TEMPLATE_ID"),
     GOV_NOTIFY_API_TOKEN("GOV_NOTIFY_API_TOKEN"),
+    NOTIFY_EMAIL_RATE_PER_SECOND("NOTIFY_EMAIL_RATE_PER_SECOND"),
+    NOTIFY_EMAIL_BURST("NOTIFY_EMAIL_BURST"),
+    NOTIFY_SMS_RATE_PER_SECOND("NOTIFY_SMS_RATE_PER_SECOND"),
+    NOTIFY_SMS_BURST("NOTIFY_SMS_BURST"),
+    NOTIFY_SENDER_CONCURRENCY("NOTIFY_SENDER_CONCURRENCY"),
     WORKER_COUNT("WORKER_COUNT"),
+    PERSIST_WORKER_COUNT("PERSIST_WORKER_COUNT"),
+    NOTIFY_WORKER_COUNT("NOTIFY_WORKER_COUNT"),
+    APPLY_WORKER_COUNT("APPLY_WORKER_COUNT"),
+    ACKNOWLEDGE_WORKER_COUNT("ACKNOWLEDGE_WORKER_COUNT"),
+    STAGE_QUEUE_CAPACITY("STAGE_QUEUE_CAPACITY"),
+    RECEIVER_COUNT("RECEIVER_COUNT"),
     MESSAGE_VISIBILITY_TIMEOUT("MESSAGE_VISIBILITY_TIMEOUT"),
     VEHICLE_API_CLIENT_TIMEOUT("VEHICLE_API_CLIENT_TIMEOUT"),
+    VEHICLE_API_HEDGE_PERCENTILE("VEHICLE_API_HEDGE_PERCENTILE"),
     MESSAGE_RECEIVE_TIMEOUT("MESSAGE_RECEIVE_TIMEOUT"),
     REMAINING_TIME_THRESHOLD("REMAINING_TIME_THRESHOLD"),
     WEB_BASE_URL("WEB_BASE_URL"),
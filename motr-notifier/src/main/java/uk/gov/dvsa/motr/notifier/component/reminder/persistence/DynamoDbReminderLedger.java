@@ -0,0 +1,109 @@
+package uk.gov.dvsa.motr.notifier.component.reminder.persistence;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.spec.DeleteItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.PutItemSpec;
+import com.amazonaws.services.dynamodbv2.document.utils.NameMap;
+import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the ledger in a table keyed by reminder id. Each item carries an expires_at time in epoch seconds for the table's
+ * TTL to remove it by, and as TTL removal can lag, an item past that time is treated as absent. A claimed reminder has a
+ * status of sending and expires soon, which a sent reminder's item replaces.
+ */
+public class DynamoDbReminderLedger implements ReminderLedger {
+
+    private static final String SENDING = "sending";
+    private static final String SENT = "sent";
+
+    private String tableName;
+    private DynamoDB dynamoDb;
+    private long ttlSeconds;
+    private long claimTtlSeconds;
+
+    public DynamoDbReminderLedger(String tableName, String region, long ttlMs, long claimTtlMs) {
+
+        AmazonDynamoDB client = AmazonDynamoDBClientBuilder.standard().withRegion(region).build();
+
+        this.dynamoDb = new DynamoDB(client);
+        this.tableName = tableName;
+        this.ttlSeconds = TimeUnit.MILLISECONDS.toSeconds(ttlMs);
+        this.claimTtlSeconds = TimeUnit.MILLISECONDS.toSeconds(claimTtlMs);
+    }
+
+    @Override
+    public boolean isRecorded(String reminderId) {
+
+        GetItemSpec getItemSpec = new GetItemSpec()
+                .withPrimaryKey("id", reminderId)
+                .withConsistentRead(true);
+
+        Item item = dynamoDb.getTable(tableName).getItem(getItemSpec);
+
+        // items recorded before reminders were claimed have no status
+        return item != null && item.getLong("expires_at") > nowInSeconds() && !SENDING.equals(item.getString("status"));
+    }
+
+    @Override
+    public boolean claim(String reminderId) {
+
+        long now = nowInSeconds();
+        Item item = new Item()
+                .withPrimaryKey("id", reminderId)
+                .withString("status", SENDING)
+                .withString("claimed_at", ZonedDateTime.now().format(DateTimeFormatter.ISO_INSTANT))
+                .withLong("expires_at", now + claimTtlSeconds);
+
+        PutItemSpec putItemSpec = new PutItemSpec()
+                .withItem(item)
+                .withConditionExpression("attribute_not_exists(id) OR expires_at <= :now")
+                .withValueMap(new ValueMap().withLong(":now", now));
+
+        try {
+            dynamoDb.getTable(tableName).putItem(putItemSpec);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void record(String reminderId) {
+
+        dynamoDb.getTable(tableName).putItem(new Item()
+                .withPrimaryKey("id", reminderId)
+                .withString("status", SENT)
+                .withString("sent_at", ZonedDateTime.now().format(DateTimeFormatter.ISO_INSTANT))
+                .withLong("expires_at", nowInSeconds() + ttlSeconds));
+    }
+
+    @Override
+    public void release(String reminderId) {
+
+        DeleteItemSpec deleteItemSpec = new DeleteItemSpec()
+                .withPrimaryKey("id", reminderId)
+                .withConditionExpression("#status = :sending")
+                .withNameMap(new NameMap().with("#status", "status"))
+                .withValueMap(new ValueMap().withString(":sending", SENDING));
+
+        try {
+            dynamoDb.getTable(tableName).deleteItem(deleteItemSpec);
+        } catch (ConditionalCheckFailedException e) {
+            // sent after all, or the claim lapsed and was taken by another delivery
+        }
+    }
+
+    private static long nowInSeconds() {
+
+        return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,61 @@
+package uk.gov.dvsa.motr.notifier.component.reminder.persistence;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the ledger for the life of the process only, which does not survive to the invocation a message is delivered again
+ * to, so it only stands in for the table in tests
+ */
+public class InMemoryReminderLedger implements ReminderLedger {
+
+    private long ttlMs;
+    private long claimTtlMs;
+    private ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public InMemoryReminderLedger(long ttlMs, long claimTtlMs) {
+
+        this.ttlMs = ttlMs;
+        this.claimTtlMs = claimTtlMs;
+    }
+
+    @Override
+    public boolean isRecorded(String reminderId) {
+
+        Entry entry = entries.get(reminderId);
+        return entry != null && entry.sent && entry.expiresAt > System.currentTimeMillis();
+    }
+
+    @Override
+    public boolean claim(String reminderId) {
+
+        long now = System.currentTimeMillis();
+        Entry claim = new Entry(false, now + claimTtlMs);
+        return entries.compute(reminderId, (ignored, existing) -> existing != null && existing.expiresAt > now ? existing : claim)
+                == claim;
+    }
+
+    @Override
+    public void record(String reminderId) {
+
+        entries.put(reminderId, new Entry(true, System.currentTimeMillis() + ttlMs));
+    }
+
+    @Override
+    public void release(String reminderId) {
+
+        entries.computeIfPresent(reminderId, (ignored, existing) -> existing.sent ? existing : null);
+    }
+
+    private static class Entry {
+
+        private boolean sent;
+        private long expiresAt;
+
+        private Entry(boolean sent, long expiresAt) {
+
+            this.sent = sent;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
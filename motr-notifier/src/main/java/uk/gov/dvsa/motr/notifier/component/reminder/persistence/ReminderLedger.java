@@ -0,0 +1,31 @@
+package uk.gov.dvsa.motr.notifier.component.reminder.persistence;
+
+/**
+ * Records the reminders that have been sent, so a subscription the queue delivers again is not reminded twice. A reminder
+ * is claimed before it is sent, so of two deliveries of the same subscription running at once only one sends it.
+ */
+public interface ReminderLedger {
+
+    /**
+     * @return true when the reminder has been recorded as sent
+     */
+    boolean isRecorded(String reminderId);
+
+    /**
+     * Claims the reminder for sending. The claim lapses after a short while, so a delivery that dies whilst sending does not
+     * hold the reminder for good.
+     *
+     * @return false when the reminder has been sent or another delivery holds the claim
+     */
+    boolean claim(String reminderId);
+
+    /**
+     * Records the claimed reminder as sent
+     */
+    void record(String reminderId);
+
+    /**
+     * Gives up the claim on a reminder that could not be sent, so a later delivery may send it
+     */
+    void release(String reminderId);
+}
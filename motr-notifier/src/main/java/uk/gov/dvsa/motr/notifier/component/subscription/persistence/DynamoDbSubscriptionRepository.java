@@ -7,19 +7,22 @@ import com.amazonaws.services.dynamodbv2.document.Index;
 import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.ItemCollection;
 import com.amazonaws.services.dynamodbv2.document.QueryOutcome;
+import com.amazonaws.services.dynamodbv2.document.Table;
 import com.amazonaws.services.dynamodbv2.document.spec.DeleteItemSpec;
-import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
 import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
 import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
 import com.amazonaws.services.dynamodbv2.model.ReturnValue;
 
+import uk.gov.dvsa.motr.subscription.DueDateShardKey;
 import uk.gov.dvsa.motr.vehicledetails.VehicleType;
 
 import java.time.LocalDate;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
 
 
@@ -69,62 +72,95 @@ public class DynamoDbSubscriptionRepository implements SubscriptionRepository {
         return Optional.of(subscriptionDbItem);
     }
 
-    public void updateExpiryDate(String vrm, String email, LocalDate updatedExpiryDate) {
+    public void apply(SubscriptionChangeSet changes) throws Exception {
 
-        UpdateItemSpec updateItemSpec = new UpdateItemSpec()
-                .withPrimaryKey("vrm", vrm, "email", email)
-                .withUpdateExpression("set mot_due_date = :updatedDueDate, mot_due_date_md = :updatedDueDateMd, updated_at = :updatedAt")
-                .withValueMap(new ValueMap()
-                .withString(":updatedDueDate", updatedExpiryDate.format(DateTimeFormatter.ISO_LOCAL_DATE))
-                .withString(":updatedDueDateMd", updatedExpiryDate.format(DateTimeFormatter.ofPattern("MM-dd")))
-                .withString(":updatedAt", ZonedDateTime.now().format(DateTimeFormatter.ISO_INSTANT)))
-                .withReturnValues(ReturnValue.UPDATED_NEW);
+        if (changes.isEmpty()) {
+            return;
+        }
 
-        dynamoDb.getTable(tableName).updateItem(updateItemSpec);
+        try {
+            if (changes.getUpdatedVrm().isPresent()) {
+                move(changes);
+            } else {
+                update(changes);
+            }
+        } catch (Exception e) {
+            throw new Exception(e);
+        }
     }
 
-    public void updateMotTestNumber(String vrm, String email, String updatedMotTestNumber) {
+    private void update(SubscriptionChangeSet changes) {
+
+        String vrm = changes.getVrm();
+        String email = changes.getEmail();
+        List<String> assignments = new ArrayList<>();
+        ValueMap values = new ValueMap();
+
+        if (changes.getMotDueDate().isPresent()) {
+            LocalDate motDueDate = changes.getMotDueDate().get();
+            assignments.add("mot_due_date = :updatedDueDate");
+            assignments.add("mot_due_date_md = :updatedDueDateMd");
+            assignments.add(DueDateShardKey.ATTRIBUTE + " = :updatedDueDateShard");
+            values.withString(":updatedDueDate", motDueDate.format(DateTimeFormatter.ISO_LOCAL_DATE))
+                    .withString(":updatedDueDateMd", motDueDate.format(DateTimeFormatter.ofPattern("MM-dd")))
+                    .withString(":updatedDueDateShard", DueDateShardKey.of(motDueDate, vrm, email));
+        }
+
+        if (changes.getMotTestNumber().isPresent()) {
+            assignments.add("mot_test_number = :updatedMotTestNumber");
+            values.withString(":updatedMotTestNumber", changes.getMotTestNumber().get());
+        }
+
+        assignments.add("updated_at = :updatedAt");
+        values.withString(":updatedAt", ZonedDateTime.now().format(DateTimeFormatter.ISO_INSTANT));
+
+        String updateExpression = "SET " + String.join(", ", assignments);
+        if (changes.getMotTestNumber().isPresent()) {
+            updateExpression += " REMOVE dvla_id";
+        }
 
         UpdateItemSpec updateItemSpec = new UpdateItemSpec()
                 .withPrimaryKey("vrm", vrm, "email", email)
-                .withUpdateExpression("SET mot_test_number = :updatedMotTestNumber, updated_at = :updatedAt REMOVE dvla_id")
-                .withValueMap(new ValueMap()
-                .withString(":updatedMotTestNumber", updatedMotTestNumber)
-                .withString(":updatedAt", ZonedDateTime.now().format(DateTimeFormatter.ISO_INSTANT)))
-                .withReturnValues(ReturnValue.ALL_NEW);
+                .withUpdateExpression(updateExpression)
+                .withConditionExpression("attribute_exists(id)")
+                .withValueMap(values);
 
         dynamoDb.getTable(tableName).updateItem(updateItemSpec);
     }
 
-    public void updateVrm(String vrm, String email, String updatedVrm) throws Exception {
+    private void move(SubscriptionChangeSet changes) {
 
-        try {
-            GetItemSpec getItemSpec = new GetItemSpec().withPrimaryKey("vrm", vrm, "email", email);
-            Item originalItem = dynamoDb.getTable(tableName).getItem(getItemSpec);
-
-            // Because vrm is part of primary key, cannot update it. Instead, delete old record and create new one.
-            DeleteItemSpec deleteItemSpec = new DeleteItemSpec().withPrimaryKey("vrm", vrm, "email", email);
-            dynamoDb.getTable(tableName).deleteItem(deleteItemSpec);
-
-            Item item = new Item()
-                    .withPrimaryKey("vrm", updatedVrm, "email", email)
-                    .withString("id", originalItem.getString("id"))
-                    .withString("mot_due_date", originalItem.getString("mot_due_date"))
-                    .withString("mot_due_date_md", originalItem.getString("mot_due_date_md"))
-                    .withString("created_at", originalItem.getString("created_at"))
-                    .withString("updated_at", ZonedDateTime.now().format(DateTimeFormatter.ISO_INSTANT))
-                    .withString("contact_type", originalItem.getString("contact_type"))
-                    .withString("vehicle_type", originalItem.getString("vehicle_type"));
-
-            if (originalItem.isPresent("dvla_id")) {
-                item.withString("dvla_id", originalItem.getString("dvla_id"));
-            } else {
-                item.withString("mot_test_number", originalItem.getString("mot_test_number"));
-            }
+        String vrm = changes.getVrm();
+        String email = changes.getEmail();
+        String updatedVrm = changes.getUpdatedVrm().get();
+        Table table = dynamoDb.getTable(tableName);
 
-            dynamoDb.getTable(tableName).putItem(item);
-        } catch (Exception e) {
-            throw new Exception(e);
+        // Because vrm is part of primary key, cannot update it. Instead, delete old record, which hands back its
+        // attributes, and create new one from them with the other changes applied.
+        DeleteItemSpec deleteItemSpec = new DeleteItemSpec()
+                .withPrimaryKey("vrm", vrm, "email", email)
+                .withConditionExpression("attribute_exists(id)")
+                .withReturnValues(ReturnValue.ALL_OLD);
+        Item originalItem = table.deleteItem(deleteItemSpec).getItem();
+
+        LocalDate motDueDate = changes.getMotDueDate().orElse(LocalDate.parse(originalItem.getString("mot_due_date")));
+        Item item = Item.fromMap(originalItem.asMap())
+                .withPrimaryKey("vrm", updatedVrm, "email", email)
+                .withString("mot_due_date", motDueDate.format(DateTimeFormatter.ISO_LOCAL_DATE))
+                .withString("mot_due_date_md", motDueDate.format(DateTimeFormatter.ofPattern("MM-dd")))
+                .withString(DueDateShardKey.ATTRIBUTE, DueDateShardKey.of(motDueDate, updatedVrm, email))
+                .withString("updated_at", ZonedDateTime.now().format(DateTimeFormatter.ISO_INSTANT));
+
+        if (changes.getMotTestNumber().isPresent()) {
+            item.withString("mot_test_number", changes.getMotTestNumber().get()).removeAttribute("dvla_id");
+        }
+
+        try {
+            table.putItem(item);
+        } catch (RuntimeException e) {
+            // put the subscription back as it was rather than lose it
+            table.putItem(originalItem);
+            throw e;
         }
     }
 
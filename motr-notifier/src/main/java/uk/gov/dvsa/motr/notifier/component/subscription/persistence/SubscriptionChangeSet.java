@@ -0,0 +1,80 @@
+package uk.gov.dvsa.motr.notifier.component.subscription.persistence;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+/**
+ * The changes to store for a subscription once it has been processed, gathered up so they can be written together
+ */
+public class SubscriptionChangeSet {
+
+    private String vrm;
+
+    private String email;
+
+    private LocalDate motDueDate;
+
+    private String motTestNumber;
+
+    private String updatedVrm;
+
+    public SubscriptionChangeSet(String vrm, String email) {
+
+        this.vrm = vrm;
+        this.email = email;
+    }
+
+    public String getVrm() {
+
+        return vrm;
+    }
+
+    public String getEmail() {
+
+        return email;
+    }
+
+    public Optional<LocalDate> getMotDueDate() {
+
+        return Optional.ofNullable(motDueDate);
+    }
+
+    public SubscriptionChangeSet setMotDueDate(LocalDate motDueDate) {
+
+        this.motDueDate = motDueDate;
+        return this;
+    }
+
+    /**
+     * @return the MOT test number to record, which replaces the subscription's DVLA id
+     */
+    public Optional<String> getMotTestNumber() {
+
+        return Optional.ofNullable(motTestNumber);
+    }
+
+    public SubscriptionChangeSet setMotTestNumber(String motTestNumber) {
+
+        this.motTestNumber = motTestNumber;
+        return this;
+    }
+
+    /**
+     * @return the VRM to move the subscription to, which is part of its key
+     */
+    public Optional<String> getUpdatedVrm() {
+
+        return Optional.ofNullable(updatedVrm);
+    }
+
+    public SubscriptionChangeSet setUpdatedVrm(String updatedVrm) {
+
+        this.updatedVrm = updatedVrm;
+        return this;
+    }
+
+    public boolean isEmpty() {
+
+        return motDueDate == null && motTestNumber == null && updatedVrm == null;
+    }
+}
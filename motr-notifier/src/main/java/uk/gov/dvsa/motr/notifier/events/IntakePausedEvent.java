@@ -0,0 +1,32 @@
+package uk.gov.dvsa.motr.notifier.events;
+
+import uk.gov.dvsa.motr.eventlog.Event;
+
+import java.util.List;
+
+public class IntakePausedEvent extends Event {
+
+    @Override
+    public String getCode() {
+
+        return "INTAKE-PAUSED";
+    }
+
+    public IntakePausedEvent setOpenCircuitBreakers(List<String> openCircuitBreakers) {
+
+        params.put("open-circuit-breakers", String.join(",", openCircuitBreakers));
+        return this;
+    }
+
+    public IntakePausedEvent setReleased(int released) {
+
+        params.put("released", String.valueOf(released));
+        return this;
+    }
+
+    public IntakePausedEvent setRetryAfter(long retryAfterMs) {
+
+        params.put("retry-after-ms", String.valueOf(retryAfterMs));
+        return this;
+    }
+}
@@ -261,4 +261,28 @@ public class MetricEvent extends Event {
         params.put("count-of-process-item-calls", String.valueOf(metric));
         return this;
     }
+
+    public MetricEvent setVisibilityExtensionCount(long metric) {
+
+        params.put("count-of-visibility-extensions", String.valueOf(metric));
+        return this;
+    }
+
+    public MetricEvent setMotApiConcurrencyLimit(int metric) {
+
+        params.put("mot-api-concurrency-limit", String.valueOf(metric));
+        return this;
+    }
+
+    public MetricEvent setMotApiConcurrencyLimitMin(long metric) {
+
+        params.put("min-mot-api-concurrency-limit", String.valueOf(metric));
+        return this;
+    }
+
+    public MetricEvent setMotApiConcurrencyLimitMax(long metric) {
+
+        params.put("max-mot-api-concurrency-limit", String.valueOf(metric));
+        return this;
+    }
 }
@@ -0,0 +1,24 @@
+package uk.gov.dvsa.motr.notifier.events;
+
+import uk.gov.dvsa.motr.eventlog.Event;
+import uk.gov.dvsa.motr.notifier.processing.pipeline.PipelineStage;
+
+public class PipelineStageCompletedEvent extends Event {
+
+    @Override
+    public String getCode() {
+
+        return "PIPELINE-STAGE-COMPLETED";
+    }
+
+    public PipelineStageCompletedEvent setStage(PipelineStage stage) {
+
+        params.put("stage", stage.getName());
+        params.put("workers", String.valueOf(stage.getWorkers()));
+        params.put("processed", String.valueOf(stage.getProcessed()));
+        params.put("max-queue-depth", String.valueOf(stage.getMaxQueueDepth()));
+        params.put("mean-service-time-ms", String.valueOf(stage.getMeanServiceTimeMs()));
+        params.put("max-service-time-ms", String.valueOf(stage.getMaxServiceTimeMs()));
+        return this;
+    }
+}
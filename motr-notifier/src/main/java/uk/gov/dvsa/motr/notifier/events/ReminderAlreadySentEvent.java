@@ -0,0 +1,24 @@
+package uk.gov.dvsa.motr.notifier.events;
+
+import uk.gov.dvsa.motr.eventlog.Event;
+
+public class ReminderAlreadySentEvent extends Event {
+
+    @Override
+    public String getCode() {
+
+        return "REMINDER-ALREADY-SENT";
+    }
+
+    public ReminderAlreadySentEvent setReminderId(String reminderId) {
+
+        params.put("reminder-id", reminderId);
+        return this;
+    }
+
+    public ReminderAlreadySentEvent setVrm(String vrm) {
+
+        params.put("vrm", vrm);
+        return this;
+    }
+}
@@ -27,4 +27,22 @@ public class RemindersProcessedEvent extends Event {
         params.put("amount-of-reminders-failed-to-process", String.valueOf(amountOfMessagesFailedToProcess));
         return this;
     }
+
+    public RemindersProcessedEvent setAmountOfMessagesRequeuedForRetry(int amountOfMessagesRequeuedForRetry) {
+
+        params.put("amount-of-reminders-requeued-for-retry", String.valueOf(amountOfMessagesRequeuedForRetry));
+        return this;
+    }
+
+    public RemindersProcessedEvent setAmountOfMessagesFailedToAcknowledge(int amountOfMessagesFailedToAcknowledge) {
+
+        params.put("amount-of-messages-failed-to-acknowledge", String.valueOf(amountOfMessagesFailedToAcknowledge));
+        return this;
+    }
+
+    public RemindersProcessedEvent setAmountOfMessagesReleased(int amountOfMessagesReleased) {
+
+        params.put("amount-of-reminders-released", String.valueOf(amountOfMessagesReleased));
+        return this;
+    }
 }
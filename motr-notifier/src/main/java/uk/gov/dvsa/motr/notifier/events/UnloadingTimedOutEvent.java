@@ -21,4 +21,22 @@ public class UnloadingTimedOutEvent extends Event {
         params.put("duration-ms", String.valueOf(duration));
         return this;
     }
+
+    public UnloadingTimedOutEvent setExpectedNotifyWait(long expectedNotifyWait) {
+
+        params.put("expected-notify-wait-ms", String.valueOf(expectedNotifyWait));
+        return this;
+    }
+
+    public UnloadingTimedOutEvent setExpectedCompletion(long expectedCompletion) {
+
+        params.put("expected-completion-ms", String.valueOf(expectedCompletion));
+        return this;
+    }
+
+    public UnloadingTimedOutEvent setInFlight(int inFlight) {
+
+        params.put("in-flight", String.valueOf(inFlight));
+        return this;
+    }
 }
@@ -0,0 +1,21 @@
+package uk.gov.dvsa.motr.notifier.events;
+
+import uk.gov.dvsa.motr.eventlog.Event;
+import uk.gov.dvsa.motr.notifier.processing.service.VehicleDetailsCache;
+
+public class VehicleDetailsCacheEvent extends Event {
+
+    @Override
+    public String getCode() {
+
+        return "VEHICLE-DETAILS-CACHE";
+    }
+
+    public VehicleDetailsCacheEvent setCache(VehicleDetailsCache cache) {
+
+        params.put("hits", String.valueOf(cache.getHits()));
+        params.put("misses", String.valueOf(cache.getMisses()));
+        params.put("coalesced", String.valueOf(cache.getCoalesced()));
+        return this;
+    }
+}
@@ -0,0 +1,22 @@
+package uk.gov.dvsa.motr.notifier.events;
+
+import uk.gov.dvsa.motr.eventlog.Event;
+import uk.gov.dvsa.motr.vehicledetails.RequestHedger;
+
+public class VehicleDetailsHedgingEvent extends Event {
+
+    @Override
+    public String getCode() {
+
+        return "VEHICLE-DETAILS-HEDGING";
+    }
+
+    public VehicleDetailsHedgingEvent setHedger(RequestHedger hedger) {
+
+        params.put("requests", String.valueOf(hedger.getRequests()));
+        params.put("hedged", String.valueOf(hedger.getHedged()));
+        params.put("hedge-wins", String.valueOf(hedger.getHedgeWins()));
+        params.put("hedge-delay-ms", String.valueOf(hedger.getHedgeDelayMs()));
+        return this;
+    }
+}
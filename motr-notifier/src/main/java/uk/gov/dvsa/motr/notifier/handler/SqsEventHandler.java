@@ -0,0 +1,50 @@
+package uk.gov.dvsa.motr.notifier.handler;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.gov.dvsa.motr.notifier.module.ConfigModule;
+import uk.gov.dvsa.motr.notifier.module.InvocationContextModule;
+import uk.gov.dvsa.motr.notifier.processing.model.SqsBatchResponse;
+import uk.gov.dvsa.motr.notifier.processing.model.SqsEvent;
+import uk.gov.dvsa.motr.notifier.processing.unloader.EventBatchProcessor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Entry point for running the notifier from an SQS event source, in place of {@link EventHandler} polling the queue itself,
+ * so Lambda runs as many notifiers as the queue depth calls for. The event source has to report batch item failures for
+ * only the failed messages to be delivered again. The event is read and the response written here, as the Lambda events
+ * library in use predates SQS batch responses.
+ *
+ * <p>Every invocation builds its own Notify rate limiters, so NOTIFY_SENDER_CONCURRENCY has to be set to the event source
+ * mapping's maximum concurrency for the invocations together to stay within the rate Notify allows the API key. Raising
+ * the maximum concurrency without it lets the aggregate send rate grow past that limit.
+ */
+public class SqsEventHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SqsEventHandler.class);
+
+    private ObjectMapper jsonMapper = new ObjectMapper();
+
+    public void handle(InputStream input, OutputStream output, Context context) throws IOException {
+
+        SqsEvent event = jsonMapper.readValue(input, SqsEvent.class);
+        logger.info("Batch of {} message(s), context: {}", event.getRecords().size(), context);
+
+        Injector injector = Guice.createInjector(
+                new InvocationContextModule(context),
+                new ConfigModule()
+        );
+
+        SqsBatchResponse response = injector.getInstance(EventBatchProcessor.class).process(event, context);
+        jsonMapper.writeValue(output, response);
+    }
+}
@@ -21,31 +21,48 @@ import uk.gov.dvsa.motr.config.EncryptionAwareConfig;
 import uk.gov.dvsa.motr.config.EnvironmentVariableConfig;
 import uk.gov.dvsa.motr.encryption.AwsKmsDecryptor;
 import uk.gov.dvsa.motr.encryption.Decryptor;
-import uk.gov.dvsa.motr.executor.BlockingExecutor;
 import uk.gov.dvsa.motr.notifier.SystemVariable;
+import uk.gov.dvsa.motr.notifier.component.reminder.persistence.DynamoDbReminderLedger;
+import uk.gov.dvsa.motr.notifier.component.reminder.persistence.ReminderLedger;
 import uk.gov.dvsa.motr.notifier.component.subscription.persistence.DynamoDbSubscriptionRepository;
 import uk.gov.dvsa.motr.notifier.component.subscription.persistence.SubscriptionRepository;
 import uk.gov.dvsa.motr.notifier.notify.NotificationTemplateIds;
 import uk.gov.dvsa.motr.notifier.notify.NotifyEmailService;
 import uk.gov.dvsa.motr.notifier.notify.NotifySmsService;
 import uk.gov.dvsa.motr.notifier.processing.factory.SendableNotificationFactory;
+import uk.gov.dvsa.motr.notifier.processing.limiter.AdaptiveConcurrencyLimiter;
+import uk.gov.dvsa.motr.notifier.processing.limiter.CircuitBreakers;
+import uk.gov.dvsa.motr.notifier.processing.limiter.TokenBucket;
+import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionEnvelope;
+import uk.gov.dvsa.motr.notifier.processing.pipeline.PipelineSizing;
+import uk.gov.dvsa.motr.notifier.processing.queue.AcknowledgementBatcher;
+import uk.gov.dvsa.motr.notifier.processing.queue.PrefetchingSubscriptionsReceiver;
 import uk.gov.dvsa.motr.notifier.processing.queue.QueueItemRemover;
+import uk.gov.dvsa.motr.notifier.processing.queue.SubscriptionMessageParser;
 import uk.gov.dvsa.motr.notifier.processing.queue.SubscriptionsReceiver;
+import uk.gov.dvsa.motr.notifier.processing.queue.VisibilityHeartbeat;
 import uk.gov.dvsa.motr.notifier.processing.service.ProcessSubscriptionService;
+import uk.gov.dvsa.motr.notifier.processing.service.VehicleDetailsCache;
+import uk.gov.dvsa.motr.notifier.processing.unloader.EventBatchProcessor;
 import uk.gov.dvsa.motr.notifier.processing.unloader.QueueUnloader;
 import uk.gov.dvsa.motr.notify.NotifyTemplateEngine;
+import uk.gov.dvsa.motr.vehicledetails.RequestHedger;
 import uk.gov.dvsa.motr.vehicledetails.VehicleDetailsClient;
 import uk.gov.service.notify.NotificationClient;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static com.amazonaws.regions.Region.getRegion;
 import static com.amazonaws.regions.Regions.fromName;
 
 import static org.apache.log4j.Level.toLevel;
 
+import static uk.gov.dvsa.motr.notifier.SystemVariable.ACKNOWLEDGE_WORKER_COUNT;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.APPLY_WORKER_COUNT;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.CHECKSUM_SALT;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.DB_TABLE_REMINDER_LEDGER;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.DB_TABLE_SUBSCRIPTION;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.GOV_NOTIFY_API_TOKEN;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.HGV_PSV_NOTIFICATIONS;
@@ -55,12 +72,22 @@ import static uk.gov.dvsa.motr.notifier.SystemVariable.LOG_LEVEL;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.MESSAGE_RECEIVE_TIMEOUT;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.MESSAGE_VISIBILITY_TIMEOUT;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.MOTH_DIRECT_URL_PREFIX;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.MOT_API_DVLA_ID_BATCH_URI;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.MOT_API_DVLA_ID_URI;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.MOT_API_HGV_PSV_URI;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.MOT_API_MOT_TEST_NUMBER_BATCH_URI;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.MOT_API_MOT_TEST_NUMBER_URI;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.MOT_TEST_REMINDER_INFO_TOKEN;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.NOTIFY_EMAIL_BURST;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.NOTIFY_EMAIL_RATE_PER_SECOND;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.NOTIFY_SENDER_CONCURRENCY;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.NOTIFY_SMS_BURST;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.NOTIFY_SMS_RATE_PER_SECOND;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.NOTIFY_WORKER_COUNT;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.ONE_DAY_AFTER_NOTIFICATION_TEMPLATE_ID_POST_EU;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.ONE_MONTH_NOTIFICATION_TEMPLATE_ID_POST_EU;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.PERSIST_WORKER_COUNT;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.RECEIVER_COUNT;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.REGION;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.REMAINING_TIME_THRESHOLD;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.SMS_HGV_PSV_ONE_MONTH_NOTIFICATION_TEMPLATE_ID;
@@ -68,9 +95,11 @@ import static uk.gov.dvsa.motr.notifier.SystemVariable.SMS_HGV_PSV_TWO_MONTH_NOT
 import static uk.gov.dvsa.motr.notifier.SystemVariable.SMS_ONE_DAY_AFTER_NOTIFICATION_TEMPLATE_ID_POST_EU;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.SMS_ONE_MONTH_NOTIFICATION_TEMPLATE_ID_POST_EU;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.SMS_TWO_WEEK_NOTIFICATION_TEMPLATE_ID_POST_EU;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.STAGE_QUEUE_CAPACITY;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.SUBSCRIPTIONS_QUEUE_URL;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.TWO_WEEK_NOTIFICATION_TEMPLATE_ID_POST_EU;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.VEHICLE_API_CLIENT_TIMEOUT;
+import static uk.gov.dvsa.motr.notifier.SystemVariable.VEHICLE_API_HEDGE_PERCENTILE;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.WEB_BASE_URL;
 import static uk.gov.dvsa.motr.notifier.SystemVariable.WORKER_COUNT;
 
@@ -79,8 +108,20 @@ public class ConfigModule extends AbstractModule {
     private static final org.slf4j.Logger logger = LoggerFactory.getLogger(ConfigModule.class);
     private static final int MAX_NUMBER_OF_MESSAGES = 10;
     private static final int POST_PROCESSING_DELAY_MS = 30000;
+    private static final int ACKNOWLEDGEMENT_LINGER_MS = 200;
+    private static final long MIN_VISIBILITY_CHECK_INTERVAL_MS = 1000;
+    private static final long VEHICLE_NOT_FOUND_CACHE_TTL_MS = 60000;
+    private static final double VEHICLE_API_HEDGE_BUDGET = 0.05;
+    private static final int CIRCUIT_BREAKER_FAILURE_THRESHOLD = 5;
+    private static final long CIRCUIT_BREAKER_OPEN_DURATION_MS = 30000;
+    // as long as SQS can keep a message, so the ledger outlives every redelivery
+    private static final long REMINDER_LEDGER_TTL_MS = TimeUnit.DAYS.toMillis(14);
+    // long enough for a send to finish, short enough for a delivery that died whilst sending not to hold up the next one
+    private static final long REMINDER_CLAIM_TTL_MS = TimeUnit.MINUTES.toMillis(5);
     private AmazonSQS sqsClient;
     private NotificationClient client;
+    private TokenBucket emailRateLimiter;
+    private TokenBucket smsRateLimiter;
 
     @Override
     protected void configure() {
@@ -103,24 +144,47 @@ public class ConfigModule extends AbstractModule {
         sqsClient = AmazonSQSClientBuilder.defaultClient();
 
         client = new NotificationClient(config.getValue(GOV_NOTIFY_API_TOKEN));
+
+        // shared by every worker, as Notify limits the rate per API key rather than per connection, and split between the
+        // invocations that can run at once, as each builds its own buckets
+        int senderConcurrency = Integer.parseInt(config.getValue(NOTIFY_SENDER_CONCURRENCY));
+        emailRateLimiter = rateLimiterShare(config.getValue(NOTIFY_EMAIL_RATE_PER_SECOND), config.getValue(NOTIFY_EMAIL_BURST),
+                senderConcurrency);
+        smsRateLimiter = rateLimiterShare(config.getValue(NOTIFY_SMS_RATE_PER_SECOND), config.getValue(NOTIFY_SMS_BURST),
+                senderConcurrency);
     }
 
     @Provides
     public QueueUnloader provideUnloader(
             SubscriptionsReceiver subscriptionsReceiver,
             QueueItemRemover queueItemRemover,
+            VisibilityHeartbeat visibilityHeartbeat,
             ProcessSubscriptionService processSubscriptionService,
             Config config) {
 
-        logger.info("Worker count is {}", Integer.parseInt(config.getValue(WORKER_COUNT)));
-        BlockingExecutor executor =
-                new BlockingExecutor(Integer.parseInt(config.getValue(WORKER_COUNT)));
-
-        return new QueueUnloader(subscriptionsReceiver, queueItemRemover, executor,
+        PipelineSizing pipelineSizing = new PipelineSizing()
+                .setFetchWorkers(Integer.parseInt(config.getValue(WORKER_COUNT)))
+                .setPersistWorkers(Integer.parseInt(config.getValue(PERSIST_WORKER_COUNT)))
+                .setNotifyWorkers(Integer.parseInt(config.getValue(NOTIFY_WORKER_COUNT)))
+                .setApplyWorkers(Integer.parseInt(config.getValue(APPLY_WORKER_COUNT)))
+                .setAcknowledgeWorkers(Integer.parseInt(config.getValue(ACKNOWLEDGE_WORKER_COUNT)))
+                .setQueueCapacity(Integer.parseInt(config.getValue(STAGE_QUEUE_CAPACITY)));
+        logger.info("Worker counts are fetch {}, persist {}, notify {}, apply changes {}, acknowledge {} with stage queue capacity {}",
+                pipelineSizing.getFetchWorkers(), pipelineSizing.getPersistWorkers(), pipelineSizing.getNotifyWorkers(),
+                pipelineSizing.getApplyWorkers(), pipelineSizing.getAcknowledgeWorkers(), pipelineSizing.getQueueCapacity());
+
+        return new QueueUnloader(subscriptionsReceiver, queueItemRemover, visibilityHeartbeat, pipelineSizing,
                 processSubscriptionService, Integer.parseInt(config.getValue(REMAINING_TIME_THRESHOLD)) * 1000,
                 POST_PROCESSING_DELAY_MS);
     }
 
+    @Provides
+    public EventBatchProcessor provideEventBatchProcessor(ProcessSubscriptionService processSubscriptionService, Config config) {
+
+        return new EventBatchProcessor(new SubscriptionMessageParser(), processSubscriptionService,
+                Integer.parseInt(config.getValue(WORKER_COUNT)));
+    }
+
     @Provides
     public SubscriptionsReceiver provideSubscriptionReceiver(Config config) {
 
@@ -128,7 +192,13 @@ public class ConfigModule extends AbstractModule {
         receiveMessageRequest.setWaitTimeSeconds(Integer.parseInt(config.getValue(MESSAGE_RECEIVE_TIMEOUT)));
         receiveMessageRequest.setMaxNumberOfMessages(MAX_NUMBER_OF_MESSAGES);
         receiveMessageRequest.setVisibilityTimeout(Integer.parseInt(config.getValue(MESSAGE_VISIBILITY_TIMEOUT)));
-        receiveMessageRequest.withMessageAttributeNames("correlation-id");
+        receiveMessageRequest.withMessageAttributeNames("correlation-id", SubscriptionEnvelope.VERSION_ATTRIBUTE);
+
+        int receiverCount = Integer.parseInt(config.getValue(RECEIVER_COUNT));
+        if (receiverCount > 1) {
+            int bufferCapacity = Integer.parseInt(config.getValue(WORKER_COUNT)) + Integer.parseInt(config.getValue(STAGE_QUEUE_CAPACITY));
+            return new PrefetchingSubscriptionsReceiver(sqsClient, receiveMessageRequest, receiverCount, bufferCapacity);
+        }
 
         return new SubscriptionsReceiver(sqsClient, receiveMessageRequest);
     }
@@ -136,26 +206,56 @@ public class ConfigModule extends AbstractModule {
     @Provides
     public QueueItemRemover provideSubscriptionRemover(Config config) {
 
-        return new QueueItemRemover(sqsClient ,config.getValue(SUBSCRIPTIONS_QUEUE_URL));
+        String subscriptionsQueueUrl = config.getValue(SUBSCRIPTIONS_QUEUE_URL);
+
+        return new QueueItemRemover(sqsClient, subscriptionsQueueUrl,
+                new AcknowledgementBatcher(sqsClient, subscriptionsQueueUrl, ACKNOWLEDGEMENT_LINGER_MS));
+    }
+
+    @Provides
+    public VisibilityHeartbeat provideVisibilityHeartbeat(Config config) {
+
+        int visibilityTimeoutSeconds = Integer.parseInt(config.getValue(MESSAGE_VISIBILITY_TIMEOUT));
+        long checkIntervalMs = Math.max(MIN_VISIBILITY_CHECK_INTERVAL_MS, TimeUnit.SECONDS.toMillis(visibilityTimeoutSeconds) / 6);
+
+        return new VisibilityHeartbeat(sqsClient, config.getValue(SUBSCRIPTIONS_QUEUE_URL), visibilityTimeoutSeconds, checkIntervalMs);
     }
 
     @Provides
     public VehicleDetailsClient provideVehicleDetailsClient(Config config) {
 
         int timeoutInMs = Integer.parseInt(config.getValue(VEHICLE_API_CLIENT_TIMEOUT)) * 1000;
+        double hedgePercentile = Double.parseDouble(config.getValue(VEHICLE_API_HEDGE_PERCENTILE));
+        int workerCount = Integer.parseInt(config.getValue(WORKER_COUNT));
+        int hedgeConnections = hedgePercentile > 0 ? (int) Math.ceil(workerCount * VEHICLE_API_HEDGE_BUDGET) : 0;
 
         PoolingHttpClientConnectionManager poolingHttpClientConnectionManager = new PoolingHttpClientConnectionManager();
-        poolingHttpClientConnectionManager.setMaxTotal(Integer.parseInt(config.getValue(WORKER_COUNT)));
+        poolingHttpClientConnectionManager.setMaxTotal(workerCount + hedgeConnections);
 
         ClientConfig clientConfig = new ClientConfig().connectorProvider(new ApacheConnectorProvider());
         clientConfig = clientConfig.property(ApacheClientProperties.CONNECTION_MANAGER, poolingHttpClientConnectionManager);
         clientConfig = clientConfig.property(ClientProperties.CONNECT_TIMEOUT, timeoutInMs);
         clientConfig = clientConfig.property(ClientProperties.READ_TIMEOUT, timeoutInMs);
 
-        return new VehicleDetailsClient(clientConfig, config.getValue(MOT_TEST_REMINDER_INFO_TOKEN))
+        VehicleDetailsClient client = new VehicleDetailsClient(clientConfig, config.getValue(MOT_TEST_REMINDER_INFO_TOKEN))
                 .withByMotTestNumberUri(config.getValue(MOT_API_MOT_TEST_NUMBER_URI))
                 .withByDvlaIdUri(config.getValue(MOT_API_DVLA_ID_URI))
                 .withHgvPsvByVrmUri(config.getValue(MOT_API_HGV_PSV_URI));
+
+        // without a batch endpoint each subscription looks its vehicle up by itself
+        String motTestNumberBatchUri = config.getValue(MOT_API_MOT_TEST_NUMBER_BATCH_URI);
+        if (!motTestNumberBatchUri.isEmpty()) {
+            client.withBatchByMotTestNumberUri(motTestNumberBatchUri);
+        }
+        String dvlaIdBatchUri = config.getValue(MOT_API_DVLA_ID_BATCH_URI);
+        if (!dvlaIdBatchUri.isEmpty()) {
+            client.withBatchByDvlaIdUri(dvlaIdBatchUri);
+        }
+
+        if (hedgePercentile > 0) {
+            client.withRequestHedger(new RequestHedger(hedgePercentile, VEHICLE_API_HEDGE_BUDGET));
+        }
+        return client;
     }
 
     @Provides
@@ -165,18 +265,33 @@ public class ConfigModule extends AbstractModule {
             NotifyEmailService notifyEmailService,
             NotifySmsService notifySmsService,
             SendableNotificationFactory notificationFactory,
+            ReminderLedger reminderLedger,
             Config config) {
 
+        // the MOT API is never called by more threads than fetch vehicle details, so that is as high as the limit may go
+        int workerCount = Integer.parseInt(config.getValue(WORKER_COUNT));
+
         return new ProcessSubscriptionService(
                 client,
                 repository,
                 notifyEmailService,
                 notifySmsService,
                 notificationFactory,
-                Boolean.parseBoolean(config.getValue(HGV_PSV_NOTIFICATIONS))
+                Boolean.parseBoolean(config.getValue(HGV_PSV_NOTIFICATIONS)),
+                new VehicleDetailsCache(VEHICLE_NOT_FOUND_CACHE_TTL_MS),
+                new AdaptiveConcurrencyLimiter(Math.max(1, workerCount / 2), workerCount),
+                new CircuitBreakers(CIRCUIT_BREAKER_FAILURE_THRESHOLD, CIRCUIT_BREAKER_OPEN_DURATION_MS),
+                reminderLedger
         );
     }
 
+    @Provides
+    public ReminderLedger provideReminderLedger(Config config) {
+
+        return new DynamoDbReminderLedger(config.getValue(DB_TABLE_REMINDER_LEDGER), config.getValue(REGION), REMINDER_LEDGER_TTL_MS,
+                REMINDER_CLAIM_TTL_MS);
+    }
+
     @Provides
     public SubscriptionRepository provideSubscriptionRepository(Config config) {
 
@@ -185,7 +300,7 @@ public class ConfigModule extends AbstractModule {
 
     @Provides
     public NotifyEmailService provideNotifyEmailService(Config config) {
-        return new NotifyEmailService(client, new NotifyTemplateEngine());
+        return new NotifyEmailService(client, new NotifyTemplateEngine(), emailRateLimiter);
     }
 
     @Provides
@@ -217,7 +332,7 @@ public class ConfigModule extends AbstractModule {
 
         NotifyTemplateEngine notifyTemplateEngine = new NotifyTemplateEngine();
 
-        return new NotifySmsService(client, notifyTemplateEngine);
+        return new NotifySmsService(client, notifyTemplateEngine, smsRateLimiter);
     }
 
     @Provides
@@ -226,6 +341,15 @@ public class ConfigModule extends AbstractModule {
         return new AwsKmsDecryptor(getRegion(fromName(config.getValue(REGION))));
     }
 
+    /**
+     * @return a bucket with this invocation's share of the rate and burst Notify allows the API key, never less than one
+     *     token of burst so a send can always be made
+     */
+    private static TokenBucket rateLimiterShare(String ratePerSecond, String burst, int senderConcurrency) {
+
+        int shares = Math.max(1, senderConcurrency);
+        return new TokenBucket(Double.parseDouble(ratePerSecond) / shares, Math.max(1, Double.parseDouble(burst) / shares));
+    }
 
     private static Set<ConfigKey> secretVariables() {
 
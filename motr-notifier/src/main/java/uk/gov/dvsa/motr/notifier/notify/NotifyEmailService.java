@@ -2,6 +2,7 @@ package uk.gov.dvsa.motr.notifier.notify;
 
 import uk.gov.dvsa.motr.eventlog.EventLogger;
 import uk.gov.dvsa.motr.notifier.events.NotifyEvent;
+import uk.gov.dvsa.motr.notifier.processing.limiter.TokenBucket;
 import uk.gov.dvsa.motr.notifier.processing.model.notification.SendableNotification;
 import uk.gov.dvsa.motr.notifier.processing.model.notification.email.SendableEmailNotification;
 import uk.gov.dvsa.motr.notify.NotifyTemplateEngine;
@@ -19,9 +20,17 @@ public class NotifyEmailService {
 
     private NotifyTemplateEngine notifyTemplateEngine;
 
+    private TokenBucket rateLimiter;
+
     public NotifyEmailService(NotificationClient notificationClient, NotifyTemplateEngine notifyTemplateEngine) {
+        this(notificationClient, notifyTemplateEngine, TokenBucket.unlimited());
+    }
+
+    public NotifyEmailService(NotificationClient notificationClient, NotifyTemplateEngine notifyTemplateEngine,
+            TokenBucket rateLimiter) {
         this.notificationClient = notificationClient;
         this.notifyTemplateEngine = notifyTemplateEngine;
+        this.rateLimiter = rateLimiter;
     }
 
     public void sendEmail(String emailAddress, SendableEmailNotification notification, VehicleDetails vehicleDetails)
@@ -30,12 +39,17 @@ public class NotifyEmailService {
         Map<String, String> notifyParameters = getNotifyParameters(
                 notification.getNotificationPathSubject(), notification.getNotificationPathBody(), notification.getPersonalisation());
 
+        rateLimiter.acquire();
         notificationClient.sendEmail(notification.getTemplateId(), emailAddress,
                 notifyParameters, "");
 
         logEvent(emailAddress, notification, vehicleDetails);
     }
 
+    public TokenBucket getRateLimiter() {
+        return rateLimiter;
+    }
+
     private void logEvent(String email, SendableNotification notification, VehicleDetails vehicleDetails) {
         NotifyEvent event = notification.getEvent()
                 .setEmail(email)
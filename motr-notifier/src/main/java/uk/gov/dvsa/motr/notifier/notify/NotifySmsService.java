@@ -1,6 +1,7 @@
 package uk.gov.dvsa.motr.notifier.notify;
 
 import uk.gov.dvsa.motr.eventlog.EventLogger;
+import uk.gov.dvsa.motr.notifier.processing.limiter.TokenBucket;
 import uk.gov.dvsa.motr.notifier.processing.model.notification.sms.SendableSmsNotification;
 import uk.gov.dvsa.motr.notify.NotifyTemplateEngine;
 import uk.gov.dvsa.motr.notify.NotifyTemplateEngineException;
@@ -14,11 +15,18 @@ public class NotifySmsService {
 
     private NotificationClient notificationClient;
     private NotifyTemplateEngine notifyTemplateEngine;
+    private TokenBucket rateLimiter;
 
     public NotifySmsService(NotificationClient notificationClient, NotifyTemplateEngine notifyTemplateEngine) {
 
+        this(notificationClient, notifyTemplateEngine, TokenBucket.unlimited());
+    }
+
+    public NotifySmsService(NotificationClient notificationClient, NotifyTemplateEngine notifyTemplateEngine, TokenBucket rateLimiter) {
+
         this.notificationClient = notificationClient;
         this.notifyTemplateEngine = notifyTemplateEngine;
+        this.rateLimiter = rateLimiter;
     }
 
     public void sendSms(String phoneNumber, SendableSmsNotification notification)
@@ -27,9 +35,15 @@ public class NotifySmsService {
         Map<String, String> notifyParameters = getNotifyParameters(
                 notification.getNotificationPathBody(), notification.getPersonalisation());
 
+        rateLimiter.acquire();
         notificationClient.sendSms(notification.getTemplateId(), phoneNumber, notifyParameters, "");
     }
 
+    public TokenBucket getRateLimiter() {
+
+        return rateLimiter;
+    }
+
     private Map<String, String> getNotifyParameters(String body, Map<String, String> parameters) throws NotificationClientException {
         try {
             return notifyTemplateEngine.getNotifyParameters(body, parameters);
@@ -0,0 +1,142 @@
+package uk.gov.dvsa.motr.notifier.processing.limiter;
+
+import uk.gov.dvsa.motr.vehicledetails.VehicleDetailsEndpointResponseException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how many calls may be made to a downstream service at once, adjusting the limit to how the service copes.
+ * While calls succeed at close to the fastest latency seen, the limit grows by about one for every limit's worth of
+ * calls. A call that is throttled, fails with a server error or times out, or takes more than {@link #LATENCY_TOLERANCE}
+ * times that latency, halves the limit, at most once per call duration so one slow spell is not punished repeatedly.
+ * The limit never drops below one or grows beyond the maximum, which should be the number of threads able to make calls.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    static final double LATENCY_TOLERANCE = 2.0;
+    static final double BACKOFF_RATIO = 0.5;
+
+    private static final double MIN_LIMIT = 1;
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private double limit;
+    private double maxLimit;
+    private int inFlight = 0;
+    private long baselineLatencyNanos = Long.MAX_VALUE;
+    private long quietUntilNanos = System.nanoTime();
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int maxLimit) {
+
+        this.maxLimit = Math.max(MIN_LIMIT, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(MIN_LIMIT, initialLimit));
+    }
+
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+
+        T call() throws E;
+    }
+
+    /**
+     * Makes the call once fewer calls than the current limit are in flight, blocking until then
+     */
+    public <T, E extends Exception> T execute(Call<T, E> call) throws E {
+
+        acquire();
+
+        long startedAt = System.nanoTime();
+        boolean overloaded = false;
+        try {
+            return call.call();
+        } catch (Exception e) {
+            overloaded = isOverload(e);
+            throw e;
+        } finally {
+            release();
+            recordSample(System.nanoTime() - startedAt, overloaded);
+        }
+    }
+
+    /**
+     * Adjusts the limit for a completed call
+     *
+     * @return the limit after the adjustment
+     */
+    public synchronized int recordSample(long latencyNanos, boolean overloaded) {
+
+        long now = System.nanoTime();
+        boolean inflated = baselineLatencyNanos != Long.MAX_VALUE && latencyNanos > LATENCY_TOLERANCE * baselineLatencyNanos;
+
+        if (latencyNanos < baselineLatencyNanos) {
+            baselineLatencyNanos = latencyNanos;
+        } else {
+            baselineLatencyNanos += (long) ((latencyNanos - baselineLatencyNanos) * BASELINE_DRIFT);
+        }
+
+        if (overloaded || inflated) {
+            if (now - quietUntilNanos >= 0) {
+                limit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+                quietUntilNanos = now + latencyNanos;
+            }
+        } else if (inFlight + 1 >= (int) limit) {
+            // only grow while the limit is actually being used, otherwise it says nothing about the service
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+
+        notifyAll();
+        return getLimit();
+    }
+
+    public synchronized int getLimit() {
+
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+
+        return inFlight;
+    }
+
+    public synchronized long getBaselineLatencyMs() {
+
+        return baselineLatencyNanos == Long.MAX_VALUE ? 0 : TimeUnit.NANOSECONDS.toMillis(baselineLatencyNanos);
+    }
+
+    private synchronized void acquire() {
+
+        boolean interrupted = false;
+        while (inFlight >= (int) limit) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        inFlight++;
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void release() {
+
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * @return true when the failure suggests the service is struggling rather than the request being wrong
+     */
+    static boolean isOverload(Throwable failure) {
+
+        if (failure instanceof VehicleDetailsEndpointResponseException) {
+            int statusCode = ((VehicleDetailsEndpointResponseException) failure).getStatusCode();
+            return statusCode == 429 || statusCode >= 500;
+        }
+
+        // HGV/PSV client failures wrap the response they got, anything else (timeouts, unreadable responses) counts as overload
+        Throwable cause = failure.getCause();
+        return !(cause instanceof VehicleDetailsEndpointResponseException) || isOverload(cause);
+    }
+}
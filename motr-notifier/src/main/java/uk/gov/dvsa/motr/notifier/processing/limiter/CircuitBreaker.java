@@ -0,0 +1,176 @@
+package uk.gov.dvsa.motr.notifier.processing.limiter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Stops calls to a dependency that keeps failing, so work fails fast instead of adding to the load on a service that is
+ * trying to recover. After the given number of failures in a row the breaker opens and rejects calls for the open
+ * duration. It then goes half open and lets a single probe through, closing if the probe succeeds and opening again if not.
+ * A failure the dependency is not to blame for, such as a request it rejects as invalid, shows it is answering and is
+ * counted as a success.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private String name;
+    private int failureThreshold;
+    private long openDurationMs;
+    private Predicate<Exception> countsAsFailure;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt;
+    private long halfOpenedAt;
+    private boolean probing = false;
+
+    private AtomicInteger timesOpened = new AtomicInteger(0);
+    private AtomicInteger rejected = new AtomicInteger(0);
+
+    public CircuitBreaker(String name, int failureThreshold, long openDurationMs, Predicate<Exception> countsAsFailure) {
+
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDurationMs = openDurationMs;
+        this.countsAsFailure = countsAsFailure;
+    }
+
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+
+        T call() throws E;
+    }
+
+    /**
+     * Makes the call unless the breaker is open, or half open with its probe already in flight
+     *
+     * @throws CircuitBreakerOpenException when the call is not allowed
+     */
+    public <T, E extends Exception> T execute(Call<T, E> call) throws E {
+
+        if (!tryAcquire()) {
+            rejected.incrementAndGet();
+            throw new CircuitBreakerOpenException(name, getRetryAfterMs());
+        }
+
+        try {
+            T result = call.call();
+            recordSuccess();
+            return result;
+        } catch (Exception e) {
+            if (countsAsFailure.test(e)) {
+                recordFailure();
+            } else {
+                recordSuccess();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Decides whether new work that will use the dependency should be taken on. Once the open duration has passed the
+     * breaker goes half open and admits the work that will probe it, then admits nothing more until the probe is done,
+     * unless the probe never reaches the dependency and another open duration passes.
+     */
+    public synchronized boolean allowIntake() {
+
+        long now = System.currentTimeMillis();
+        if (state == State.OPEN && now - openedAt >= openDurationMs) {
+            halfOpen(now);
+            return true;
+        }
+        if (state == State.HALF_OPEN && now - halfOpenedAt >= openDurationMs) {
+            halfOpen(now);
+            return true;
+        }
+        return state == State.CLOSED;
+    }
+
+    public synchronized State getState() {
+
+        return state;
+    }
+
+    /**
+     * @return how long until the breaker lets a probe through, 0 unless it is open
+     */
+    public synchronized long getRetryAfterMs() {
+
+        return state == State.OPEN ? Math.max(0, openedAt + openDurationMs - System.currentTimeMillis()) : 0;
+    }
+
+    public String getName() {
+
+        return name;
+    }
+
+    public int getTimesOpened() {
+
+        return timesOpened.get();
+    }
+
+    public int getRejected() {
+
+        return rejected.get();
+    }
+
+    private synchronized boolean tryAcquire() {
+
+        long now = System.currentTimeMillis();
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now - openedAt < openDurationMs) {
+                    return false;
+                }
+                halfOpen(now);
+                probing = true;
+                return true;
+            default:
+                if (probing && now - halfOpenedAt < openDurationMs) {
+                    return false;
+                }
+                halfOpenedAt = now;
+                probing = true;
+                return true;
+        }
+    }
+
+    private synchronized void recordSuccess() {
+
+        consecutiveFailures = 0;
+        if (state == State.HALF_OPEN) {
+            logger.info("Closing {} circuit breaker, probe succeeded", name);
+            state = State.CLOSED;
+            probing = false;
+        }
+    }
+
+    private synchronized void recordFailure() {
+
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            logger.warn("Opening {} circuit breaker for {}ms after {} failure(s) in a row", name, openDurationMs, consecutiveFailures);
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            probing = false;
+            timesOpened.incrementAndGet();
+        }
+    }
+
+    private void halfOpen(long now) {
+
+        state = State.HALF_OPEN;
+        halfOpenedAt = now;
+        probing = false;
+    }
+}
@@ -0,0 +1,17 @@
+package uk.gov.dvsa.motr.notifier.processing.limiter;
+
+public class CircuitBreakerOpenException extends RuntimeException {
+
+    private long retryAfterMs;
+
+    public CircuitBreakerOpenException(String circuitBreaker, long retryAfterMs) {
+
+        super(circuitBreaker + " circuit breaker is open");
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public long getRetryAfterMs() {
+
+        return retryAfterMs;
+    }
+}
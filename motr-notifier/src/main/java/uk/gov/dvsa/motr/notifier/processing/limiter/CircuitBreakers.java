@@ -0,0 +1,91 @@
+package uk.gov.dvsa.motr.notifier.processing.limiter;
+
+import uk.gov.dvsa.motr.notify.NotifyTemplateEngineException;
+import uk.gov.service.notify.NotificationClientException;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The circuit breakers guarding the MOT API and GOV.UK Notify, which the unloader consults before taking on new work
+ */
+public class CircuitBreakers {
+
+    private CircuitBreaker motApi;
+    private CircuitBreaker notify;
+
+    public CircuitBreakers(int failureThreshold, long openDurationMs) {
+
+        this(new CircuitBreaker("mot-api", failureThreshold, openDurationMs, AdaptiveConcurrencyLimiter::isOverload),
+                new CircuitBreaker("notify", failureThreshold, openDurationMs, CircuitBreakers::isNotifyOutage));
+    }
+
+    public CircuitBreakers(CircuitBreaker motApi, CircuitBreaker notify) {
+
+        this.motApi = motApi;
+        this.notify = notify;
+    }
+
+    /**
+     * @return breakers that never open
+     */
+    public static CircuitBreakers neverOpen() {
+
+        return new CircuitBreakers(Integer.MAX_VALUE, 0);
+    }
+
+    public CircuitBreaker getMotApi() {
+
+        return motApi;
+    }
+
+    public CircuitBreaker getNotify() {
+
+        return notify;
+    }
+
+    /**
+     * @return true when new subscriptions may be taken on, as every dependency is closed or ready to be probed
+     */
+    public boolean allowIntake() {
+
+        return motApi.allowIntake() && notify.allowIntake();
+    }
+
+    /**
+     * @return how long until every open breaker lets a probe through
+     */
+    public long getRetryAfterMs() {
+
+        return Math.max(motApi.getRetryAfterMs(), notify.getRetryAfterMs());
+    }
+
+    /**
+     * @return names of the breakers that are not closed
+     */
+    public List<String> getOpen() {
+
+        return Arrays.asList(motApi, notify).stream()
+                .filter(circuitBreaker -> circuitBreaker.getState() != CircuitBreaker.State.CLOSED)
+                .map(CircuitBreaker::getName)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return true when Notify throttled the request, failed with a server error or could not be reached
+     */
+    static boolean isNotifyOutage(Exception failure) {
+
+        if (!(failure instanceof NotificationClientException)) {
+            return true;
+        }
+
+        int httpResult = ((NotificationClientException) failure).getHttpResult();
+        if (httpResult == 0) {
+            // no response at all, unless the request could not even be built
+            return !(failure.getCause() instanceof NotifyTemplateEngineException);
+        }
+        return httpResult == 429 || httpResult >= 500;
+    }
+}
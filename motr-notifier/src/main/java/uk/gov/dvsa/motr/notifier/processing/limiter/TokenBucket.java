@@ -0,0 +1,93 @@
+package uk.gov.dvsa.motr.notifier.processing.limiter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Spaces out calls to a rate limited service. Tokens accrue at the given rate up to the burst size, and a caller that finds
+ * none left reserves the next one to accrue and sleeps until then. Reservations are taken under a fair lock, so waiting
+ * callers are admitted in the order they arrived, and the tokens already owed tell how long a new caller would wait.
+ */
+public class TokenBucket {
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    private double ratePerSecond;
+    private double burst;
+    private double tokens;
+    private long refilledAt;
+
+    private AtomicInteger throttled = new AtomicInteger(0);
+
+    public TokenBucket(double ratePerSecond, double burst) {
+
+        this.ratePerSecond = ratePerSecond;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * @return a bucket that never makes a caller wait
+     */
+    public static TokenBucket unlimited() {
+
+        return new TokenBucket(Double.MAX_VALUE, Double.MAX_VALUE);
+    }
+
+    /**
+     * Takes a token, waiting for one to accrue if there are none left
+     */
+    public void acquire() {
+
+        long waitNanos;
+        lock.lock();
+        try {
+            refill();
+            tokens--;
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens / ratePerSecond * NANOS_PER_SECOND);
+        } finally {
+            lock.unlock();
+        }
+
+        if (waitNanos > 0) {
+            throttled.incrementAndGet();
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @param queued number of callers expected to take a token first
+     * @return how long a caller arriving after them would wait for a token
+     */
+    public long getExpectedWaitMs(int queued) {
+
+        lock.lock();
+        try {
+            refill();
+            double owed = queued + 1 - tokens;
+            return owed <= 0 ? 0 : (long) (owed / ratePerSecond * TimeUnit.SECONDS.toMillis(1));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getThrottled() {
+
+        return throttled.get();
+    }
+
+    private void refill() {
+
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) / NANOS_PER_SECOND * ratePerSecond);
+        refilledAt = now;
+    }
+}
@@ -0,0 +1,37 @@
+package uk.gov.dvsa.motr.notifier.processing.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps count of the subscriptions of an envelope that are still being worked on, so the envelope is only removed from
+ * the queue once the last of them has been processed or re-enqueued
+ */
+public class EnvelopeProgress {
+
+    private String messageReceiptHandle;
+    private AtomicInteger remaining;
+
+    public EnvelopeProgress(String messageReceiptHandle, int subscriptionCount) {
+
+        this.messageReceiptHandle = messageReceiptHandle;
+        this.remaining = new AtomicInteger(subscriptionCount);
+    }
+
+    public String getMessageReceiptHandle() {
+
+        return messageReceiptHandle;
+    }
+
+    /**
+     * @return true if the finished subscription was the last outstanding one of the envelope
+     */
+    public boolean subscriptionFinished() {
+
+        return remaining.decrementAndGet() == 0;
+    }
+
+    public int getRemaining() {
+
+        return remaining.get();
+    }
+}
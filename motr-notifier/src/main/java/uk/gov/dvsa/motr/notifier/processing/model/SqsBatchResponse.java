@@ -0,0 +1,42 @@
+package uk.gov.dvsa.motr.notifier.processing.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tells the SQS event source which messages of a batch failed, so only those are delivered again and the rest are deleted
+ */
+public class SqsBatchResponse {
+
+    @JsonProperty("batchItemFailures")
+    private List<BatchItemFailure> batchItemFailures = new ArrayList<>();
+
+    public List<BatchItemFailure> getBatchItemFailures() {
+
+        return batchItemFailures;
+    }
+
+    public SqsBatchResponse addBatchItemFailure(String messageId) {
+
+        batchItemFailures.add(new BatchItemFailure(messageId));
+        return this;
+    }
+
+    public static class BatchItemFailure {
+
+        @JsonProperty("itemIdentifier")
+        private String itemIdentifier;
+
+        private BatchItemFailure(String itemIdentifier) {
+
+            this.itemIdentifier = itemIdentifier;
+        }
+
+        public String getItemIdentifier() {
+
+            return itemIdentifier;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package uk.gov.dvsa.motr.notifier.processing.model;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Batch of subscriptions queue messages handed to the notifier by its SQS event source, holding only the parts of each
+ * message the notifier reads
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SqsEvent {
+
+    @JsonProperty("Records")
+    private List<Record> records = new ArrayList<>();
+
+    public List<Record> getRecords() {
+
+        return records;
+    }
+
+    public SqsEvent setRecords(List<Record> records) {
+
+        this.records = records;
+        return this;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Record {
+
+        @JsonProperty("messageId")
+        private String messageId;
+
+        @JsonProperty("receiptHandle")
+        private String receiptHandle;
+
+        @JsonProperty("body")
+        private String body;
+
+        @JsonProperty("messageAttributes")
+        private Map<String, Attribute> messageAttributes = new HashMap<>();
+
+        public String getMessageId() {
+
+            return messageId;
+        }
+
+        public Record setMessageId(String messageId) {
+
+            this.messageId = messageId;
+            return this;
+        }
+
+        public String getReceiptHandle() {
+
+            return receiptHandle;
+        }
+
+        public Record setReceiptHandle(String receiptHandle) {
+
+            this.receiptHandle = receiptHandle;
+            return this;
+        }
+
+        public String getBody() {
+
+            return body;
+        }
+
+        public Record setBody(String body) {
+
+            this.body = body;
+            return this;
+        }
+
+        public Map<String, Attribute> getMessageAttributes() {
+
+            return messageAttributes;
+        }
+
+        public Record setMessageAttributes(Map<String, Attribute> messageAttributes) {
+
+            this.messageAttributes = messageAttributes;
+            return this;
+        }
+
+        /**
+         * @return the record as the message it would have been had it been received from the queue
+         */
+        public Message toMessage() {
+
+            Message message = new Message()
+                    .withMessageId(messageId)
+                    .withReceiptHandle(receiptHandle)
+                    .withBody(body);
+            messageAttributes.forEach((name, attribute) -> message.addMessageAttributesEntry(name, new MessageAttributeValue()
+                    .withDataType(attribute.getDataType())
+                    .withStringValue(attribute.getStringValue())));
+            return message;
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Attribute {
+
+        @JsonProperty("dataType")
+        private String dataType;
+
+        @JsonProperty("stringValue")
+        private String stringValue;
+
+        public String getDataType() {
+
+            return dataType;
+        }
+
+        public Attribute setDataType(String dataType) {
+
+            this.dataType = dataType;
+            return this;
+        }
+
+        public String getStringValue() {
+
+            return stringValue;
+        }
+
+        public Attribute setStringValue(String stringValue) {
+
+            this.stringValue = stringValue;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package uk.gov.dvsa.motr.notifier.processing.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Queue message holding several subscriptions sent by the loader in one go
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SubscriptionEnvelope {
+
+    public static final int SUPPORTED_VERSION = 1;
+    public static final String VERSION_ATTRIBUTE = "envelope-version";
+
+    @JsonProperty("version")
+    private int version;
+
+    @JsonProperty("subscriptions")
+    private List<SubscriptionQueueItem> subscriptions = new ArrayList<>();
+
+    public int getVersion() {
+
+        return version;
+    }
+
+    public SubscriptionEnvelope setVersion(int version) {
+
+        this.version = version;
+        return this;
+    }
+
+    public List<SubscriptionQueueItem> getSubscriptions() {
+
+        return subscriptions;
+    }
+
+    public SubscriptionEnvelope setSubscriptions(List<SubscriptionQueueItem> subscriptions) {
+
+        this.subscriptions = subscriptions;
+        return this;
+    }
+}
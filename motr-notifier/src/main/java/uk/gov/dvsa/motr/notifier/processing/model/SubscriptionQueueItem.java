@@ -1,12 +1,15 @@
 package uk.gov.dvsa.motr.notifier.processing.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonUnwrapped;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 import uk.gov.dvsa.motr.serialisation.LocalDateDeserialiser;
+import uk.gov.dvsa.motr.serialisation.LocalDateSerialiser;
 import uk.gov.dvsa.motr.vehicledetails.VehicleType;
 
 import java.time.LocalDate;
@@ -34,6 +37,7 @@ public class SubscriptionQueueItem {
     private String id;
 
     @JsonProperty("motDueDate")
+    @JsonSerialize(using = LocalDateSerialiser.class)
     @JsonDeserialize(using = LocalDateDeserialiser.class)
     private LocalDate motDueDate;
 
@@ -52,6 +56,7 @@ public class SubscriptionQueueItem {
     private String dvlaId;
 
     @JsonProperty("loadedOnDate")
+    @JsonSerialize(using = LocalDateSerialiser.class)
     @JsonDeserialize(using = LocalDateDeserialiser.class)
     private LocalDate loadedOnDate;
 
@@ -62,6 +67,10 @@ public class SubscriptionQueueItem {
 
     private String messageCorrelationId;
 
+    private EnvelopeProgress envelope;
+
+    private long receivedAt;
+
     public String getId() {
         return id;
     }
@@ -118,6 +127,7 @@ public class SubscriptionQueueItem {
         return this;
     }
 
+    @JsonIgnore
     public String getMessageReceiptHandle() {
         return messageReceiptHandle;
     }
@@ -128,6 +138,7 @@ public class SubscriptionQueueItem {
         return this;
     }
 
+    @JsonIgnore
     public String getMessageCorrelationId() {
 
         return messageCorrelationId;
@@ -139,6 +150,38 @@ public class SubscriptionQueueItem {
         return this;
     }
 
+    /**
+     * @return progress of the envelope the subscription arrived in, or null if it arrived in a message of its own
+     */
+    @JsonIgnore
+    public EnvelopeProgress getEnvelope() {
+
+        return envelope;
+    }
+
+    @JsonIgnore
+    public SubscriptionQueueItem setEnvelope(EnvelopeProgress envelope) {
+
+        this.envelope = envelope;
+        return this;
+    }
+
+    /**
+     * @return when the message carrying the subscription was received, from which its visibility timeout runs
+     */
+    @JsonIgnore
+    public long getReceivedAt() {
+
+        return receivedAt;
+    }
+
+    @JsonIgnore
+    public SubscriptionQueueItem setReceivedAt(long receivedAt) {
+
+        this.receivedAt = receivedAt;
+        return this;
+    }
+
     public LocalDate getLoadedOnDate() {
 
         return loadedOnDate;
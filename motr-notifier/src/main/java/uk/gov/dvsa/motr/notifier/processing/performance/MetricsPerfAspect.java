@@ -1,5 +1,7 @@
 package uk.gov.dvsa.motr.notifier.processing.performance;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 
@@ -23,6 +25,9 @@ public class MetricsPerfAspect {
     private Timer sendSmsTimer = METRIC_REGISTRY.timer("notifyService_sendSms");
     private Timer updateExpiryDateTimer = METRIC_REGISTRY.timer("subscriptionRepository_updateExpiryDate");
     private Timer processItemTimer = METRIC_REGISTRY.timer("process_single_item");
+    private Counter visibilityExtensions = METRIC_REGISTRY.counter("visibilityHeartbeat_extensions");
+    private Histogram motApiConcurrencyLimit = METRIC_REGISTRY.histogram("motApi_concurrencyLimit");
+    private volatile int currentMotApiConcurrencyLimit = 0;
 
     @Around("execution(* uk.gov.dvsa.motr.vehicledetails.VehicleDetailsClient.fetchByMotTestNumber(..))")
     public Object vehicleDetailsClientFetch(ProceedingJoinPoint joinPoint) throws Throwable {
@@ -84,7 +89,7 @@ public class MetricsPerfAspect {
         return response;
     }
 
-    @Around("execution(* uk.gov.dvsa.motr.notifier.component.subscription.persistence.SubscriptionRepository.updateExpiryDate(..))")
+    @Around("execution(* uk.gov.dvsa.motr.notifier.component.subscription.persistence.SubscriptionRepository.apply(..))")
     public Object subscriptionRepositoryUpdateExpiryDateCalls(ProceedingJoinPoint joinPoint) throws Throwable {
 
         Object response;
@@ -114,6 +119,25 @@ public class MetricsPerfAspect {
         return response;
     }
 
+    @Around("execution(* uk.gov.dvsa.motr.notifier.processing.queue.VisibilityHeartbeat.extendExpiring(..))")
+    public Object visibilityHeartbeatExtendExpiringCalls(ProceedingJoinPoint joinPoint) throws Throwable {
+
+        Object response = joinPoint.proceed();
+        visibilityExtensions.inc((Integer) response);
+
+        return response;
+    }
+
+    @Around("execution(* uk.gov.dvsa.motr.notifier.processing.limiter.AdaptiveConcurrencyLimiter.recordSample(..))")
+    public Object concurrencyLimiterRecordSampleCalls(ProceedingJoinPoint joinPoint) throws Throwable {
+
+        Object response = joinPoint.proceed();
+        currentMotApiConcurrencyLimit = (Integer) response;
+        motApiConcurrencyLimit.update(currentMotApiConcurrencyLimit);
+
+        return response;
+    }
+
     @Before("execution(* uk.gov.dvsa.motr.notifier.processing.unloader.QueueUnloader.run(..))")
     public void beginMetrics() {
         vehicleDetailsFetchByMotTestNumber = METRIC_REGISTRY.timer("vehicleDetailsFetchByMotTestNumber");
@@ -122,6 +146,8 @@ public class MetricsPerfAspect {
         sendSmsTimer = METRIC_REGISTRY.timer("notifyService_sendSms");
         updateExpiryDateTimer = METRIC_REGISTRY.timer("subscriptionRepository_updateExpiryDate");
         processItemTimer = METRIC_REGISTRY.timer("process_single_item");
+        visibilityExtensions = METRIC_REGISTRY.counter("visibilityHeartbeat_extensions");
+        motApiConcurrencyLimit = METRIC_REGISTRY.histogram("motApi_concurrencyLimit");
     }
 
     @Around("execution(* uk.gov.dvsa.motr.notifier.processing.unloader.QueueUnloader.run(..))")
@@ -183,7 +209,11 @@ public class MetricsPerfAspect {
                     .setProcessItem75thPercentile(processItemTimer.getSnapshot().get75thPercentile())
                     .setProcessItemMax(processItemTimer.getSnapshot().getMax())
                     .setProcessItemMin(processItemTimer.getSnapshot().getMin())
-                    .setProcessItemStdDeviation(processItemTimer.getSnapshot().getStdDev()));
+                    .setProcessItemStdDeviation(processItemTimer.getSnapshot().getStdDev())
+                    .setVisibilityExtensionCount(visibilityExtensions.getCount())
+                    .setMotApiConcurrencyLimit(currentMotApiConcurrencyLimit)
+                    .setMotApiConcurrencyLimitMin(motApiConcurrencyLimit.getSnapshot().getMin())
+                    .setMotApiConcurrencyLimitMax(motApiConcurrencyLimit.getSnapshot().getMax()));
         }
 
         return response;
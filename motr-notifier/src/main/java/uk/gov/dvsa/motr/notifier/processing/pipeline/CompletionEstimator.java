@@ -0,0 +1,66 @@
+package uk.gov.dvsa.motr.notifier.processing.pipeline;
+
+import java.util.Arrays;
+
+/**
+ * Estimates how long the subscriptions in the pipeline will take to complete from the most recent ones that did. A single
+ * subscription is expected to take the 95th percentile of recent times from submission to acknowledgement, and several to
+ * complete at the rate recent ones did, so the estimate follows the day's actual latency rather than a worst case.
+ * Estimates only start once enough subscriptions have completed to know what that latency is.
+ */
+public class CompletionEstimator {
+
+    static final int MIN_SAMPLES = 20;
+
+    private static final int WINDOW = 200;
+    private static final double PERCENTILE = 95;
+
+    private long[] latencies = new long[WINDOW];
+    private long[] completions = new long[WINDOW];
+    private int samples = 0;
+
+    public synchronized void record(long startedAt, long completedAt) {
+
+        latencies[samples % WINDOW] = completedAt - startedAt;
+        completions[samples % WINDOW] = completedAt;
+        samples++;
+    }
+
+    /**
+     * @return the 95th percentile of recent processing times, or -1 while too few subscriptions have completed
+     */
+    public synchronized long getLatencyP95Ms() {
+
+        if (samples < MIN_SAMPLES) {
+            return -1;
+        }
+
+        long[] window = Arrays.copyOf(latencies, Math.min(samples, WINDOW));
+        Arrays.sort(window);
+        int index = (int) Math.ceil(PERCENTILE / 100 * window.length) - 1;
+        return window[Math.max(0, Math.min(window.length - 1, index))];
+    }
+
+    /**
+     * @return how long the given number of subscriptions are expected to take to complete, or -1 while too few subscriptions
+     *     have completed
+     */
+    public synchronized long getExpectedCompletionMs(int subscriptions) {
+
+        long latencyP95Ms = getLatencyP95Ms();
+        if (latencyP95Ms < 0) {
+            return -1;
+        }
+        if (subscriptions == 0) {
+            return 0;
+        }
+
+        // subscriptions complete side by side, so draining many takes as long as the recent rate of completion implies
+        int timed = Math.min(samples, WINDOW);
+        long[] window = Arrays.copyOf(completions, timed);
+        long spanMs = Arrays.stream(window).max().getAsLong() - Arrays.stream(window).min().getAsLong();
+        long drainMs = (long) Math.ceil((double) subscriptions * spanMs / (timed - 1));
+
+        return Math.max(latencyP95Ms, drainMs);
+    }
+}
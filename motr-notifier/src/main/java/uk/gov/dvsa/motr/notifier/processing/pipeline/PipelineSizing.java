@@ -0,0 +1,81 @@
+package uk.gov.dvsa.motr.notifier.processing.pipeline;
+
+/**
+ * Number of workers for each stage of the subscription pipeline and how much work may wait in front of each stage.
+ * Deciding is cheap and purely in memory, so it always runs on a single worker.
+ */
+public class PipelineSizing {
+
+    private int fetchWorkers = 1;
+    private int persistWorkers = 1;
+    private int notifyWorkers = 1;
+    private int applyWorkers = 1;
+    private int acknowledgeWorkers = 1;
+    private int queueCapacity = 1;
+
+    public int getFetchWorkers() {
+
+        return fetchWorkers;
+    }
+
+    public PipelineSizing setFetchWorkers(int fetchWorkers) {
+
+        this.fetchWorkers = fetchWorkers;
+        return this;
+    }
+
+    public int getPersistWorkers() {
+
+        return persistWorkers;
+    }
+
+    public PipelineSizing setPersistWorkers(int persistWorkers) {
+
+        this.persistWorkers = persistWorkers;
+        return this;
+    }
+
+    public int getNotifyWorkers() {
+
+        return notifyWorkers;
+    }
+
+    public PipelineSizing setNotifyWorkers(int notifyWorkers) {
+
+        this.notifyWorkers = notifyWorkers;
+        return this;
+    }
+
+    public int getApplyWorkers() {
+
+        return applyWorkers;
+    }
+
+    public PipelineSizing setApplyWorkers(int applyWorkers) {
+
+        this.applyWorkers = applyWorkers;
+        return this;
+    }
+
+    public int getAcknowledgeWorkers() {
+
+        return acknowledgeWorkers;
+    }
+
+    public PipelineSizing setAcknowledgeWorkers(int acknowledgeWorkers) {
+
+        this.acknowledgeWorkers = acknowledgeWorkers;
+        return this;
+    }
+
+    public int getQueueCapacity() {
+
+        return queueCapacity;
+    }
+
+    public PipelineSizing setQueueCapacity(int queueCapacity) {
+
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+}
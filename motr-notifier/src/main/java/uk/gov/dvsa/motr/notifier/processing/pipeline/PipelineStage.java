@@ -0,0 +1,123 @@
+package uk.gov.dvsa.motr.notifier.processing.pipeline;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One step of the subscription pipeline, run by its own fixed pool of workers. Work waiting for a worker is held in a
+ * bounded queue and submitting to a stage whose queue is full blocks until there is room, so a slow stage holds back the
+ * stages feeding it instead of letting work pile up in memory.
+ */
+public class PipelineStage {
+
+    private String name;
+    private int workers;
+    private ThreadPoolExecutor executor;
+    private Semaphore slots;
+
+    private AtomicInteger processed = new AtomicInteger(0);
+    private AtomicInteger maxQueueDepth = new AtomicInteger(0);
+    private AtomicLong totalServiceNanos = new AtomicLong(0);
+    private AtomicLong maxServiceNanos = new AtomicLong(0);
+
+    public PipelineStage(String name, int workers, int queueCapacity) {
+
+        this.name = name;
+        this.workers = workers;
+        this.slots = new Semaphore(workers + queueCapacity);
+
+        AtomicInteger threadNumber = new AtomicInteger(0);
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> new Thread(runnable, name + "-stage-" + threadNumber.getAndIncrement()));
+    }
+
+    /**
+     * Queues the work for this stage, blocking while the stage queue is full
+     *
+     * @throws RejectedExecutionException when the stage has been shut down or the caller is interrupted while waiting
+     */
+    public void submit(Runnable work) {
+
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted whilst waiting for room in the " + name + " stage", e);
+        }
+
+        try {
+            executor.execute(() -> {
+                long startedAt = System.nanoTime();
+                try {
+                    work.run();
+                } finally {
+                    recordServiceTime(System.nanoTime() - startedAt);
+                    slots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            throw e;
+        }
+
+        maxQueueDepth.accumulateAndGet(getQueueDepth(), Math::max);
+    }
+
+    public void shutdown() {
+
+        executor.shutdown();
+    }
+
+    public boolean awaitTermination(long timeoutMs) throws InterruptedException {
+
+        return executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    public String getName() {
+
+        return name;
+    }
+
+    public int getWorkers() {
+
+        return workers;
+    }
+
+    public int getQueueDepth() {
+
+        return executor.getQueue().size();
+    }
+
+    public int getMaxQueueDepth() {
+
+        return maxQueueDepth.get();
+    }
+
+    public int getProcessed() {
+
+        return processed.get();
+    }
+
+    public long getMeanServiceTimeMs() {
+
+        int count = processed.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalServiceNanos.get() / count);
+    }
+
+    public long getMaxServiceTimeMs() {
+
+        return TimeUnit.NANOSECONDS.toMillis(maxServiceNanos.get());
+    }
+
+    private void recordServiceTime(long serviceNanos) {
+
+        totalServiceNanos.addAndGet(serviceNanos);
+        maxServiceNanos.accumulateAndGet(serviceNanos, Math::max);
+        processed.incrementAndGet();
+    }
+}
@@ -0,0 +1,232 @@
+package uk.gov.dvsa.motr.notifier.processing.pipeline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.gov.dvsa.motr.eventlog.EventLogger;
+import uk.gov.dvsa.motr.notifier.events.PipelineStageCompletedEvent;
+import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionQueueItem;
+import uk.gov.dvsa.motr.notifier.processing.queue.QueueItemRemover;
+import uk.gov.dvsa.motr.notifier.processing.queue.VisibilityHeartbeat;
+import uk.gov.dvsa.motr.notifier.processing.service.ProcessSubscriptionService;
+import uk.gov.dvsa.motr.notifier.processing.service.SubscriptionDecision;
+import uk.gov.dvsa.motr.notifier.processing.unloader.NotifierReport;
+import uk.gov.dvsa.motr.notifier.processing.unloader.ProcessSubscriptionTask;
+import uk.gov.dvsa.motr.vehicledetails.VehicleDetails;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes subscriptions in six stages, fetch vehicle, decide, persist, notify, apply changes and acknowledge, each with
+ * its own workers and a bounded queue in front of it. A subscription moves to the next stage as soon as its current one is done, so a slow
+ * MOT API or Notify only holds the workers of its own stage and throughput is bounded by the slowest stage rather than by
+ * the time a subscription spends in all of them.
+ * A subscription failing in any stage skips straight to acknowledge, which requeues it for retry, as does one whose reminder
+ * was sent on an earlier delivery.
+ * The time each subscription takes from submission to acknowledgement is recorded to estimate how long the subscriptions
+ * still in the pipeline will take.
+ */
+public class SubscriptionPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubscriptionPipeline.class);
+
+    private ProcessSubscriptionService processSubscriptionService;
+    private QueueItemRemover queueItemRemover;
+    private VisibilityHeartbeat visibilityHeartbeat;
+    private NotifierReport report;
+
+    private PipelineStage fetchStage;
+    private PipelineStage decideStage;
+    private PipelineStage persistStage;
+    private PipelineStage notifyStage;
+    private PipelineStage applyStage;
+    private PipelineStage acknowledgeStage;
+
+    private AtomicInteger inFlight = new AtomicInteger(0);
+    private CompletionEstimator completionEstimator = new CompletionEstimator();
+
+    public SubscriptionPipeline(
+            ProcessSubscriptionService processSubscriptionService,
+            QueueItemRemover queueItemRemover,
+            VisibilityHeartbeat visibilityHeartbeat,
+            NotifierReport report,
+            PipelineSizing sizing) {
+
+        this.processSubscriptionService = processSubscriptionService;
+        this.queueItemRemover = queueItemRemover;
+        this.visibilityHeartbeat = visibilityHeartbeat;
+        this.report = report;
+
+        this.fetchStage = new PipelineStage("fetch-vehicle", sizing.getFetchWorkers(), sizing.getQueueCapacity());
+        this.decideStage = new PipelineStage("decide", 1, sizing.getQueueCapacity());
+        this.persistStage = new PipelineStage("persist", sizing.getPersistWorkers(), sizing.getQueueCapacity());
+        this.notifyStage = new PipelineStage("notify", sizing.getNotifyWorkers(), sizing.getQueueCapacity());
+        this.applyStage = new PipelineStage("apply-changes", sizing.getApplyWorkers(), sizing.getQueueCapacity());
+        this.acknowledgeStage = new PipelineStage("acknowledge", sizing.getAcknowledgeWorkers(), sizing.getQueueCapacity());
+    }
+
+    /**
+     * Starts processing the subscription, blocking while the fetch stage queue is full
+     */
+    public void submit(SubscriptionQueueItem subscription) {
+
+        Work work = new Work(subscription, System.currentTimeMillis());
+        inFlight.incrementAndGet();
+        enqueue(fetchStage, work, this::fetchVehicle);
+    }
+
+    /**
+     * Stops accepting subscriptions and waits for those already submitted to pass through every stage. Stages are shut down
+     * in pipeline order, so a stage only stops once nothing upstream can feed it any more.
+     *
+     * @return true when every stage finished before the timeout
+     */
+    public boolean awaitCompletion(long timeoutMs) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        boolean completed = true;
+
+        try {
+            for (PipelineStage stage : stages()) {
+                stage.shutdown();
+                completed &= stage.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()));
+            }
+        } finally {
+            stages().forEach(stage -> EventLogger.logEvent(new PipelineStageCompletedEvent().setStage(stage)));
+        }
+
+        return completed;
+    }
+
+    /**
+     * @return number of subscriptions waiting in the stages up to and including notify
+     */
+    public int getAwaitingNotification() {
+
+        return fetchStage.getQueueDepth() + decideStage.getQueueDepth() + persistStage.getQueueDepth() + notifyStage.getQueueDepth();
+    }
+
+    /**
+     * @return number of subscriptions submitted and not yet acknowledged
+     */
+    public int getInFlight() {
+
+        return inFlight.get();
+    }
+
+    public CompletionEstimator getCompletionEstimator() {
+
+        return completionEstimator;
+    }
+
+    public List<PipelineStage> stages() {
+
+        return Arrays.asList(fetchStage, decideStage, persistStage, notifyStage, applyStage, acknowledgeStage);
+    }
+
+    private void fetchVehicle(Work work) throws Exception {
+
+        if (processSubscriptionService.isAlreadyReminded(work.subscription)) {
+            enqueue(acknowledgeStage, work, this::acknowledge);
+            return;
+        }
+
+        work.vehicleDetails = processSubscriptionService.fetchVehicleDetails(work.subscription);
+        enqueue(decideStage, work, this::decide);
+    }
+
+    private void decide(Work work) {
+
+        work.decision = processSubscriptionService.decide(work.subscription, work.vehicleDetails);
+        enqueue(persistStage, work, this::persist);
+    }
+
+    private void persist(Work work) {
+
+        processSubscriptionService.persist(work.decision);
+        enqueue(notifyStage, work, this::sendNotification);
+    }
+
+    private void sendNotification(Work work) throws Exception {
+
+        processSubscriptionService.notify(work.decision);
+        enqueue(applyStage, work, this::applyChanges);
+    }
+
+    private void applyChanges(Work work) {
+
+        processSubscriptionService.applyChanges(work.decision);
+        enqueue(acknowledgeStage, work, this::acknowledge);
+    }
+
+    private void acknowledge(Work work) {
+
+        ProcessSubscriptionTask task = new ProcessSubscriptionTask(work.subscription, report, processSubscriptionService,
+                queueItemRemover);
+
+        try {
+            if (work.failure == null) {
+                task.acknowledge(work.startedAt);
+            } else {
+                task.failed(work.failure, work.startedAt);
+            }
+        } finally {
+            visibilityHeartbeat.release(work.subscription.getMessageReceiptHandle());
+            completionEstimator.record(work.startedAt, System.currentTimeMillis());
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void enqueue(PipelineStage stage, Work work, Step step) {
+
+        try {
+            stage.submit(() -> {
+                try {
+                    step.apply(work);
+                } catch (Exception e) {
+                    if (stage == acknowledgeStage) {
+                        logger.error("Unable to acknowledge subscription {}", work.subscription.getId(), e);
+                        return;
+                    }
+                    work.failure = e;
+                    enqueue(acknowledgeStage, work, this::acknowledge);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // acknowledged where it stands, so it is requeued like any other failure and its envelope is accounted for
+            logger.warn("Unable to hand subscription {} to the {} stage", work.subscription.getId(), stage.getName(), e);
+            if (stage != acknowledgeStage) {
+                work.failure = e;
+            }
+            try {
+                acknowledge(work);
+            } catch (RuntimeException acknowledgeFailure) {
+                logger.error("Unable to acknowledge subscription {}", work.subscription.getId(), acknowledgeFailure);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Step {
+
+        void apply(Work work) throws Exception;
+    }
+
+    private static class Work {
+
+        private SubscriptionQueueItem subscription;
+        private long startedAt;
+        private VehicleDetails vehicleDetails;
+        private SubscriptionDecision decision;
+        private Exception failure;
+
+        private Work(SubscriptionQueueItem subscription, long startedAt) {
+
+            this.subscription = subscription;
+            this.startedAt = startedAt;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package uk.gov.dvsa.motr.notifier.processing.queue;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects the receipt handles of processed messages and deletes them with DeleteMessageBatch, ten at a time, instead of
+ * one DeleteMessage call per message. A batch is sent as soon as it is full, or once its oldest handle has waited for the
+ * linger time, so a quiet queue does not hold handles back.
+ * Only the entries SQS reports as failed are retried, up to {@link #MAX_ATTEMPTS} times, and entries failing through a
+ * fault of the request itself, e.g. an expired receipt handle, are not retried at all. A message whose handle could not be
+ * deleted becomes visible again once its visibility timeout expires and is processed again.
+ */
+public class AcknowledgementBatcher {
+
+    static final int MAX_BATCH_SIZE = 10;
+    static final int MAX_ATTEMPTS = 3;
+
+    private static final Logger logger = LoggerFactory.getLogger(AcknowledgementBatcher.class);
+
+    private AmazonSQS sqsClient;
+    private String queueUrl;
+    private long lingerMs;
+    private ScheduledExecutorService lingerFlusher;
+
+    private List<Acknowledgement> pending = new ArrayList<>();
+    private boolean closed = false;
+
+    private AtomicInteger acknowledged = new AtomicInteger(0);
+    private AtomicInteger failed = new AtomicInteger(0);
+    private AtomicInteger batchesSent = new AtomicInteger(0);
+
+    public AcknowledgementBatcher(AmazonSQS sqsClient, String queueUrl, long lingerMs) {
+
+        this.sqsClient = sqsClient;
+        this.queueUrl = queueUrl;
+        this.lingerMs = lingerMs;
+        this.lingerFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "acknowledgement-linger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.lingerFlusher.scheduleWithFixedDelay(this::flushLingering, lingerMs, lingerMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues the receipt handle for deletion, sending a batch from the calling thread when this fills it. Once the batcher
+     * has been closed the handle is deleted straight away.
+     */
+    public void add(String receiptHandle) {
+
+        List<Acknowledgement> batch = null;
+
+        synchronized (this) {
+            pending.add(new Acknowledgement(receiptHandle));
+            if (closed || pending.size() >= MAX_BATCH_SIZE) {
+                batch = takeBatch();
+            }
+        }
+
+        if (batch != null) {
+            send(batch);
+        }
+    }
+
+    /**
+     * Sends every pending handle, retrying failed entries, and stops the linger flusher. Gives up when the timeout passes,
+     * leaving whatever is still pending to reappear on the queue.
+     *
+     * @return number of handles that could not be deleted during the lifetime of the batcher
+     */
+    public int close(long timeoutMs) {
+
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        lingerFlusher.shutdownNow();
+
+        List<Acknowledgement> batch;
+        synchronized (this) {
+            closed = true;
+            batch = takeBatch();
+        }
+
+        while (!batch.isEmpty() && System.currentTimeMillis() < deadline) {
+            send(batch);
+            synchronized (this) {
+                batch = takeBatch();
+            }
+        }
+
+        synchronized (this) {
+            if (!pending.isEmpty()) {
+                logger.warn("Timed out with {} message(s) still to delete", pending.size());
+                failed.addAndGet(pending.size());
+                pending.clear();
+            }
+        }
+
+        return failed.get();
+    }
+
+    public int getAcknowledged() {
+
+        return acknowledged.get();
+    }
+
+    public int getFailed() {
+
+        return failed.get();
+    }
+
+    public int getBatchesSent() {
+
+        return batchesSent.get();
+    }
+
+    private void flushLingering() {
+
+        List<Acknowledgement> batch;
+        synchronized (this) {
+            if (pending.isEmpty() || System.currentTimeMillis() - pending.get(0).queuedAt < lingerMs) {
+                return;
+            }
+            batch = takeBatch();
+        }
+
+        send(batch);
+    }
+
+    private void send(List<Acknowledgement> batch) {
+
+        Map<String, Acknowledgement> entries = new HashMap<>();
+        List<DeleteMessageBatchRequestEntry> requestEntries = new ArrayList<>();
+        for (Acknowledgement acknowledgement : batch) {
+            String id = String.valueOf(entries.size());
+            entries.put(id, acknowledgement);
+            requestEntries.add(new DeleteMessageBatchRequestEntry(id, acknowledgement.receiptHandle));
+            acknowledgement.attempts++;
+        }
+
+        List<Acknowledgement> retries = new ArrayList<>();
+        try {
+            DeleteMessageBatchResult result = sqsClient.deleteMessageBatch(new DeleteMessageBatchRequest(queueUrl, requestEntries));
+            batchesSent.incrementAndGet();
+            acknowledged.addAndGet(result.getSuccessful().size());
+
+            for (BatchResultErrorEntry error : result.getFailed()) {
+                Acknowledgement acknowledgement = entries.get(error.getId());
+                if (Boolean.TRUE.equals(error.getSenderFault())) {
+                    logger.warn("Unable to delete message with receipt handle {}: {} {}",
+                            acknowledgement.receiptHandle, error.getCode(), error.getMessage());
+                    failed.incrementAndGet();
+                } else {
+                    retries.add(acknowledgement);
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Unable to delete a batch of {} message(s)", batch.size(), e);
+            retries.addAll(batch);
+        }
+
+        for (Acknowledgement acknowledgement : retries) {
+            if (acknowledgement.attempts < MAX_ATTEMPTS) {
+                synchronized (this) {
+                    pending.add(0, acknowledgement);
+                }
+            } else {
+                logger.warn("Giving up deleting message with receipt handle {} after {} attempts",
+                        acknowledgement.receiptHandle, acknowledgement.attempts);
+                failed.incrementAndGet();
+            }
+        }
+    }
+
+    private List<Acknowledgement> takeBatch() {
+
+        List<Acknowledgement> batch = new ArrayList<>(pending.subList(0, Math.min(MAX_BATCH_SIZE, pending.size())));
+        pending.subList(0, batch.size()).clear();
+        return batch;
+    }
+
+    private static class Acknowledgement {
+
+        private String receiptHandle;
+        private long queuedAt = System.currentTimeMillis();
+        private int attempts = 0;
+
+        private Acknowledgement(String receiptHandle) {
+
+            this.receiptHandle = receiptHandle;
+        }
+    }
+}
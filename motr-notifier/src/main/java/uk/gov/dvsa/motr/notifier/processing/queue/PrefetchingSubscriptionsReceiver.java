@@ -0,0 +1,237 @@
+package uk.gov.dvsa.motr.notifier.processing.queue;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionQueueItem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Receives subscriptions with several long-polling fetchers running ahead of the unloader, so the workers are not left
+ * idle for the length of every receive round trip and intake is not capped at one batch of ten messages per round trip.
+ * Fetchers fill a buffer and only poll while it has room for a full batch, counted in subscriptions rather than messages
+ * since an envelope carries many, so the receiver never holds more subscriptions than the workers can take before their
+ * visibility timeout. A full batch is taken to be the most messages a poll returns, each carrying as many subscriptions
+ * as the largest message seen so far. A poll is always allowed into an empty buffer, so a batch bigger than the buffer
+ * does not stall intake, and a fetcher never blocks holding messages whose visibility timeout is running. A fetcher stops
+ * once a poll comes back empty, and iteration ends when every fetcher has stopped and the buffer is drained.
+ */
+public class PrefetchingSubscriptionsReceiver extends SubscriptionsReceiver {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrefetchingSubscriptionsReceiver.class);
+
+    private static final long BUFFER_POLL_INTERVAL_MS = 100;
+
+    private int fetchers;
+    private int bufferCapacity;
+    private BlockingQueue<SubscriptionQueueItem> buffer;
+    private int reserved;
+    private int subscriptionsPerMessage = 1;
+    private ExecutorService fetcherPool;
+    private volatile boolean stopped = false;
+    private volatile boolean paused = false;
+
+    public PrefetchingSubscriptionsReceiver(
+            AmazonSQS amazonSyncSqsClient,
+            ReceiveMessageRequest receiveMessageRequest,
+            int fetchers,
+            int bufferCapacity) {
+
+        super(amazonSyncSqsClient, receiveMessageRequest);
+        this.fetchers = fetchers;
+        this.bufferCapacity = Math.max(bufferCapacity, batchSize());
+    }
+
+    @Override
+    public Iterator<SubscriptionQueueItem> iterator() {
+
+        buffer = new LinkedBlockingQueue<>();
+        reserved = 0;
+        stopped = false;
+        paused = false;
+
+        AtomicInteger activeFetchers = new AtomicInteger(fetchers);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        AtomicInteger threadNumber = new AtomicInteger(0);
+        fetcherPool = Executors.newFixedThreadPool(fetchers, runnable -> {
+            Thread thread = new Thread(runnable, "subscription-fetcher-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < fetchers; i++) {
+            fetcherPool.execute(() -> fetch(activeFetchers, failure));
+        }
+        fetcherPool.shutdown();
+
+        return new PrefetchingIterator(activeFetchers, failure);
+    }
+
+    /**
+     * Stops the fetchers, abandoning any long poll in progress. Subscriptions received but not yet taken from the buffer are
+     * left on the queue and are delivered again once their visibility timeout expires.
+     */
+    @Override
+    public void stop() {
+
+        stopped = true;
+        if (fetcherPool != null) {
+            fetcherPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Holds the fetchers back from polling and drains the buffer. A poll already in progress completes into the buffer.
+     */
+    @Override
+    public List<SubscriptionQueueItem> pause() {
+
+        paused = true;
+        List<SubscriptionQueueItem> buffered = new ArrayList<>();
+        if (buffer != null) {
+            buffer.drainTo(buffered);
+        }
+        return buffered;
+    }
+
+    @Override
+    public void resume() {
+
+        paused = false;
+    }
+
+    private void fetch(AtomicInteger activeFetchers, AtomicReference<RuntimeException> failure) {
+
+        try {
+            while (!stopped) {
+                int reservation = paused ? 0 : reserveRoom();
+                if (reservation == 0) {
+                    Thread.sleep(BUFFER_POLL_INTERVAL_MS);
+                    continue;
+                }
+
+                List<SubscriptionQueueItem> batch = Collections.emptyList();
+                try {
+                    batch = receiveBatch();
+                    buffer.addAll(batch);
+                } finally {
+                    releaseRoom(reservation, batch);
+                }
+
+                if (batch.isEmpty()) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            if (!stopped) {
+                logger.error("Receiving subscriptions failed", e);
+                failure.compareAndSet(null, e);
+            }
+        } finally {
+            activeFetchers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Sets aside room in the buffer for a full batch of subscriptions, so fetchers polling at the same time do not overfill it
+     *
+     * @return number of subscriptions set aside, or 0 if the buffer has no room for a batch
+     */
+    private synchronized int reserveRoom() {
+
+        int batchSubscriptions = batchSize() * subscriptionsPerMessage;
+        int held = buffer.size() + reserved;
+        if (held > 0 && held + batchSubscriptions > bufferCapacity) {
+            return 0;
+        }
+
+        reserved += batchSubscriptions;
+        return batchSubscriptions;
+    }
+
+    /**
+     * Gives back the room set aside for a poll once its subscriptions are in the buffer, noting the largest message it held
+     */
+    private synchronized void releaseRoom(int reservation, List<SubscriptionQueueItem> batch) {
+
+        reserved -= reservation;
+        batch.stream()
+                .collect(Collectors.groupingBy(SubscriptionQueueItem::getMessageReceiptHandle, Collectors.counting()))
+                .values()
+                .stream()
+                .mapToInt(Long::intValue)
+                .max()
+                .ifPresent(largest -> subscriptionsPerMessage = Math.max(subscriptionsPerMessage, largest));
+    }
+
+    private int batchSize() {
+
+        Integer maxNumberOfMessages = receiveMessageRequest.getMaxNumberOfMessages();
+        return maxNumberOfMessages == null ? 1 : maxNumberOfMessages;
+    }
+
+    private final class PrefetchingIterator implements Iterator<SubscriptionQueueItem> {
+
+        private AtomicInteger activeFetchers;
+        private AtomicReference<RuntimeException> failure;
+        private SubscriptionQueueItem next;
+
+        private PrefetchingIterator(AtomicInteger activeFetchers, AtomicReference<RuntimeException> failure) {
+
+            this.activeFetchers = activeFetchers;
+            this.failure = failure;
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            try {
+                while (next == null && !stopped) {
+                    boolean fetchersDone = activeFetchers.get() == 0;
+                    next = buffer.poll(BUFFER_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+                    if (next == null && fetchersDone) {
+                        if (failure.get() != null) {
+                            throw failure.get();
+                        }
+                        return false;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return next != null;
+        }
+
+        @Override
+        public SubscriptionQueueItem next() {
+
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            SubscriptionQueueItem subscription = next;
+            next = null;
+            return subscription;
+        }
+    }
+}
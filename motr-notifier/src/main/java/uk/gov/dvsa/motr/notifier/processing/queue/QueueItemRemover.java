@@ -2,19 +2,28 @@ package uk.gov.dvsa.motr.notifier.processing.queue;
 
 
 import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
 import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uk.gov.dvsa.motr.notifier.processing.model.EnvelopeProgress;
 import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionQueueItem;
 
 public class QueueItemRemover {
 
     private static final Logger logger = LoggerFactory.getLogger(QueueItemRemover.class);
 
+    private static final int MAX_DELAY_SECONDS = 900;
+
     private AmazonSQS amazonSyncSqsClient;
     private String subscriptionsQueueUrl;
+    private ObjectMapper jsonMapper = new ObjectMapper();
+    private AcknowledgementBatcher acknowledgementBatcher;
 
     public QueueItemRemover(AmazonSQS amazonSyncSqsClient, String subscriptionsQueueUrl) {
 
@@ -22,8 +31,31 @@ public class QueueItemRemover {
         this.subscriptionsQueueUrl = subscriptionsQueueUrl;
     }
 
+    /**
+     * Processed messages are deleted in batches through the given batcher rather than one at a time, in which case
+     * {@link #flushAcknowledgements(long)} must be called once processing is done
+     */
+    public QueueItemRemover(AmazonSQS amazonSyncSqsClient, String subscriptionsQueueUrl,
+            AcknowledgementBatcher acknowledgementBatcher) {
+
+        this(amazonSyncSqsClient, subscriptionsQueueUrl);
+        this.acknowledgementBatcher = acknowledgementBatcher;
+    }
+
     public void removeProcessedQueueItem(SubscriptionQueueItem subscriptionQueueItem) throws RemoveSubscriptionFromQueueException {
 
+        EnvelopeProgress envelope = subscriptionQueueItem.getEnvelope();
+        if (envelope != null && !envelope.subscriptionFinished()) {
+            logger.debug("{} subscription(s) of envelope {} still outstanding",
+                    envelope.getRemaining(), envelope.getMessageReceiptHandle());
+            return;
+        }
+
+        if (acknowledgementBatcher != null) {
+            acknowledgementBatcher.add(subscriptionQueueItem.getMessageReceiptHandle());
+            return;
+        }
+
         try {
             String messageRecieptHandle = subscriptionQueueItem.getMessageReceiptHandle();
             DeleteMessageRequest deleteMessageRequest = new DeleteMessageRequest(subscriptionsQueueUrl, messageRecieptHandle);
@@ -34,4 +66,75 @@ public class QueueItemRemover {
             throw new RemoveSubscriptionFromQueueException(e);
         }
     }
+
+    /**
+     * A subscription that failed to process in a message of its own stays on the queue and is retried once its visibility
+     * timeout expires. One that arrived in an envelope is sent back to the queue as a message of its own instead, so
+     * it can be retried without the rest of the envelope, which is then removed once all its subscriptions are done.
+     *
+     * @return true if the subscription was re-enqueued
+     */
+    public boolean requeueFailedQueueItem(SubscriptionQueueItem subscriptionQueueItem) throws RemoveSubscriptionFromQueueException {
+
+        if (subscriptionQueueItem.getEnvelope() == null) {
+            return false;
+        }
+
+        requeue(subscriptionQueueItem, 0);
+        return true;
+    }
+
+    /**
+     * Hands a subscription that was not processed back to the queue, to be received again once the given time has passed.
+     * One that arrived in an envelope is sent back as a message of its own, delayed by that time, as the rest of the
+     * envelope may still be in progress.
+     */
+    public void releaseQueueItem(SubscriptionQueueItem subscriptionQueueItem, int visibilityTimeoutSeconds)
+            throws RemoveSubscriptionFromQueueException {
+
+        if (subscriptionQueueItem.getEnvelope() != null) {
+            requeue(subscriptionQueueItem, Math.min(visibilityTimeoutSeconds, MAX_DELAY_SECONDS));
+            return;
+        }
+
+        try {
+            amazonSyncSqsClient.changeMessageVisibility(new ChangeMessageVisibilityRequest(subscriptionsQueueUrl,
+                    subscriptionQueueItem.getMessageReceiptHandle(), visibilityTimeoutSeconds));
+
+            logger.debug("released subscription {} for {}s", subscriptionQueueItem.getId(), visibilityTimeoutSeconds);
+        } catch (Exception e) {
+            throw new RemoveSubscriptionFromQueueException(e);
+        }
+    }
+
+    /**
+     * Deletes the processed messages still waiting to be batched, giving up once the timeout passes
+     *
+     * @return number of processed messages that could not be deleted and will be delivered again
+     */
+    public int flushAcknowledgements(long timeoutMs) {
+
+        return acknowledgementBatcher == null ? 0 : acknowledgementBatcher.close(timeoutMs);
+    }
+
+    private void requeue(SubscriptionQueueItem subscriptionQueueItem, int delaySeconds) throws RemoveSubscriptionFromQueueException {
+
+        try {
+            SendMessageRequest sendMessageRequest = new SendMessageRequest(subscriptionsQueueUrl,
+                    jsonMapper.writeValueAsString(subscriptionQueueItem))
+                    .addMessageAttributesEntry("correlation-id", new MessageAttributeValue()
+                            .withDataType("String")
+                            .withStringValue(subscriptionQueueItem.getMessageCorrelationId()));
+            if (delaySeconds > 0) {
+                sendMessageRequest.setDelaySeconds(delaySeconds);
+            }
+            amazonSyncSqsClient.sendMessage(sendMessageRequest);
+
+            logger.debug("re-enqueued subscription {} from envelope", subscriptionQueueItem.getId());
+        } catch (Exception e) {
+            throw new RemoveSubscriptionFromQueueException(e);
+        }
+
+        removeProcessedQueueItem(subscriptionQueueItem);
+    }
 }
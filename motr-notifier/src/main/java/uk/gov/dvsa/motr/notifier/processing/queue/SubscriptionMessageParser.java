@@ -0,0 +1,61 @@
+package uk.gov.dvsa.motr.notifier.processing.queue;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import uk.gov.dvsa.motr.notifier.processing.model.EnvelopeProgress;
+import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionEnvelope;
+import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionQueueItem;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the subscriptions out of a subscriptions queue message, however it was delivered
+ */
+public class SubscriptionMessageParser {
+
+    private ObjectMapper jsonMapper = new ObjectMapper();
+
+    /**
+     * @return the subscriptions carried by the message, which is either a single subscription or an envelope of them
+     */
+    public List<SubscriptionQueueItem> parse(Message message) {
+
+        MessageAttributeValue envelopeVersion = message.getMessageAttributes().get(SubscriptionEnvelope.VERSION_ATTRIBUTE);
+        if (envelopeVersion == null) {
+            return Collections.singletonList(getSubscriptionFromMessage(message));
+        }
+
+        try {
+            SubscriptionEnvelope envelope = jsonMapper.readValue(message.getBody(), SubscriptionEnvelope.class);
+            if (envelope.getVersion() != SubscriptionEnvelope.SUPPORTED_VERSION) {
+                throw new RuntimeException("Unsupported subscription envelope version: " + envelope.getVersion());
+            }
+
+            EnvelopeProgress progress = new EnvelopeProgress(message.getReceiptHandle(), envelope.getSubscriptions().size());
+            String correlationId = message.getMessageAttributes().get("correlation-id").getStringValue();
+            envelope.getSubscriptions().forEach(subscriptionQueueItem -> subscriptionQueueItem
+                    .setMessageReceiptHandle(message.getReceiptHandle())
+                    .setMessageCorrelationId(correlationId)
+                    .setEnvelope(progress));
+
+            return envelope.getSubscriptions();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private SubscriptionQueueItem getSubscriptionFromMessage(Message message) {
+        try {
+            SubscriptionQueueItem subscriptionQueueItem = jsonMapper.readValue(message.getBody(), SubscriptionQueueItem.class);
+            subscriptionQueueItem.setMessageReceiptHandle(message.getReceiptHandle())
+                    .setMessageCorrelationId(message.getMessageAttributes().get("correlation-id").getStringValue());
+            return subscriptionQueueItem;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
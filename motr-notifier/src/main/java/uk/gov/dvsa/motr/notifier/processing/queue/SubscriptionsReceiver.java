@@ -1,22 +1,25 @@
 package uk.gov.dvsa.motr.notifier.processing.queue;
 
 import com.amazonaws.services.sqs.AmazonSQS;
-import com.amazonaws.services.sqs.model.Message;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionQueueItem;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class SubscriptionsReceiver implements Iterable<SubscriptionQueueItem> {
 
-    private AmazonSQS amazonSyncSqsClient;
-    private ReceiveMessageRequest receiveMessageRequest;
+    protected AmazonSQS amazonSyncSqsClient;
+    protected ReceiveMessageRequest receiveMessageRequest;
+    private SubscriptionMessageParser messageParser = new SubscriptionMessageParser();
+    private SubscriptionIterator currentIterator;
+    private Consumer<List<SubscriptionQueueItem>> batchListener = batch -> { };
 
     public SubscriptionsReceiver(
             AmazonSQS amazonSyncSqsClient,
@@ -29,25 +32,68 @@ public class SubscriptionsReceiver implements Iterable<SubscriptionQueueItem> {
     @Override
     public Iterator<SubscriptionQueueItem> iterator()  {
 
-        try {
-            return new SubscriptionIterator(amazonSyncSqsClient, receiveMessageRequest);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        currentIterator = new SubscriptionIterator();
+        return currentIterator;
+    }
+
+    /**
+     * @param batchListener called with the subscriptions from each receive, before any of them is handed out
+     */
+    public void onBatchReceived(Consumer<List<SubscriptionQueueItem>> batchListener) {
+
+        this.batchListener = batchListener;
+    }
+
+    /**
+     * Stops receiving messages until {@link #resume()} is called
+     *
+     * @return subscriptions already received but not yet handed out, which the caller becomes responsible for
+     */
+    public List<SubscriptionQueueItem> pause() {
+
+        return currentIterator == null ? Collections.emptyList() : currentIterator.takeRemaining();
+    }
+
+    public void resume() {
+
+    }
+
+    /**
+     * Stops receiving further messages, called once the unloader will not take any more subscriptions
+     */
+    public void stop() {
+
+    }
+
+    /**
+     * Receives the next messages from the queue, stamping each subscription with the time the receive was made, which is
+     * no later than the moment the messages' visibility timeout started
+     *
+     * @return the subscriptions they carry, empty when the queue had none
+     */
+    protected List<SubscriptionQueueItem> receiveBatch() {
+
+        long receivedAt = System.currentTimeMillis();
+        List<SubscriptionQueueItem> batch = amazonSyncSqsClient.receiveMessage(receiveMessageRequest)
+                .getMessages()
+                .stream()
+                .flatMap(message -> messageParser.parse(message).stream())
+                .map(subscription -> subscription.setReceivedAt(receivedAt))
+                .collect(Collectors.toList());
+
+        if (!batch.isEmpty()) {
+            batchListener.accept(batch);
         }
+        return batch;
     }
 
-    private static final class SubscriptionIterator implements Iterator<SubscriptionQueueItem> {
+    private final class SubscriptionIterator implements Iterator<SubscriptionQueueItem> {
 
-        private AmazonSQS amazonSyncSqsClient;
-        private ReceiveMessageRequest receiveMessageRequest;
-        private ObjectMapper jsonMapper = new ObjectMapper();
         private int cursor;
         private List<SubscriptionQueueItem> currentBatchOfMessages;
 
-        public SubscriptionIterator(AmazonSQS amazonSyncSqsClient, ReceiveMessageRequest receiveMessageRequest) throws IOException {
+        public SubscriptionIterator() {
 
-            this.amazonSyncSqsClient = amazonSyncSqsClient;
-            this.receiveMessageRequest = receiveMessageRequest;
             this.currentBatchOfMessages = getNextBatchOfSubscriptions();
             this.cursor = 0;
         }
@@ -55,9 +101,27 @@ public class SubscriptionsReceiver implements Iterable<SubscriptionQueueItem> {
         @Override
         public boolean hasNext() {
 
+            if (currentBatchOfMessages == null) {
+                currentBatchOfMessages = getNextBatchOfSubscriptions();
+                cursor = 0;
+            }
             return currentBatchOfMessages.size() > 0;
         }
 
+        /**
+         * Hands over the rest of the current batch, receiving the next batch only when iteration continues
+         */
+        private List<SubscriptionQueueItem> takeRemaining() {
+
+            if (currentBatchOfMessages == null) {
+                return Collections.emptyList();
+            }
+
+            List<SubscriptionQueueItem> remaining = new ArrayList<>(currentBatchOfMessages.subList(cursor, currentBatchOfMessages.size()));
+            currentBatchOfMessages = null;
+            return remaining;
+        }
+
         @Override
         public SubscriptionQueueItem next() {
 
@@ -78,22 +142,7 @@ public class SubscriptionsReceiver implements Iterable<SubscriptionQueueItem> {
 
         private List<SubscriptionQueueItem> getNextBatchOfSubscriptions() {
 
-            return amazonSyncSqsClient.receiveMessage(receiveMessageRequest)
-                    .getMessages()
-                    .stream()
-                    .map(this::getSubscriptionFromMessage)
-                    .collect(Collectors.toList());
-        }
-
-        private SubscriptionQueueItem getSubscriptionFromMessage(Message message) {
-            try {
-                SubscriptionQueueItem subscriptionQueueItem = jsonMapper.readValue(message.getBody(), SubscriptionQueueItem.class);
-                subscriptionQueueItem.setMessageReceiptHandle(message.getReceiptHandle())
-                        .setMessageCorrelationId(message.getMessageAttributes().get("correlation-id").getStringValue());
-                return subscriptionQueueItem;
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+            return receiveBatch();
         }
     }
 }
@@ -0,0 +1,202 @@
+package uk.gov.dvsa.motr.notifier.processing.queue;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResultEntry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionQueueItem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps messages that are still being processed invisible on the queue, so a subscription held up by a slow MOT API or
+ * Notify is not delivered again and processed a second time alongside the first. Every in-flight receipt handle is given
+ * a fresh visibility timeout with ChangeMessageVisibilityBatch once less than a third of its current timeout is left.
+ * A handle is tracked once per message as soon as it is received, counting its timeout from the receive rather than from
+ * when the unloader takes it on, and holds one count for every subscription the message carries, so an envelope is kept
+ * invisible until the last of its subscriptions is released. Extending stops altogether when the invocation is about to
+ * end, leaving unfinished messages to be retried.
+ */
+public class VisibilityHeartbeat {
+
+    static final int MAX_BATCH_SIZE = 10;
+
+    private static final Logger logger = LoggerFactory.getLogger(VisibilityHeartbeat.class);
+
+    private static final long END_OF_INVOCATION_MARGIN_MS = 5000;
+
+    private AmazonSQS sqsClient;
+    private String queueUrl;
+    private int visibilityTimeoutSeconds;
+    private long checkIntervalMs;
+
+    private Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+    private ScheduledExecutorService ticker;
+    private Context context;
+
+    private AtomicInteger extended = new AtomicInteger(0);
+    private AtomicInteger failed = new AtomicInteger(0);
+
+    public VisibilityHeartbeat(AmazonSQS sqsClient, String queueUrl, int visibilityTimeoutSeconds, long checkIntervalMs) {
+
+        this.sqsClient = sqsClient;
+        this.queueUrl = queueUrl;
+        this.visibilityTimeoutSeconds = visibilityTimeoutSeconds;
+        this.checkIntervalMs = checkIntervalMs;
+    }
+
+    public void start(Context context) {
+
+        this.context = context;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "visibility-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker.scheduleWithFixedDelay(this::extendExpiring, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        inFlight.clear();
+    }
+
+    /**
+     * Starts keeping the messages a batch of subscriptions was received in invisible, each until all of its subscriptions
+     * are released
+     */
+    public void track(List<SubscriptionQueueItem> received) {
+
+        received.stream()
+                .collect(Collectors.groupingBy(SubscriptionQueueItem::getMessageReceiptHandle))
+                .forEach((handle, subscriptions) ->
+                        track(handle, subscriptions.get(0).getReceivedAt(), subscriptions.size()));
+    }
+
+    /**
+     * Starts keeping the message invisible, counting its visibility timeout from when it was received
+     *
+     * @param subscriptions number of releases, one per subscription the message carries, before it is no longer tracked
+     */
+    public void track(String receiptHandle, long receivedAt, int subscriptions) {
+
+        inFlight.put(receiptHandle, new InFlight(receivedAt + TimeUnit.SECONDS.toMillis(visibilityTimeoutSeconds), subscriptions));
+    }
+
+    /**
+     * Counts one subscription of the message as released, and stops keeping the message invisible once all of them are
+     */
+    public void release(String receiptHandle) {
+
+        inFlight.computeIfPresent(receiptHandle, (handle, tracked) -> --tracked.subscriptions > 0 ? tracked : null);
+    }
+
+    /**
+     * Extends the visibility timeout of every tracked message with less than a third of its timeout left
+     *
+     * @return number of messages whose visibility timeout was extended
+     */
+    public int extendExpiring() {
+
+        if (context != null && context.getRemainingTimeInMillis() < END_OF_INVOCATION_MARGIN_MS) {
+            return 0;
+        }
+
+        long extendBefore = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(visibilityTimeoutSeconds) / 3;
+        List<String> expiring = new ArrayList<>();
+        inFlight.forEach((handle, tracked) -> {
+            if (tracked.visibleAt <= extendBefore) {
+                expiring.add(handle);
+            }
+        });
+
+        int extendedNow = 0;
+        for (int from = 0; from < expiring.size(); from += MAX_BATCH_SIZE) {
+            extendedNow += extend(expiring.subList(from, Math.min(from + MAX_BATCH_SIZE, expiring.size())));
+        }
+        return extendedNow;
+    }
+
+    public int getExtended() {
+
+        return extended.get();
+    }
+
+    public int getFailed() {
+
+        return failed.get();
+    }
+
+    private int extend(List<String> handles) {
+
+        Map<String, String> handlesById = new HashMap<>();
+        List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>();
+        for (String handle : handles) {
+            String id = String.valueOf(handlesById.size());
+            handlesById.put(id, handle);
+            entries.add(new ChangeMessageVisibilityBatchRequestEntry(id, handle).withVisibilityTimeout(visibilityTimeoutSeconds));
+        }
+
+        long newVisibleAt = visibleAt();
+        try {
+            ChangeMessageVisibilityBatchResult result =
+                    sqsClient.changeMessageVisibilityBatch(new ChangeMessageVisibilityBatchRequest(queueUrl, entries));
+
+            for (ChangeMessageVisibilityBatchResultEntry success : result.getSuccessful()) {
+                inFlight.computeIfPresent(handlesById.get(success.getId()), (handle, tracked) -> {
+                    tracked.visibleAt = newVisibleAt;
+                    return tracked;
+                });
+            }
+            for (BatchResultErrorEntry error : result.getFailed()) {
+                logger.warn("Unable to extend visibility of message with receipt handle {}: {} {}",
+                        handlesById.get(error.getId()), error.getCode(), error.getMessage());
+            }
+
+            extended.addAndGet(result.getSuccessful().size());
+            failed.addAndGet(result.getFailed().size());
+            return result.getSuccessful().size();
+
+        } catch (RuntimeException e) {
+            logger.warn("Unable to extend visibility of {} message(s)", handles.size(), e);
+            failed.addAndGet(handles.size());
+            return 0;
+        }
+    }
+
+    private long visibleAt() {
+
+        return System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(visibilityTimeoutSeconds);
+    }
+
+    private static class InFlight {
+
+        private volatile long visibleAt;
+        private int subscriptions;
+
+        private InFlight(long visibleAt, int subscriptions) {
+
+            this.visibleAt = visibleAt;
+            this.subscriptions = subscriptions;
+        }
+    }
+}
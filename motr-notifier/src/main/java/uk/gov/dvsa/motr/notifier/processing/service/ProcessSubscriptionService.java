@@ -4,10 +4,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import uk.gov.dvsa.motr.eventlog.EventLogger;
+import uk.gov.dvsa.motr.notifier.component.reminder.persistence.ReminderLedger;
+import uk.gov.dvsa.motr.notifier.component.subscription.persistence.SubscriptionChangeSet;
 import uk.gov.dvsa.motr.notifier.component.subscription.persistence.SubscriptionRepository;
 import uk.gov.dvsa.motr.notifier.events.DeleteSubscriptionSuccessfulEvent;
 import uk.gov.dvsa.motr.notifier.events.DvlaIdUpdatedToMotTestNumberEvent;
 import uk.gov.dvsa.motr.notifier.events.HgvPsvDetailsRetrievalSuccessfulEvent;
+import uk.gov.dvsa.motr.notifier.events.ReminderAlreadySentEvent;
 import uk.gov.dvsa.motr.notifier.events.UpdateMotExpiryDateFailedEvent;
 import uk.gov.dvsa.motr.notifier.events.UpdateMotExpiryDateSuccessfulEvent;
 import uk.gov.dvsa.motr.notifier.events.UpdateVrmFailedEvent;
@@ -15,9 +18,10 @@ import uk.gov.dvsa.motr.notifier.events.UpdateVrmSuccessfulEvent;
 import uk.gov.dvsa.motr.notifier.notify.NotifyEmailService;
 import uk.gov.dvsa.motr.notifier.notify.NotifySmsService;
 import uk.gov.dvsa.motr.notifier.processing.factory.SendableNotificationFactory;
+import uk.gov.dvsa.motr.notifier.processing.limiter.AdaptiveConcurrencyLimiter;
+import uk.gov.dvsa.motr.notifier.processing.limiter.CircuitBreaker;
+import uk.gov.dvsa.motr.notifier.processing.limiter.CircuitBreakers;
 import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionQueueItem;
-import uk.gov.dvsa.motr.notifier.processing.model.notification.email.SendableEmailNotification;
-import uk.gov.dvsa.motr.notifier.processing.model.notification.sms.SendableSmsNotification;
 import uk.gov.dvsa.motr.vehicledetails.HgvPsvDetailsClientException;
 import uk.gov.dvsa.motr.vehicledetails.VehicleDetails;
 import uk.gov.dvsa.motr.vehicledetails.VehicleDetailsClient;
@@ -26,23 +30,51 @@ import uk.gov.dvsa.motr.vehicledetails.VehicleType;
 import uk.gov.service.notify.NotificationClientException;
 
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static uk.gov.dvsa.motr.notifier.processing.service.SubscriptionHandlerHelper.motDueDateUpdateRequired;
 import static uk.gov.dvsa.motr.notifier.processing.service.SubscriptionHandlerHelper.motTestNumberUpdateRequired;
+import static uk.gov.dvsa.motr.notifier.processing.service.SubscriptionHandlerHelper.oneDayAfterNotificationRequired;
+import static uk.gov.dvsa.motr.notifier.processing.service.SubscriptionHandlerHelper.oneMonthNotificationRequired;
 import static uk.gov.dvsa.motr.notifier.processing.service.SubscriptionHandlerHelper.subscriptionDeletionRequired;
+import static uk.gov.dvsa.motr.notifier.processing.service.SubscriptionHandlerHelper.twoMonthNotificationRequired;
+import static uk.gov.dvsa.motr.notifier.processing.service.SubscriptionHandlerHelper.twoWeekNotificationRequired;
 import static uk.gov.dvsa.motr.notifier.processing.service.SubscriptionHandlerHelper.vrmUpdateRequired;
 
 public class ProcessSubscriptionService {
 
     private static final Logger logger = LoggerFactory.getLogger(ProcessSubscriptionService.class);
 
+    private static final String MOT_TEST_NUMBER_KEY = "mot-test-number:";
+    private static final String DVLA_ID_KEY = "dvla-id:";
+
+    // shared by every instance, as one is created per invocation, and its idle threads lapse between invocations
+    private static final AtomicInteger PREFETCHER_THREAD_NUMBER = new AtomicInteger(1);
+    private static final ExecutorService PREFETCHER = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "vehicle-prefetcher-" + PREFETCHER_THREAD_NUMBER.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private VehicleDetailsClient client;
     private SubscriptionRepository subscriptionRepository;
     private NotifyEmailService notifyEmailService;
     private NotifySmsService notifySmsService;
     private SendableNotificationFactory notificationFactory;
     private Boolean hgvPsvNotifications;
+    private VehicleDetailsCache vehicleDetailsCache;
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private CircuitBreakers circuitBreakers;
+    private ReminderLedger reminderLedger;
 
     public ProcessSubscriptionService(
             VehicleDetailsClient client,
@@ -50,7 +82,11 @@ public class ProcessSubscriptionService {
             NotifyEmailService notifyEmailService,
             NotifySmsService notifySmsService,
             SendableNotificationFactory notificationFactory,
-            Boolean hgvPsvNotifications) {
+            Boolean hgvPsvNotifications,
+            VehicleDetailsCache vehicleDetailsCache,
+            AdaptiveConcurrencyLimiter concurrencyLimiter,
+            CircuitBreakers circuitBreakers,
+            ReminderLedger reminderLedger) {
 
         this.client = client;
         this.subscriptionRepository = repository;
@@ -58,107 +94,238 @@ public class ProcessSubscriptionService {
         this.notifySmsService = notifySmsService;
         this.notificationFactory = notificationFactory;
         this.hgvPsvNotifications = hgvPsvNotifications;
+        this.vehicleDetailsCache = vehicleDetailsCache;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.circuitBreakers = circuitBreakers;
+        this.reminderLedger = reminderLedger;
     }
 
     public void processSubscription(SubscriptionQueueItem subscription) throws NotificationClientException,
             VehicleDetailsClientException, VehicleNotFoundException, HgvPsvDetailsClientException {
 
-        VehicleDetails vehicleDetails = getVehicleDetails(subscription);
-
-        String vrm = subscription.getVrm();
-        String email = subscription.getContactDetail().getValue();
-        LocalDate subscriptionMotDueDate = subscription.getMotDueDate();
-        String subscriptionMotTestNumber = subscription.getMotTestNumber();
-        String subscriptionDvlaId = subscription.getDvlaId();
-        LocalDate requestDate = subscription.getLoadedOnDate();
+        if (isAlreadyReminded(subscription)) {
+            return;
+        }
 
-        LocalDate vehicleMotExpiryDate = vehicleDetails.getMotExpiryDate();
-        String vehicleMotTestNumber = vehicleDetails.getMotTestNumber();
-        String vehicleVrm = vehicleDetails.getRegNumber();
+        SubscriptionDecision decision = decide(subscription, fetchVehicleDetails(subscription));
+        persist(decision);
+        notify(decision);
+        applyChanges(decision);
+    }
 
-        VehicleType vehicleType = subscription.getVehicleType();
+    /**
+     * @return true when the reminder the subscription was loaded for has been sent already, so a subscription the queue
+     *     delivers again can be acknowledged without calling the MOT API or Notify
+     */
+    public boolean isAlreadyReminded(SubscriptionQueueItem subscription) {
 
-        if (subscriptionDeletionRequired(vehicleMotExpiryDate, requestDate)) {
-            subscriptionRepository.deleteSubscription(vrm, email);
-            EventLogger.logEvent(new DeleteSubscriptionSuccessfulEvent().setVrm(vrm).setMotExpiryDate(vehicleMotExpiryDate));
-            return;
+        Optional<String> reminderId = reminderId(subscription);
+        if (!reminderId.isPresent()) {
+            return false;
         }
 
-        if (motDueDateUpdateRequired(subscriptionMotDueDate, vehicleMotExpiryDate)) {
-            try {
-                subscriptionRepository.updateExpiryDate(vrm, email, vehicleMotExpiryDate);
-                EventLogger.logEvent(new UpdateMotExpiryDateSuccessfulEvent()
-                        .setNewExpiryDate(vehicleMotExpiryDate)
-                        .setExpiryDate(subscriptionMotDueDate)
-                        .setEmail(email)
-                        .setVrm(vrm));
-            } catch (Exception e) {
-                EventLogger.logErrorEvent(new UpdateMotExpiryDateFailedEvent()
-                        .setNewExpiryDate(vehicleMotExpiryDate)
-                        .setExpiryDate(subscriptionMotDueDate)
-                        .setEmail(email)
-                        .setVrm(vrm), e);
+        try {
+            if (!reminderLedger.isRecorded(reminderId.get())) {
+                return false;
             }
+        } catch (RuntimeException e) {
+            // a second reminder is better than none, so carry on as if it had not been sent
+            logger.warn("Unable to check whether reminder {} was sent", reminderId.get(), e);
+            return false;
+        }
+
+        EventLogger.logEvent(new ReminderAlreadySentEvent().setReminderId(reminderId.get()).setVrm(subscription.getVrm()));
+        return true;
+    }
+
+    /**
+     * Works out what has to be done for the subscription without calling any downstream service
+     */
+    public SubscriptionDecision decide(SubscriptionQueueItem subscription, VehicleDetails vehicleDetails) {
+
+        LocalDate requestDate = subscription.getLoadedOnDate();
+        SubscriptionDecision decision = new SubscriptionDecision(subscription, vehicleDetails);
+
+        if (subscriptionDeletionRequired(vehicleDetails.getMotExpiryDate(), requestDate)) {
+            return decision.setDeletionRequired(true);
         }
 
-        if (!this.hgvPsvNotifications && VehicleType.isCommercialVehicle(vehicleType)) {
-            logger.debug("HGV/PSV notifications not enabled {}", vrm);
+        decision.setMotDueDateUpdateRequired(motDueDateUpdateRequired(subscription.getMotDueDate(), vehicleDetails.getMotExpiryDate()))
+                .setMotTestNumberUpdateRequired(
+                        motTestNumberUpdateRequired(subscription.getMotTestNumber(), vehicleDetails.getMotTestNumber()))
+                .setVrmUpdateRequired(vrmUpdateRequired(subscription.getVrm(), vehicleDetails.getRegNumber()));
+
+        if (!this.hgvPsvNotifications && VehicleType.isCommercialVehicle(subscription.getVehicleType())) {
+            logger.debug("HGV/PSV notifications not enabled {}", subscription.getVrm());
         } else {
             SubscriptionQueueItem.ContactType contactType = subscription.getContactDetail().getContactType();
             if (contactType == SubscriptionQueueItem.ContactType.EMAIL) {
-                sendEmailNotfication(subscription, requestDate, vehicleDetails);
+                decision.setEmailNotification(notificationFactory.getEmailNotification(requestDate, subscription, vehicleDetails));
             } else if (contactType == SubscriptionQueueItem.ContactType.MOBILE) {
-                sendSmsNotification(subscription, vehicleDetails);
+                decision.setSmsNotification(notificationFactory.getSmsNotification(subscription, vehicleDetails));
             }
         }
 
-        if (motTestNumberUpdateRequired(subscriptionMotTestNumber, vehicleMotTestNumber)) {
-            subscriptionRepository.updateMotTestNumber(vrm, email, vehicleMotTestNumber);
+        return decision;
+    }
 
-            if (subscriptionDvlaId != null) {
-                EventLogger.logEvent(new DvlaIdUpdatedToMotTestNumberEvent()
-                        .setExistingDvlaId(subscriptionDvlaId)
-                        .setNewMotTestNumber(vehicleMotTestNumber));
-            }
+    /**
+     * Removes a subscription whose vehicle's MOT expired too long ago for it to be worth reminding
+     */
+    public void persist(SubscriptionDecision decision) {
+
+        if (decision.isDeletionRequired()) {
+            String vrm = decision.getSubscription().getVrm();
+            subscriptionRepository.deleteSubscription(vrm, decision.getSubscription().getContactDetail().getValue());
+            EventLogger.logEvent(new DeleteSubscriptionSuccessfulEvent()
+                    .setVrm(vrm)
+                    .setMotExpiryDate(decision.getVehicleDetails().getMotExpiryDate()));
         }
+    }
+
+    /**
+     * Sends the notification. The reminder is claimed before it is sent, and not sent when another delivery of the
+     * subscription has sent it or is sending it.
+     */
+    public void notify(SubscriptionDecision decision) throws NotificationClientException {
 
-        if (vrmUpdateRequired(vrm, vehicleVrm)) {
+        if (decision.isDeletionRequired()) {
+            return;
+        }
+
+        SubscriptionQueueItem subscription = decision.getSubscription();
+        boolean reminding = decision.getEmailNotification().isPresent() || decision.getSmsNotification().isPresent();
+        Optional<String> reminderId = reminding ? reminderId(subscription) : Optional.empty();
+        if (!reminderId.isPresent() || claimReminder(subscription, reminderId.get())) {
             try {
-                subscriptionRepository.updateVrm(vrm, email, vehicleVrm);
-                EventLogger.logEvent(new UpdateVrmSuccessfulEvent().setExistingVrm(vrm).setNewVrm(vehicleVrm));
-            } catch (Exception e) {
-                EventLogger.logErrorEvent(new UpdateVrmFailedEvent().setExistingVrm(vrm).setNewVrm(vehicleVrm), e);
+                send(decision);
+            } catch (NotificationClientException | RuntimeException e) {
+                reminderId.ifPresent(this::releaseReminder);
+                throw e;
             }
+            reminderId.ifPresent(this::recordReminderSent);
         }
     }
 
-    private void sendEmailNotfication(SubscriptionQueueItem subscription, LocalDate requestDate, VehicleDetails vehicleDetails)
-            throws NotificationClientException {
+    /**
+     * Records the vehicle's current MOT due date, MOT test number and VRM in a single write, once the notification is sent,
+     * as a failed send is retried against the subscription as it was loaded. A failed write is logged rather than thrown,
+     * so the reminder is not sent again.
+     */
+    public void applyChanges(SubscriptionDecision decision) {
+
+        if (decision.isDeletionRequired()) {
+            return;
+        }
 
+        SubscriptionQueueItem subscription = decision.getSubscription();
+        VehicleDetails vehicleDetails = decision.getVehicleDetails();
         String email = subscription.getContactDetail().getValue();
 
-        Optional<SendableEmailNotification> notification = this.notificationFactory.getEmailNotification(
-                requestDate, subscription, vehicleDetails);
+        SubscriptionChangeSet changes = new SubscriptionChangeSet(subscription.getVrm(), email);
+        if (decision.isMotDueDateUpdateRequired()) {
+            changes.setMotDueDate(vehicleDetails.getMotExpiryDate());
+        }
+        if (decision.isMotTestNumberUpdateRequired()) {
+            changes.setMotTestNumber(vehicleDetails.getMotTestNumber());
+        }
+        if (decision.isVrmUpdateRequired()) {
+            changes.setUpdatedVrm(vehicleDetails.getRegNumber());
+        }
 
-        if (notification.isPresent()) {
-            notifyEmailService.sendEmail(email, notification.get(), vehicleDetails);
+        if (!changes.isEmpty()) {
+            try {
+                subscriptionRepository.apply(changes);
+                logChangesApplied(subscription, changes);
+            } catch (Exception e) {
+                logChangesFailed(subscription, changes, e);
+            }
         }
     }
 
-    private void sendSmsNotification(SubscriptionQueueItem subscription, VehicleDetails vehicleDetails)
-            throws NotificationClientException {
+    private void send(SubscriptionDecision decision) throws NotificationClientException {
+
+        SubscriptionQueueItem subscription = decision.getSubscription();
+        String contact = subscription.getContactDetail().getValue();
+
+        if (decision.getEmailNotification().isPresent()) {
+            circuitBreakers.getNotify().execute(() -> {
+                notifyEmailService.sendEmail(contact, decision.getEmailNotification().get(), decision.getVehicleDetails());
+                return null;
+            });
+        }
+        if (decision.getSmsNotification().isPresent()) {
+            circuitBreakers.getNotify().execute(() -> {
+                notifySmsService.sendSms(contact, decision.getSmsNotification().get());
+                return null;
+            });
+        }
+    }
+
+    /**
+     * @param backlog number of subscriptions still to be notified
+     * @return how long the last of them is expected to wait for Notify's rate limit
+     */
+    public long getExpectedNotifyWaitMs(int backlog) {
+
+        return Math.max(notifyEmailService.getRateLimiter().getExpectedWaitMs(backlog),
+                notifySmsService.getRateLimiter().getExpectedWaitMs(backlog));
+    }
+
+    public CircuitBreakers getCircuitBreakers() {
+
+        return circuitBreakers;
+    }
+
+    public VehicleDetailsClient getVehicleDetailsClient() {
+
+        return client;
+    }
+
+    public VehicleDetailsCache getVehicleDetailsCache() {
 
-        String phoneNumber = subscription.getContactDetail().getValue();
+        return vehicleDetailsCache;
+    }
+
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Looks up the vehicles of a whole batch of received subscriptions at once, in the background, and keeps them in the
+     * vehicle details cache, where fetching each subscription's vehicle then finds them or waits for the batch. A failed
+     * batch lookup is only logged, as each subscription still looks its vehicle up by itself. Without a batch endpoint
+     * nothing is looked up here, leaving each lookup to the fetch that needs it.
+     */
+    public void prefetchVehicleDetails(List<SubscriptionQueueItem> subscriptions) {
+
+        Set<String> motTestNumbers = new LinkedHashSet<>();
+        Set<String> dvlaIds = new LinkedHashSet<>();
+
+        // the same choice of lookup as fetchVehicleDetails, leaving HGV/PSV vehicles to be looked up by themselves
+        for (SubscriptionQueueItem subscription : subscriptions) {
+            VehicleType vehicleType = subscription.getVehicleType();
+            if (vehicleType == VehicleType.MOT && subscription.getMotTestNumber() != null) {
+                motTestNumbers.add(subscription.getMotTestNumber());
+            } else if (!(VehicleType.isCommercialVehicle(vehicleType) && subscription.getVrm() != null)
+                    && subscription.getDvlaId() != null) {
+                dvlaIds.add(subscription.getDvlaId());
+            }
+        }
 
-        Optional<SendableSmsNotification> notification = this.notificationFactory.getSmsNotification(
-                subscription, vehicleDetails);
+        motTestNumbers.removeIf(motTestNumber -> vehicleDetailsCache.contains(MOT_TEST_NUMBER_KEY + motTestNumber));
+        dvlaIds.removeIf(dvlaId -> vehicleDetailsCache.contains(DVLA_ID_KEY + dvlaId));
 
-        if (notification.isPresent()) {
-            notifySmsService.sendSms(phoneNumber, notification.get());
+        if (client.hasBatchByMotTestNumberUri()) {
+            prefetch(MOT_TEST_NUMBER_KEY, motTestNumbers, client::fetchByMotTestNumbers);
+        }
+        if (client.hasBatchByDvlaIdUri()) {
+            prefetch(DVLA_ID_KEY, dvlaIds, client::fetchByDvlaIds);
         }
     }
 
-    private VehicleDetails getVehicleDetails(SubscriptionQueueItem subscriptionQueueItem) throws VehicleDetailsClientException,
+    public VehicleDetails fetchVehicleDetails(SubscriptionQueueItem subscriptionQueueItem) throws VehicleDetailsClientException,
             VehicleNotFoundException, HgvPsvDetailsClientException {
 
         final String dvlaId = subscriptionQueueItem.getDvlaId();
@@ -171,19 +338,23 @@ public class ProcessSubscriptionService {
         if (vehicleType == VehicleType.MOT && motTestNumber != null) {
             logger.trace("going to fetch by mot test number");
 
-            return client.fetchByMotTestNumber(motTestNumber).orElseThrow(() -> {
-                logger.debug("no vehicle found for mot_test_number {}", motTestNumber);
-                return new VehicleNotFoundException("no vehicle found for mot_test_number: " + motTestNumber);
-            });
+            return vehicleDetailsCache.get(MOT_TEST_NUMBER_KEY + motTestNumber,
+                    () -> callMotApi(() -> client.fetchByMotTestNumber(motTestNumber)))
+                    .orElseThrow(() -> {
+                        logger.debug("no vehicle found for mot_test_number {}", motTestNumber);
+                        return new VehicleNotFoundException("no vehicle found for mot_test_number: " + motTestNumber);
+                    });
         }
 
         if (VehicleType.isCommercialVehicle(vehicleType) && vrm != null) {
             logger.trace("going to fetch HGV/PSV/trailer data by vrm");
 
-            VehicleDetails vehicleDetails = client.fetchHgvPsvByVrm(vrm).orElseThrow(() -> {
-                logger.debug("no HGV/PSV/trailer vehicle found for vrm {}", vrm);
-                return new VehicleNotFoundException("no HGV/PSV vehicle found for vrm " + vrm);
-            });
+            VehicleDetails vehicleDetails = vehicleDetailsCache.get("hgv-psv-vrm:" + vrm,
+                    () -> callMotApi(() -> client.fetchHgvPsvByVrm(vrm)))
+                    .orElseThrow(() -> {
+                        logger.debug("no HGV/PSV/trailer vehicle found for vrm {}", vrm);
+                        return new VehicleNotFoundException("no HGV/PSV vehicle found for vrm " + vrm);
+                    });
             EventLogger.logEvent(new HgvPsvDetailsRetrievalSuccessfulEvent());
             return vehicleDetails;
         }
@@ -191,13 +362,162 @@ public class ProcessSubscriptionService {
         if (dvlaId != null) {
             logger.trace("going to fetch by dvla id");
 
-            return client.fetchByDvlaId(dvlaId).orElseThrow(() -> {
-                logger.debug("no vehicle found for dvla id {}", dvlaId);
-                return new VehicleNotFoundException("no vehicle found for dvlaid: " + dvlaId);
-            });
+            return vehicleDetailsCache.get(DVLA_ID_KEY + dvlaId,
+                    () -> callMotApi(() -> client.fetchByDvlaId(dvlaId)))
+                    .orElseThrow(() -> {
+                        logger.debug("no vehicle found for dvla id {}", dvlaId);
+                        return new VehicleNotFoundException("no vehicle found for dvlaid: " + dvlaId);
+                    });
         }
 
         logger.debug("no attribute to search for subscription {}", subscriptionQueueItem);
         throw new VehicleNotFoundException("no data to search for subscription " + subscriptionQueueItem.getId());
     }
+
+    private void prefetch(String keyPrefix, Set<String> values, BatchLookup batchLookup) {
+
+        // a lone vehicle gains nothing from a batch and is left to the fetch that needs it
+        if (values.size() < 2) {
+            return;
+        }
+
+        VehicleDetailsCache.Reservation reservation = vehicleDetailsCache.reserve(values.stream()
+                .map(value -> keyPrefix + value)
+                .collect(Collectors.toList()));
+        Set<String> reservedValues = reservation.getKeys().stream()
+                .map(key -> key.substring(keyPrefix.length()))
+                .collect(Collectors.toSet());
+        if (reservedValues.isEmpty()) {
+            return;
+        }
+
+        PREFETCHER.execute(() -> {
+            try {
+                reservation.complete(callMotApi(() -> batchLookup.fetch(reservedValues)).entrySet().stream()
+                        .collect(Collectors.toMap(found -> keyPrefix + found.getKey(), Map.Entry::getValue)));
+            } catch (Exception e) {
+                logger.warn("Unable to look up a batch of {} vehicles", reservedValues.size(), e);
+            } finally {
+                reservation.release();
+            }
+        });
+    }
+
+    private <T, E extends Exception> T callMotApi(CircuitBreaker.Call<T, E> call) throws E {
+
+        return circuitBreakers.getMotApi().execute(() -> concurrencyLimiter.execute(call::call));
+    }
+
+    @FunctionalInterface
+    private interface BatchLookup {
+
+        Map<String, Optional<VehicleDetails>> fetch(Collection<String> values) throws VehicleDetailsClientException;
+    }
+
+    /**
+     * Identifies the reminder by subscription id, kind of reminder and the day the subscription was loaded. The kind is worked
+     * out from the due date the subscription was loaded with rather than the vehicle's current one, so every delivery of the
+     * same message gets the same id.
+     */
+    static Optional<String> reminderId(SubscriptionQueueItem subscription) {
+
+        LocalDate loadedOnDate = subscription.getLoadedOnDate();
+        LocalDate motDueDate = subscription.getMotDueDate();
+        if (subscription.getId() == null || loadedOnDate == null || motDueDate == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(String.join("#", subscription.getId(), reminderType(loadedOnDate, motDueDate), loadedOnDate.toString()));
+    }
+
+    private static String reminderType(LocalDate loadedOnDate, LocalDate motDueDate) {
+
+        if (twoMonthNotificationRequired(loadedOnDate, motDueDate)) {
+            return "two-month";
+        }
+        if (oneMonthNotificationRequired(loadedOnDate, motDueDate)) {
+            return "one-month";
+        }
+        if (twoWeekNotificationRequired(loadedOnDate, motDueDate)) {
+            return "two-week";
+        }
+        if (oneDayAfterNotificationRequired(loadedOnDate, motDueDate)) {
+            return "one-day-after";
+        }
+        return "other";
+    }
+
+    /**
+     * @return false when another delivery has sent the reminder or holds the claim to send it
+     */
+    private boolean claimReminder(SubscriptionQueueItem subscription, String reminderId) {
+
+        try {
+            if (reminderLedger.claim(reminderId)) {
+                return true;
+            }
+        } catch (RuntimeException e) {
+            // a second reminder is better than none, so send it unclaimed
+            logger.warn("Unable to claim reminder {}", reminderId, e);
+            return true;
+        }
+
+        EventLogger.logEvent(new ReminderAlreadySentEvent().setReminderId(reminderId).setVrm(subscription.getVrm()));
+        return false;
+    }
+
+    private void recordReminderSent(String reminderId) {
+
+        try {
+            reminderLedger.record(reminderId);
+        } catch (RuntimeException e) {
+            logger.warn("Unable to record reminder {} as sent", reminderId, e);
+        }
+    }
+
+    private void releaseReminder(String reminderId) {
+
+        try {
+            reminderLedger.release(reminderId);
+        } catch (RuntimeException e) {
+            // the claim lapses by itself
+            logger.warn("Unable to release the claim on reminder {}", reminderId, e);
+        }
+    }
+
+    private void logChangesApplied(SubscriptionQueueItem subscription, SubscriptionChangeSet changes) {
+
+        changes.getMotDueDate().ifPresent(motDueDate -> EventLogger.logEvent(new UpdateMotExpiryDateSuccessfulEvent()
+                .setNewExpiryDate(motDueDate)
+                .setExpiryDate(subscription.getMotDueDate())
+                .setEmail(changes.getEmail())
+                .setVrm(changes.getVrm())));
+
+        if (changes.getMotTestNumber().isPresent() && subscription.getDvlaId() != null) {
+            EventLogger.logEvent(new DvlaIdUpdatedToMotTestNumberEvent()
+                    .setExistingDvlaId(subscription.getDvlaId())
+                    .setNewMotTestNumber(changes.getMotTestNumber().get()));
+        }
+
+        changes.getUpdatedVrm().ifPresent(updatedVrm -> EventLogger.logEvent(new UpdateVrmSuccessfulEvent()
+                .setExistingVrm(changes.getVrm())
+                .setNewVrm(updatedVrm)));
+    }
+
+    private void logChangesFailed(SubscriptionQueueItem subscription, SubscriptionChangeSet changes, Exception failure) {
+
+        changes.getMotDueDate().ifPresent(motDueDate -> EventLogger.logErrorEvent(new UpdateMotExpiryDateFailedEvent()
+                .setNewExpiryDate(motDueDate)
+                .setExpiryDate(subscription.getMotDueDate())
+                .setEmail(changes.getEmail())
+                .setVrm(changes.getVrm()), failure));
+
+        changes.getUpdatedVrm().ifPresent(updatedVrm -> EventLogger.logErrorEvent(new UpdateVrmFailedEvent()
+                .setExistingVrm(changes.getVrm())
+                .setNewVrm(updatedVrm), failure));
+
+        if (!changes.getMotDueDate().isPresent() && !changes.getUpdatedVrm().isPresent()) {
+            logger.error("Failed to update mot test number for subscription {}", subscription.getId(), failure);
+        }
+    }
 }
@@ -0,0 +1,106 @@
+package uk.gov.dvsa.motr.notifier.processing.service;
+
+import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionQueueItem;
+import uk.gov.dvsa.motr.notifier.processing.model.notification.email.SendableEmailNotification;
+import uk.gov.dvsa.motr.notifier.processing.model.notification.sms.SendableSmsNotification;
+import uk.gov.dvsa.motr.vehicledetails.VehicleDetails;
+
+import java.util.Optional;
+
+/**
+ * What has to be done for a subscription given the current details of its vehicle, worked out before anything is
+ * written or sent
+ */
+public class SubscriptionDecision {
+
+    private SubscriptionQueueItem subscription;
+    private VehicleDetails vehicleDetails;
+    private boolean deletionRequired;
+    private boolean motDueDateUpdateRequired;
+    private boolean motTestNumberUpdateRequired;
+    private boolean vrmUpdateRequired;
+    private Optional<SendableEmailNotification> emailNotification = Optional.empty();
+    private Optional<SendableSmsNotification> smsNotification = Optional.empty();
+
+    public SubscriptionDecision(SubscriptionQueueItem subscription, VehicleDetails vehicleDetails) {
+
+        this.subscription = subscription;
+        this.vehicleDetails = vehicleDetails;
+    }
+
+    public SubscriptionQueueItem getSubscription() {
+
+        return subscription;
+    }
+
+    public VehicleDetails getVehicleDetails() {
+
+        return vehicleDetails;
+    }
+
+    public boolean isDeletionRequired() {
+
+        return deletionRequired;
+    }
+
+    public SubscriptionDecision setDeletionRequired(boolean deletionRequired) {
+
+        this.deletionRequired = deletionRequired;
+        return this;
+    }
+
+    public boolean isMotDueDateUpdateRequired() {
+
+        return motDueDateUpdateRequired;
+    }
+
+    public SubscriptionDecision setMotDueDateUpdateRequired(boolean motDueDateUpdateRequired) {
+
+        this.motDueDateUpdateRequired = motDueDateUpdateRequired;
+        return this;
+    }
+
+    public boolean isMotTestNumberUpdateRequired() {
+
+        return motTestNumberUpdateRequired;
+    }
+
+    public SubscriptionDecision setMotTestNumberUpdateRequired(boolean motTestNumberUpdateRequired) {
+
+        this.motTestNumberUpdateRequired = motTestNumberUpdateRequired;
+        return this;
+    }
+
+    public boolean isVrmUpdateRequired() {
+
+        return vrmUpdateRequired;
+    }
+
+    public SubscriptionDecision setVrmUpdateRequired(boolean vrmUpdateRequired) {
+
+        this.vrmUpdateRequired = vrmUpdateRequired;
+        return this;
+    }
+
+    public Optional<SendableEmailNotification> getEmailNotification() {
+
+        return emailNotification;
+    }
+
+    public SubscriptionDecision setEmailNotification(Optional<SendableEmailNotification> emailNotification) {
+
+        this.emailNotification = emailNotification;
+        return this;
+    }
+
+    public Optional<SendableSmsNotification> getSmsNotification() {
+
+        return smsNotification;
+    }
+
+    public SubscriptionDecision setSmsNotification(Optional<SendableSmsNotification> smsNotification) {
+
+        this.smsNotification = smsNotification;
+        return this;
+    }
+}
@@ -0,0 +1,206 @@
+package uk.gov.dvsa.motr.notifier.processing.service;
+
+import uk.gov.dvsa.motr.vehicledetails.VehicleDetails;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Remembers the vehicle details fetched during an invocation, so several subscriptions for the same vehicle cost a single
+ * MOT API call. Concurrent lookups for the same key share the one call in flight rather than each making their own.
+ * Vehicles that were found are kept for the rest of the invocation, vehicles that were not found only for a short while,
+ * and failed lookups are not kept at all, so the next subscription for the vehicle tries again.
+ */
+public class VehicleDetailsCache {
+
+    private long notFoundTtlMs;
+    private ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private AtomicInteger hits = new AtomicInteger(0);
+    private AtomicInteger misses = new AtomicInteger(0);
+    private AtomicInteger coalesced = new AtomicInteger(0);
+
+    public VehicleDetailsCache(long notFoundTtlMs) {
+
+        this.notFoundTtlMs = notFoundTtlMs;
+    }
+
+    @FunctionalInterface
+    public interface Lookup<E extends Exception> {
+
+        Optional<VehicleDetails> fetch() throws E;
+    }
+
+    /**
+     * @return the cached vehicle details for the key, or those returned by the lookup when there are none
+     */
+    public <E extends Exception> Optional<VehicleDetails> get(String key, Lookup<E> lookup) throws E {
+
+        long now = System.currentTimeMillis();
+        CompletableFuture<Optional<VehicleDetails>> fetch = new CompletableFuture<>();
+        Entry entry = entries.compute(key, (ignored, existing) ->
+                existing != null && existing.expiresAt > now ? existing : new Entry(fetch));
+
+        if (entry.result != fetch) {
+            if (entry.result.isDone()) {
+                hits.incrementAndGet();
+            } else {
+                coalesced.incrementAndGet();
+            }
+
+            // a reservation completes the keys its batch left out without vehicle details, having removed their entries
+            Optional<VehicleDetails> shared = await(entry.result);
+            return shared != null ? shared : get(key, lookup);
+        }
+
+        misses.incrementAndGet();
+        try {
+            Optional<VehicleDetails> vehicleDetails = lookup.fetch();
+            if (!vehicleDetails.isPresent()) {
+                entry.expiresAt = System.currentTimeMillis() + notFoundTtlMs;
+            }
+            fetch.complete(vehicleDetails);
+            return vehicleDetails;
+        } catch (Exception e) {
+            entries.remove(key, entry);
+            fetch.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Stores vehicle details that were looked up some other way, such as in a batch, unless the key already has an entry
+     */
+    public void prime(String key, Optional<VehicleDetails> vehicleDetails) {
+
+        long now = System.currentTimeMillis();
+        Entry primed = new Entry(CompletableFuture.completedFuture(vehicleDetails));
+        if (!vehicleDetails.isPresent()) {
+            primed.expiresAt = now + notFoundTtlMs;
+        }
+        entries.merge(key, primed, (existing, ignored) -> existing.expiresAt > now ? existing : primed);
+    }
+
+    /**
+     * Takes an entry for each of the keys that have none, for their vehicle details to be looked up together elsewhere.
+     * Gets for those keys wait on the reservation until it is completed or released, rather than each looking up by itself.
+     */
+    public Reservation reserve(Collection<String> keys) {
+
+        Reservation reservation = new Reservation();
+        for (String key : keys) {
+            Entry reserved = new Entry(new CompletableFuture<>());
+            long now = System.currentTimeMillis();
+            if (entries.compute(key, (ignored, existing) -> existing != null && existing.expiresAt > now ? existing : reserved)
+                    == reserved) {
+                reservation.reserved.put(key, reserved);
+            }
+        }
+        return reservation;
+    }
+
+    /**
+     * @return true when the key has an entry, whether its lookup is done or still in flight
+     */
+    public boolean contains(String key) {
+
+        Entry entry = entries.get(key);
+        return entry != null && entry.expiresAt > System.currentTimeMillis();
+    }
+
+    public int getHits() {
+
+        return hits.get();
+    }
+
+    public int getMisses() {
+
+        return misses.get();
+    }
+
+    public int getCoalesced() {
+
+        return coalesced.get();
+    }
+
+    /**
+     * Waits for a lookup made by another thread, failing the same way it did
+     */
+    @SuppressWarnings("unchecked")
+    private <E extends Exception> Optional<VehicleDetails> await(CompletableFuture<Optional<VehicleDetails>> result) throws E {
+
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted whilst waiting for vehicle details", e);
+        } catch (ExecutionException e) {
+            throw (E) e.getCause();
+        }
+    }
+
+    /**
+     * Entries taken by {@link #reserve}, which whoever looks the keys up has to either complete or release
+     */
+    public class Reservation {
+
+        private Map<String, Entry> reserved = new HashMap<>();
+
+        private Reservation() {
+
+        }
+
+        public Set<String> getKeys() {
+
+            return Collections.unmodifiableSet(reserved.keySet());
+        }
+
+        /**
+         * Hands the vehicle details looked up to the gets waiting for them
+         */
+        public void complete(Map<String, Optional<VehicleDetails>> found) {
+
+            found.forEach((key, vehicleDetails) -> {
+                Entry entry = reserved.remove(key);
+                if (entry != null) {
+                    if (!vehicleDetails.isPresent()) {
+                        entry.expiresAt = System.currentTimeMillis() + notFoundTtlMs;
+                    }
+                    entry.result.complete(vehicleDetails);
+                }
+            });
+        }
+
+        /**
+         * Gives up the keys not completed, so gets for them look them up by themselves
+         */
+        public void release() {
+
+            reserved.forEach((key, entry) -> {
+                entries.remove(key, entry);
+                entry.result.complete(null);
+            });
+            reserved.clear();
+        }
+    }
+
+    private static class Entry {
+
+        private CompletableFuture<Optional<VehicleDetails>> result;
+        private volatile long expiresAt = Long.MAX_VALUE;
+
+        private Entry(CompletableFuture<Optional<VehicleDetails>> result) {
+
+            this.result = result;
+        }
+    }
+}
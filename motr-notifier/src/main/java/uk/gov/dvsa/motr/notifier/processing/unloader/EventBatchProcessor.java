@@ -0,0 +1,135 @@
+package uk.gov.dvsa.motr.notifier.processing.unloader;
+
+import com.amazonaws.services.lambda.runtime.Context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.gov.dvsa.motr.eventlog.EventLogger;
+import uk.gov.dvsa.motr.notifier.events.RemindersProcessedEvent;
+import uk.gov.dvsa.motr.notifier.processing.model.SqsBatchResponse;
+import uk.gov.dvsa.motr.notifier.processing.model.SqsEvent;
+import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionQueueItem;
+import uk.gov.dvsa.motr.notifier.processing.queue.SubscriptionMessageParser;
+import uk.gov.dvsa.motr.notifier.processing.service.ProcessSubscriptionService;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Processes a batch of messages handed to the notifier by its SQS event source, spreading their subscriptions over the
+ * workers. The event source deletes the messages once the batch is done, apart from those reported as failed, which are
+ * delivered again once their visibility timeout expires. A message fails when any of its subscriptions does, and as
+ * reminders already sent are recorded, delivering it again only retries the subscriptions that failed.
+ */
+public class EventBatchProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventBatchProcessor.class);
+
+    /**
+     * Time left for the handler to return its response once the batch is done
+     */
+    private static final long RESPONSE_MARGIN_MS = 1000;
+
+    private SubscriptionMessageParser messageParser;
+    private ProcessSubscriptionService processSubscriptionService;
+    private int workerCount;
+
+    public EventBatchProcessor(
+            SubscriptionMessageParser messageParser,
+            ProcessSubscriptionService processSubscriptionService,
+            int workerCount) {
+
+        this.messageParser = messageParser;
+        this.processSubscriptionService = processSubscriptionService;
+        this.workerCount = workerCount;
+    }
+
+    public SqsBatchResponse process(SqsEvent event, Context context) {
+
+        NotifierReport report = new NotifierReport();
+        report.startProcessingTheMessages();
+        SqsBatchResponse response = new SqsBatchResponse();
+
+        Map<String, List<SubscriptionQueueItem>> subscriptionsByMessage = new LinkedHashMap<>();
+        for (SqsEvent.Record record : event.getRecords()) {
+            try {
+                subscriptionsByMessage.put(record.getMessageId(), messageParser.parse(record.toMessage()));
+            } catch (Exception e) {
+                logger.error("Unable to read subscriptions from message {}", record.getMessageId(), e);
+                response.addBatchItemFailure(record.getMessageId());
+            }
+        }
+
+        List<SubscriptionQueueItem> subscriptions = new ArrayList<>();
+        subscriptionsByMessage.values().forEach(subscriptions::addAll);
+        processSubscriptionService.prefetchVehicleDetails(subscriptions);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(workerCount, subscriptions.size())));
+        Map<String, List<Future<Boolean>>> outcomesByMessage = new LinkedHashMap<>();
+        subscriptionsByMessage.forEach((messageId, messageSubscriptions) -> outcomesByMessage.put(messageId,
+                messageSubscriptions.stream()
+                        .map(subscription -> executor.submit(() -> process(subscription, report)))
+                        .collect(Collectors.toList())));
+        executor.shutdown();
+
+        // whatever is still running once the time is up fails its message, which is then delivered again
+        long deadline = System.currentTimeMillis() + Math.max(0, context.getRemainingTimeInMillis() - RESPONSE_MARGIN_MS);
+        try {
+            outcomesByMessage.forEach((messageId, outcomes) -> {
+                if (!outcomes.stream().allMatch(outcome -> succeeded(outcome, deadline))) {
+                    response.addBatchItemFailure(messageId);
+                }
+            });
+        } finally {
+            executor.shutdownNow();
+
+            EventLogger.logEvent(new RemindersProcessedEvent()
+                    .setAmountOfMessagesSuccessfullyProcessed(report.getSuccessfullyProcessed())
+                    .setDurationToProcessAllMessages(report.getDurationToProcessTheMessages())
+                    .setAmountOfMessagesFailedToProcess(report.getFailedToProcess())
+                    .setAmountOfMessagesRequeuedForRetry(response.getBatchItemFailures().size())
+                    .setAmountOfMessagesFailedToAcknowledge(0)
+                    .setAmountOfMessagesReleased(0));
+        }
+
+        return response;
+    }
+
+    private boolean process(SubscriptionQueueItem subscription, NotifierReport report) {
+
+        ProcessSubscriptionTask task = new ProcessSubscriptionTask(subscription, report, processSubscriptionService);
+        long startedProcessingTime = System.currentTimeMillis();
+
+        try {
+            processSubscriptionService.processSubscription(subscription);
+        } catch (Exception e) {
+            task.reportFailure(e, startedProcessingTime);
+            return false;
+        }
+
+        task.reportSuccess(startedProcessingTime);
+        return true;
+    }
+
+    private static boolean succeeded(Future<Boolean> outcome, long deadline) {
+
+        try {
+            return outcome.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+}
@@ -13,6 +13,12 @@ public class NotifierReport {
 
     private AtomicInteger failedToProcess = new AtomicInteger(0);
 
+    private AtomicInteger requeuedForRetry = new AtomicInteger(0);
+
+    private AtomicInteger failedToAcknowledge = new AtomicInteger(0);
+
+    private AtomicInteger released = new AtomicInteger(0);
+
     private AtomicLong allMessagesStartTime = new AtomicLong(0);
 
     private Timer vehicleDetailsTimerFetchByMotTestNumber;
@@ -37,6 +43,36 @@ public class NotifierReport {
         failedToProcess.incrementAndGet();
     }
 
+    public void incrementRequeuedForRetry() {
+
+        requeuedForRetry.incrementAndGet();
+    }
+
+    public void addFailedToAcknowledge(int messages) {
+
+        failedToAcknowledge.addAndGet(messages);
+    }
+
+    public void incrementReleased() {
+
+        released.incrementAndGet();
+    }
+
+    public int getReleased() {
+
+        return released.get();
+    }
+
+    public int getFailedToAcknowledge() {
+
+        return failedToAcknowledge.get();
+    }
+
+    public int getRequeuedForRetry() {
+
+        return requeuedForRetry.get();
+    }
+
     public int getFailedToProcess() {
 
         return failedToProcess.get();
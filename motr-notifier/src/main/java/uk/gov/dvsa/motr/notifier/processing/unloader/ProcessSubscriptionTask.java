@@ -10,6 +10,7 @@ import uk.gov.dvsa.motr.notifier.events.SubscriptionQueueItemRemovalFailedEvent;
 import uk.gov.dvsa.motr.notifier.events.SuccessfulSubscriptionProcessedEvent;
 import uk.gov.dvsa.motr.notifier.events.VehicleDetailsRetrievalFailedEvent;
 import uk.gov.dvsa.motr.notifier.events.VehicleNotFoundEvent;
+import uk.gov.dvsa.motr.notifier.processing.limiter.CircuitBreakerOpenException;
 import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionQueueItem;
 import uk.gov.dvsa.motr.notifier.processing.queue.QueueItemRemover;
 import uk.gov.dvsa.motr.notifier.processing.queue.RemoveSubscriptionFromQueueException;
@@ -19,6 +20,8 @@ import uk.gov.dvsa.motr.vehicledetails.HgvPsvDetailsClientException;
 import uk.gov.dvsa.motr.vehicledetails.VehicleDetailsClientException;
 import uk.gov.service.notify.NotificationClientException;
 
+import java.util.concurrent.TimeUnit;
+
 public class ProcessSubscriptionTask implements Runnable {
 
     private SubscriptionQueueItem subscriptionQueueItemToProcess;
@@ -38,58 +41,125 @@ public class ProcessSubscriptionTask implements Runnable {
         this.queueItemRemover = queueItemRemover;
     }
 
+    /**
+     * For a subscription whose message is removed from the queue by someone else, which can only be reported on
+     */
+    public ProcessSubscriptionTask(
+            SubscriptionQueueItem subscriptionQueueItemToProcess,
+            NotifierReport report,
+            ProcessSubscriptionService processSubscriptionService) {
+
+        this(subscriptionQueueItemToProcess, report, processSubscriptionService, null);
+    }
+
     @Override
     public void run() {
 
-        Long startedProcessingTime = System.currentTimeMillis();
+        long startedProcessingTime = System.currentTimeMillis();
 
         try {
-
             processSubscriptionService.processSubscription(subscriptionQueueItemToProcess);
+        } catch (Exception e) {
+            failed(e, startedProcessingTime);
+            return;
+        }
 
-            queueItemRemover.removeProcessedQueueItem(subscriptionQueueItemToProcess);
+        acknowledge(startedProcessingTime);
+    }
 
-            EventLogger.logEvent(new SuccessfulSubscriptionProcessedEvent()
-                    .setMessageProcessTimeProcessed(System.currentTimeMillis() - startedProcessingTime)
-                    .setMessageBody(subscriptionQueueItemToProcess.toString()));
+    /**
+     * Removes the processed subscription from the queue and reports it as successfully processed
+     */
+    public void acknowledge(long startedProcessingTime) {
 
-            report.incrementSuccessfullyProcessed();
+        try {
+            queueItemRemover.removeProcessedQueueItem(subscriptionQueueItemToProcess);
+            reportSuccess(startedProcessingTime);
 
         } catch (RemoveSubscriptionFromQueueException e) {
 
             SubscriptionProcessedEvent event = populateEvent(new SubscriptionQueueItemRemovalFailedEvent());
             EventLogger.logErrorEvent(event, e);
             report.incrementFailedToProcess();
+        }
+    }
+
+    public void reportSuccess(long startedProcessingTime) {
+
+        EventLogger.logEvent(new SuccessfulSubscriptionProcessedEvent()
+                .setMessageProcessTimeProcessed(System.currentTimeMillis() - startedProcessingTime)
+                .setMessageBody(subscriptionQueueItemToProcess.toString()));
+
+        report.incrementSuccessfullyProcessed();
+    }
+
+    /**
+     * Reports why the subscription could not be processed and requeues it for retry. One turned away by an open circuit
+     * breaker was never tried, so it is released to be received again once the breaker is ready to be probed.
+     */
+    public void failed(Exception failure, long startedProcessingTime) {
+
+        if (failure instanceof CircuitBreakerOpenException) {
+            release(((CircuitBreakerOpenException) failure).getRetryAfterMs());
+            return;
+        }
+
+        reportFailure(failure, startedProcessingTime);
+        requeueForRetry();
+    }
 
-        } catch (VehicleNotFoundException e) {
+    public void reportFailure(Exception failure, long startedProcessingTime) {
+
+        if (failure instanceof VehicleNotFoundException) {
 
             SubscriptionProcessedEvent event = populateEvent(new VehicleNotFoundEvent());
-            EventLogger.logErrorEvent(event, e);
-            report.incrementFailedToProcess();
+            EventLogger.logErrorEvent(event, failure);
 
-        } catch (VehicleDetailsClientException e) {
+        } else if (failure instanceof VehicleDetailsClientException) {
 
             SubscriptionProcessedEvent event = populateEvent(new VehicleDetailsRetrievalFailedEvent());
-            EventLogger.logErrorEvent(event, e);
-            report.incrementFailedToProcess();
+            EventLogger.logErrorEvent(event, failure);
 
-        } catch (HgvPsvDetailsClientException e) {
+        } else if (failure instanceof HgvPsvDetailsClientException) {
 
             SubscriptionProcessedEvent event = populateEvent(new HgvPsvDetailsRetrievalFailedEvent());
-            EventLogger.logErrorEvent(event, e);
-            report.incrementFailedToProcess();
-        } catch (NotificationClientException e) {
+            EventLogger.logErrorEvent(event, failure);
+
+        } else if (failure instanceof NotificationClientException) {
 
             NotifyEvent event = populateEvent(new NotifyReminderFailedEvent());
-            EventLogger.logErrorEvent(event, e);
-            report.incrementFailedToProcess();
+            EventLogger.logErrorEvent(event, failure);
 
-        } catch (Exception e) {
+        } else {
             EventLogger.logErrorEvent(new SubscriptionProcessingFailedEvent()
                     .setMessageBody(subscriptionQueueItemToProcess.toString())
-                    .setMessageProcessTimeProcessed(System.currentTimeMillis() - startedProcessingTime), e);
+                    .setMessageProcessTimeProcessed(System.currentTimeMillis() - startedProcessingTime), failure);
+        }
 
-            report.incrementFailedToProcess();
+        report.incrementFailedToProcess();
+    }
+
+    /**
+     * Makes the subscription visible on the queue again once the given time has passed
+     */
+    public void release(long afterMs) {
+
+        try {
+            queueItemRemover.releaseQueueItem(subscriptionQueueItemToProcess, (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(afterMs)));
+            report.incrementReleased();
+        } catch (RemoveSubscriptionFromQueueException e) {
+            EventLogger.logErrorEvent(populateEvent(new SubscriptionQueueItemRemovalFailedEvent()), e);
+        }
+    }
+
+    private void requeueForRetry() {
+
+        try {
+            if (queueItemRemover.requeueFailedQueueItem(subscriptionQueueItemToProcess)) {
+                report.incrementRequeuedForRetry();
+            }
+        } catch (RemoveSubscriptionFromQueueException e) {
+            EventLogger.logErrorEvent(populateEvent(new SubscriptionQueueItemRemovalFailedEvent()), e);
         }
     }
 
@@ -6,23 +6,44 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import uk.gov.dvsa.motr.eventlog.EventLogger;
-import uk.gov.dvsa.motr.executor.BlockingExecutor;
+import uk.gov.dvsa.motr.notifier.events.IntakePausedEvent;
 import uk.gov.dvsa.motr.notifier.events.RemindersProcessedEvent;
 import uk.gov.dvsa.motr.notifier.events.UnloadingTimedOutEvent;
+import uk.gov.dvsa.motr.notifier.events.VehicleDetailsCacheEvent;
+import uk.gov.dvsa.motr.notifier.events.VehicleDetailsHedgingEvent;
+import uk.gov.dvsa.motr.notifier.processing.limiter.CircuitBreakers;
 import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionQueueItem;
+import uk.gov.dvsa.motr.notifier.processing.pipeline.CompletionEstimator;
+import uk.gov.dvsa.motr.notifier.processing.pipeline.PipelineSizing;
+import uk.gov.dvsa.motr.notifier.processing.pipeline.SubscriptionPipeline;
 import uk.gov.dvsa.motr.notifier.processing.queue.QueueItemRemover;
 import uk.gov.dvsa.motr.notifier.processing.queue.SubscriptionsReceiver;
+import uk.gov.dvsa.motr.notifier.processing.queue.VisibilityHeartbeat;
 import uk.gov.dvsa.motr.notifier.processing.service.ProcessSubscriptionService;
 
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
 
 public class QueueUnloader {
 
     private static final Logger logger = LoggerFactory.getLogger(QueueUnloader.class);
 
+    /**
+     * Time left for the handler to return once the last processed messages have been deleted
+     */
+    private static final int ACKNOWLEDGEMENT_FLUSH_MARGIN_MS = 1000;
+
+    /**
+     * Time kept back once the pipeline is expected to have drained, for acknowledgements to be flushed and the handler to return
+     */
+    private static final long COMPLETION_MARGIN_MS = 3000;
+
+    private static final long INTAKE_CHECK_INTERVAL_MS = 1000;
+
     private SubscriptionsReceiver subscriptionsReceiver;
     private QueueItemRemover queueItemRemover;
-    private BlockingExecutor executor;
+    private VisibilityHeartbeat visibilityHeartbeat;
+    private PipelineSizing pipelineSizing;
     private ProcessSubscriptionService processSubscriptionService;
     private int remaingingTimeThresholdMs;
     private int postProcessingDelayMs;
@@ -30,14 +51,16 @@ public class QueueUnloader {
     public QueueUnloader(
             SubscriptionsReceiver subscriptionsReceiver,
             QueueItemRemover queueItemRemover,
-            BlockingExecutor executor,
+            VisibilityHeartbeat visibilityHeartbeat,
+            PipelineSizing pipelineSizing,
             ProcessSubscriptionService processSubscriptionService,
             int remaingingTimeThresholdMs,
             int postProcessingDelayMs) {
 
         this.subscriptionsReceiver = subscriptionsReceiver;
         this.queueItemRemover = queueItemRemover;
-        this.executor = executor;
+        this.visibilityHeartbeat = visibilityHeartbeat;
+        this.pipelineSizing = pipelineSizing;
         this.remaingingTimeThresholdMs = remaingingTimeThresholdMs;
         this.processSubscriptionService = processSubscriptionService;
         this.postProcessingDelayMs = postProcessingDelayMs;
@@ -47,44 +70,148 @@ public class QueueUnloader {
 
         NotifierReport report = new NotifierReport();
         report.startProcessingTheMessages();
+        SubscriptionPipeline pipeline = new SubscriptionPipeline(processSubscriptionService, queueItemRemover, visibilityHeartbeat,
+                report, pipelineSizing);
+        visibilityHeartbeat.start(context);
+        subscriptionsReceiver.onBatchReceived(batch -> {
+            visibilityHeartbeat.track(batch);
+            processSubscriptionService.prefetchVehicleDetails(batch);
+        });
 
         for (SubscriptionQueueItem subscriptionQueueItemFromQueue : subscriptionsReceiver) {
 
-            if (passedTimeoutThreshold(report, context)) {
+            if (passedTimeoutThreshold(report, context, pipeline)) {
+                // left for its visibility timeout to expire, like the subscriptions received behind it
+                visibilityHeartbeat.release(subscriptionQueueItemFromQueue.getMessageReceiptHandle());
+                break;
+            }
+
+            // once intake resumes the subscription in hand is the one that probes the half open breaker
+            if (!processSubscriptionService.getCircuitBreakers().allowIntake()
+                    && !pauseIntake(subscriptionQueueItemFromQueue, report, context, pipeline)) {
                 break;
             }
 
-            executor.execute(new ProcessSubscriptionTask(
-                    subscriptionQueueItemFromQueue, report, processSubscriptionService, queueItemRemover));
+            pipeline.submit(subscriptionQueueItemFromQueue);
         }
+        subscriptionsReceiver.stop();
 
         try {
-            executor.shutdown();
-            executor.awaitTermination(postProcessingDelayMs, TimeUnit.MILLISECONDS);
+            pipeline.awaitCompletion(drainWindowMs(context, pipeline));
         } catch (InterruptedException e) {
-            logger.warn("InterruptedException whilst awaiting executor termination", e);
+            logger.warn("InterruptedException whilst awaiting pipeline completion", e);
 
             // Restore interrupted state...
             Thread.currentThread().interrupt();
         } finally {
+            visibilityHeartbeat.stop();
+            report.addFailedToAcknowledge(queueItemRemover.flushAcknowledgements(
+                    Math.max(0, context.getRemainingTimeInMillis() - ACKNOWLEDGEMENT_FLUSH_MARGIN_MS)));
+
             EventLogger.logEvent(new RemindersProcessedEvent()
                     .setAmountOfMessagesSuccessfullyProcessed(report.getSuccessfullyProcessed())
                     .setDurationToProcessAllMessages(report.getDurationToProcessTheMessages())
-                    .setAmountOfMessagesFailedToProcess(report.getFailedToProcess()));
+                    .setAmountOfMessagesFailedToProcess(report.getFailedToProcess())
+                    .setAmountOfMessagesRequeuedForRetry(report.getRequeuedForRetry())
+                    .setAmountOfMessagesFailedToAcknowledge(report.getFailedToAcknowledge())
+                    .setAmountOfMessagesReleased(report.getReleased()));
+            EventLogger.logEvent(new VehicleDetailsCacheEvent().setCache(processSubscriptionService.getVehicleDetailsCache()));
+            processSubscriptionService.getVehicleDetailsClient().getRequestHedger().ifPresent(hedger ->
+                    EventLogger.logEvent(new VehicleDetailsHedgingEvent().setHedger(hedger)));
         }
 
         return report;
     }
 
-    private boolean passedTimeoutThreshold(NotifierReport report, Context context) {
+    /**
+     * Stops receiving while a dependency's circuit breaker is open, handing the other subscriptions already received back to
+     * the queue until the breaker is ready to be probed, then waits for that moment. The subscription in hand is kept
+     * invisible meanwhile, to be taken on as the probe, and is only handed back if the wait is given up.
+     *
+     * @return false if the invocation ran out of time whilst waiting
+     */
+    private boolean pauseIntake(SubscriptionQueueItem subscription, NotifierReport report, Context context,
+            SubscriptionPipeline pipeline) {
+
+        CircuitBreakers circuitBreakers = processSubscriptionService.getCircuitBreakers();
+        long retryAfterMs = circuitBreakers.getRetryAfterMs();
+
+        List<SubscriptionQueueItem> held = new ArrayList<>(subscriptionsReceiver.pause());
+        held.forEach(heldSubscription -> release(heldSubscription, report, retryAfterMs));
+
+        EventLogger.logEvent(new IntakePausedEvent()
+                .setOpenCircuitBreakers(circuitBreakers.getOpen())
+                .setReleased(held.size())
+                .setRetryAfter(retryAfterMs));
+
+        boolean resumed = false;
+        try {
+            while (!circuitBreakers.allowIntake()) {
+                if (passedTimeoutThreshold(report, context, pipeline)) {
+                    return false;
+                }
+                Thread.sleep(INTAKE_CHECK_INTERVAL_MS);
+            }
+            resumed = true;
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            if (!resumed) {
+                release(subscription, report, circuitBreakers.getRetryAfterMs());
+            }
+            subscriptionsReceiver.resume();
+        }
+    }
+
+    private void release(SubscriptionQueueItem subscription, NotifierReport report, long retryAfterMs) {
+
+        visibilityHeartbeat.release(subscription.getMessageReceiptHandle());
+        new ProcessSubscriptionTask(subscription, report, processSubscriptionService, queueItemRemover).release(retryAfterMs);
+    }
+
+    /**
+     * A subscription is only taken on when it can be expected to complete, along with those already in the pipeline, in the
+     * time left. Until enough subscriptions have completed to tell how long that takes, the fixed threshold applies.
+     */
+    private boolean passedTimeoutThreshold(NotifierReport report, Context context, SubscriptionPipeline pipeline) {
+
+        // subscriptions queued behind Notify's rate limit need time to be sent before the invocation ends
+        long expectedNotifyWaitMs = processSubscriptionService.getExpectedNotifyWaitMs(pipeline.getAwaitingNotification());
+
+        int inFlight = pipeline.getInFlight();
+        long expectedCompletionMs = pipeline.getCompletionEstimator().getExpectedCompletionMs(inFlight + 1);
+        long requiredMs = expectedCompletionMs < 0
+                ? remaingingTimeThresholdMs + expectedNotifyWaitMs
+                : Math.max(expectedCompletionMs, expectedNotifyWaitMs) + COMPLETION_MARGIN_MS;
 
         boolean passedThreshold = false;
-        if (context.getRemainingTimeInMillis() < remaingingTimeThresholdMs) {
+        if (context.getRemainingTimeInMillis() < requiredMs) {
             EventLogger.logEvent(new UnloadingTimedOutEvent()
                     .setProcessed(report.getSuccessfullyProcessed())
-                    .setDuration(report.getDurationToProcessTheMessages()));
+                    .setDuration(report.getDurationToProcessTheMessages())
+                    .setExpectedNotifyWait(expectedNotifyWaitMs)
+                    .setExpectedCompletion(expectedCompletionMs)
+                    .setInFlight(inFlight));
             passedThreshold = true;
         }
         return passedThreshold;
     }
+
+    /**
+     * @return how long to wait for the pipeline to drain, which is the time the subscriptions in it are expected to take with
+     *     one more subscription's worth to spare, or the fixed delay until that can be told, and never more than the time left
+     */
+    private long drainWindowMs(Context context, SubscriptionPipeline pipeline) {
+
+        CompletionEstimator completionEstimator = pipeline.getCompletionEstimator();
+        long expectedCompletionMs = completionEstimator.getExpectedCompletionMs(pipeline.getInFlight());
+        long availableMs = Math.max(0, context.getRemainingTimeInMillis() - COMPLETION_MARGIN_MS);
+
+        if (expectedCompletionMs < 0) {
+            return Math.min(postProcessingDelayMs, availableMs);
+        }
+        return Math.min(expectedCompletionMs + completionEstimator.getLatencyP95Ms(), availableMs);
+    }
 }
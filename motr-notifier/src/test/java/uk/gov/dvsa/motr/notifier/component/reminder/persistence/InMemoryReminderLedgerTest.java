@@ -0,0 +1,58 @@
+package uk.gov.dvsa.motr.notifier.component.reminder.persistence;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryReminderLedgerTest {
+
+    @Test
+    public void whenReminderIsRecorded_thenClaimingItAgainFails() {
+
+        InMemoryReminderLedger ledger = new InMemoryReminderLedger(60000, 60000);
+
+        assertFalse(ledger.isRecorded("12345#one-month#2017-09-10"));
+        assertTrue(ledger.claim("12345#one-month#2017-09-10"));
+        ledger.record("12345#one-month#2017-09-10");
+        assertTrue(ledger.isRecorded("12345#one-month#2017-09-10"));
+        assertFalse(ledger.claim("12345#one-month#2017-09-10"));
+    }
+
+    @Test
+    public void whenReminderIsClaimed_thenItIsOnlyClaimedAgainOnceReleased() {
+
+        InMemoryReminderLedger ledger = new InMemoryReminderLedger(60000, 60000);
+
+        assertTrue(ledger.claim("12345#one-month#2017-09-10"));
+        assertFalse(ledger.isRecorded("12345#one-month#2017-09-10"));
+        assertFalse(ledger.claim("12345#one-month#2017-09-10"));
+
+        ledger.release("12345#one-month#2017-09-10");
+
+        assertTrue(ledger.claim("12345#one-month#2017-09-10"));
+    }
+
+    @Test
+    public void whenClaimHasLapsed_thenReminderCanBeClaimedAgain() throws Exception {
+
+        InMemoryReminderLedger ledger = new InMemoryReminderLedger(60000, 10);
+        ledger.claim("12345#one-month#2017-09-10");
+
+        Thread.sleep(20);
+
+        assertTrue(ledger.claim("12345#one-month#2017-09-10"));
+    }
+
+    @Test
+    public void whenRecordHasExpired_thenReminderCanBeClaimedAgain() throws Exception {
+
+        InMemoryReminderLedger ledger = new InMemoryReminderLedger(10, 10);
+        ledger.record("12345#one-month#2017-09-10");
+
+        Thread.sleep(20);
+
+        assertFalse(ledger.isRecorded("12345#one-month#2017-09-10"));
+        assertTrue(ledger.claim("12345#one-month#2017-09-10"));
+    }
+}
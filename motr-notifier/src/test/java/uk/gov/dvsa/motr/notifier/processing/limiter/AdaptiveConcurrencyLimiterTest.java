@@ -0,0 +1,105 @@
+package uk.gov.dvsa.motr.notifier.processing.limiter;
+
+import org.junit.Test;
+
+import uk.gov.dvsa.motr.vehicledetails.VehicleDetailsClientException;
+import uk.gov.dvsa.motr.vehicledetails.VehicleDetailsEndpointResponseException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long ONE_MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void whenCallsSucceedWhileTheLimitIsInUse_thenTheLimitGrowsUpToTheMaximum() throws Exception {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 3);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread busy = inBackground(limiter, release);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.recordSample(ONE_MS, false);
+        }
+        release.countDown();
+        busy.join(5000);
+
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    public void whenServiceIsOverloaded_thenTheLimitIsHalvedOncePerCallDuration() {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 8);
+
+        assertEquals(4, limiter.recordSample(TimeUnit.SECONDS.toNanos(10), true));
+        assertEquals(4, limiter.recordSample(TimeUnit.SECONDS.toNanos(10), true));
+    }
+
+    @Test
+    public void whenLatencyRisesWellAboveTheBaseline_thenTheLimitIsReduced() {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 8);
+
+        limiter.recordSample(10 * ONE_MS, false);
+        assertEquals(8, limiter.recordSample(15 * ONE_MS, false));
+        assertEquals(4, limiter.recordSample(50 * ONE_MS, false));
+        assertEquals(10, limiter.getBaselineLatencyMs());
+    }
+
+    @Test
+    public void whenLimitIsReached_thenFurtherCallsWaitForOneToFinish() throws Exception {
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread first = inBackground(limiter, release);
+
+        AtomicBoolean secondCalled = new AtomicBoolean(false);
+        Thread second = new Thread(() -> limiter.execute(() -> secondCalled.getAndSet(true)));
+        second.start();
+        Thread.sleep(200);
+
+        assertFalse(secondCalled.get());
+        assertEquals(1, limiter.getInFlight());
+
+        release.countDown();
+        first.join(5000);
+        second.join(5000);
+        assertTrue(secondCalled.get());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void whenCallFails_thenOnlyThrottlingServerErrorsAndTimeoutsCountAsOverload() {
+
+        assertTrue(AdaptiveConcurrencyLimiter.isOverload(new VehicleDetailsEndpointResponseException(429, "")));
+        assertTrue(AdaptiveConcurrencyLimiter.isOverload(new VehicleDetailsEndpointResponseException(503, "")));
+        assertTrue(AdaptiveConcurrencyLimiter.isOverload(new VehicleDetailsClientException("timed out")));
+        assertFalse(AdaptiveConcurrencyLimiter.isOverload(new VehicleDetailsEndpointResponseException(404, "")));
+        assertFalse(AdaptiveConcurrencyLimiter.isOverload(new Exception(new VehicleDetailsEndpointResponseException(400, ""))));
+    }
+
+    private Thread inBackground(AdaptiveConcurrencyLimiter limiter, CountDownLatch release) throws InterruptedException {
+
+        CountDownLatch started = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            try {
+                limiter.execute(() -> {
+                    started.countDown();
+                    return release.await(5, TimeUnit.SECONDS);
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        started.await(5, TimeUnit.SECONDS);
+        return thread;
+    }
+}
@@ -0,0 +1,88 @@
+package uk.gov.dvsa.motr.notifier.processing.limiter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+
+    private CircuitBreaker circuitBreaker = new CircuitBreaker("test", 2, 100, failure -> failure instanceof IllegalStateException);
+
+    @Test
+    public void whenFailuresInARowReachTheThreshold_thenCallsAreRejected() {
+
+        failCall();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        failCall();
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowIntake());
+        try {
+            circuitBreaker.execute(() -> "not called");
+            fail();
+        } catch (CircuitBreakerOpenException e) {
+            assertTrue(e.getRetryAfterMs() > 0);
+        }
+        assertEquals(1, circuitBreaker.getTimesOpened());
+        assertEquals(1, circuitBreaker.getRejected());
+    }
+
+    @Test
+    public void whenFailureIsNotTheDependencysFault_thenItDoesNotCount() {
+
+        for (int i = 0; i < 5; i++) {
+            try {
+                circuitBreaker.execute(() -> {
+                    throw new IllegalArgumentException("bad request");
+                });
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void whenOpenDurationHasPassed_thenOneProbeIsAdmittedAndItsSuccessClosesTheBreaker() throws Exception {
+
+        failCall();
+        failCall();
+        Thread.sleep(150);
+
+        assertTrue(circuitBreaker.allowIntake());
+        assertFalse(circuitBreaker.allowIntake());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+        assertEquals("probe", circuitBreaker.execute(() -> "probe"));
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.allowIntake());
+    }
+
+    @Test
+    public void whenProbeFails_thenTheBreakerOpensAgain() throws Exception {
+
+        failCall();
+        failCall();
+        Thread.sleep(150);
+
+        failCall();
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(2, circuitBreaker.getTimesOpened());
+    }
+
+    private void failCall() {
+
+        try {
+            circuitBreaker.execute(() -> {
+                throw new IllegalStateException("unavailable");
+            });
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package uk.gov.dvsa.motr.notifier.processing.limiter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+
+    @Test
+    public void whenBurstIsAvailable_thenCallersDoNotWait() {
+
+        TokenBucket bucket = new TokenBucket(1, 5);
+        long startedAt = System.currentTimeMillis();
+
+        for (int i = 0; i < 5; i++) {
+            bucket.acquire();
+        }
+
+        assertTrue(System.currentTimeMillis() - startedAt < 500);
+        assertEquals(0, bucket.getThrottled());
+    }
+
+    @Test
+    public void whenBurstIsSpent_thenCallersAreSpacedOutAtTheRate() {
+
+        TokenBucket bucket = new TokenBucket(20, 1);
+        long startedAt = System.currentTimeMillis();
+
+        for (int i = 0; i < 5; i++) {
+            bucket.acquire();
+        }
+
+        // the first token is in the bucket, the next four accrue at 50ms each
+        assertTrue(System.currentTimeMillis() - startedAt >= 190);
+        assertEquals(4, bucket.getThrottled());
+    }
+
+    @Test
+    public void whenCallersAreWaiting_thenTheyAreAdmittedInOrderOfArrival() throws Exception {
+
+        TokenBucket bucket = new TokenBucket(20, 1);
+        bucket.acquire();
+        List<Integer> admitted = Collections.synchronizedList(new ArrayList<>());
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            int caller = i;
+            Thread thread = new Thread(() -> {
+                bucket.acquire();
+                admitted.add(caller);
+            });
+            threads.add(thread);
+            thread.start();
+            Thread.sleep(10);
+        }
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertEquals(Arrays.asList(0, 1, 2, 3), admitted);
+    }
+
+    @Test
+    public void whenTokensAreOwed_thenExpectedWaitCoversThemAndTheBacklog() {
+
+        TokenBucket bucket = new TokenBucket(10, 2);
+        bucket.acquire();
+        bucket.acquire();
+
+        long expectedWaitMs = bucket.getExpectedWaitMs(9);
+
+        assertTrue(expectedWaitMs > 900 && expectedWaitMs <= 1000);
+        assertEquals(0, TokenBucket.unlimited().getExpectedWaitMs(1000));
+    }
+}
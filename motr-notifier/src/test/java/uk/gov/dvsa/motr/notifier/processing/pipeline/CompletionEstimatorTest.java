@@ -0,0 +1,51 @@
+package uk.gov.dvsa.motr.notifier.processing.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CompletionEstimatorTest {
+
+    @Test
+    public void whenTooFewSubscriptionsHaveCompleted_thenNothingIsEstimated() {
+
+        CompletionEstimator estimator = new CompletionEstimator();
+
+        for (int i = 0; i < CompletionEstimator.MIN_SAMPLES - 1; i++) {
+            estimator.record(i * 100, i * 100 + 50);
+        }
+
+        assertEquals(-1, estimator.getLatencyP95Ms());
+        assertEquals(-1, estimator.getExpectedCompletionMs(1));
+    }
+
+    @Test
+    public void whenSubscriptionsHaveCompleted_thenLatencyIsTheirNinetyFifthPercentile() {
+
+        CompletionEstimator estimator = new CompletionEstimator();
+
+        // latencies of 10ms to 200ms, completing together
+        for (int i = 1; i <= 20; i++) {
+            estimator.record(1000 - i * 10, 1000);
+        }
+
+        assertEquals(190, estimator.getLatencyP95Ms());
+        assertEquals(190, estimator.getExpectedCompletionMs(5));
+        assertEquals(0, estimator.getExpectedCompletionMs(0));
+    }
+
+    @Test
+    public void whenManySubscriptionsAreInFlight_thenTheyAreExpectedToCompleteAtTheRecentRate() {
+
+        CompletionEstimator estimator = new CompletionEstimator();
+
+        // one completion every 100ms, each taking 50ms
+        for (int i = 0; i < 21; i++) {
+            estimator.record(i * 100, i * 100 + 50);
+        }
+
+        assertEquals(50, estimator.getLatencyP95Ms());
+        assertEquals(100, estimator.getExpectedCompletionMs(1));
+        assertEquals(1000, estimator.getExpectedCompletionMs(10));
+    }
+}
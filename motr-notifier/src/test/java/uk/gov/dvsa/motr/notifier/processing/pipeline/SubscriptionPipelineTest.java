@@ -0,0 +1,116 @@
+package uk.gov.dvsa.motr.notifier.processing.pipeline;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.dvsa.motr.notifier.processing.model.ContactDetail;
+import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionQueueItem;
+import uk.gov.dvsa.motr.notifier.processing.queue.QueueItemRemover;
+import uk.gov.dvsa.motr.notifier.processing.queue.VisibilityHeartbeat;
+import uk.gov.dvsa.motr.notifier.processing.service.ProcessSubscriptionService;
+import uk.gov.dvsa.motr.notifier.processing.service.SubscriptionDecision;
+import uk.gov.dvsa.motr.notifier.processing.service.VehicleNotFoundException;
+import uk.gov.dvsa.motr.notifier.processing.unloader.NotifierReport;
+import uk.gov.dvsa.motr.vehicledetails.VehicleDetails;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SubscriptionPipelineTest {
+
+    private NotifierReport report = mock(NotifierReport.class);
+    private ProcessSubscriptionService processSubscriptionService = mock(ProcessSubscriptionService.class);
+    private QueueItemRemover queueItemRemover = mock(QueueItemRemover.class);
+    private VisibilityHeartbeat visibilityHeartbeat = mock(VisibilityHeartbeat.class);
+
+    private SubscriptionQueueItem subscription;
+    private SubscriptionPipeline pipeline;
+
+    @Before
+    public void setUp() {
+
+        subscription = new SubscriptionQueueItem().setId("TEST-ID")
+                .setMotDueDate(LocalDate.of(2017, 10, 10))
+                .setVrm("12345")
+                .setMessageReceiptHandle("TEST-RECEIPT-HANDLE")
+                .setMotTestNumber("test-mot-number-123")
+                .setContactDetail(new ContactDetail("test@test.com", SubscriptionQueueItem.ContactType.EMAIL));
+
+        pipeline = new SubscriptionPipeline(processSubscriptionService, queueItemRemover, visibilityHeartbeat, report,
+                new PipelineSizing().setFetchWorkers(2).setQueueCapacity(2));
+    }
+
+    @Test
+    public void whenSubscriptionPassesEveryStage_thenItIsRemovedFromTheQueue() throws Exception {
+
+        VehicleDetails vehicleDetails = new VehicleDetails();
+        SubscriptionDecision decision = new SubscriptionDecision(subscription, vehicleDetails);
+        when(processSubscriptionService.fetchVehicleDetails(subscription)).thenReturn(vehicleDetails);
+        when(processSubscriptionService.decide(subscription, vehicleDetails)).thenReturn(decision);
+
+        pipeline.submit(subscription);
+
+        assertTrue(pipeline.awaitCompletion(5000));
+        verify(processSubscriptionService).persist(decision);
+        verify(processSubscriptionService).notify(decision);
+        verify(processSubscriptionService).applyChanges(decision);
+        verify(queueItemRemover).removeProcessedQueueItem(subscription);
+        verify(report).incrementSuccessfullyProcessed();
+        verify(visibilityHeartbeat).release(subscription.getMessageReceiptHandle());
+        assertEquals(0, pipeline.getInFlight());
+    }
+
+    @Test
+    public void whenVehicleCannotBeFetched_thenLaterStagesAreSkippedAndSubscriptionIsRequeued() throws Exception {
+
+        when(processSubscriptionService.fetchVehicleDetails(subscription)).thenThrow(new VehicleNotFoundException("not found"));
+        when(queueItemRemover.requeueFailedQueueItem(subscription)).thenReturn(true);
+
+        pipeline.submit(subscription);
+
+        assertTrue(pipeline.awaitCompletion(5000));
+        verify(processSubscriptionService, never()).decide(any(), any());
+        verify(processSubscriptionService, never()).notify(any());
+        verify(processSubscriptionService, never()).applyChanges(any());
+        verify(queueItemRemover, never()).removeProcessedQueueItem(subscription);
+        verify(report).incrementFailedToProcess();
+        verify(report).incrementRequeuedForRetry();
+    }
+
+    @Test
+    public void whenPipelineHasStopped_thenSubmittedSubscriptionIsRequeuedAndReleased() throws Exception {
+
+        when(queueItemRemover.requeueFailedQueueItem(subscription)).thenReturn(true);
+        assertTrue(pipeline.awaitCompletion(5000));
+
+        pipeline.submit(subscription);
+
+        verify(processSubscriptionService, never()).fetchVehicleDetails(any());
+        verify(queueItemRemover).requeueFailedQueueItem(subscription);
+        verify(report).incrementRequeuedForRetry();
+        verify(visibilityHeartbeat).release(subscription.getMessageReceiptHandle());
+        assertEquals(0, pipeline.getInFlight());
+    }
+
+    @Test
+    public void whenSubscriptionsAreProcessed_thenEachStageCountsTheWorkItDid() throws Exception {
+
+        when(processSubscriptionService.fetchVehicleDetails(any())).thenReturn(new VehicleDetails());
+        when(processSubscriptionService.decide(any(), any())).thenReturn(new SubscriptionDecision(subscription, null));
+
+        for (int i = 0; i < 5; i++) {
+            pipeline.submit(subscription);
+        }
+
+        assertTrue(pipeline.awaitCompletion(5000));
+        pipeline.stages().forEach(stage -> assertEquals(stage.getName(), 5, stage.getProcessed()));
+        assertEquals(0, pipeline.stages().get(0).getQueueDepth());
+    }
+}
@@ -0,0 +1,115 @@
+package uk.gov.dvsa.motr.notifier.processing.queue;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AcknowledgementBatcherTest {
+
+    private static final String QUEUE_URL = "http://fake-queue-url/";
+    private static final long LONG_LINGER_MS = 60000;
+
+    private AmazonSQS client = mock(AmazonSQS.class);
+    private List<List<String>> sentBatches = new ArrayList<>();
+    private Set<String> retryableFailures = new HashSet<>();
+    private Set<String> senderFaults = new HashSet<>();
+
+    @Before
+    public void setUp() {
+
+        when(client.deleteMessageBatch(any(DeleteMessageBatchRequest.class))).thenAnswer(invocation -> {
+            DeleteMessageBatchRequest request = (DeleteMessageBatchRequest) invocation.getArguments()[0];
+            sentBatches.add(request.getEntries().stream().map(DeleteMessageBatchRequestEntry::getReceiptHandle)
+                    .collect(Collectors.toList()));
+
+            DeleteMessageBatchResult result = new DeleteMessageBatchResult();
+            for (DeleteMessageBatchRequestEntry entry : request.getEntries()) {
+                if (retryableFailures.remove(entry.getReceiptHandle())) {
+                    result.withFailed(new BatchResultErrorEntry().withId(entry.getId()).withSenderFault(false));
+                } else if (senderFaults.contains(entry.getReceiptHandle())) {
+                    result.withFailed(new BatchResultErrorEntry().withId(entry.getId()).withSenderFault(true));
+                } else {
+                    result.withSuccessful(new DeleteMessageBatchResultEntry().withId(entry.getId()));
+                }
+            }
+            return result;
+        });
+    }
+
+    @Test
+    public void whenBatchIsFull_thenItIsDeletedWithoutWaitingForClose() {
+
+        AcknowledgementBatcher batcher = new AcknowledgementBatcher(client, QUEUE_URL, LONG_LINGER_MS);
+
+        for (int i = 0; i < 12; i++) {
+            batcher.add("HANDLE-" + i);
+        }
+
+        assertEquals(1, sentBatches.size());
+        assertEquals(AcknowledgementBatcher.MAX_BATCH_SIZE, sentBatches.get(0).size());
+
+        assertEquals(0, batcher.close(1000));
+        assertEquals(2, sentBatches.size());
+        assertEquals(12, batcher.getAcknowledged());
+    }
+
+    @Test
+    public void whenEntryFailsInBatch_thenOnlyThatEntryIsRetried() {
+
+        retryableFailures.add("HANDLE-1");
+        AcknowledgementBatcher batcher = new AcknowledgementBatcher(client, QUEUE_URL, LONG_LINGER_MS);
+
+        for (int i = 0; i < 3; i++) {
+            batcher.add("HANDLE-" + i);
+        }
+
+        assertEquals(0, batcher.close(1000));
+        assertEquals(2, sentBatches.size());
+        assertEquals(1, sentBatches.get(1).size());
+        assertEquals("HANDLE-1", sentBatches.get(1).get(0));
+        assertEquals(3, batcher.getAcknowledged());
+    }
+
+    @Test
+    public void whenEntryFailsThroughSenderFault_thenItIsNotRetried() {
+
+        senderFaults.add("EXPIRED-HANDLE");
+        AcknowledgementBatcher batcher = new AcknowledgementBatcher(client, QUEUE_URL, LONG_LINGER_MS);
+
+        batcher.add("EXPIRED-HANDLE");
+
+        assertEquals(1, batcher.close(1000));
+        assertEquals(1, sentBatches.size());
+    }
+
+    @Test
+    public void whenHandleLingers_thenPartialBatchIsSent() throws Exception {
+
+        AcknowledgementBatcher batcher = new AcknowledgementBatcher(client, QUEUE_URL, 10);
+
+        batcher.add("HANDLE-0");
+        for (int i = 0; i < 100 && sentBatches.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, sentBatches.size());
+        batcher.close(1000);
+    }
+}
@@ -0,0 +1,126 @@
+package uk.gov.dvsa.motr.notifier.processing.queue;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Test;
+
+import uk.gov.dvsa.motr.notifier.processing.model.ContactDetail;
+import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionEnvelope;
+import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionQueueItem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PrefetchingSubscriptionsReceiverTest {
+
+    private AmazonSQS amazonSyncSqsClient = mock(AmazonSQS.class);
+    private ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest("queue-url").withMaxNumberOfMessages(1);
+
+    @Test
+    public void whenFetchersDrainTheQueue_thenEverySubscriptionIsReturnedOnce() throws Exception {
+
+        AtomicInteger received = new AtomicInteger(0);
+        when(amazonSyncSqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenAnswer(invocation -> {
+            int id = received.getAndIncrement();
+            return id < 20 ? receiveMessageResult("vrm-" + id) : new ReceiveMessageResult();
+        });
+
+        Set<String> vrms = new HashSet<>();
+        for (SubscriptionQueueItem subscription : new PrefetchingSubscriptionsReceiver(amazonSyncSqsClient, receiveMessageRequest, 3, 5)) {
+            vrms.add(subscription.getVrm());
+        }
+
+        assertEquals(20, vrms.size());
+    }
+
+    @Test
+    public void whenBufferIsFull_thenFetchersStopPolling() throws Exception {
+
+        AtomicInteger received = new AtomicInteger(0);
+        when(amazonSyncSqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenAnswer(invocation ->
+                receiveMessageResult("vrm-" + received.getAndIncrement()));
+
+        PrefetchingSubscriptionsReceiver receiver = new PrefetchingSubscriptionsReceiver(amazonSyncSqsClient, receiveMessageRequest, 2, 4);
+        Iterator<SubscriptionQueueItem> iterator = receiver.iterator();
+        iterator.next();
+        Thread.sleep(300);
+        receiver.stop();
+
+        // four buffered, one taken and at most one polled by each fetcher while the buffer had room
+        assertTrue(received.get() <= 7);
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void whenMessagesAreEnvelopes_thenRoomIsCountedInSubscriptions() throws Exception {
+
+        AtomicInteger received = new AtomicInteger(0);
+        when(amazonSyncSqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenAnswer(invocation ->
+                envelopeReceiveMessageResult("envelope-" + received.getAndIncrement(), 3));
+
+        PrefetchingSubscriptionsReceiver receiver = new PrefetchingSubscriptionsReceiver(amazonSyncSqsClient, receiveMessageRequest, 2, 4);
+        Iterator<SubscriptionQueueItem> iterator = receiver.iterator();
+        iterator.next();
+        Thread.sleep(300);
+        receiver.stop();
+
+        // once an envelope of three has been seen a second one no longer fits alongside it
+        assertTrue(received.get() <= 2);
+    }
+
+    private ReceiveMessageResult envelopeReceiveMessageResult(String receiptHandle, int size) throws JsonProcessingException {
+
+        List<SubscriptionQueueItem> subscriptions = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            subscriptions.add(new SubscriptionQueueItem()
+                    .setId(receiptHandle + "-" + i)
+                    .setVrm(receiptHandle + "-" + i)
+                    .setContactDetail(new ContactDetail("test@email.com", SubscriptionQueueItem.ContactType.EMAIL)));
+        }
+
+        Message message = new Message();
+        message.setBody(new ObjectMapper().writeValueAsString(new SubscriptionEnvelope()
+                .setVersion(SubscriptionEnvelope.SUPPORTED_VERSION)
+                .setSubscriptions(subscriptions)));
+        HashMap<String, MessageAttributeValue> attributeValueHashMap = new HashMap<>();
+        attributeValueHashMap.put("correlation-id", new MessageAttributeValue().withStringValue("test-correlation-id"));
+        attributeValueHashMap.put(SubscriptionEnvelope.VERSION_ATTRIBUTE, new MessageAttributeValue().withStringValue("1"));
+        message.setMessageAttributes(attributeValueHashMap);
+        message.setReceiptHandle(receiptHandle);
+
+        return new ReceiveMessageResult().withMessages(message);
+    }
+
+    private ReceiveMessageResult receiveMessageResult(String vrm) throws JsonProcessingException {
+
+        Message message = new Message();
+        message.setBody(new ObjectMapper().writeValueAsString(new SubscriptionQueueItem()
+                .setId(vrm)
+                .setVrm(vrm)
+                .setContactDetail(new ContactDetail("test@email.com", SubscriptionQueueItem.ContactType.EMAIL))));
+        HashMap<String, MessageAttributeValue> attributeValueHashMap = new HashMap<>();
+        attributeValueHashMap.put("correlation-id", new MessageAttributeValue().withStringValue("test-correlation-id"));
+        message.setMessageAttributes(attributeValueHashMap);
+        message.setReceiptHandle("receipt-handle-" + vrm);
+
+        return new ReceiveMessageResult().withMessages(message);
+    }
+}
@@ -1,13 +1,22 @@
 package uk.gov.dvsa.motr.notifier.processing.queue;
 
 import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
 import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import uk.gov.dvsa.motr.notifier.processing.model.ContactDetail;
+import uk.gov.dvsa.motr.notifier.processing.model.EnvelopeProgress;
 import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionQueueItem;
 
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -33,4 +42,63 @@ public class SubscriptionDbItemQueueItemRemoverTest {
 
         verify(client, times(1)).deleteMessage(expectedRequest);
     }
+
+    @Test
+    public void envelopeIsRemovedOnlyOnceAllItsSubscriptionsAreProcessed() throws RemoveSubscriptionFromQueueException {
+
+        EnvelopeProgress envelope = new EnvelopeProgress("ENVELOPE-RECEIPT-HANDLE", 2);
+        SubscriptionQueueItem first = envelopeItem("ID-1", envelope);
+        SubscriptionQueueItem second = envelopeItem("ID-2", envelope);
+
+        queueItemRemover.removeProcessedQueueItem(first);
+        verify(client, times(0)).deleteMessage(any(DeleteMessageRequest.class));
+
+        queueItemRemover.removeProcessedQueueItem(second);
+        verify(client, times(1)).deleteMessage(new DeleteMessageRequest(queueUrl, "ENVELOPE-RECEIPT-HANDLE"));
+    }
+
+    @Test
+    public void failedEnvelopeSubscriptionIsRequeuedOnItsOwn() throws RemoveSubscriptionFromQueueException {
+
+        EnvelopeProgress envelope = new EnvelopeProgress("ENVELOPE-RECEIPT-HANDLE", 1);
+
+        assertTrue(queueItemRemover.requeueFailedQueueItem(envelopeItem("ID-1", envelope)));
+
+        verify(client, times(1)).sendMessage(any(SendMessageRequest.class));
+        verify(client, times(1)).deleteMessage(new DeleteMessageRequest(queueUrl, "ENVELOPE-RECEIPT-HANDLE"));
+    }
+
+    @Test
+    public void releasedSingleSubscriptionBecomesVisibleAfterTheGivenTime() throws RemoveSubscriptionFromQueueException {
+
+        SubscriptionQueueItem subscriptionQueueItem = new SubscriptionQueueItem().setMessageReceiptHandle("TEST-RECEIPT-HANDLE");
+
+        queueItemRemover.releaseQueueItem(subscriptionQueueItem, 30);
+
+        verify(client, times(1)).changeMessageVisibility(new ChangeMessageVisibilityRequest(queueUrl, "TEST-RECEIPT-HANDLE", 30));
+        verify(client, times(0)).deleteMessage(any(DeleteMessageRequest.class));
+    }
+
+    @Test
+    public void failedSingleSubscriptionIsLeftOnTheQueue() throws RemoveSubscriptionFromQueueException {
+
+        SubscriptionQueueItem subscriptionQueueItem = new SubscriptionQueueItem().setMessageReceiptHandle("TEST-RECEIPT-HANDLE");
+
+        assertFalse(queueItemRemover.requeueFailedQueueItem(subscriptionQueueItem));
+
+        verify(client, times(0)).sendMessage(any(SendMessageRequest.class));
+        verify(client, times(0)).deleteMessage(any(DeleteMessageRequest.class));
+    }
+
+    private SubscriptionQueueItem envelopeItem(String id, EnvelopeProgress envelope) {
+
+        return new SubscriptionQueueItem()
+                .setId(id)
+                .setVrm("VRM")
+                .setMotDueDate(LocalDate.of(2017, 10, 10))
+                .setContactDetail(new ContactDetail("test@test.com", SubscriptionQueueItem.ContactType.EMAIL))
+                .setMessageReceiptHandle(envelope.getMessageReceiptHandle())
+                .setMessageCorrelationId("CORRELATION-ID")
+                .setEnvelope(envelope);
+    }
 }
@@ -11,12 +11,16 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Test;
 
 import uk.gov.dvsa.motr.notifier.processing.model.ContactDetail;
+import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionEnvelope;
 import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionQueueItem;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
@@ -64,6 +68,57 @@ public class SubscriptionsReceiverTest  {
         verify(amazonSyncSqsClient, times(2)).receiveMessage(any(ReceiveMessageRequest.class));
     }
 
+    @Test
+    public void whenMessageIsEnvelope_thenEachOfItsSubscriptionsIsReturned() throws JsonProcessingException {
+
+        when(amazonSyncSqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(mockEnvelopeReceiveMessageResult())
+                .thenReturn(new ReceiveMessageResult());
+
+        Iterator<SubscriptionQueueItem> iterator = subscriptionsReceiver().iterator();
+        SubscriptionQueueItem first = iterator.next();
+        SubscriptionQueueItem second = iterator.next();
+
+        assertEquals("vrm-1", first.getVrm());
+        assertEquals("vrm-2", second.getVrm());
+        assertEquals("Envelope-receipt-handle", second.getMessageReceiptHandle());
+        assertEquals("test-correlation-id", second.getMessageCorrelationId());
+        assertSame(first.getEnvelope(), second.getEnvelope());
+        assertEquals(2, first.getEnvelope().getRemaining());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void whenEnvelopeVersionIsNotSupported_thenMessageIsRejected() throws JsonProcessingException {
+
+        ReceiveMessageResult result = mockEnvelopeReceiveMessageResult();
+        result.getMessages().get(0).setBody(new ObjectMapper().writeValueAsString(new SubscriptionEnvelope().setVersion(2)));
+        when(amazonSyncSqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(result);
+
+        subscriptionsReceiver().iterator();
+    }
+
+    private ReceiveMessageResult mockEnvelopeReceiveMessageResult() throws JsonProcessingException {
+
+        SubscriptionEnvelope envelope = new SubscriptionEnvelope()
+                .setVersion(SubscriptionEnvelope.SUPPORTED_VERSION)
+                .setSubscriptions(Arrays.asList(
+                        new SubscriptionQueueItem().setId("id-1").setVrm("vrm-1")
+                                .setContactDetail(new ContactDetail("test@email.com", SubscriptionQueueItem.ContactType.EMAIL)),
+                        new SubscriptionQueueItem().setId("id-2").setVrm("vrm-2")
+                                .setContactDetail(new ContactDetail("test@email.com", SubscriptionQueueItem.ContactType.EMAIL))));
+
+        Message message = new Message();
+        message.setBody(new ObjectMapper().writeValueAsString(envelope));
+        HashMap<String, MessageAttributeValue> attributeValueHashMap = new HashMap<>();
+        attributeValueHashMap.put("correlation-id", new MessageAttributeValue().withStringValue("test-correlation-id"));
+        attributeValueHashMap.put(SubscriptionEnvelope.VERSION_ATTRIBUTE, new MessageAttributeValue().withStringValue("1"));
+        message.setMessageAttributes(attributeValueHashMap);
+        message.setReceiptHandle("Envelope-receipt-handle");
+
+        return new ReceiveMessageResult().withMessages(message);
+    }
+
     private ReceiveMessageResult mockRecieveMessageResult() throws JsonProcessingException {
 
         Message message = new Message();
@@ -0,0 +1,119 @@
+package uk.gov.dvsa.motr.notifier.processing.queue;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResultEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionQueueItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class VisibilityHeartbeatTest {
+
+    private static final String QUEUE_URL = "http://fake-queue-url/";
+
+    private AmazonSQS client = mock(AmazonSQS.class);
+    private Context context = mock(Context.class);
+    private List<String> extendedHandles = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+
+        when(context.getRemainingTimeInMillis()).thenReturn(300000);
+        when(client.changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class))).thenAnswer(invocation -> {
+            ChangeMessageVisibilityBatchRequest request = (ChangeMessageVisibilityBatchRequest) invocation.getArguments()[0];
+            extendedHandles.addAll(request.getEntries().stream()
+                    .map(ChangeMessageVisibilityBatchRequestEntry::getReceiptHandle)
+                    .collect(Collectors.toList()));
+            return new ChangeMessageVisibilityBatchResult().withSuccessful(request.getEntries().stream()
+                    .map(entry -> new ChangeMessageVisibilityBatchResultEntry().withId(entry.getId()))
+                    .collect(Collectors.toList()));
+        });
+    }
+
+    @Test
+    public void whenMessageIsCloseToBecomingVisible_thenItsVisibilityIsExtended() {
+
+        VisibilityHeartbeat heartbeat = new VisibilityHeartbeat(client, QUEUE_URL, 0, 60000);
+        heartbeat.track("HANDLE-1", System.currentTimeMillis(), 1);
+        heartbeat.track("HANDLE-2", System.currentTimeMillis(), 1);
+
+        assertEquals(2, heartbeat.extendExpiring());
+        assertEquals(2, extendedHandles.size());
+    }
+
+    @Test
+    public void whenMessageIsFarFromBecomingVisible_thenItIsLeftAlone() {
+
+        VisibilityHeartbeat heartbeat = new VisibilityHeartbeat(client, QUEUE_URL, 60, 60000);
+        heartbeat.track("HANDLE-1", System.currentTimeMillis(), 1);
+
+        assertEquals(0, heartbeat.extendExpiring());
+    }
+
+    @Test
+    public void whenMessageWaitedSinceItWasReceived_thenItsVisibilityIsExtendedFromTheReceive() {
+
+        VisibilityHeartbeat heartbeat = new VisibilityHeartbeat(client, QUEUE_URL, 60, 60000);
+        heartbeat.track("HANDLE-1", System.currentTimeMillis() - 50000, 1);
+
+        assertEquals(1, heartbeat.extendExpiring());
+    }
+
+    @Test
+    public void whenBatchIsTracked_thenEachMessageIsTrackedOnceForAllItsSubscriptions() {
+
+        VisibilityHeartbeat heartbeat = new VisibilityHeartbeat(client, QUEUE_URL, 0, 60000);
+        long receivedAt = System.currentTimeMillis();
+        heartbeat.track(Arrays.asList(
+                new SubscriptionQueueItem().setMessageReceiptHandle("ENVELOPE-HANDLE").setReceivedAt(receivedAt),
+                new SubscriptionQueueItem().setMessageReceiptHandle("ENVELOPE-HANDLE").setReceivedAt(receivedAt),
+                new SubscriptionQueueItem().setMessageReceiptHandle("HANDLE-1").setReceivedAt(receivedAt)));
+
+        heartbeat.release("ENVELOPE-HANDLE");
+        heartbeat.release("HANDLE-1");
+
+        assertEquals(1, heartbeat.extendExpiring());
+        assertEquals(Collections.singletonList("ENVELOPE-HANDLE"), extendedHandles);
+    }
+
+    @Test
+    public void whenEveryEnvelopeSubscriptionIsReleased_thenEnvelopeIsNoLongerExtended() {
+
+        VisibilityHeartbeat heartbeat = new VisibilityHeartbeat(client, QUEUE_URL, 0, 60000);
+        heartbeat.track("ENVELOPE-HANDLE", System.currentTimeMillis(), 2);
+
+        heartbeat.release("ENVELOPE-HANDLE");
+        assertEquals(1, heartbeat.extendExpiring());
+
+        heartbeat.release("ENVELOPE-HANDLE");
+        assertEquals(0, heartbeat.extendExpiring());
+    }
+
+    @Test
+    public void whenInvocationIsAboutToEnd_thenNothingIsExtended() {
+
+        when(context.getRemainingTimeInMillis()).thenReturn(1000);
+        VisibilityHeartbeat heartbeat = new VisibilityHeartbeat(client, QUEUE_URL, 0, 60000);
+        heartbeat.start(context);
+        heartbeat.track("HANDLE-1", System.currentTimeMillis(), 1);
+
+        assertEquals(0, heartbeat.extendExpiring());
+        heartbeat.stop();
+    }
+}
@@ -2,11 +2,17 @@ package uk.gov.dvsa.motr.notifier.processing.service;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
+import uk.gov.dvsa.motr.notifier.component.reminder.persistence.InMemoryReminderLedger;
+import uk.gov.dvsa.motr.notifier.component.reminder.persistence.ReminderLedger;
+import uk.gov.dvsa.motr.notifier.component.subscription.persistence.SubscriptionChangeSet;
 import uk.gov.dvsa.motr.notifier.component.subscription.persistence.SubscriptionRepository;
 import uk.gov.dvsa.motr.notifier.notify.NotifyEmailService;
 import uk.gov.dvsa.motr.notifier.notify.NotifySmsService;
 import uk.gov.dvsa.motr.notifier.processing.factory.SendableNotificationFactory;
+import uk.gov.dvsa.motr.notifier.processing.limiter.AdaptiveConcurrencyLimiter;
+import uk.gov.dvsa.motr.notifier.processing.limiter.CircuitBreakers;
 import uk.gov.dvsa.motr.notifier.processing.model.ContactDetail;
 import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionQueueItem;
 import uk.gov.dvsa.motr.notifier.processing.model.notification.email.MotTwoWeekEmailNotification;
@@ -16,16 +22,29 @@ import uk.gov.dvsa.motr.notifier.processing.model.notification.sms.MotOneMonthSm
 import uk.gov.dvsa.motr.notifier.processing.model.notification.sms.MotTwoWeekSmsNotification;
 import uk.gov.dvsa.motr.vehicledetails.VehicleDetails;
 import uk.gov.dvsa.motr.vehicledetails.VehicleDetailsClient;
+import uk.gov.dvsa.motr.vehicledetails.VehicleDetailsClientException;
 import uk.gov.dvsa.motr.vehicledetails.VehicleType;
+import uk.gov.service.notify.NotificationClientException;
 
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -38,6 +57,7 @@ public class ProcessSubscriptionServiceTest {
     private NotifyEmailService notifyEmailService = mock(NotifyEmailService.class);
     private NotifySmsService notifySmsService = mock(NotifySmsService.class);
     private SendableNotificationFactory notificationFactory = mock(SendableNotificationFactory.class);
+    private ReminderLedger reminderLedger = new InMemoryReminderLedger(TimeUnit.DAYS.toMillis(1), TimeUnit.MINUTES.toMillis(5));
 
     private static final String WEB_BASE_URL = "http://gov.uk";
     private static final String TEST_VRM = "TEST-VRM";
@@ -53,9 +73,7 @@ public class ProcessSubscriptionServiceTest {
 
     @Before
     public void setUp() {
-        processSubscriptionService = new ProcessSubscriptionService(
-                vehicleDetailsClient, subscriptionRepository, notifyEmailService, notifySmsService, notificationFactory, hgvPsvNotifications
-        );
+        processSubscriptionService = createService(hgvPsvNotifications);
     }
 
     @Test(expected = VehicleNotFoundException.class)
@@ -80,7 +98,9 @@ public class ProcessSubscriptionServiceTest {
 
         processSubscriptionService.processSubscription(subscriptionQueueItem);
 
-        verify(subscriptionRepository).updateExpiryDate(TEST_VRM, "test@this-is-a-test-123", vehicleExpiryDate);
+        assertEquals(Optional.of(vehicleExpiryDate), appliedChanges().flatMap(SubscriptionChangeSet::getMotDueDate));
+        assertEquals(TEST_VRM, appliedChanges().get().getVrm());
+        assertEquals("test@this-is-a-test-123", appliedChanges().get().getEmail());
     }
 
     @Test
@@ -140,7 +160,7 @@ public class ProcessSubscriptionServiceTest {
 
         processSubscriptionService.processSubscription(subscriptionQueueItem);
 
-        verify(subscriptionRepository, never()).updateExpiryDate(any(), any(), any());
+        assertFalse(appliedChanges().flatMap(SubscriptionChangeSet::getMotDueDate).isPresent());
         verify(notifyEmailService).sendEmail(
                 eq("test@this-is-a-test-123"), isA(SendableEmailNotification.class), eq(vehicleDetails)
         );
@@ -162,7 +182,7 @@ public class ProcessSubscriptionServiceTest {
 
         processSubscriptionService.processSubscription(subscriptionQueueItem);
 
-        verify(subscriptionRepository, never()).updateExpiryDate(any(), any(), any());
+        assertFalse(appliedChanges().flatMap(SubscriptionChangeSet::getMotDueDate).isPresent());
         verify(notifySmsService).sendSms(
                 eq(TEST_PHONE_NUMBER), isA(MotOneMonthSmsNotification.class)
         );
@@ -184,7 +204,7 @@ public class ProcessSubscriptionServiceTest {
 
         processSubscriptionService.processSubscription(subscription);
 
-        verify(subscriptionRepository, never()).updateExpiryDate(any(), any(), any());
+        assertFalse(appliedChanges().flatMap(SubscriptionChangeSet::getMotDueDate).isPresent());
         verify(notificationFactory).getEmailNotification(eq(requestDate), eq(subscription),eq(vehicleDetails));
         verify(notifyEmailService).sendEmail(any(), isA(SendableEmailNotification.class), any());
     }
@@ -204,7 +224,7 @@ public class ProcessSubscriptionServiceTest {
 
         processSubscriptionService.processSubscription(subscriptionQueueItem);
 
-        verify(subscriptionRepository, never()).updateExpiryDate(any(), any(), any());
+        assertFalse(appliedChanges().flatMap(SubscriptionChangeSet::getMotDueDate).isPresent());
         verify(notifySmsService).sendSms(
                 eq(TEST_PHONE_NUMBER), isA(MotTwoWeekSmsNotification.class)
         );
@@ -225,7 +245,7 @@ public class ProcessSubscriptionServiceTest {
 
         processSubscriptionService.processSubscription(subscriptionQueueItem);
 
-        verify(subscriptionRepository, never()).updateExpiryDate(any(), any(), any());
+        assertFalse(appliedChanges().flatMap(SubscriptionChangeSet::getMotDueDate).isPresent());
         verify(notifyEmailService).sendEmail(
                 eq("test@this-is-a-test-123"), isA(SendableEmailNotification.class), eq(vehicleDetails)
         );
@@ -245,7 +265,7 @@ public class ProcessSubscriptionServiceTest {
 
         processSubscriptionService.processSubscription(subscriptionQueueItem);
 
-        verify(subscriptionRepository, never()).updateExpiryDate(any(), any(), any());
+        assertFalse(appliedChanges().flatMap(SubscriptionChangeSet::getMotDueDate).isPresent());
         verify(notifySmsService).sendSms(
                 eq(TEST_PHONE_NUMBER), isA(MotOneDayAfterSmsNotification.class)
         );
@@ -271,7 +291,7 @@ public class ProcessSubscriptionServiceTest {
 
         processSubscriptionService.processSubscription(subscription);
 
-        verify(subscriptionRepository).updateExpiryDate(any(), any(), any());
+        assertTrue(appliedChanges().flatMap(SubscriptionChangeSet::getMotDueDate).isPresent());
         verify(notifyEmailService).sendEmail(
                 eq("test@this-is-a-test-123"), isA(SendableEmailNotification.class), eq(vehicleDetails)
         );
@@ -304,7 +324,7 @@ public class ProcessSubscriptionServiceTest {
 
         processSubscriptionService.processSubscription(subscription);
 
-        verify(subscriptionRepository).updateExpiryDate(any(), any(), any());
+        assertTrue(appliedChanges().flatMap(SubscriptionChangeSet::getMotDueDate).isPresent());
         verify(notifyEmailService).sendEmail(
                 eq("test@this-is-a-test-123"), isA(SendableEmailNotification.class), eq(vehicleDetails)
         );
@@ -336,7 +356,7 @@ public class ProcessSubscriptionServiceTest {
 
         processSubscriptionService.processSubscription(subscription);
 
-        verify(subscriptionRepository).updateExpiryDate(any(), any(), any());
+        assertTrue(appliedChanges().flatMap(SubscriptionChangeSet::getMotDueDate).isPresent());
         verify(notifyEmailService).sendEmail(
                 eq("test@this-is-a-test-123"), isA(SendableEmailNotification.class), eq(vehicleDetails)
         );
@@ -361,7 +381,7 @@ public class ProcessSubscriptionServiceTest {
 
         processSubscriptionService.processSubscription(subscription);
 
-        verify(subscriptionRepository).updateVrm(TEST_VRM, "test@this-is-a-test-123", UPDATED_VRM);
+        assertEquals(Optional.of(UPDATED_VRM), appliedChanges().flatMap(SubscriptionChangeSet::getUpdatedVrm));
     }
 
     /**
@@ -383,7 +403,7 @@ public class ProcessSubscriptionServiceTest {
 
         processSubscriptionService.processSubscription(subscription);
 
-        verify(subscriptionRepository, never()).updateVrm(TEST_VRM, "test@this-is-a-test-123", TEST_VRM);
+        assertFalse(appliedChanges().flatMap(SubscriptionChangeSet::getUpdatedVrm).isPresent());
     }
 
     /**
@@ -405,7 +425,7 @@ public class ProcessSubscriptionServiceTest {
 
         processSubscriptionService.processSubscription(subscription);
 
-        verify(subscriptionRepository).updateMotTestNumber(TEST_VRM, "test@this-is-a-test-123", "123");
+        assertEquals(Optional.of("123"), appliedChanges().flatMap(SubscriptionChangeSet::getMotTestNumber));
     }
 
     /**
@@ -427,7 +447,7 @@ public class ProcessSubscriptionServiceTest {
 
         processSubscriptionService.processSubscription(subscription);
 
-        verify(subscriptionRepository, never()).updateMotTestNumber(TEST_VRM, "test@this-is-a-test-123", MOT_TEST_NUMBER);
+        assertFalse(appliedChanges().flatMap(SubscriptionChangeSet::getMotTestNumber).isPresent());
     }
 
     /**
@@ -450,7 +470,7 @@ public class ProcessSubscriptionServiceTest {
 
         processSubscriptionService.processSubscription(subscription);
 
-        verify(subscriptionRepository).updateMotTestNumber(TEST_VRM, "test@this-is-a-test-123", MOT_TEST_NUMBER);
+        assertEquals(Optional.of(MOT_TEST_NUMBER), appliedChanges().flatMap(SubscriptionChangeSet::getMotTestNumber));
     }
 
     @Test
@@ -470,7 +490,7 @@ public class ProcessSubscriptionServiceTest {
 
         processSubscriptionService.processSubscription(subscriptionQueueItem);
 
-        verify(subscriptionRepository, never()).updateExpiryDate(any(), any(), any());
+        assertFalse(appliedChanges().flatMap(SubscriptionChangeSet::getMotDueDate).isPresent());
         verify(notifyEmailService).sendEmail(
                 eq("test@this-is-a-test-123"), isA(SendableEmailNotification.class), eq(vehicleDetails)
         );
@@ -493,7 +513,7 @@ public class ProcessSubscriptionServiceTest {
 
         processSubscriptionService.processSubscription(subscriptionQueueItem);
 
-        verify(subscriptionRepository, never()).updateExpiryDate(any(), any(), any());
+        assertFalse(appliedChanges().flatMap(SubscriptionChangeSet::getMotDueDate).isPresent());
         verify(notifyEmailService).sendEmail(
                 eq("test@this-is-a-test-123"), isA(SendableEmailNotification.class), eq(vehicleDetails)
         );
@@ -516,17 +536,238 @@ public class ProcessSubscriptionServiceTest {
 
         processSubscriptionService.processSubscription(subscriptionQueueItem);
 
-        verify(subscriptionRepository, never()).updateExpiryDate(any(), any(), any());
+        assertFalse(appliedChanges().flatMap(SubscriptionChangeSet::getMotDueDate).isPresent());
         verify(notifyEmailService).sendEmail(
                 eq("test@this-is-a-test-123"), isA(SendableEmailNotification.class), eq(vehicleDetails)
         );
     }
 
+    @Test
+    public void whenSeveralAttributesChange_thenTheyAreAppliedInOneWrite() throws Exception {
+
+        LocalDate vehicleExpiryDate = LocalDate.of(2017, 10, 24);
+        SubscriptionQueueItem subscription = emailSubscriptionStub(LocalDate.of(2019, 10, 24))
+                .setLoadedOnDate(LocalDate.of(2017, 9, 24))
+                .setVehicleType(VehicleType.MOT)
+                .setDvlaId(DVLA_ID);
+        VehicleDetails vehicleDetails = vehicleDetailsStub(vehicleExpiryDate).setRegNumber(UPDATED_VRM).setMotTestNumber(MOT_TEST_NUMBER);
+
+        when(vehicleDetailsClient.fetchByDvlaId(any())).thenReturn(Optional.of(vehicleDetails));
+        when(notificationFactory.getEmailNotification(any(), any(), any())).thenReturn(Optional.of(sendableEmailNotificationStub()));
+
+        processSubscriptionService.processSubscription(subscription);
+
+        SubscriptionChangeSet changes = appliedChanges().get();
+        assertEquals(Optional.of(vehicleExpiryDate), changes.getMotDueDate());
+        assertEquals(Optional.of(MOT_TEST_NUMBER), changes.getMotTestNumber());
+        assertEquals(Optional.of(UPDATED_VRM), changes.getUpdatedVrm());
+    }
+
+    @Test
+    public void whenNothingChanges_thenNothingIsWritten() throws Exception {
+
+        LocalDate vehicleExpiryDate = LocalDate.of(2017, 10, 10);
+        SubscriptionQueueItem subscription = emailSubscriptionStub(vehicleExpiryDate)
+                .setLoadedOnDate(LocalDate.of(2017, 9, 10))
+                .setVehicleType(VehicleType.MOT)
+                .setMotTestNumber(MOT_TEST_NUMBER);
+        VehicleDetails vehicleDetails = vehicleDetailsStub(vehicleExpiryDate).setMotTestNumber(MOT_TEST_NUMBER);
+
+        when(vehicleDetailsClient.fetchByMotTestNumber(any())).thenReturn(Optional.of(vehicleDetails));
+        when(notificationFactory.getEmailNotification(any(), any(), any())).thenReturn(Optional.of(sendableEmailNotificationStub()));
+
+        processSubscriptionService.processSubscription(subscription);
+
+        verify(subscriptionRepository, never()).apply(any());
+    }
+
+    @Test
+    public void whenChangesCannotBeWritten_thenTheSentReminderIsNotFailed() throws Exception {
+
+        LocalDate vehicleExpiryDate = LocalDate.of(2017, 10, 24);
+        SubscriptionQueueItem subscription = emailSubscriptionStub(LocalDate.of(2019, 10, 24))
+                .setLoadedOnDate(LocalDate.of(2017, 9, 24))
+                .setVehicleType(VehicleType.MOT)
+                .setMotTestNumber(MOT_TEST_NUMBER);
+        VehicleDetails vehicleDetails = vehicleDetailsStub(vehicleExpiryDate).setMotTestNumber("123");
+
+        when(vehicleDetailsClient.fetchByMotTestNumber(any())).thenReturn(Optional.of(vehicleDetails));
+        when(notificationFactory.getEmailNotification(any(), any(), any())).thenReturn(Optional.of(sendableEmailNotificationStub()));
+        doThrow(new Exception("conditional check failed")).when(subscriptionRepository).apply(any());
+
+        processSubscriptionService.processSubscription(subscription);
+
+        verify(notifyEmailService).sendEmail(eq("test@this-is-a-test-123"), isA(SendableEmailNotification.class), eq(vehicleDetails));
+    }
+
+    @Test
+    public void whenReminderWasSentOnAnEarlierDelivery_thenTheSubscriptionIsNotProcessedAgain() throws Exception {
+
+        LocalDate vehicleExpiryDate = LocalDate.of(2017, 10, 10);
+        SubscriptionQueueItem subscriptionQueueItem = emailSubscriptionStub(vehicleExpiryDate)
+                .setLoadedOnDate(LocalDate.of(2017, 9, 10))
+                .setVehicleType(VehicleType.MOT)
+                .setMotTestNumber(MOT_TEST_NUMBER);
+        VehicleDetails vehicleDetails = vehicleDetailsStub(vehicleExpiryDate);
+
+        when(vehicleDetailsClient.fetchByMotTestNumber(any())).thenReturn(Optional.of(vehicleDetails));
+        when(notificationFactory.getEmailNotification(any(), any(), any())).thenReturn(Optional.of(sendableEmailNotificationStub()));
+
+        processSubscriptionService.processSubscription(subscriptionQueueItem);
+        processSubscriptionService.processSubscription(subscriptionQueueItem);
+
+        assertTrue(processSubscriptionService.isAlreadyReminded(subscriptionQueueItem));
+        verify(vehicleDetailsClient).fetchByMotTestNumber(MOT_TEST_NUMBER);
+        verify(notifyEmailService).sendEmail(eq("test@this-is-a-test-123"), isA(SendableEmailNotification.class), eq(vehicleDetails));
+    }
+
+    @Test
+    public void whenAnotherDeliveryHoldsTheClaimOnTheReminder_thenItIsNotSent() throws Exception {
+
+        LocalDate vehicleExpiryDate = LocalDate.of(2017, 10, 10);
+        SubscriptionQueueItem subscriptionQueueItem = emailSubscriptionStub(vehicleExpiryDate)
+                .setLoadedOnDate(LocalDate.of(2017, 9, 10))
+                .setVehicleType(VehicleType.MOT)
+                .setMotTestNumber(MOT_TEST_NUMBER);
+
+        when(vehicleDetailsClient.fetchByMotTestNumber(any())).thenReturn(Optional.of(vehicleDetailsStub(vehicleExpiryDate)));
+        when(notificationFactory.getEmailNotification(any(), any(), any())).thenReturn(Optional.of(sendableEmailNotificationStub()));
+        reminderLedger.claim(ProcessSubscriptionService.reminderId(subscriptionQueueItem).get());
+
+        processSubscriptionService.processSubscription(subscriptionQueueItem);
+
+        verify(notifyEmailService, never()).sendEmail(any(), any(), any());
+    }
+
+    @Test
+    public void whenSendingTheReminderFails_thenItsClaimIsReleasedForTheNextDelivery() throws Exception {
+
+        LocalDate vehicleExpiryDate = LocalDate.of(2017, 10, 10);
+        SubscriptionQueueItem subscriptionQueueItem = emailSubscriptionStub(vehicleExpiryDate)
+                .setLoadedOnDate(LocalDate.of(2017, 9, 10))
+                .setVehicleType(VehicleType.MOT)
+                .setMotTestNumber(MOT_TEST_NUMBER);
+
+        when(vehicleDetailsClient.fetchByMotTestNumber(any())).thenReturn(Optional.of(vehicleDetailsStub(vehicleExpiryDate)));
+        when(notificationFactory.getEmailNotification(any(), any(), any())).thenReturn(Optional.of(sendableEmailNotificationStub()));
+        doThrow(new NotificationClientException(new Exception("Notify unavailable"))).doNothing()
+                .when(notifyEmailService).sendEmail(any(), any(), any());
+
+        try {
+            processSubscriptionService.processSubscription(subscriptionQueueItem);
+            fail();
+        } catch (NotificationClientException e) {
+            // expected
+        }
+        assertFalse(processSubscriptionService.isAlreadyReminded(subscriptionQueueItem));
+
+        processSubscriptionService.processSubscription(subscriptionQueueItem);
+
+        verify(notifyEmailService, times(2)).sendEmail(any(), any(), any());
+        assertTrue(processSubscriptionService.isAlreadyReminded(subscriptionQueueItem));
+    }
+
+    @Test
+    public void whenSubscriptionIsLoadedOnAnotherDay_thenItIsADifferentReminder() {
+
+        SubscriptionQueueItem oneMonthBefore = emailSubscriptionStub(LocalDate.of(2017, 10, 10)).setLoadedOnDate(LocalDate.of(2017, 9, 10));
+        SubscriptionQueueItem twoWeeksBefore = emailSubscriptionStub(LocalDate.of(2017, 10, 10)).setLoadedOnDate(LocalDate.of(2017, 9, 26));
+
+        assertEquals(Optional.of(SUBSCRIPTION_ID + "#one-month#2017-09-10"), ProcessSubscriptionService.reminderId(oneMonthBefore));
+        assertEquals(Optional.of(SUBSCRIPTION_ID + "#two-week#2017-09-26"), ProcessSubscriptionService.reminderId(twoWeeksBefore));
+    }
+
+    @Test
+    public void whenBatchIsPrefetched_thenEachSubscriptionFindsItsVehicleWithoutASingleLookup() throws Exception {
+
+        LocalDate vehicleExpiryDate = LocalDate.of(2017, 10, 10);
+        SubscriptionQueueItem first = emailSubscriptionStub(vehicleExpiryDate)
+                .setLoadedOnDate(LocalDate.of(2017, 9, 10))
+                .setVehicleType(VehicleType.MOT)
+                .setMotTestNumber(MOT_TEST_NUMBER);
+        SubscriptionQueueItem second = emailSubscriptionStub(vehicleExpiryDate)
+                .setLoadedOnDate(LocalDate.of(2017, 9, 10))
+                .setVehicleType(VehicleType.MOT)
+                .setMotTestNumber(NEW_MOT_TEST_NUMBER);
+        VehicleDetails vehicleDetails = vehicleDetailsStub(vehicleExpiryDate);
+
+        Map<String, Optional<VehicleDetails>> batch = new HashMap<>();
+        batch.put(MOT_TEST_NUMBER, Optional.of(vehicleDetails));
+        batch.put(NEW_MOT_TEST_NUMBER, Optional.of(vehicleDetails));
+        when(vehicleDetailsClient.hasBatchByMotTestNumberUri()).thenReturn(true);
+        when(vehicleDetailsClient.fetchByMotTestNumbers(any())).thenReturn(batch);
+
+        processSubscriptionService.prefetchVehicleDetails(Arrays.asList(first, second));
+
+        assertEquals(vehicleDetails, processSubscriptionService.fetchVehicleDetails(first));
+        assertEquals(vehicleDetails, processSubscriptionService.fetchVehicleDetails(second));
+        verify(vehicleDetailsClient, never()).fetchByMotTestNumber(any());
+    }
+
+    @Test
+    public void whenBatchLookupFails_thenEachSubscriptionLooksItsVehicleUpByItself() throws Exception {
+
+        LocalDate vehicleExpiryDate = LocalDate.of(2017, 10, 10);
+        SubscriptionQueueItem first = emailSubscriptionStub(vehicleExpiryDate)
+                .setVehicleType(VehicleType.MOT)
+                .setDvlaId(DVLA_ID);
+        SubscriptionQueueItem second = emailSubscriptionStub(vehicleExpiryDate)
+                .setVehicleType(VehicleType.MOT)
+                .setDvlaId(DVLA_ID + "1");
+        VehicleDetails vehicleDetails = vehicleDetailsStub(vehicleExpiryDate);
+
+        when(vehicleDetailsClient.hasBatchByDvlaIdUri()).thenReturn(true);
+        when(vehicleDetailsClient.fetchByDvlaIds(any())).thenThrow(new VehicleDetailsClientException("Unavailable"));
+        when(vehicleDetailsClient.fetchByDvlaId(DVLA_ID)).thenReturn(Optional.of(vehicleDetails));
+
+        processSubscriptionService.prefetchVehicleDetails(Arrays.asList(first, second));
+
+        assertEquals(vehicleDetails, processSubscriptionService.fetchVehicleDetails(first));
+        verify(vehicleDetailsClient).fetchByDvlaId(DVLA_ID);
+    }
+
+    @Test
+    public void whenThereIsNoBatchEndpoint_thenEachSubscriptionLooksItsVehicleUpByItself() throws Exception {
+
+        LocalDate vehicleExpiryDate = LocalDate.of(2017, 10, 10);
+        SubscriptionQueueItem first = emailSubscriptionStub(vehicleExpiryDate)
+                .setVehicleType(VehicleType.MOT)
+                .setMotTestNumber(MOT_TEST_NUMBER);
+        SubscriptionQueueItem second = emailSubscriptionStub(vehicleExpiryDate)
+                .setVehicleType(VehicleType.MOT)
+                .setMotTestNumber(NEW_MOT_TEST_NUMBER);
+        VehicleDetails vehicleDetails = vehicleDetailsStub(vehicleExpiryDate);
+
+        when(vehicleDetailsClient.fetchByMotTestNumber(MOT_TEST_NUMBER)).thenReturn(Optional.of(vehicleDetails));
+
+        processSubscriptionService.prefetchVehicleDetails(Arrays.asList(first, second));
+
+        assertEquals(vehicleDetails, processSubscriptionService.fetchVehicleDetails(first));
+        verify(vehicleDetailsClient, never()).fetchByMotTestNumbers(any());
+        verify(vehicleDetailsClient).fetchByMotTestNumber(MOT_TEST_NUMBER);
+    }
+
     private void createServiceWithHgvNotificationsTurnedOff() {
 
-        processSubscriptionService = new ProcessSubscriptionService(
-                vehicleDetailsClient, subscriptionRepository, notifyEmailService, notifySmsService, notificationFactory, false
-        );
+        processSubscriptionService = createService(false);
+    }
+
+    /**
+     * Without caching of vehicles not found, a concurrency limit or breakers that open
+     */
+    private ProcessSubscriptionService createService(boolean hgvPsvNotifications) {
+
+        return new ProcessSubscriptionService(vehicleDetailsClient, subscriptionRepository, notifyEmailService, notifySmsService,
+                notificationFactory, hgvPsvNotifications, new VehicleDetailsCache(0),
+                new AdaptiveConcurrencyLimiter(Integer.MAX_VALUE, Integer.MAX_VALUE), CircuitBreakers.neverOpen(),
+                reminderLedger);
+    }
+
+    private Optional<SubscriptionChangeSet> appliedChanges() throws Exception {
+
+        ArgumentCaptor<SubscriptionChangeSet> changes = ArgumentCaptor.forClass(SubscriptionChangeSet.class);
+        verify(subscriptionRepository, atMost(1)).apply(changes.capture());
+        return changes.getAllValues().stream().findFirst();
     }
 
     private SubscriptionQueueItem emailSubscriptionStub(LocalDate motDueDate) {
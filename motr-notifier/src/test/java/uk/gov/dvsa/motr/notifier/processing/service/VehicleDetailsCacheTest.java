@@ -0,0 +1,134 @@
+package uk.gov.dvsa.motr.notifier.processing.service;
+
+import org.junit.Test;
+
+import uk.gov.dvsa.motr.vehicledetails.VehicleDetails;
+import uk.gov.dvsa.motr.vehicledetails.VehicleDetailsClientException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class VehicleDetailsCacheTest {
+
+    private AtomicInteger calls = new AtomicInteger(0);
+
+    @Test
+    public void whenVehicleWasFetchedBefore_thenItIsServedFromCache() throws Exception {
+
+        VehicleDetailsCache cache = new VehicleDetailsCache(60000);
+        VehicleDetails vehicleDetails = new VehicleDetails();
+
+        cache.get("key", () -> found(vehicleDetails));
+        Optional<VehicleDetails> cached = cache.get("key", () -> found(new VehicleDetails()));
+
+        assertSame(vehicleDetails, cached.get());
+        assertEquals(1, calls.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void whenSameVehicleIsFetchedConcurrently_thenLookupsShareOneCall() throws Exception {
+
+        VehicleDetailsCache cache = new VehicleDetailsCache(60000);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        VehicleDetails vehicleDetails = new VehicleDetails();
+        Future<Optional<VehicleDetails>> first = executor.submit(() -> cache.get("key", () -> {
+            Optional<VehicleDetails> result = found(vehicleDetails);
+            release.await();
+            return result;
+        }));
+        while (calls.get() == 0) {
+            Thread.sleep(1);
+        }
+        Future<Optional<VehicleDetails>> second = executor.submit(() -> cache.get("key", () -> found(new VehicleDetails())));
+        while (cache.getCoalesced() == 0) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertSame(vehicleDetails, first.get(1, TimeUnit.SECONDS).get());
+        assertSame(vehicleDetails, second.get(1, TimeUnit.SECONDS).get());
+        assertEquals(1, calls.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void whenVehicleWasNotFound_thenResultIsOnlyCachedForTheTimeToLive() throws Exception {
+
+        VehicleDetailsCache cache = new VehicleDetailsCache(0);
+
+        cache.get("key", () -> notFound());
+        Thread.sleep(2);
+        cache.get("key", () -> notFound());
+
+        assertEquals(2, calls.get());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void whenLookupFails_thenFailureIsNotCached() throws Exception {
+
+        VehicleDetailsCache cache = new VehicleDetailsCache(60000);
+
+        try {
+            cache.get("key", () -> {
+                calls.incrementAndGet();
+                throw new VehicleDetailsClientException("MOT API unavailable");
+            });
+            fail();
+        } catch (VehicleDetailsClientException e) {
+            // expected
+        }
+        cache.get("key", () -> found(new VehicleDetails()));
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void whenKeysAreReserved_thenGetsWaitForTheReservationAndLookUpWhatItLeftOut() throws Exception {
+
+        VehicleDetailsCache cache = new VehicleDetailsCache(60000);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        VehicleDetails vehicleDetails = new VehicleDetails();
+
+        VehicleDetailsCache.Reservation reservation = cache.reserve(Arrays.asList("found", "left-out"));
+        Future<Optional<VehicleDetails>> reserved = executor.submit(() -> cache.get("found", () -> found(new VehicleDetails())));
+        Future<Optional<VehicleDetails>> leftOut = executor.submit(() -> cache.get("left-out", () -> found(vehicleDetails)));
+        while (cache.getCoalesced() < 2) {
+            Thread.sleep(1);
+        }
+        reservation.complete(Collections.singletonMap("found", Optional.of(vehicleDetails)));
+        reservation.release();
+
+        assertSame(vehicleDetails, reserved.get(1, TimeUnit.SECONDS).get());
+        assertSame(vehicleDetails, leftOut.get(1, TimeUnit.SECONDS).get());
+        assertEquals(1, calls.get());
+        executor.shutdown();
+    }
+
+    private Optional<VehicleDetails> found(VehicleDetails vehicleDetails) {
+
+        calls.incrementAndGet();
+        return Optional.of(vehicleDetails);
+    }
+
+    private Optional<VehicleDetails> notFound() {
+
+        calls.incrementAndGet();
+        return Optional.empty();
+    }
+}
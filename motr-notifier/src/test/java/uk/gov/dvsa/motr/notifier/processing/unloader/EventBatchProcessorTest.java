@@ -0,0 +1,125 @@
+package uk.gov.dvsa.motr.notifier.processing.unloader;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.dvsa.motr.notifier.processing.model.ContactDetail;
+import uk.gov.dvsa.motr.notifier.processing.model.SqsBatchResponse;
+import uk.gov.dvsa.motr.notifier.processing.model.SqsEvent;
+import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionQueueItem;
+import uk.gov.dvsa.motr.notifier.processing.queue.SubscriptionMessageParser;
+import uk.gov.dvsa.motr.notifier.processing.service.ProcessSubscriptionService;
+import uk.gov.dvsa.motr.notifier.processing.service.VehicleNotFoundException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EventBatchProcessorTest {
+
+    private ProcessSubscriptionService processSubscriptionService = mock(ProcessSubscriptionService.class);
+    private Context context = mock(Context.class);
+    private ObjectMapper jsonMapper = new ObjectMapper();
+
+    private EventBatchProcessor processor;
+
+    @Before
+    public void setUp() {
+
+        when(context.getRemainingTimeInMillis()).thenReturn(60000);
+        processor = new EventBatchProcessor(new SubscriptionMessageParser(), processSubscriptionService, 2);
+    }
+
+    @Test
+    public void whenOneMessageFails_thenOnlyThatMessageIsReportedAsFailed() throws Exception {
+
+        doAnswer(invocation -> {
+            if ("FAILING-VRM".equals(((SubscriptionQueueItem) invocation.getArguments()[0]).getVrm())) {
+                throw new VehicleNotFoundException("not found");
+            }
+            return null;
+        }).when(processSubscriptionService).processSubscription(any());
+
+        SqsEvent event = new SqsEvent().setRecords(Arrays.asList(
+                record("message-1", subscription("VRM-1")),
+                record("message-2", subscription("FAILING-VRM")),
+                record("message-3", subscription("VRM-3"))));
+
+        SqsBatchResponse response = processor.process(event, context);
+
+        assertEquals(Collections.singletonList("message-2"), failedMessageIds(response));
+        verify(processSubscriptionService, times(3)).processSubscription(any());
+    }
+
+    @Test
+    public void whenMessageCannotBeRead_thenItIsReportedAsFailed() throws Exception {
+
+        SqsEvent event = new SqsEvent().setRecords(Arrays.asList(
+                record("message-1", subscription("VRM-1")),
+                new SqsEvent.Record().setMessageId("message-2").setReceiptHandle("receipt-message-2").setBody("not a subscription")));
+
+        SqsBatchResponse response = processor.process(event, context);
+
+        assertEquals(Collections.singletonList("message-2"), failedMessageIds(response));
+        verify(processSubscriptionService).processSubscription(any());
+    }
+
+    @Test
+    public void whenEventSourceBatchIsRead_thenItsSubscriptionsAreProcessed() throws Exception {
+
+        String body = jsonMapper.writeValueAsString(jsonMapper.writeValueAsString(subscription("VRM-1")));
+        String event = "{\"Records\": [{" +
+                "\"messageId\": \"message-1\", " +
+                "\"receiptHandle\": \"receipt-message-1\", " +
+                "\"body\": " + body + ", " +
+                "\"attributes\": {\"ApproximateReceiveCount\": \"1\"}, " +
+                "\"messageAttributes\": {\"correlation-id\": {\"stringValue\": \"test-correlation-id\", \"stringListValues\": [], " +
+                "\"binaryListValues\": [], \"dataType\": \"String\"}}, " +
+                "\"eventSource\": \"aws:sqs\"" +
+                "}]}";
+
+        SqsBatchResponse response = processor.process(jsonMapper.readValue(event, SqsEvent.class), context);
+
+        assertEquals(Collections.emptyList(), failedMessageIds(response));
+        assertEquals("{\"batchItemFailures\":[]}", jsonMapper.writeValueAsString(response));
+        verify(processSubscriptionService).processSubscription(any());
+    }
+
+    private SqsEvent.Record record(String messageId, SubscriptionQueueItem subscription) throws Exception {
+
+        return new SqsEvent.Record()
+                .setMessageId(messageId)
+                .setReceiptHandle("receipt-" + messageId)
+                .setBody(jsonMapper.writeValueAsString(subscription))
+                .setMessageAttributes(Collections.singletonMap("correlation-id",
+                        new SqsEvent.Attribute().setDataType("String").setStringValue("test-correlation-id")));
+    }
+
+    private SubscriptionQueueItem subscription(String vrm) {
+
+        return new SubscriptionQueueItem()
+                .setId("id-" + vrm)
+                .setVrm(vrm)
+                .setMotTestNumber("test-mot-number-123")
+                .setContactDetail(new ContactDetail("test@email.com", SubscriptionQueueItem.ContactType.EMAIL));
+    }
+
+    private static List<String> failedMessageIds(SqsBatchResponse response) {
+
+        return response.getBatchItemFailures().stream()
+                .map(SqsBatchResponse.BatchItemFailure::getItemIdentifier)
+                .collect(Collectors.toList());
+    }
+}
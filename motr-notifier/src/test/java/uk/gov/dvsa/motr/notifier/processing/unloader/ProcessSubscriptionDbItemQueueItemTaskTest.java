@@ -6,6 +6,7 @@ import org.junit.Test;
 import uk.gov.dvsa.motr.notifier.processing.model.ContactDetail;
 import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionQueueItem;
 import uk.gov.dvsa.motr.notifier.processing.queue.QueueItemRemover;
+import uk.gov.dvsa.motr.notifier.processing.queue.RemoveSubscriptionFromQueueException;
 import uk.gov.dvsa.motr.notifier.processing.service.ProcessSubscriptionService;
 import uk.gov.dvsa.motr.notifier.processing.service.VehicleNotFoundException;
 
@@ -17,6 +18,7 @@ import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class ProcessSubscriptionDbItemQueueItemTaskTest {
 
@@ -67,4 +69,27 @@ public class ProcessSubscriptionDbItemQueueItemTaskTest {
         verify(report, times(1)).incrementFailedToProcess();
         verify(report, times(0)).incrementSuccessfullyProcessed();
     }
+
+    @Test
+    public void whenSubscriptionFailsThenItIsRequeuedForRetry() throws Exception {
+
+        doThrow(VehicleNotFoundException.class).when(processSubscriptionService).processSubscription(any());
+        when(queueItemRemover.requeueFailedQueueItem(subscriptionQueueItemToProcess)).thenReturn(true);
+
+        processSubscriptionTask.run();
+
+        verify(queueItemRemover, times(1)).requeueFailedQueueItem(subscriptionQueueItemToProcess);
+        verify(report, times(1)).incrementRequeuedForRetry();
+    }
+
+    @Test
+    public void whenSubscriptionIsProcessedButNotRemovedThenItIsNotRequeued() throws Exception {
+
+        doThrow(RemoveSubscriptionFromQueueException.class).when(queueItemRemover).removeProcessedQueueItem(any());
+
+        processSubscriptionTask.run();
+
+        verify(queueItemRemover, times(0)).requeueFailedQueueItem(any());
+        verify(report, times(1)).incrementFailedToProcess();
+    }
 }
@@ -0,0 +1,105 @@
+package uk.gov.dvsa.motr.notifier.processing.unloader;
+
+import com.amazonaws.services.lambda.runtime.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.dvsa.motr.notifier.processing.limiter.CircuitBreaker;
+import uk.gov.dvsa.motr.notifier.processing.limiter.CircuitBreakers;
+import uk.gov.dvsa.motr.notifier.processing.model.ContactDetail;
+import uk.gov.dvsa.motr.notifier.processing.model.SubscriptionQueueItem;
+import uk.gov.dvsa.motr.notifier.processing.pipeline.PipelineSizing;
+import uk.gov.dvsa.motr.notifier.processing.queue.QueueItemRemover;
+import uk.gov.dvsa.motr.notifier.processing.queue.SubscriptionsReceiver;
+import uk.gov.dvsa.motr.notifier.processing.queue.VisibilityHeartbeat;
+import uk.gov.dvsa.motr.notifier.processing.service.ProcessSubscriptionService;
+import uk.gov.dvsa.motr.notifier.processing.service.VehicleDetailsCache;
+import uk.gov.dvsa.motr.vehicledetails.VehicleDetails;
+import uk.gov.dvsa.motr.vehicledetails.VehicleDetailsClient;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class QueueUnloaderTest {
+
+    private static final long OPEN_DURATION_MS = 100;
+
+    private SubscriptionsReceiver subscriptionsReceiver = mock(SubscriptionsReceiver.class);
+    private QueueItemRemover queueItemRemover = mock(QueueItemRemover.class);
+    private VisibilityHeartbeat visibilityHeartbeat = mock(VisibilityHeartbeat.class);
+    private ProcessSubscriptionService processSubscriptionService = mock(ProcessSubscriptionService.class);
+    private VehicleDetailsClient vehicleDetailsClient = mock(VehicleDetailsClient.class);
+    private Context context = mock(Context.class);
+
+    private CircuitBreaker motApi = new CircuitBreaker("mot-api", 1, OPEN_DURATION_MS, failure -> true);
+    private QueueUnloader queueUnloader;
+
+    @Before
+    public void setUp() {
+
+        CircuitBreakers circuitBreakers = new CircuitBreakers(motApi, new CircuitBreaker("notify", 1, OPEN_DURATION_MS, failure -> true));
+        when(processSubscriptionService.getCircuitBreakers()).thenReturn(circuitBreakers);
+        when(processSubscriptionService.getVehicleDetailsCache()).thenReturn(new VehicleDetailsCache(0));
+        when(processSubscriptionService.getVehicleDetailsClient()).thenReturn(vehicleDetailsClient);
+        when(vehicleDetailsClient.getRequestHedger()).thenReturn(Optional.empty());
+        when(context.getRemainingTimeInMillis()).thenReturn(60000);
+
+        queueUnloader = new QueueUnloader(subscriptionsReceiver, queueItemRemover, visibilityHeartbeat, new PipelineSizing(),
+                processSubscriptionService, 1000, 5000);
+    }
+
+    @Test
+    public void whenBreakerIsReadyToBeProbed_thenSubscriptionInHandProbesItAndIntakeResumes() throws Exception {
+
+        SubscriptionQueueItem first = subscription("id-1");
+        SubscriptionQueueItem second = subscription("id-2");
+        SubscriptionQueueItem third = subscription("id-3");
+        when(subscriptionsReceiver.iterator()).thenReturn(Arrays.asList(first, second, third).iterator());
+        when(processSubscriptionService.fetchVehicleDetails(any()))
+                .thenAnswer(invocation -> motApi.execute(VehicleDetails::new));
+
+        openMotApiBreaker();
+
+        NotifierReport report = queueUnloader.run(context);
+
+        assertEquals(CircuitBreaker.State.CLOSED, motApi.getState());
+        assertEquals(3, report.getSuccessfullyProcessed());
+        assertEquals(0, report.getReleased());
+        verify(processSubscriptionService).fetchVehicleDetails(first);
+        verify(processSubscriptionService).fetchVehicleDetails(second);
+        verify(processSubscriptionService).fetchVehicleDetails(third);
+        verify(queueItemRemover, never()).releaseQueueItem(any(), anyInt());
+    }
+
+    private void openMotApiBreaker() {
+
+        try {
+            motApi.execute(() -> {
+                throw new IllegalStateException("unavailable");
+            });
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private SubscriptionQueueItem subscription(String id) {
+
+        return new SubscriptionQueueItem()
+                .setId(id)
+                .setVrm("VRM-" + id)
+                .setMotDueDate(LocalDate.of(2017, 10, 10))
+                .setMessageReceiptHandle("receipt-" + id)
+                .setMotTestNumber("test-mot-number-" + id)
+                .setContactDetail(new ContactDetail("test@test.com", SubscriptionQueueItem.ContactType.EMAIL));
+    }
+}
@@ -6,13 +6,22 @@ import uk.gov.dvsa.motr.subscriptionloader.SystemVariable;
 
 import java.util.Optional;
 
+import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.BATCH_DISPATCHER;
+import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.CHECKPOINT_TABLE_NAME;
+import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.DISPATCH_WINDOW_SIZE;
+import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.EXPECTED_SUBSCRIPTIONS;
 import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.HGV_PSV_SUBSCRIPTION_LOADER;
 import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.INFLIGHT_BATCHES;
 import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.LOG_LEVEL;
 import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.POST_PURGE_DELAY;
+import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.PRODUCER_CONCURRENCY;
 import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.QUEUE_URL;
 import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.REGION;
+import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.SCAN_SEGMENTS;
+import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.SHARDED_DUE_DATE_INDEX;
+import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.SUBSCRIPTIONS_PER_MESSAGE;
 import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.TABLE_NAME;
+import static uk.gov.dvsa.motr.test.integration.dynamodb.DynamoDbIntegrationHelper.checkpointTableName;
 import static uk.gov.dvsa.motr.test.integration.dynamodb.DynamoDbIntegrationHelper.region;
 import static uk.gov.dvsa.motr.test.integration.dynamodb.DynamoDbIntegrationHelper.subscriptionTableName;
 import static uk.gov.dvsa.motr.test.integration.sqs.SqsHelper.sqsEndpoint;
@@ -24,10 +33,18 @@ public class TestEnvironmentVariables extends EnvironmentVariables {
         set(LOG_LEVEL, "INFO");
         set(REGION, region());
         set(TABLE_NAME, subscriptionTableName());
+        set(CHECKPOINT_TABLE_NAME, checkpointTableName());
         set(QUEUE_URL, sqsEndpoint());
         set(POST_PURGE_DELAY, "0");
         set(INFLIGHT_BATCHES, "1");
         set(HGV_PSV_SUBSCRIPTION_LOADER, hgvPsvSubscriptionLoader());
+        set(PRODUCER_CONCURRENCY, "4");
+        set(DISPATCH_WINDOW_SIZE, "100");
+        set(BATCH_DISPATCHER, "true");
+        set(SUBSCRIPTIONS_PER_MESSAGE, "1");
+        set(EXPECTED_SUBSCRIPTIONS, "1000");
+        set(SHARDED_DUE_DATE_INDEX, "false");
+        set(SCAN_SEGMENTS, "0");
     }
 
 
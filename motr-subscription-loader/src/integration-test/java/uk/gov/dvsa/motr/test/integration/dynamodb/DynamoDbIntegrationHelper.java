@@ -13,6 +13,11 @@ public class DynamoDbIntegrationHelper {
         return lookupProperty("test.dynamoDB.integration.table.subscription");
     }
 
+    public static String checkpointTableName() {
+
+        return lookupProperty("test.dynamoDB.integration.table.loader.checkpoint");
+    }
+
     /**
      * Returns region for DynamoDB dynamoDbClient
      *`
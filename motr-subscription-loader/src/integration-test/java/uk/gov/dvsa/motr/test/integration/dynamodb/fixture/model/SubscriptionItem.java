@@ -2,6 +2,7 @@ package uk.gov.dvsa.motr.test.integration.dynamodb.fixture.model;
 
 import com.amazonaws.services.dynamodbv2.document.Item;
 
+import uk.gov.dvsa.motr.subscription.DueDateShardKey;
 import uk.gov.dvsa.motr.subscriptionloader.processing.model.Subscription;
 import uk.gov.dvsa.motr.test.data.RandomDataUtil;
 import uk.gov.dvsa.motr.test.integration.dynamodb.fixture.core.DynamoDbFixtureTableItem;
@@ -128,6 +129,7 @@ public class SubscriptionItem implements DynamoDbFixtureTableItem {
                 .with("mot_due_date", motDueDate.format(DateTimeFormatter.ISO_DATE))
                 .with("vrm", vrm)
                 .with("mot_due_date_md", motDueDate.format(DateTimeFormatter.ofPattern("MM-dd")))
+                .with(DueDateShardKey.ATTRIBUTE, DueDateShardKey.of(motDueDate, vrm, email))
                 .with("email", email)
                 .with("mot_test_number", motTestNumber)
                 .with("contact_type", contactType.getValue())
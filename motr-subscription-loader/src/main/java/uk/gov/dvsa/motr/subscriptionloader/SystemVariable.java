@@ -10,7 +10,15 @@ public enum SystemVariable implements ConfigKey {
     QUEUE_URL("SUBSCRIPTIONS_QUEUE_URL"),
     INFLIGHT_BATCHES("INFLIGHT_BATCHES"),
     POST_PURGE_DELAY("POST_PURGE_DELAY"),
-    HGV_PSV_SUBSCRIPTION_LOADER("HGV_PSV_SUBSCRIPTION_LOADER");
+    HGV_PSV_SUBSCRIPTION_LOADER("HGV_PSV_SUBSCRIPTION_LOADER"),
+    PRODUCER_CONCURRENCY("PRODUCER_CONCURRENCY"),
+    DISPATCH_WINDOW_SIZE("DISPATCH_WINDOW_SIZE"),
+    BATCH_DISPATCHER("BATCH_DISPATCHER"),
+    SUBSCRIPTIONS_PER_MESSAGE("SUBSCRIPTIONS_PER_MESSAGE"),
+    CHECKPOINT_TABLE_NAME("DB_TABLE_LOADER_CHECKPOINT"),
+    EXPECTED_SUBSCRIPTIONS("EXPECTED_SUBSCRIPTIONS_PER_LOAD"),
+    SHARDED_DUE_DATE_INDEX("SHARDED_DUE_DATE_INDEX"),
+    SCAN_SEGMENTS("SCAN_SEGMENTS");
 
     String value;
 
@@ -0,0 +1,25 @@
+package uk.gov.dvsa.motr.subscriptionloader.event;
+
+import uk.gov.dvsa.motr.eventlog.Event;
+import uk.gov.dvsa.motr.subscriptionloader.processing.planner.AccessPlan;
+
+public class AccessPathChosen extends Event {
+
+    @Override
+    public String getCode() {
+
+        return "ACCESS-PATH-CHOSEN";
+    }
+
+    public AccessPathChosen setPlan(AccessPlan plan) {
+
+        params.put("access-path", plan.getPath().name());
+        params.put("criteria", String.valueOf(plan.getCriteriaCount()));
+        params.put("estimated-items", String.valueOf(plan.getEstimatedItems()));
+        params.put("table-items", String.valueOf(plan.getTableItems()));
+        params.put("index-query-pages", String.valueOf(plan.getIndexQueryPages()));
+        params.put("scan-pages", String.valueOf(plan.getScanPages()));
+        params.put("reason", plan.getReason());
+        return this;
+    }
+}
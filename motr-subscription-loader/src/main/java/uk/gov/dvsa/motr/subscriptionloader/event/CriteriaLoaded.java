@@ -0,0 +1,58 @@
+package uk.gov.dvsa.motr.subscriptionloader.event;
+
+import uk.gov.dvsa.motr.eventlog.Event;
+import uk.gov.dvsa.motr.subscriptionloader.processing.producer.SubscriptionCriteria;
+
+import static java.time.format.DateTimeFormatter.ISO_DATE;
+
+public class CriteriaLoaded extends Event {
+
+    @Override
+    public String getCode() {
+
+        return "CRITERIA-LOADED";
+    }
+
+    public CriteriaLoaded setCriteria(SubscriptionCriteria criteria) {
+
+        params.put("due-date", criteria.getTestDueDate().format(ISO_DATE));
+        params.put("vehicle-type", criteria.getVehicleType().name());
+        return this;
+    }
+
+    public CriteriaLoaded setPages(int pages) {
+
+        params.put("pages", String.valueOf(pages));
+        return this;
+    }
+
+    public CriteriaLoaded setItems(int items) {
+
+        params.put("items", String.valueOf(items));
+        return this;
+    }
+
+    public CriteriaLoaded setQueryDuration(long queryDuration) {
+
+        params.put("query-duration-ms", String.valueOf(queryDuration));
+        return this;
+    }
+
+    public CriteriaLoaded setMaxPageLatency(long maxPageLatency) {
+
+        params.put("max-page-latency-ms", String.valueOf(maxPageLatency));
+        return this;
+    }
+
+    public CriteriaLoaded setConsumedCapacity(double consumedCapacity) {
+
+        params.put("consumed-capacity", String.valueOf(consumedCapacity));
+        return this;
+    }
+
+    public CriteriaLoaded setDuration(long duration) {
+
+        params.put("duration-ms", String.valueOf(duration));
+        return this;
+    }
+}
@@ -0,0 +1,48 @@
+package uk.gov.dvsa.motr.subscriptionloader.event;
+
+import uk.gov.dvsa.motr.eventlog.Event;
+
+public class DueDateShardsBackfilled extends Event {
+
+    @Override
+    public String getCode() {
+
+        return "DUE-DATE-SHARDS-BACKFILLED";
+    }
+
+    public DueDateShardsBackfilled setSegment(int segment, int totalSegments) {
+
+        params.put("segment", segment + "/" + totalSegments);
+        return this;
+    }
+
+    public DueDateShardsBackfilled setScanned(int scanned) {
+
+        params.put("scanned", String.valueOf(scanned));
+        return this;
+    }
+
+    public DueDateShardsBackfilled setUpdated(int updated) {
+
+        params.put("updated", String.valueOf(updated));
+        return this;
+    }
+
+    public DueDateShardsBackfilled setChangedConcurrently(int changedConcurrently) {
+
+        params.put("changed-concurrently", String.valueOf(changedConcurrently));
+        return this;
+    }
+
+    public DueDateShardsBackfilled setFinished(boolean finished) {
+
+        params.put("finished", String.valueOf(finished));
+        return this;
+    }
+
+    public DueDateShardsBackfilled setDuration(long duration) {
+
+        params.put("duration-ms", String.valueOf(duration));
+        return this;
+    }
+}
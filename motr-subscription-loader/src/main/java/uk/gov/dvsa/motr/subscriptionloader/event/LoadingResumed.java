@@ -0,0 +1,28 @@
+package uk.gov.dvsa.motr.subscriptionloader.event;
+
+import uk.gov.dvsa.motr.eventlog.Event;
+
+import java.time.LocalDate;
+
+import static java.time.format.DateTimeFormatter.ISO_DATE;
+
+public class LoadingResumed extends Event {
+
+    @Override
+    public String getCode() {
+
+        return "LOADING-RESUMED";
+    }
+
+    public LoadingResumed setReferenceDate(LocalDate referenceDate) {
+
+        params.put("reference-date", referenceDate.format(ISO_DATE));
+        return this;
+    }
+
+    public LoadingResumed setResumedCriteria(int resumedCriteria) {
+
+        params.put("resumed-criteria", String.valueOf(resumedCriteria));
+        return this;
+    }
+}
@@ -2,6 +2,12 @@ package uk.gov.dvsa.motr.subscriptionloader.event;
 
 import uk.gov.dvsa.motr.eventlog.Event;
 
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static java.time.format.DateTimeFormatter.ISO_DATE;
+
 public class LoadingSuccess extends Event {
 
     @Override
@@ -21,4 +27,24 @@ public class LoadingSuccess extends Event {
         params.put("duration-ms", String.valueOf(duration));
         return this;
     }
+
+    public LoadingSuccess setDuplicatesSuppressed(int duplicatesSuppressed) {
+
+        params.put("duplicates-suppressed", String.valueOf(duplicatesSuppressed));
+        return this;
+    }
+
+    public LoadingSuccess setConsumedCapacity(double consumedCapacity) {
+
+        params.put("consumed-capacity", String.valueOf(consumedCapacity));
+        return this;
+    }
+
+    public LoadingSuccess setProcessedPerDay(Map<LocalDate, Integer> processedPerDay) {
+
+        params.put("processed-per-day", processedPerDay.entrySet().stream()
+                .map(day -> day.getKey().format(ISO_DATE) + "=" + day.getValue())
+                .collect(Collectors.joining(",")));
+        return this;
+    }
 }
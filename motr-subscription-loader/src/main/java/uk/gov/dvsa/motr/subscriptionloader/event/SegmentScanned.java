@@ -0,0 +1,49 @@
+package uk.gov.dvsa.motr.subscriptionloader.event;
+
+import uk.gov.dvsa.motr.eventlog.Event;
+
+public class SegmentScanned extends Event {
+
+    @Override
+    public String getCode() {
+
+        return "SEGMENT-SCANNED";
+    }
+
+    public SegmentScanned setSegment(int segment, int totalSegments) {
+
+        params.put("segment", String.valueOf(segment));
+        params.put("total-segments", String.valueOf(totalSegments));
+        return this;
+    }
+
+    public SegmentScanned setPages(int pages) {
+
+        params.put("pages", String.valueOf(pages));
+        return this;
+    }
+
+    public SegmentScanned setScannedItems(int scannedItems) {
+
+        params.put("scanned-items", String.valueOf(scannedItems));
+        return this;
+    }
+
+    public SegmentScanned setMatchedItems(int matchedItems) {
+
+        params.put("matched-items", String.valueOf(matchedItems));
+        return this;
+    }
+
+    public SegmentScanned setConsumedCapacity(double consumedCapacity) {
+
+        params.put("consumed-capacity", String.valueOf(consumedCapacity));
+        return this;
+    }
+
+    public SegmentScanned setDuration(long duration) {
+
+        params.put("duration-ms", String.valueOf(duration));
+        return this;
+    }
+}
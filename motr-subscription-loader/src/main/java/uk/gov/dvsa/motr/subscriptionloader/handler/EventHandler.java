@@ -23,6 +23,7 @@ public class EventHandler {
                 new LoaderModule(request.isPurge())
         );
 
-        return injector.getInstance(Loader.class).run(request.getTimeAsDateTime().toLocalDate(), context);
+        return injector.getInstance(Loader.class).run(
+                request.getTimeAsDateTime().toLocalDate(), request.getUntilAsDateTime().toLocalDate(), context);
     }
 }
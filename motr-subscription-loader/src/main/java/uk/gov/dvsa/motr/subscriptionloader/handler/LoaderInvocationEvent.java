@@ -9,8 +9,9 @@ import java.time.format.DateTimeFormatter;
  * An event that arrives to Loader to invoke subscription loading.
  * Example format:
  * {
- *     "time" : "2017-01-02T12:00:00Z", // required
- *     "purge" : false                  // optional
+ *     "time" : "2017-01-02T12:00:00Z",  // required
+ *     "until" : "2017-01-05T12:00:00Z", // optional
+ *     "purge" : false                   // optional
  * }
  */
 public class LoaderInvocationEvent {
@@ -21,6 +22,12 @@ public class LoaderInvocationEvent {
      */
     private String time;
 
+    /**
+     * Last reference date and time to load, inclusive, when catching up on several days in a single invocation.
+     * When absent only the reference date of {@link #time} is loaded.
+     */
+    private String until;
+
     /**
      * When flag is set to false purging process is suppressed.
      * That may come handy when it is necessary to run Lambda manually without affecting existing queue.
@@ -33,6 +40,11 @@ public class LoaderInvocationEvent {
         return time;
     }
 
+    public String getUntil() {
+
+        return until;
+    }
+
     public boolean isPurge() {
 
         return isPurge;
@@ -44,6 +56,12 @@ public class LoaderInvocationEvent {
         return this;
     }
 
+    public LoaderInvocationEvent setUntil(String until) {
+
+        this.until = until;
+        return this;
+    }
+
     public LoaderInvocationEvent setPurge(boolean purge) {
         this.isPurge = purge;
         return this;
@@ -54,4 +72,10 @@ public class LoaderInvocationEvent {
 
         return LocalDateTime.parse(time, DateTimeFormatter.ISO_DATE_TIME);
     }
+
+    @JsonIgnore
+    public LocalDateTime getUntilAsDateTime() {
+
+        return until == null ? getTimeAsDateTime() : LocalDateTime.parse(until, DateTimeFormatter.ISO_DATE_TIME);
+    }
 }
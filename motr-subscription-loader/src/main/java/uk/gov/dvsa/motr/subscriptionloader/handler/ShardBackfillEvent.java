@@ -0,0 +1,54 @@
+package uk.gov.dvsa.motr.subscriptionloader.handler;
+
+import java.util.Map;
+
+/**
+ * An event that arrives to the backfill Lambda to write sharded due date keys to one segment of the subscription table.
+ * Example format:
+ * {
+ *     "segment" : 0,                                     // optional, defaults to 0
+ *     "totalSegments" : 4,                               // optional, defaults to 1
+ *     "startKey" : { "vrm" : "...", "email" : "..." }    // optional, nextStartKey of the previous run of the segment
+ * }
+ */
+public class ShardBackfillEvent {
+
+    private int segment = 0;
+
+    private int totalSegments = 1;
+
+    private Map<String, String> startKey;
+
+    public int getSegment() {
+
+        return segment;
+    }
+
+    public ShardBackfillEvent setSegment(int segment) {
+
+        this.segment = segment;
+        return this;
+    }
+
+    public int getTotalSegments() {
+
+        return totalSegments;
+    }
+
+    public ShardBackfillEvent setTotalSegments(int totalSegments) {
+
+        this.totalSegments = totalSegments;
+        return this;
+    }
+
+    public Map<String, String> getStartKey() {
+
+        return startKey;
+    }
+
+    public ShardBackfillEvent setStartKey(Map<String, String> startKey) {
+
+        this.startKey = startKey;
+        return this;
+    }
+}
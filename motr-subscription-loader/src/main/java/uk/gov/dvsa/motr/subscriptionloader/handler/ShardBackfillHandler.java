@@ -0,0 +1,27 @@
+package uk.gov.dvsa.motr.subscriptionloader.handler;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import uk.gov.dvsa.motr.subscriptionloader.module.ConfigModule;
+import uk.gov.dvsa.motr.subscriptionloader.module.InvocationContextModule;
+import uk.gov.dvsa.motr.subscriptionloader.processing.backfill.DueDateShardBackfill;
+import uk.gov.dvsa.motr.subscriptionloader.processing.backfill.ShardBackfillReport;
+
+public class ShardBackfillHandler {
+
+    public ShardBackfillHandler() {
+    }
+
+    public ShardBackfillReport handle(ShardBackfillEvent request, Context context) {
+
+        Injector injector = Guice.createInjector(
+                new InvocationContextModule(context),
+                new ConfigModule()
+        );
+
+        return injector.getInstance(DueDateShardBackfill.class)
+                .run(request.getSegment(), request.getTotalSegments(), request.getStartKey(), context);
+    }
+}
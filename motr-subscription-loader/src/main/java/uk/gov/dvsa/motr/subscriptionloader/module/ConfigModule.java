@@ -16,16 +16,30 @@ import org.apache.log4j.Logger;
 import uk.gov.dvsa.motr.config.CachedConfig;
 import uk.gov.dvsa.motr.config.Config;
 import uk.gov.dvsa.motr.config.EnvironmentVariableConfig;
+import uk.gov.dvsa.motr.subscriptionloader.processing.backfill.DueDateShardBackfill;
+import uk.gov.dvsa.motr.subscriptionloader.processing.checkpoint.CheckpointStore;
+import uk.gov.dvsa.motr.subscriptionloader.processing.checkpoint.DynamoDbCheckpointStore;
+import uk.gov.dvsa.motr.subscriptionloader.processing.dispatcher.BatchingDispatcher;
 import uk.gov.dvsa.motr.subscriptionloader.processing.dispatcher.Dispatcher;
+import uk.gov.dvsa.motr.subscriptionloader.processing.dispatcher.EnvelopeDispatcher;
+import uk.gov.dvsa.motr.subscriptionloader.processing.planner.AccessPathPlanner;
 import uk.gov.dvsa.motr.subscriptionloader.processing.producer.DynamoDbProducer;
+import uk.gov.dvsa.motr.subscriptionloader.processing.producer.ParallelDynamoDbProducer;
+import uk.gov.dvsa.motr.subscriptionloader.processing.producer.PlannedDynamoDbProducer;
+import uk.gov.dvsa.motr.subscriptionloader.processing.producer.ScanDynamoDbProducer;
 import uk.gov.dvsa.motr.subscriptionloader.processing.producer.SubscriptionProducer;
 
 import static org.apache.log4j.Level.toLevel;
 
+import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.BATCH_DISPATCHER;
+import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.CHECKPOINT_TABLE_NAME;
 import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.INFLIGHT_BATCHES;
 import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.LOG_LEVEL;
+import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.PRODUCER_CONCURRENCY;
 import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.QUEUE_URL;
 import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.REGION;
+import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.SCAN_SEGMENTS;
+import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.SUBSCRIPTIONS_PER_MESSAGE;
 import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.TABLE_NAME;
 
 public class ConfigModule extends AbstractModule {
@@ -42,11 +56,20 @@ public class ConfigModule extends AbstractModule {
     public Dispatcher provideDispatcher(Config config, AmazonSQSAsync sqsClient, Context context) {
 
         int inFlightBatches = new Integer(config.getValue(INFLIGHT_BATCHES));
+        int subscriptionsPerMessage = Integer.parseInt(config.getValue(SUBSCRIPTIONS_PER_MESSAGE));
         String url = config.getValue(QUEUE_URL);
 
         QueueBufferConfig queueBuffer = new QueueBufferConfig().withMaxInflightOutboundBatches(inFlightBatches);
         AmazonSQSBufferedAsyncClient bufferedClient = new AmazonSQSBufferedAsyncClient(sqsClient, queueBuffer);
 
+        if (subscriptionsPerMessage > 1) {
+            return new EnvelopeDispatcher(bufferedClient, url, context.getAwsRequestId(), subscriptionsPerMessage);
+        }
+
+        if (Boolean.parseBoolean(config.getValue(BATCH_DISPATCHER))) {
+            return new BatchingDispatcher(sqsClient, url, context.getAwsRequestId());
+        }
+
         return new Dispatcher(bufferedClient, url, context.getAwsRequestId());
     }
 
@@ -62,7 +85,39 @@ public class ConfigModule extends AbstractModule {
 
         String table = config.getValue(TABLE_NAME);
         String region = config.getValue(REGION);
+        int concurrency = Integer.parseInt(config.getValue(PRODUCER_CONCURRENCY));
+        int scanSegments = Integer.parseInt(config.getValue(SCAN_SEGMENTS));
+        DynamoDB dynamoDb = new DynamoDB(AmazonDynamoDBClientBuilder.standard().withRegion(region).build());
+
+        DynamoDbProducer indexProducer = concurrency > 1
+                ? new ParallelDynamoDbProducer(dynamoDb, table, concurrency)
+                : new DynamoDbProducer(dynamoDb, table);
+
+        if (scanSegments > 1) {
+            AccessPathPlanner planner = new AccessPathPlanner(dynamoDb, table, indexProducer, concurrency, scanSegments);
+            return new PlannedDynamoDbProducer(planner, indexProducer, new ScanDynamoDbProducer(dynamoDb, table, scanSegments));
+        }
+
+        return indexProducer;
+    }
+
+    @Provides
+    public CheckpointStore provideCheckpointStore(Config config) {
+
+        String table = config.getValue(CHECKPOINT_TABLE_NAME);
+        String region = config.getValue(REGION);
         AmazonDynamoDB client = AmazonDynamoDBClientBuilder.standard().withRegion(region).build();
-        return new DynamoDbProducer(new DynamoDB(client), table);
+
+        return new DynamoDbCheckpointStore(new DynamoDB(client), table);
+    }
+
+    @Provides
+    public DueDateShardBackfill provideShardBackfill(Config config) {
+
+        String table = config.getValue(TABLE_NAME);
+        String region = config.getValue(REGION);
+        AmazonDynamoDB client = AmazonDynamoDBClientBuilder.standard().withRegion(region).build();
+
+        return new DueDateShardBackfill(new DynamoDB(client), table);
     }
 }
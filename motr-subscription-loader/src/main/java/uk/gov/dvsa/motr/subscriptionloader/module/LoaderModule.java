@@ -5,15 +5,19 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 
 import uk.gov.dvsa.motr.config.Config;
+import uk.gov.dvsa.motr.subscriptionloader.processing.checkpoint.CheckpointStore;
 import uk.gov.dvsa.motr.subscriptionloader.processing.dispatcher.Dispatcher;
 import uk.gov.dvsa.motr.subscriptionloader.processing.loader.DefaultLoader;
 import uk.gov.dvsa.motr.subscriptionloader.processing.loader.Loader;
 import uk.gov.dvsa.motr.subscriptionloader.processing.loader.PurgingLoader;
 import uk.gov.dvsa.motr.subscriptionloader.processing.producer.SubscriptionProducer;
 
+import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.DISPATCH_WINDOW_SIZE;
+import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.EXPECTED_SUBSCRIPTIONS;
 import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.HGV_PSV_SUBSCRIPTION_LOADER;
 import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.POST_PURGE_DELAY;
 import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.QUEUE_URL;
+import static uk.gov.dvsa.motr.subscriptionloader.SystemVariable.SHARDED_DUE_DATE_INDEX;
 
 import static java.lang.Integer.parseInt;
 
@@ -31,14 +35,17 @@ public class LoaderModule extends AbstractModule {
     }
 
     @Provides
-    public Loader provideLoader(Config config, AmazonSQSAsync client, SubscriptionProducer producer, Dispatcher dispatcher) {
+    public Loader provideLoader(Config config, AmazonSQSAsync client, SubscriptionProducer producer, Dispatcher dispatcher,
+            CheckpointStore checkpointStore) {
 
-        Loader loader = new DefaultLoader(producer, dispatcher, Boolean.parseBoolean(config.getValue(HGV_PSV_SUBSCRIPTION_LOADER)));
+        Loader loader = new DefaultLoader(producer, dispatcher, Boolean.parseBoolean(config.getValue(HGV_PSV_SUBSCRIPTION_LOADER)),
+                parseInt(config.getValue(DISPATCH_WINDOW_SIZE)), checkpointStore, parseInt(config.getValue(EXPECTED_SUBSCRIPTIONS)),
+                Boolean.parseBoolean(config.getValue(SHARDED_DUE_DATE_INDEX)));
 
         String queueUrl = config.getValue(QUEUE_URL);
         int postPurgeDelayMs = parseInt(config.getValue(POST_PURGE_DELAY));
         int purgeInProgressDelayMs = 10_000;
 
-        return isPurge ? new PurgingLoader(loader, client, queueUrl, postPurgeDelayMs, purgeInProgressDelayMs) : loader;
+        return isPurge ? new PurgingLoader(loader, client, queueUrl, postPurgeDelayMs, purgeInProgressDelayMs, checkpointStore) : loader;
     }
 }
@@ -0,0 +1,147 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.backfill;
+
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.Page;
+import com.amazonaws.services.dynamodbv2.document.PrimaryKey;
+import com.amazonaws.services.dynamodbv2.document.ScanOutcome;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.ScanSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
+import com.amazonaws.services.dynamodbv2.document.utils.NameMap;
+import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.lambda.runtime.Context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.gov.dvsa.motr.eventlog.EventLogger;
+import uk.gov.dvsa.motr.subscription.DueDateShardKey;
+import uk.gov.dvsa.motr.subscriptionloader.event.DueDateShardsBackfilled;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the sharded due date key to subscriptions saved before the webapp and notifier started writing it.
+ * One run scans one segment of the subscription table, starting after the given key, and stops between pages when the
+ * invocation is about to run out of time, returning the key to resume from. Items are only updated while their due date
+ * is still the one the key was derived from, so a concurrent due date change, which writes its own key, always wins.
+ */
+public class DueDateShardBackfill {
+
+    private static final Logger logger = LoggerFactory.getLogger(DueDateShardBackfill.class.getSimpleName());
+
+    private static final int PAGE_SIZE = 500;
+
+    /**
+     * Time in milliseconds left to the invocation below which no further page is scanned.
+     */
+    private static final int CUTOFF_MS = 10_000;
+
+    private static final String SHARD_NAME = "#shard";
+
+    private DynamoDB dynamoDb;
+    private String subscriptionTableName;
+
+    public DueDateShardBackfill(DynamoDB dynamoDb, String subscriptionTableName) {
+
+        this.dynamoDb = dynamoDb;
+        this.subscriptionTableName = subscriptionTableName;
+    }
+
+    public ShardBackfillReport run(int segment, int totalSegments, Map<String, String> startKey, Context context) {
+
+        Table table = dynamoDb.getTable(subscriptionTableName);
+        ShardBackfillReport report = new ShardBackfillReport();
+        long startedAt = System.currentTimeMillis();
+
+        ScanSpec scan = new ScanSpec()
+                .withProjectionExpression("vrm, email, mot_due_date, " + SHARD_NAME)
+                .withNameMap(new NameMap().with(SHARD_NAME, DueDateShardKey.ATTRIBUTE))
+                .withMaxPageSize(PAGE_SIZE);
+
+        if (totalSegments > 1) {
+            scan.withSegment(segment).withTotalSegments(totalSegments);
+        }
+
+        if (startKey != null && !startKey.isEmpty()) {
+            PrimaryKey exclusiveStartKey = new PrimaryKey();
+            startKey.forEach(exclusiveStartKey::addComponent);
+            scan.withExclusiveStartKey(exclusiveStartKey);
+        }
+
+        Page<Item, ScanOutcome> page = table.scan(scan).firstPage();
+        while (true) {
+            for (Item item : page) {
+                backfill(table, item, report);
+            }
+
+            if (!page.hasNextPage()) {
+                break;
+            }
+
+            if (context.getRemainingTimeInMillis() < CUTOFF_MS) {
+                report.setNextStartKey(toStartKey(page.getLowLevelResult().getScanResult().getLastEvaluatedKey()));
+                logger.info("Stopping backfill of segment {} before running out of time, resume from {}",
+                        segment, report.getNextStartKey());
+                break;
+            }
+
+            page = page.nextPage();
+        }
+
+        EventLogger.logEvent(new DueDateShardsBackfilled()
+                .setSegment(segment, totalSegments)
+                .setScanned(report.getScanned())
+                .setUpdated(report.getUpdated())
+                .setChangedConcurrently(report.getChangedConcurrently())
+                .setFinished(report.isFinished())
+                .setDuration(System.currentTimeMillis() - startedAt));
+
+        return report;
+    }
+
+    private void backfill(Table table, Item item, ShardBackfillReport report) {
+
+        report.incrementScanned();
+
+        if (!item.isPresent("mot_due_date")) {
+            return;
+        }
+
+        String dueDate = item.getString("mot_due_date");
+        String vrm = item.getString("vrm");
+        String email = item.getString("email");
+        String shardKey = DueDateShardKey.of(LocalDate.parse(dueDate), vrm, email);
+
+        if (shardKey.equals(item.getString(DueDateShardKey.ATTRIBUTE))) {
+            return;
+        }
+
+        try {
+            table.updateItem(new UpdateItemSpec()
+                    .withPrimaryKey("vrm", vrm, "email", email)
+                    .withUpdateExpression("set " + SHARD_NAME + " = :shard")
+                    .withConditionExpression("mot_due_date = :due_date")
+                    .withNameMap(new NameMap().with(SHARD_NAME, DueDateShardKey.ATTRIBUTE))
+                    .withValueMap(new ValueMap()
+                            .withString(":shard", shardKey)
+                            .withString(":due_date", dueDate)));
+            report.incrementUpdated();
+        } catch (ConditionalCheckFailedException e) {
+            // due date changed or subscription removed since it was scanned, its writer keeps the key up to date
+            report.incrementChangedConcurrently();
+        }
+    }
+
+    private static Map<String, String> toStartKey(Map<String, AttributeValue> lastEvaluatedKey) {
+
+        Map<String, String> startKey = new HashMap<>();
+        lastEvaluatedKey.forEach((name, value) -> startKey.put(name, value.getS()));
+        return startKey;
+    }
+}
@@ -0,0 +1,69 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.backfill;
+
+import java.util.Map;
+
+public class ShardBackfillReport {
+
+    private int scanned = 0;
+    private int updated = 0;
+    private int changedConcurrently = 0;
+    private Map<String, String> nextStartKey;
+
+    public void incrementScanned() {
+
+        scanned++;
+    }
+
+    public void incrementUpdated() {
+
+        updated++;
+    }
+
+    public void incrementChangedConcurrently() {
+
+        changedConcurrently++;
+    }
+
+    public int getScanned() {
+
+        return scanned;
+    }
+
+    public int getUpdated() {
+
+        return updated;
+    }
+
+    public int getChangedConcurrently() {
+
+        return changedConcurrently;
+    }
+
+    /**
+     * Key to pass as the start key of the next invocation, null once the whole segment has been backfilled
+     */
+    public Map<String, String> getNextStartKey() {
+
+        return nextStartKey;
+    }
+
+    public void setNextStartKey(Map<String, String> nextStartKey) {
+
+        this.nextStartKey = nextStartKey;
+    }
+
+    public boolean isFinished() {
+
+        return nextStartKey == null;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardBackfillReport{" +
+                "scanned=" + scanned +
+                ", updated=" + updated +
+                ", changedConcurrently=" + changedConcurrently +
+                ", nextStartKey=" + nextStartKey +
+                '}';
+    }
+}
@@ -0,0 +1,13 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.checkpoint;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+public interface CheckpointStore {
+
+    Optional<LoaderCheckpoint> load(LocalDate referenceDate);
+
+    void save(LoaderCheckpoint checkpoint);
+
+    void delete(LocalDate referenceDate);
+}
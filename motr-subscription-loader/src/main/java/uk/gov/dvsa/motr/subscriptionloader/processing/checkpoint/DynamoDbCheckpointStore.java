@@ -0,0 +1,95 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.checkpoint;
+
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
+
+import uk.gov.dvsa.motr.subscriptionloader.processing.producer.SubscriptionCriteria;
+import uk.gov.dvsa.motr.vehicledetails.VehicleType;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Stores one item per reference date, holding the position of every criteria under a "due date/vehicle type" key,
+ * suffixed with "/shard" for criteria of the sharded due date index.
+ * Items carry an expiry time so checkpoints of loads that were never resumed are cleaned up by the table TTL.
+ */
+public class DynamoDbCheckpointStore implements CheckpointStore {
+
+    private static final String REFERENCE_DATE = "reference_date";
+    private static final String POSITIONS = "positions";
+    private static final String SAVED_AT = "saved_at";
+    private static final String EXPIRES_AT = "expires_at";
+    private static final String CRITERIA_SEPARATOR = "/";
+    private static final int TIME_TO_LIVE_DAYS = 7;
+
+    private DynamoDB dynamoDb;
+    private String tableName;
+
+    public DynamoDbCheckpointStore(DynamoDB dynamoDb, String tableName) {
+
+        this.dynamoDb = dynamoDb;
+        this.tableName = tableName;
+    }
+
+    @Override
+    public Optional<LoaderCheckpoint> load(LocalDate referenceDate) {
+
+        Item item = table().getItem(new GetItemSpec()
+                .withPrimaryKey(REFERENCE_DATE, referenceDate.toString())
+                .withConsistentRead(true));
+
+        if (item == null) {
+            return Optional.empty();
+        }
+
+        Map<SubscriptionCriteria, Map<String, String>> positions = new HashMap<>();
+        item.<Map<String, String>>getMap(POSITIONS).forEach((criteria, position) -> positions.put(toCriteria(criteria), position));
+
+        return Optional.of(new LoaderCheckpoint(referenceDate, positions));
+    }
+
+    @Override
+    public void save(LoaderCheckpoint checkpoint) {
+
+        Map<String, Map<String, String>> positions = new HashMap<>();
+        checkpoint.getPositions().forEach((criteria, position) -> positions.put(toKey(criteria), position));
+
+        Instant now = Instant.now();
+        table().putItem(new Item()
+                .withPrimaryKey(REFERENCE_DATE, checkpoint.getReferenceDate().toString())
+                .withMap(POSITIONS, positions)
+                .withString(SAVED_AT, now.toString())
+                .withLong(EXPIRES_AT, now.plus(TIME_TO_LIVE_DAYS, ChronoUnit.DAYS).getEpochSecond()));
+    }
+
+    @Override
+    public void delete(LocalDate referenceDate) {
+
+        table().deleteItem(REFERENCE_DATE, referenceDate.toString());
+    }
+
+    private Table table() {
+
+        return dynamoDb.getTable(tableName);
+    }
+
+    private static String toKey(SubscriptionCriteria criteria) {
+
+        String key = criteria.getTestDueDate() + CRITERIA_SEPARATOR + criteria.getVehicleType().name();
+        return criteria.isSharded() ? key + CRITERIA_SEPARATOR + criteria.getShard() : key;
+    }
+
+    private static SubscriptionCriteria toCriteria(String key) {
+
+        String[] parts = key.split(CRITERIA_SEPARATOR);
+        SubscriptionCriteria criteria = new SubscriptionCriteria(LocalDate.parse(parts[0]), VehicleType.valueOf(parts[1]));
+        return parts.length > 2 ? criteria.forShard(Integer.parseInt(parts[2])) : criteria;
+    }
+}
@@ -0,0 +1,35 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.checkpoint;
+
+import uk.gov.dvsa.motr.subscriptionloader.processing.producer.SubscriptionCriteria;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps checkpoints in memory, for running the loader without a checkpoint table
+ */
+public class InMemoryCheckpointStore implements CheckpointStore {
+
+    private Map<LocalDate, Map<SubscriptionCriteria, Map<String, String>>> checkpoints = new ConcurrentHashMap<>();
+
+    @Override
+    public Optional<LoaderCheckpoint> load(LocalDate referenceDate) {
+
+        return Optional.ofNullable(checkpoints.get(referenceDate))
+                .map(positions -> new LoaderCheckpoint(referenceDate, positions));
+    }
+
+    @Override
+    public void save(LoaderCheckpoint checkpoint) {
+
+        checkpoints.put(checkpoint.getReferenceDate(), checkpoint.getPositions());
+    }
+
+    @Override
+    public void delete(LocalDate referenceDate) {
+
+        checkpoints.remove(referenceDate);
+    }
+}
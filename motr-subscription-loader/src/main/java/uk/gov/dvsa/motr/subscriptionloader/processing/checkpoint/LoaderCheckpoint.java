@@ -0,0 +1,106 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.checkpoint;
+
+import uk.gov.dvsa.motr.subscriptionloader.processing.model.Subscription;
+import uk.gov.dvsa.motr.subscriptionloader.processing.producer.SubscriptionCriteria;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Progress of loading subscriptions for a reference date. For every criteria it holds the index position of the last
+ * subscription that was dispatched successfully together with all subscriptions before it, so a later run can resume
+ * the criteria straight after it. Subscriptions still in flight are tracked in dispatch order, which keeps the position
+ * from moving past one that has not made it to the queue yet.
+ *
+ * <p>Resuming is at-least-once. Only the completed prefix is kept, so subscriptions dispatched beyond the first one still
+ * in flight, and those skipped as already seen in the interrupted run, are dispatched again by the resumed run. The
+ * notifier's reminder ledger keeps a repeated subscription from being reminded twice.
+ */
+public class LoaderCheckpoint {
+
+    private LocalDate referenceDate;
+    private Map<SubscriptionCriteria, Map<String, String>> positions = new HashMap<>();
+    private Map<SubscriptionCriteria, Deque<InFlight>> inFlightByCriteria = new HashMap<>();
+    private Map<Subscription, InFlight> inFlightBySubscription = new IdentityHashMap<>();
+
+    public LoaderCheckpoint(LocalDate referenceDate) {
+
+        this.referenceDate = referenceDate;
+    }
+
+    public LoaderCheckpoint(LocalDate referenceDate, Map<SubscriptionCriteria, Map<String, String>> positions) {
+
+        this.referenceDate = referenceDate;
+        this.positions.putAll(positions);
+    }
+
+    public LocalDate getReferenceDate() {
+
+        return referenceDate;
+    }
+
+    public synchronized Map<SubscriptionCriteria, Map<String, String>> getPositions() {
+
+        return new HashMap<>(positions);
+    }
+
+    /**
+     * @return true when some criteria has a position to resume from, without which the checkpoint holds no progress
+     */
+    public synchronized boolean hasPositions() {
+
+        return !positions.isEmpty();
+    }
+
+    /**
+     * @return the given criteria, each set to start after its checkpointed position if it has one
+     */
+    public synchronized List<SubscriptionCriteria> resume(List<SubscriptionCriteria> criteriaList) {
+
+        return criteriaList.stream()
+                .map(criteria -> positions.containsKey(criteria) ? criteria.resumeAfter(positions.get(criteria)) : criteria)
+                .collect(Collectors.toList());
+    }
+
+    public synchronized void dispatched(Subscription subscription) {
+
+        if (subscription.getCriteria() == null) {
+            return;
+        }
+
+        InFlight inFlight = new InFlight(subscription.getPosition());
+        inFlightByCriteria.computeIfAbsent(subscription.getCriteria(), criteria -> new ArrayDeque<>()).add(inFlight);
+        inFlightBySubscription.put(subscription, inFlight);
+    }
+
+    public synchronized void completed(Subscription subscription) {
+
+        InFlight inFlight = inFlightBySubscription.remove(subscription);
+        if (inFlight == null) {
+            return;
+        }
+
+        inFlight.completed = true;
+        Deque<InFlight> dispatchOrder = inFlightByCriteria.get(subscription.getCriteria());
+        while (!dispatchOrder.isEmpty() && dispatchOrder.peekFirst().completed) {
+            positions.put(subscription.getCriteria(), dispatchOrder.pollFirst().position);
+        }
+    }
+
+    private static final class InFlight {
+
+        private Map<String, String> position;
+        private boolean completed;
+
+        InFlight(Map<String, String> position) {
+
+            this.position = position;
+        }
+    }
+}
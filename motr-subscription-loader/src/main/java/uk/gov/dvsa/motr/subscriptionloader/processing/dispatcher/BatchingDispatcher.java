@@ -0,0 +1,144 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.dispatcher;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.gov.dvsa.motr.subscriptionloader.processing.model.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Packs subscriptions into SendMessageBatch requests itself rather than leaving it to the buffered SQS client.
+ * A batch is sent as soon as it holds the maximum number of entries or the next message would take it over the payload
+ * limit, and whatever is left is sent on {@link #flush()}. When SQS rejects some entries of a batch only those entries
+ * are sent again, unless the failure was caused by the message itself.
+ */
+public class BatchingDispatcher extends Dispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchingDispatcher.class.getSimpleName());
+
+    static final int MAX_BATCH_ENTRIES = 10;
+    static final int MAX_BATCH_BYTES = 256 * 1024;
+    static final int MAX_SEND_ATTEMPTS = 3;
+
+    private List<PendingMessage> pending = new ArrayList<>();
+    private int pendingBytes = 0;
+
+    public BatchingDispatcher(AmazonSQSAsync client, String queueUrl, String correlationId) {
+
+        super(client, queueUrl, correlationId);
+    }
+
+    @Override
+    public synchronized DispatchResult dispatch(Subscription subscription) {
+
+        PendingMessage message = new PendingMessage(subscription, toMessageBody(subscription));
+
+        if (pendingBytes + message.size > MAX_BATCH_BYTES) {
+            flush();
+        }
+
+        pending.add(message);
+        pendingBytes += message.size;
+
+        if (pending.size() == MAX_BATCH_ENTRIES) {
+            flush();
+        }
+
+        return new DispatchResult(subscription, message.result);
+    }
+
+    @Override
+    public synchronized void flush() {
+
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<PendingMessage> batch = pending;
+        pending = new ArrayList<>();
+        pendingBytes = 0;
+
+        stats.recordBatch(batch.size());
+        send(batch, 1);
+    }
+
+    private void send(List<PendingMessage> batch, int attempt) {
+
+        List<SendMessageBatchRequestEntry> entries = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            entries.add(new SendMessageBatchRequestEntry(String.valueOf(i), batch.get(i).body)
+                    .withMessageAttributes(attributes));
+        }
+
+        SendMessageBatchRequest request = new SendMessageBatchRequest(queueUrl, entries);
+        sqsClient.sendMessageBatchAsync(request, new AsyncHandler<SendMessageBatchRequest, SendMessageBatchResult>() {
+            @Override
+            public void onError(Exception exception) {
+
+                batch.forEach(message -> message.result.completeExceptionally(exception));
+            }
+
+            @Override
+            public void onSuccess(SendMessageBatchRequest sentRequest, SendMessageBatchResult batchResult) {
+
+                handleResult(batch, batchResult, attempt);
+            }
+        });
+    }
+
+    private void handleResult(List<PendingMessage> batch, SendMessageBatchResult batchResult, int attempt) {
+
+        for (SendMessageBatchResultEntry sent : batchResult.getSuccessful()) {
+            batch.get(Integer.parseInt(sent.getId())).result.complete(new SendMessageResult()
+                    .withMessageId(sent.getMessageId())
+                    .withMD5OfMessageBody(sent.getMD5OfMessageBody())
+                    .withMD5OfMessageAttributes(sent.getMD5OfMessageAttributes()));
+        }
+
+        List<PendingMessage> retries = new ArrayList<>();
+        for (BatchResultErrorEntry failed : batchResult.getFailed()) {
+            PendingMessage message = batch.get(Integer.parseInt(failed.getId()));
+
+            if (Boolean.TRUE.equals(failed.isSenderFault()) || attempt >= MAX_SEND_ATTEMPTS) {
+                message.result.completeExceptionally(new RuntimeException(String.format(
+                        "Sending subscription %s failed after %d attempt(s): %s %s",
+                        message.subscription.getId(), attempt, failed.getCode(), failed.getMessage())));
+            } else {
+                retries.add(message);
+            }
+        }
+
+        if (!retries.isEmpty()) {
+            logger.warn("Resending {} of {} message(s) rejected by SQS, attempt {}", retries.size(), batch.size(), attempt + 1);
+            stats.recordRetries(retries.size());
+            send(retries, attempt + 1);
+        }
+    }
+
+    private final class PendingMessage {
+
+        private Subscription subscription;
+        private String body;
+        private int size;
+        private CompletableFuture<SendMessageResult> result = new CompletableFuture<>();
+
+        PendingMessage(Subscription subscription, String body) {
+
+            this.subscription = subscription;
+            this.body = body;
+            this.size = sizeOf(body) + sizeOf(attributes);
+        }
+    }
+}
@@ -4,7 +4,8 @@ import com.amazonaws.services.sqs.model.SendMessageResult;
 
 import uk.gov.dvsa.motr.subscriptionloader.processing.model.Subscription;
 
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Wrapper for future message result to abstract from it and expose only data that are necessary
@@ -12,10 +13,10 @@ import java.util.concurrent.Future;
 public class DispatchResult {
 
     private Subscription originalPayload;
-    private Future<SendMessageResult> result;
+    private CompletableFuture<SendMessageResult> result;
     private Exception exception;
 
-    public DispatchResult(Subscription originalPayload, Future<SendMessageResult> futureResult) {
+    public DispatchResult(Subscription originalPayload, CompletableFuture<SendMessageResult> futureResult) {
 
         this.originalPayload = originalPayload;
         this.result = futureResult;
@@ -48,4 +49,13 @@ public class DispatchResult {
 
         return originalPayload;
     }
+
+    /**
+     * Registers a callback run as soon as the send completes, successfully or not. If it has already completed
+     * the callback runs straight away on the calling thread.
+     */
+    public void whenComplete(Consumer<DispatchResult> callback) {
+
+        result.whenComplete((sendMessageResult, error) -> callback.accept(this));
+    }
 }
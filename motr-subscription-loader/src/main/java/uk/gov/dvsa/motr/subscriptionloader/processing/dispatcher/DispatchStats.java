@@ -0,0 +1,40 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.dispatcher;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counters describing how subscriptions were packed by the dispatcher, where a batch is either a SendMessageBatch request
+ * or an envelope message holding several subscriptions
+ */
+public class DispatchStats {
+
+    private AtomicInteger batchesSent = new AtomicInteger(0);
+    private AtomicInteger batchedMessages = new AtomicInteger(0);
+    private AtomicInteger retriedMessages = new AtomicInteger(0);
+
+    public void recordBatch(int messages) {
+
+        batchesSent.incrementAndGet();
+        batchedMessages.addAndGet(messages);
+    }
+
+    public void recordRetries(int messages) {
+
+        retriedMessages.addAndGet(messages);
+    }
+
+    public int getBatchesSent() {
+
+        return batchesSent.get();
+    }
+
+    public int getBatchedMessages() {
+
+        return batchedMessages.get();
+    }
+
+    public int getRetriedMessages() {
+
+        return retriedMessages.get();
+    }
+}
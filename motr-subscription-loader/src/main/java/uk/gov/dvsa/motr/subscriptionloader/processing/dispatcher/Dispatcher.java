@@ -1,23 +1,28 @@
 package uk.gov.dvsa.motr.subscriptionloader.processing.dispatcher;
 
+import com.amazonaws.handlers.AsyncHandler;
 import com.amazonaws.services.sqs.AmazonSQSAsync;
 import com.amazonaws.services.sqs.model.MessageAttributeValue;
 import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import uk.gov.dvsa.motr.subscriptionloader.processing.model.Subscription;
 
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import javax.inject.Inject;
 
 public class Dispatcher {
 
-    private AmazonSQSAsync sqsClient;
-    private String queueUrl;
+    protected AmazonSQSAsync sqsClient;
+    protected String queueUrl;
+    protected Map<String, MessageAttributeValue> attributes = new HashMap<>();
+    protected DispatchStats stats = new DispatchStats();
     private ObjectMapper jsonMapper;
-    private Map<String, MessageAttributeValue> attributes = new HashMap<>();
 
     @Inject
     public Dispatcher(AmazonSQSAsync client, String queueUrl, String correlationId) {
@@ -31,19 +36,74 @@ public class Dispatcher {
 
     public DispatchResult dispatch(Subscription subscription) {
 
-        String messageBody;
-
-        try {
-            messageBody = jsonMapper.writeValueAsString(subscription);
-        } catch (Exception e) {
-            throw new RuntimeException("Serialization error of subscription");
-        }
+        String messageBody = toMessageBody(subscription);
 
         SendMessageRequest request = new SendMessageRequest()
                 .withQueueUrl(queueUrl)
                 .withMessageAttributes(attributes)
                 .withMessageBody(messageBody);
 
-        return new DispatchResult(subscription, sqsClient.sendMessageAsync(request));
+        return new DispatchResult(subscription, send(request));
+    }
+
+    /**
+     * Sends anything the dispatcher is still holding on to. Messages are sent as they are dispatched here, so there is
+     * nothing to do.
+     */
+    public void flush() {
+
+    }
+
+    public DispatchStats getStats() {
+
+        return stats;
+    }
+
+    protected CompletableFuture<SendMessageResult> send(SendMessageRequest request) {
+
+        CompletableFuture<SendMessageResult> result = new CompletableFuture<>();
+        sqsClient.sendMessageAsync(request, new AsyncHandler<SendMessageRequest, SendMessageResult>() {
+            @Override
+            public void onError(Exception exception) {
+
+                result.completeExceptionally(exception);
+            }
+
+            @Override
+            public void onSuccess(SendMessageRequest sentRequest, SendMessageResult sendMessageResult) {
+
+                result.complete(sendMessageResult);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Size in bytes the given message attributes add to the payload of a message, as counted by SQS
+     */
+    protected static int sizeOf(Map<String, MessageAttributeValue> messageAttributes) {
+
+        int size = 0;
+        for (Map.Entry<String, MessageAttributeValue> attribute : messageAttributes.entrySet()) {
+            size += sizeOf(attribute.getKey());
+            size += sizeOf(attribute.getValue().getDataType());
+            size += sizeOf(attribute.getValue().getStringValue());
+        }
+        return size;
+    }
+
+    protected static int sizeOf(String value) {
+
+        return value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    protected String toMessageBody(Subscription subscription) {
+
+        try {
+            return jsonMapper.writeValueAsString(subscription);
+        } catch (Exception e) {
+            throw new RuntimeException("Serialization error of subscription");
+        }
     }
 }
@@ -0,0 +1,103 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.dispatcher;
+
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+
+import uk.gov.dvsa.motr.subscriptionloader.processing.model.Subscription;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Packs many subscriptions into a single SQS message, an envelope, instead of sending one message per subscription.
+ * The envelope body is {"version":1,"subscriptions":[...]} and the message carries the version in its envelope-version
+ * attribute, so the notifier can tell envelopes from single subscription messages without parsing the body.
+ * An envelope is sent once it holds the configured number of subscriptions or the next subscription would take it over
+ * the SQS message size limit, and whatever is left is sent on {@link #flush()}.
+ */
+public class EnvelopeDispatcher extends Dispatcher {
+
+    public static final int ENVELOPE_VERSION = 1;
+    public static final String ENVELOPE_VERSION_ATTRIBUTE = "envelope-version";
+
+    static final int MAX_MESSAGE_BYTES = 256 * 1024;
+
+    private static final String ENVELOPE_START = "{\"version\":" + ENVELOPE_VERSION + ",\"subscriptions\":[";
+    private static final String ENVELOPE_END = "]}";
+
+    private int maxSubscriptionsPerMessage;
+    private Map<String, MessageAttributeValue> envelopeAttributes;
+    private List<String> pendingBodies = new ArrayList<>();
+    private List<CompletableFuture<SendMessageResult>> pendingResults = new ArrayList<>();
+    private int envelopeBytes;
+
+    public EnvelopeDispatcher(AmazonSQSAsync client, String queueUrl, String correlationId, int maxSubscriptionsPerMessage) {
+
+        super(client, queueUrl, correlationId);
+        this.maxSubscriptionsPerMessage = maxSubscriptionsPerMessage;
+        this.envelopeAttributes = new HashMap<>(attributes);
+        this.envelopeAttributes.put(ENVELOPE_VERSION_ATTRIBUTE,
+                new MessageAttributeValue().withDataType("Number").withStringValue(String.valueOf(ENVELOPE_VERSION)));
+        this.envelopeBytes = emptyEnvelopeBytes();
+    }
+
+    @Override
+    public synchronized DispatchResult dispatch(Subscription subscription) {
+
+        String body = toMessageBody(subscription);
+        int bodyBytes = sizeOf(body) + (pendingBodies.isEmpty() ? 0 : 1);
+
+        if (!pendingBodies.isEmpty() && envelopeBytes + bodyBytes > MAX_MESSAGE_BYTES) {
+            flush();
+            bodyBytes = sizeOf(body);
+        }
+
+        CompletableFuture<SendMessageResult> result = new CompletableFuture<>();
+        pendingBodies.add(body);
+        pendingResults.add(result);
+        envelopeBytes += bodyBytes;
+
+        if (pendingBodies.size() == maxSubscriptionsPerMessage) {
+            flush();
+        }
+
+        return new DispatchResult(subscription, result);
+    }
+
+    @Override
+    public synchronized void flush() {
+
+        if (pendingBodies.isEmpty()) {
+            return;
+        }
+
+        SendMessageRequest request = new SendMessageRequest()
+                .withQueueUrl(queueUrl)
+                .withMessageAttributes(envelopeAttributes)
+                .withMessageBody(ENVELOPE_START + String.join(",", pendingBodies) + ENVELOPE_END);
+
+        List<CompletableFuture<SendMessageResult>> results = pendingResults;
+        pendingBodies = new ArrayList<>();
+        pendingResults = new ArrayList<>();
+        envelopeBytes = emptyEnvelopeBytes();
+
+        stats.recordBatch(results.size());
+        send(request).whenComplete((sendMessageResult, error) -> results.forEach(result -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(sendMessageResult);
+            }
+        }));
+    }
+
+    private int emptyEnvelopeBytes() {
+
+        return sizeOf(ENVELOPE_START) + sizeOf(ENVELOPE_END) + sizeOf(envelopeAttributes);
+    }
+}
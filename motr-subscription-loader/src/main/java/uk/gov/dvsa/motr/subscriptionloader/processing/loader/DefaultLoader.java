@@ -10,8 +10,11 @@ import uk.gov.dvsa.motr.eventlog.EventLogger;
 import uk.gov.dvsa.motr.notify.PreservationDateChecker;
 import uk.gov.dvsa.motr.subscriptionloader.event.ItemSuccess;
 import uk.gov.dvsa.motr.subscriptionloader.event.LoadingError;
+import uk.gov.dvsa.motr.subscriptionloader.event.LoadingResumed;
 import uk.gov.dvsa.motr.subscriptionloader.event.LoadingSuccess;
 import uk.gov.dvsa.motr.subscriptionloader.event.LoadingTimeout;
+import uk.gov.dvsa.motr.subscriptionloader.processing.checkpoint.CheckpointStore;
+import uk.gov.dvsa.motr.subscriptionloader.processing.checkpoint.LoaderCheckpoint;
 import uk.gov.dvsa.motr.subscriptionloader.processing.dispatcher.DispatchResult;
 import uk.gov.dvsa.motr.subscriptionloader.processing.dispatcher.Dispatcher;
 import uk.gov.dvsa.motr.subscriptionloader.processing.model.Subscription;
@@ -20,10 +23,16 @@ import uk.gov.dvsa.motr.subscriptionloader.processing.producer.SubscriptionProdu
 import uk.gov.dvsa.motr.vehicledetails.VehicleType;
 
 import java.time.LocalDate;
+import java.time.MonthDay;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
@@ -44,25 +53,67 @@ public class DefaultLoader implements Loader {
      */
     private static final int LOADING_CUTOFF_DELTA_MS = 2000;
 
+    /**
+     * Time in milliseconds given to subscriptions still in flight to complete before a checkpoint is saved.
+     */
+    private static final int CHECKPOINT_DRAIN_MS = LOADING_CUTOFF_DELTA_MS / 2;
+
+    /**
+     * Longest range of reference dates a single run may catch up on.
+     */
+    static final int MAX_REFERENCE_DAYS = 31;
+
     private SubscriptionProducer producer;
     private Dispatcher dispatcher;
     private Boolean hgvPsvSubscriptionLoaderActive;
+    private int dispatchWindowSize;
+    private CheckpointStore checkpointStore;
+    private int expectedSubscriptions;
+    private boolean shardedDueDateIndex;
 
     @Inject
     public DefaultLoader(
             SubscriptionProducer producer,
             Dispatcher dispatcher,
-            Boolean hgvPsvSubscriptionLoaderActive) {
+            Boolean hgvPsvSubscriptionLoaderActive,
+            int dispatchWindowSize,
+            CheckpointStore checkpointStore,
+            int expectedSubscriptions,
+            boolean shardedDueDateIndex) {
         this.producer = producer;
         this.dispatcher = dispatcher;
         this.hgvPsvSubscriptionLoaderActive = hgvPsvSubscriptionLoaderActive;
+        this.dispatchWindowSize = dispatchWindowSize;
+        this.checkpointStore = checkpointStore;
+        this.expectedSubscriptions = expectedSubscriptions;
+        this.shardedDueDateIndex = shardedDueDateIndex;
     }
 
     public LoadReport run(LocalDate referenceDate, Context context) throws Exception {
+
+        return run(referenceDate, referenceDate, context);
+    }
+
+    /**
+     * The criteria of all the days are merged into a single search, so a due date reached from more than one reference date
+     * is only queried once. The same due date is reached by different reminders on different days, e.g. two weeks ahead of
+     * one day and a day after another, so each subscription is loaded on the latest reference date whose criteria cover its
+     * due date, which is the reminder still current at the end of the range. The checkpoint of the whole range is kept under
+     * its first day.
+     */
+    public LoadReport run(LocalDate firstDay, LocalDate lastDay, Context context) throws Exception {
         LoadReport report = new LoadReport();
 
-        Iterator<Subscription> subscriptionIterator = loadSubscriptions(referenceDate);
-        List<DispatchResult> inFlightOps = new ArrayList<>();
+        Map<SubscriptionCriteria, LocalDate> criteriaDays = mergeCriteria(referenceDates(firstDay, lastDay));
+        Map<String, LocalDate> loadedOnDates = new HashMap<>();
+        criteriaDays.forEach((criteria, day) ->
+                loadedOnDates.merge(dueDayAndType(criteria.getTestDueDate(), criteria.getVehicleType()), day, DefaultLoader::later));
+
+        LoaderCheckpoint checkpoint = loadCheckpoint(firstDay);
+        Iterator<Subscription> subscriptionIterator =
+                producer.searchSubscriptions(checkpoint.resume(indexCriteria(new ArrayList<>(criteriaDays.keySet()))));
+        DispatchWindow window = new DispatchWindow(dispatchWindowSize);
+        SeenSubscriptions seen = new SeenSubscriptions(expectedSubscriptions);
         try {
             report.startProcessing();
             Runtime runtime = Runtime.getRuntime();
@@ -72,28 +123,137 @@ public class DefaultLoader implements Loader {
 
             while (subscriptionIterator.hasNext()) {
                 Subscription subscription = subscriptionIterator.next();
-                subscription.setLoadedOnDate(referenceDate);
+                subscription.setLoadedOnDate(loadedOnDates.getOrDefault(
+                        dueDayAndType(subscription.getMotDueDate(), subscription.getVehicleType()), firstDay));
+                if (!seen.firstSighting(subscription.getId() + "#" + subscription.getLoadedOnDate())) {
+                    // returned by more than one criteria, e.g. when its due date changed while the load was running
+                    report.incrementDuplicatesSuppressed();
+                    continue;
+                }
+                checkRemainingTime(report, context);
+                acquireSlot(window, report, context);
                 report.incrementSubmittedForProcessing();
-                DispatchResult futureResult = dispatcher.dispatch(subscription);
-                inFlightOps.add(futureResult);
-                reportFinished(inFlightOps, report, context);
+                checkpoint.dispatched(subscription);
+                dispatcher.dispatch(subscription).whenComplete(result -> reportFinished(result, window, report, checkpoint));
             }
 
-            reportRemaining(inFlightOps, report, context);
+            dispatcher.flush();
+            reportRemaining(window, report, context);
+            report.recordDispatchStats(dispatcher.getStats());
+            report.recordConsumedCapacity(producer.getConsumedCapacity());
+            checkpointStore.delete(firstDay);
+
+            if (seen.getUntracked() > 0) {
+                logger.warn("{} subscription(s) were loaded without duplicate check, more than {} ids were seen",
+                        seen.getUntracked(), SeenSubscriptions.MAX_TRACKED_IDS);
+            }
 
             EventLogger.logEvent(new LoadingSuccess()
                     .setProcessed(report.getTotalProcessed())
                     .setDuration(report.getDuration())
+                    .setDuplicatesSuppressed(report.getDuplicatesSuppressed())
+                    .setConsumedCapacity(report.getTotalConsumedCapacity())
+                    .setProcessedPerDay(report.getProcessedPerDay())
             );
 
         } catch (Exception e) {
             EventLogger.logErrorEvent(new LoadingError().setProcessed(report.getTotalProcessed()), e);
+            saveCheckpoint(checkpoint, window);
             throw e;
         }
         return report;
     }
 
-    private Iterator<Subscription> loadSubscriptions(LocalDate referenceDate) {
+    private LoaderCheckpoint loadCheckpoint(LocalDate referenceDate) {
+
+        return checkpointStore.load(referenceDate).filter(LoaderCheckpoint::hasPositions).map(checkpoint -> {
+            EventLogger.logEvent(new LoadingResumed()
+                    .setReferenceDate(referenceDate)
+                    .setResumedCriteria(checkpoint.getPositions().size()));
+            return checkpoint;
+        }).orElseGet(() -> new LoaderCheckpoint(referenceDate));
+    }
+
+    /**
+     * Gives subscriptions already handed to the dispatcher a moment to complete, so the checkpoint covers as many of them
+     * as possible and the next run does not dispatch them again. A checkpoint without positions, as left by a scan, which
+     * has none, is not saved, so the next run purges the queue and starts over rather than dispatching everything again on
+     * top of what is queued.
+     */
+    private void saveCheckpoint(LoaderCheckpoint checkpoint, DispatchWindow window) {
+
+        try {
+            dispatcher.flush();
+            window.awaitCompletion(CHECKPOINT_DRAIN_MS);
+            if (!checkpoint.hasPositions()) {
+                logger.info("No criteria position to resume {} from, not saving a checkpoint", checkpoint.getReferenceDate());
+                return;
+            }
+            checkpointStore.save(checkpoint);
+            logger.info("Saved checkpoint for {} with {} criteria position(s)",
+                    checkpoint.getReferenceDate(), checkpoint.getPositions().size());
+        } catch (Exception e) {
+            logger.error("Unable to save checkpoint for {}", checkpoint.getReferenceDate(), e);
+        }
+    }
+
+    private static List<LocalDate> referenceDates(LocalDate firstDay, LocalDate lastDay) {
+
+        long days = ChronoUnit.DAYS.between(firstDay, lastDay) + 1;
+        if (days < 1 || days > MAX_REFERENCE_DAYS) {
+            throw new IllegalArgumentException(String.format(
+                    "Reference dates %s to %s must be in order and span at most %d days", firstDay, lastDay, MAX_REFERENCE_DAYS));
+        }
+
+        List<LocalDate> referenceDates = new ArrayList<>();
+        for (LocalDate day = firstDay; !day.isAfter(lastDay); day = day.plusDays(1)) {
+            referenceDates.add(day);
+        }
+        return referenceDates;
+    }
+
+    /**
+     * @return the distinct criteria of all the reference dates, each with the latest reference date it was built for
+     */
+    private Map<SubscriptionCriteria, LocalDate> mergeCriteria(List<LocalDate> referenceDates) {
+
+        Map<SubscriptionCriteria, LocalDate> criteriaDays = new LinkedHashMap<>();
+        referenceDates.forEach(day -> buildCriteria(day).forEach(criteria -> criteriaDays.merge(criteria, day, DefaultLoader::later)));
+
+        if (referenceDates.size() > 1) {
+            logger.info("Loading {} reference dates from {} to {} with {} distinct criteria", referenceDates.size(),
+                    referenceDates.get(0), referenceDates.get(referenceDates.size() - 1), criteriaDays.size());
+        }
+        return criteriaDays;
+    }
+
+    private static LocalDate later(LocalDate day, LocalDate otherDay) {
+
+        return day.isAfter(otherDay) ? day : otherDay;
+    }
+
+    /**
+     * The due date index matches on day and month only, so subscriptions are traced back to their criteria the same way
+     */
+    private static String dueDayAndType(LocalDate dueDate, VehicleType vehicleType) {
+
+        return (dueDate == null ? null : MonthDay.from(dueDate)) + "/" + vehicleType;
+    }
+
+    /**
+     * When the sharded due date index is used, every criteria is split into one criteria per shard, so the shards are
+     * queried independently and each keeps its own checkpoint position.
+     */
+    private List<SubscriptionCriteria> indexCriteria(List<SubscriptionCriteria> criteria) {
+
+        if (!shardedDueDateIndex) {
+            return criteria;
+        }
+
+        return criteria.stream().flatMap(unsharded -> unsharded.shards().stream()).collect(Collectors.toList());
+    }
+
+    private List<SubscriptionCriteria> buildCriteria(LocalDate referenceDate) {
         LocalDate inTwoMonths = referenceDate.plusDays(TWO_MONTHS_AHEAD_NOTIFICATION_TIME_DAYS);
         LocalDate inOneMonth = referenceDate.plusMonths(ONE_MONTH_AHEAD_NOTIFICATION_TIME_MONTH);
         LocalDate inTwoWeeks = referenceDate.plusDays(TWO_WEEKS_AHEAD_NOTIFICATION_TIME_DAYS);
@@ -112,71 +272,92 @@ public class DefaultLoader implements Loader {
         }
 
         if (PreservationDateChecker.dateIs29February(referenceDate)) {
-            return producer.searchSubscriptions(getCriteria29February(referenceDate, criteria));
+            return getCriteria29February(referenceDate, criteria);
         }
 
         if (PreservationDateChecker.dateIs28FebruaryButNotLeapYear(referenceDate)) {
-            return producer.searchSubscriptions(getCriteria28FebruaryNotLeapYear(referenceDate, criteria));
+            return getCriteria28FebruaryNotLeapYear(referenceDate, criteria);
         }
 
         if (PreservationDateChecker.expiryMonthIsLongerThanPreviousMonthButNotMarch(referenceDate)) {
-            return producer.searchSubscriptions(getCriteriaShortMonth(referenceDate, criteria));
+            return getCriteriaShortMonth(referenceDate, criteria);
         }
 
         if (PreservationDateChecker.isValidPreservationDate(referenceDate)) {
-            return producer.searchSubscriptions(getCriteriaWithOneMonthNotification(referenceDate, criteria));
+            return getCriteriaWithOneMonthNotification(referenceDate, criteria);
         }
 
-        return producer.searchSubscriptions(criteria);
+        return criteria;
     }
 
-    private void reportFinished(List<DispatchResult> result, LoadReport report, Context context) throws LoadingException {
+    private void acquireSlot(DispatchWindow window, LoadReport report, Context context) throws Exception {
 
-        checkRemainingTime(report, context);
-        Iterator<DispatchResult> iterator = result.iterator();
-        processResults(iterator, report);
+        if (!window.acquire(0)) {
+            // the window may be held by messages the dispatcher has not sent yet
+            dispatcher.flush();
+            if (!window.acquire(remainingTimeMs(context))) {
+                throw timedOut(report);
+            }
+        }
+        checkFailure(window);
     }
 
-    private void reportRemaining(List<DispatchResult> result, LoadReport report, Context context) throws Exception {
+    private void reportFinished(DispatchResult dispatchResult, DispatchWindow window, LoadReport report, LoaderCheckpoint checkpoint) {
 
-        logger.debug("reporting remaining count: {}", result.size());
-        while (result.size() > 0) {
-            checkRemainingTime(report, context);
-            Iterator<DispatchResult> iterator = result.iterator();
-            processResults(iterator, report);
+        try {
+            if (dispatchResult.isFailed()) {
+                window.fail(dispatchResult.getError());
+            } else {
+                report.incrementTotalProcessed();
+                Subscription subscription = dispatchResult.getSubscription();
+                report.incrementProcessedOn(subscription.getLoadedOnDate());
+                checkpoint.completed(subscription);
+
+                updateReport(report, subscription);
+                logSuccess(subscription);
+            }
+        } finally {
+            window.release();
         }
     }
 
-    private void processResults(Iterator<DispatchResult> dispatchResultIterator, LoadReport report) throws LoadingException {
+    private void reportRemaining(DispatchWindow window, LoadReport report, Context context) throws Exception {
 
-        while (dispatchResultIterator.hasNext()) {
-            DispatchResult dispatchResult = dispatchResultIterator.next();
-            if (dispatchResult.isDone()) {
-                if (!dispatchResult.isFailed()) {
-                    report.incrementTotalProcessed();
-                    dispatchResultIterator.remove();
-                    Subscription subscription = dispatchResult.getSubscription();
+        logger.debug("reporting remaining count: {}", window.getInFlight());
+        if (!window.awaitCompletion(remainingTimeMs(context))) {
+            throw timedOut(report);
+        }
+        checkFailure(window);
+    }
 
-                    updateReport(report, subscription);
-                    logSuccess(subscription);
-                } else {
-                    throw new LoadingException(dispatchResult.getError());
-                }
-            }
+    private void checkFailure(DispatchWindow window) throws LoadingException {
+
+        if (window.getFailure() != null) {
+            throw new LoadingException(window.getFailure());
         }
     }
 
     private void checkRemainingTime(LoadReport report, Context context) throws LoadingException {
 
-        if (context.getRemainingTimeInMillis() < LOADING_CUTOFF_DELTA_MS) {
-            EventLogger.logEvent(new LoadingTimeout()
-                    .setProcessed(report.getTotalProcessed())
-                    .setSubmittedForProcessing(report.getSubmittedForProcessing())
-                    .setDuration(report.getDuration()));
-            throw new LoadingException(new Exception("Ran out of time. Unable to process all subscriptions"));
+        if (remainingTimeMs(context) < 0) {
+            throw timedOut(report);
         }
     }
 
+    private long remainingTimeMs(Context context) {
+
+        return context.getRemainingTimeInMillis() - LOADING_CUTOFF_DELTA_MS;
+    }
+
+    private LoadingException timedOut(LoadReport report) {
+
+        EventLogger.logEvent(new LoadingTimeout()
+                .setProcessed(report.getTotalProcessed())
+                .setSubmittedForProcessing(report.getSubmittedForProcessing())
+                .setDuration(report.getDuration()));
+        return new LoadingException(new Exception("Ran out of time. Unable to process all subscriptions"));
+    }
+
     private void updateReport(LoadReport report, Subscription subscription) {
         switch (subscription.getVehicleType()) {
             case MOT:
@@ -0,0 +1,59 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.loader;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bounds the number of dispatches in flight. A slot is taken before each send and handed back by the send's completion
+ * callback, so a full window parks the loader thread until some send completes rather than polling every outstanding send.
+ */
+class DispatchWindow {
+
+    private final Semaphore slots;
+    private final int size;
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    DispatchWindow(int size) {
+
+        this.size = size;
+        this.slots = new Semaphore(size);
+    }
+
+    boolean acquire(long timeoutMs) throws InterruptedException {
+
+        return slots.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    void release() {
+
+        slots.release();
+    }
+
+    /**
+     * Waits until every dispatch handed out a slot has completed.
+     */
+    boolean awaitCompletion(long timeoutMs) throws InterruptedException {
+
+        if (!slots.tryAcquire(size, timeoutMs, TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+        slots.release(size);
+        return true;
+    }
+
+    void fail(Exception exception) {
+
+        failure.compareAndSet(null, exception);
+    }
+
+    Exception getFailure() {
+
+        return failure.get();
+    }
+
+    int getInFlight() {
+
+        return size - slots.availablePermits();
+    }
+}
@@ -1,87 +1,173 @@
 package uk.gov.dvsa.motr.subscriptionloader.processing.loader;
 
+import uk.gov.dvsa.motr.subscriptionloader.processing.dispatcher.DispatchStats;
+import uk.gov.dvsa.motr.subscriptionloader.processing.producer.SubscriptionCriteria;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class LoadReport {
 
-    private int submittedForProcessing = 0;
-    private int totalProcessed = 0;
-    private int motDvlaVehiclesProcessed = 0;
-    private int motNonDvlaVehiclesProcessed = 0;
-    private int hgvVehiclesProcessed = 0;
-    private int psvVehiclesProcessed = 0;
-    private int hgvTrailersProcessed = 0;
-    private int otherVehcilesProcessed = 0;
+    private AtomicInteger submittedForProcessing = new AtomicInteger(0);
+    private AtomicInteger totalProcessed = new AtomicInteger(0);
+    private AtomicInteger motDvlaVehiclesProcessed = new AtomicInteger(0);
+    private AtomicInteger motNonDvlaVehiclesProcessed = new AtomicInteger(0);
+    private AtomicInteger hgvVehiclesProcessed = new AtomicInteger(0);
+    private AtomicInteger psvVehiclesProcessed = new AtomicInteger(0);
+    private AtomicInteger hgvTrailersProcessed = new AtomicInteger(0);
+    private AtomicInteger otherVehcilesProcessed = new AtomicInteger(0);
     private long startedTime = 0;
+    private int batchesSent = 0;
+    private int batchedMessages = 0;
+    private int retriedMessages = 0;
+    private AtomicInteger duplicatesSuppressed = new AtomicInteger(0);
+    private Map<SubscriptionCriteria, Double> consumedCapacity = new HashMap<>();
+    private Map<LocalDate, AtomicInteger> processedPerDay = new ConcurrentHashMap<>();
 
     public void incrementTotalProcessed() {
 
-        totalProcessed++;
+        totalProcessed.incrementAndGet();
     }
 
     public void incrementDvlaVehiclesProcessed() {
 
-        motDvlaVehiclesProcessed++;
+        motDvlaVehiclesProcessed.incrementAndGet();
     }
 
     public void incrementNonDvlaVehiclesProcessed() {
 
-        motNonDvlaVehiclesProcessed++;
+        motNonDvlaVehiclesProcessed.incrementAndGet();
     }
 
     public void incrementHgvVehiclesProcessed() {
-        hgvVehiclesProcessed++;
+        hgvVehiclesProcessed.incrementAndGet();
     }
 
     public void incrementPsvVehiclesProcessed() {
-        psvVehiclesProcessed++;
+        psvVehiclesProcessed.incrementAndGet();
     }
 
     public void incrementHgvTrailersProcessed() {
-        hgvTrailersProcessed++;
+        hgvTrailersProcessed.incrementAndGet();
     }
 
     public void incrementOtherVehiclesPorcessed() {
-        otherVehcilesProcessed++;
+        otherVehcilesProcessed.incrementAndGet();
     }
 
     public void incrementSubmittedForProcessing() {
 
-        submittedForProcessing++;
+        submittedForProcessing.incrementAndGet();
+    }
+
+    public void incrementProcessedOn(LocalDate loadedOnDate) {
+
+        if (loadedOnDate != null) {
+            processedPerDay.computeIfAbsent(loadedOnDate, day -> new AtomicInteger(0)).incrementAndGet();
+        }
+    }
+
+    public void incrementDuplicatesSuppressed() {
+
+        duplicatesSuppressed.incrementAndGet();
     }
 
     public int getTotalProcessed() {
 
-        return totalProcessed;
+        return totalProcessed.get();
     }
 
     public int getSubmittedForProcessing() {
 
-        return submittedForProcessing;
+        return submittedForProcessing.get();
     }
 
     public int getMotDvlaVehiclesProcessed() {
 
-        return motDvlaVehiclesProcessed;
+        return motDvlaVehiclesProcessed.get();
     }
 
     public int getMotNonDvlaVehiclesProcessed() {
 
-        return motNonDvlaVehiclesProcessed;
+        return motNonDvlaVehiclesProcessed.get();
     }
 
     public int getHgvVehiclesProcessed() {
-        return hgvVehiclesProcessed;
+        return hgvVehiclesProcessed.get();
     }
 
     public int getPsvVehiclesProcessed() {
-        return psvVehiclesProcessed;
+        return psvVehiclesProcessed.get();
     }
 
     public int getHgvTrailersProcessed() {
-        return hgvTrailersProcessed;
+        return hgvTrailersProcessed.get();
     }
 
     public int getOtherVehcilesProcessed() {
-        return otherVehcilesProcessed;
+        return otherVehcilesProcessed.get();
+    }
+
+    /**
+     * Subscriptions processed for each reference date of the run, in date order
+     */
+    public Map<LocalDate, Integer> getProcessedPerDay() {
+
+        Map<LocalDate, Integer> processed = new TreeMap<>();
+        processedPerDay.forEach((day, count) -> processed.put(day, count.get()));
+        return processed;
+    }
+
+    public int getDuplicatesSuppressed() {
+
+        return duplicatesSuppressed.get();
+    }
+
+    public void recordDispatchStats(DispatchStats stats) {
+
+        batchesSent = stats.getBatchesSent();
+        batchedMessages = stats.getBatchedMessages();
+        retriedMessages = stats.getRetriedMessages();
+    }
+
+    public void recordConsumedCapacity(Map<SubscriptionCriteria, Double> consumedCapacity) {
+
+        this.consumedCapacity = new HashMap<>(consumedCapacity);
+    }
+
+    /**
+     * Read capacity units consumed querying the due date index, per criteria
+     */
+    public Map<SubscriptionCriteria, Double> getConsumedCapacity() {
+
+        return consumedCapacity;
+    }
+
+    public double getTotalConsumedCapacity() {
+
+        return consumedCapacity.values().stream().mapToDouble(Double::doubleValue).sum();
+    }
+
+    public int getBatchesSent() {
+
+        return batchesSent;
+    }
+
+    public int getRetriedMessages() {
+
+        return retriedMessages;
+    }
+
+    /**
+     * Average number of messages per SendMessageBatch request, 0 when the dispatcher did not batch messages itself
+     */
+    public double getAverageBatchFill() {
+
+        return batchesSent == 0 ? 0 : (double) batchedMessages / batchesSent;
     }
 
     public void startProcessing() {
@@ -105,6 +191,12 @@ public class LoadReport {
                 ", psvVehiclesProcessed=" + psvVehiclesProcessed +
                 ", hgvTrailersProcessed=" + hgvTrailersProcessed +
                 ", startedTime=" + startedTime +
+                ", batchesSent=" + batchesSent +
+                ", averageBatchFill=" + getAverageBatchFill() +
+                ", retriedMessages=" + retriedMessages +
+                ", duplicatesSuppressed=" + duplicatesSuppressed +
+                ", consumedCapacity=" + consumedCapacity +
+                ", processedPerDay=" + getProcessedPerDay() +
                 '}';
     }
 }
@@ -7,4 +7,10 @@ import java.time.LocalDate;
 public interface Loader {
 
     LoadReport run(LocalDate today, Context context) throws Exception;
+
+    /**
+     * Loads the subscriptions of every reference date from firstDay to lastDay inclusive in a single pass, e.g. to catch up
+     * on days missed during an outage
+     */
+    LoadReport run(LocalDate firstDay, LocalDate lastDay, Context context) throws Exception;
 }
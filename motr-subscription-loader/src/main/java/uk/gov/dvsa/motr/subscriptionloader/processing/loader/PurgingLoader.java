@@ -8,6 +8,9 @@ import com.amazonaws.services.sqs.model.PurgeQueueRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uk.gov.dvsa.motr.subscriptionloader.processing.checkpoint.CheckpointStore;
+import uk.gov.dvsa.motr.subscriptionloader.processing.checkpoint.LoaderCheckpoint;
+
 import java.time.LocalDate;
 
 public class PurgingLoader implements Loader {
@@ -19,19 +22,48 @@ public class PurgingLoader implements Loader {
     private String queueUrl;
     private int postPurgeDelayMs;
     private int purgeInProgressDelayMs;
+    private CheckpointStore checkpointStore;
 
-    public PurgingLoader(Loader wrappedLoader, AmazonSQS awsSqs, String queueUrl, int postPurgeDelayMs, int purgeInProgressDelayMs) {
+    public PurgingLoader(Loader wrappedLoader, AmazonSQS awsSqs, String queueUrl, int postPurgeDelayMs, int purgeInProgressDelayMs,
+            CheckpointStore checkpointStore) {
 
         this.wrappedLoader = wrappedLoader;
         this.awsSqs = awsSqs;
         this.queueUrl = queueUrl;
         this.postPurgeDelayMs = postPurgeDelayMs;
         this.purgeInProgressDelayMs = purgeInProgressDelayMs;
+        this.checkpointStore = checkpointStore;
     }
 
     @Override
     public LoadReport run(LocalDate today, Context context) throws Exception {
 
+        if (!purgeUnlessResuming(today)) {
+            logger.info("Checkpoint found for {}, resuming without purge", today);
+        }
+        return wrappedLoader.run(today, context);
+    }
+
+    @Override
+    public LoadReport run(LocalDate firstDay, LocalDate lastDay, Context context) throws Exception {
+
+        if (!purgeUnlessResuming(firstDay)) {
+            logger.info("Checkpoint found for {} to {}, resuming without purge", firstDay, lastDay);
+        }
+        return wrappedLoader.run(firstDay, lastDay, context);
+    }
+
+    /**
+     * @return false when the load is resumed from a checkpoint, in which case the queue holds what the interrupted run
+     *     dispatched and purging it would lose those subscriptions. A checkpoint without positions is not resumed from, so the
+     *     queue is purged and the load starts over.
+     */
+    private boolean purgeUnlessResuming(LocalDate checkpointDate) throws InterruptedException {
+
+        if (checkpointStore.load(checkpointDate).filter(LoaderCheckpoint::hasPositions).isPresent()) {
+            return false;
+        }
+
         long purgingStartedAt = System.currentTimeMillis();
 
         while (true) {
@@ -53,7 +85,6 @@ public class PurgingLoader implements Loader {
         }
 
         logger.info("Purging completed in: {} ms", System.currentTimeMillis() - purgingStartedAt);
-
-        return wrappedLoader.run(today, context);
+        return true;
     }
 }
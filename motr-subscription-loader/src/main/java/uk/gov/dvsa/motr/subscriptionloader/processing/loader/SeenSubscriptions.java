@@ -0,0 +1,113 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.loader;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Remembers which subscription ids have been dispatched during a load, so a subscription returned by more than one
+ * criteria query is only dispatched once. Ids are kept as 64 bit hashes in an open addressing table of longs, which costs
+ * well under 20 bytes per id and, unlike a bloom filter, never reports an unseen subscription as seen in practice.
+ * The table starts sized for the expected number of subscriptions and grows up to {@link #MAX_TRACKED_IDS}, after which new
+ * ids are no longer remembered and are let through.
+ */
+class SeenSubscriptions {
+
+    static final int MAX_TRACKED_IDS = 1 << 20;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    private static final long EMPTY = 0L;
+    private static final long EMPTY_REPLACEMENT = 1L;
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    private long[] table;
+    private int size = 0;
+    private int untracked = 0;
+
+    SeenSubscriptions(int expectedSubscriptions) {
+
+        int expected = Math.min(Math.max(expectedSubscriptions, 1), MAX_TRACKED_IDS);
+        int capacity = Integer.highestOneBit(Math.max(16, (int) Math.ceil(expected / MAX_LOAD_FACTOR)) - 1) << 1;
+        this.table = new long[capacity];
+    }
+
+    /**
+     * @return true when the id has not been seen before during this load
+     */
+    boolean firstSighting(String id) {
+
+        if (id == null) {
+            return true;
+        }
+
+        long hash = hash(id);
+        if (contains(hash)) {
+            return false;
+        }
+
+        if (size == MAX_TRACKED_IDS) {
+            untracked++;
+            return true;
+        }
+
+        if (size + 1 > table.length * MAX_LOAD_FACTOR) {
+            resize();
+        }
+
+        insert(table, hash);
+        size++;
+        return true;
+    }
+
+    int size() {
+
+        return size;
+    }
+
+    /**
+     * Number of ids let through without being remembered because the table was full
+     */
+    int getUntracked() {
+
+        return untracked;
+    }
+
+    private boolean contains(long hash) {
+
+        int mask = table.length - 1;
+        for (int slot = (int) hash & mask; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (table[slot] == hash) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void resize() {
+
+        long[] resized = new long[table.length << 1];
+        for (long hash : table) {
+            if (hash != EMPTY) {
+                insert(resized, hash);
+            }
+        }
+        table = resized;
+    }
+
+    private static void insert(long[] table, long hash) {
+
+        int mask = table.length - 1;
+        int slot = (int) hash & mask;
+        while (table[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = hash;
+    }
+
+    private static long hash(String id) {
+
+        long hash = HASH_FUNCTION.hashString(id, StandardCharsets.UTF_8).asLong();
+        return hash == EMPTY ? EMPTY_REPLACEMENT : hash;
+    }
+}
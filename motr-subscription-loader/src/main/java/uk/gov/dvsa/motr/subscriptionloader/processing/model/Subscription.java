@@ -1,5 +1,6 @@
 package uk.gov.dvsa.motr.subscriptionloader.processing.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -7,11 +8,13 @@ import com.fasterxml.jackson.annotation.JsonUnwrapped;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
+import uk.gov.dvsa.motr.subscriptionloader.processing.producer.SubscriptionCriteria;
 import uk.gov.dvsa.motr.subscriptionloader.serialisation.LocalDateDeserialiser;
 import uk.gov.dvsa.motr.subscriptionloader.serialisation.LocalDateSerialiser;
 import uk.gov.dvsa.motr.vehicledetails.VehicleType;
 
 import java.time.LocalDate;
+import java.util.Map;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Subscription {
@@ -60,6 +63,12 @@ public class Subscription {
     @JsonProperty("vehicleType")
     private VehicleType vehicleType;
 
+    @JsonIgnore
+    private SubscriptionCriteria criteria;
+
+    @JsonIgnore
+    private Map<String, String> position;
+
     public String getId() {
 
         return id;
@@ -146,6 +155,29 @@ public class Subscription {
         return this;
     }
 
+    /**
+     * Criteria the subscription was found by, or null if the producer does not keep track of it
+     */
+    public SubscriptionCriteria getCriteria() {
+
+        return criteria;
+    }
+
+    /**
+     * Index key of the subscription, which a query for the same criteria can be resumed after
+     */
+    public Map<String, String> getPosition() {
+
+        return position;
+    }
+
+    public Subscription setSource(SubscriptionCriteria criteria, Map<String, String> position) {
+
+        this.criteria = criteria;
+        this.position = position;
+        return this;
+    }
+
     @Override
     public String toString() {
 
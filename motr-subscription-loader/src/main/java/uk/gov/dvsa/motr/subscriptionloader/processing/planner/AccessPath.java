@@ -0,0 +1,17 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.planner;
+
+/**
+ * Ways of reading the subscriptions matching a load's criteria from the subscription table
+ */
+public enum AccessPath {
+
+    /**
+     * One due date index query per criteria
+     */
+    INDEX_QUERY,
+
+    /**
+     * A single parallel scan of the whole table, filtered on due day and vehicle type
+     */
+    PARALLEL_SCAN
+}
@@ -0,0 +1,110 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.planner;
+
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.gov.dvsa.motr.subscription.DueDateShardKey;
+import uk.gov.dvsa.motr.subscriptionloader.processing.producer.DynamoDbProducer;
+import uk.gov.dvsa.motr.subscriptionloader.processing.producer.SubscriptionCriteria;
+
+import java.util.List;
+
+/**
+ * Decides whether the subscriptions for a load are read through the due date index or by a parallel scan of the table.
+ *
+ * <p>The size of each criteria is estimated with a COUNT query on the index which stops after {@link #SAMPLE_LIMIT} items,
+ * so a normal day costs a handful of cheap requests. A criteria reaching the limit is assumed to hold its share of the
+ * table, as reported by DescribeTable, if that is larger.
+ *
+ * <p>Both paths are compared on the number of consecutive pages their slowest reader has to fetch. An index query never
+ * reads more capacity than a scan, so the scan only pays off when it finishes sooner, which happens when the criteria
+ * between them cover a large part of the table, e.g. on catch-up runs.
+ */
+public class AccessPathPlanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccessPathPlanner.class.getSimpleName());
+
+    static final int SAMPLE_LIMIT = 1000;
+
+    /**
+     * Items returned by a page of an index query, see ParallelDynamoDbProducer
+     */
+    static final int QUERY_PAGE_ITEMS = 500;
+
+    /**
+     * Data read by a page of a scan
+     */
+    static final long SCAN_PAGE_BYTES = 1024 * 1024;
+
+    private static final int DAYS_IN_YEAR = 365;
+
+    private DynamoDB dynamoDb;
+    private String subscriptionTableName;
+    private DynamoDbProducer indexProducer;
+    private int queryConcurrency;
+    private int scanSegments;
+
+    public AccessPathPlanner(DynamoDB dynamoDb, String subscriptionTableName, DynamoDbProducer indexProducer, int queryConcurrency,
+            int scanSegments) {
+
+        this.dynamoDb = dynamoDb;
+        this.subscriptionTableName = subscriptionTableName;
+        this.indexProducer = indexProducer;
+        this.queryConcurrency = Math.max(1, queryConcurrency);
+        this.scanSegments = Math.max(1, scanSegments);
+    }
+
+    public AccessPlan plan(List<SubscriptionCriteria> criteriaList) {
+
+        int criteriaCount = criteriaList.size();
+        if (criteriaList.isEmpty()) {
+            return new AccessPlan(AccessPath.INDEX_QUERY, "no criteria", criteriaCount);
+        }
+
+        if (criteriaList.stream().anyMatch(criteria -> criteria.getExclusiveStartKey() != null)) {
+            return new AccessPlan(AccessPath.INDEX_QUERY, "resuming from checkpoint", criteriaCount);
+        }
+
+        TableDescription table;
+        try {
+            table = dynamoDb.getTable(subscriptionTableName).describe();
+        } catch (RuntimeException e) {
+            logger.warn("Unable to describe {}, falling back to index queries", subscriptionTableName, e);
+            return new AccessPlan(AccessPath.INDEX_QUERY, "table statistics unavailable", criteriaCount);
+        }
+
+        long tableItems = table.getItemCount() == null ? 0 : table.getItemCount();
+        long tableBytes = table.getTableSizeBytes() == null ? 0 : table.getTableSizeBytes();
+
+        long estimatedItems = 0;
+        double indexPages = 0;
+        for (SubscriptionCriteria criteria : criteriaList) {
+            long estimate = estimate(criteria, tableItems);
+            estimatedItems += estimate;
+            indexPages += Math.max(1, Math.ceil((double) estimate / QUERY_PAGE_ITEMS));
+        }
+
+        double indexQueryPages = indexPages / Math.min(queryConcurrency, criteriaCount);
+        double scanPages = Math.max(1, Math.ceil((double) tableBytes / SCAN_PAGE_BYTES)) / scanSegments;
+
+        AccessPlan plan = scanPages < indexQueryPages
+                ? new AccessPlan(AccessPath.PARALLEL_SCAN, "scan needs fewer consecutive pages", criteriaCount)
+                : new AccessPlan(AccessPath.INDEX_QUERY, "index needs no more consecutive pages", criteriaCount);
+
+        return plan.setEstimates(estimatedItems, tableItems, indexQueryPages, scanPages);
+    }
+
+    private long estimate(SubscriptionCriteria criteria, long tableItems) {
+
+        int sampled = indexProducer.countUpTo(criteria, SAMPLE_LIMIT);
+        if (sampled < SAMPLE_LIMIT) {
+            return sampled;
+        }
+
+        long share = tableItems / DAYS_IN_YEAR / (criteria.isSharded() ? DueDateShardKey.SHARD_COUNT : 1);
+        return Math.max(sampled, share);
+    }
+}
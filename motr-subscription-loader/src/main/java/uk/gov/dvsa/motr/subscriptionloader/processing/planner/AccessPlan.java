@@ -0,0 +1,81 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.planner;
+
+/**
+ * The access path chosen for a load along with the estimates it was chosen on. Page counts are per concurrent reader,
+ * i.e. the number of consecutive requests the slowest reader is expected to make.
+ */
+public class AccessPlan {
+
+    private AccessPath path;
+    private String reason;
+    private int criteriaCount;
+    private long estimatedItems;
+    private long tableItems;
+    private double indexQueryPages;
+    private double scanPages;
+
+    AccessPlan(AccessPath path, String reason, int criteriaCount) {
+
+        this.path = path;
+        this.reason = reason;
+        this.criteriaCount = criteriaCount;
+    }
+
+    AccessPlan setEstimates(long estimatedItems, long tableItems, double indexQueryPages, double scanPages) {
+
+        this.estimatedItems = estimatedItems;
+        this.tableItems = tableItems;
+        this.indexQueryPages = indexQueryPages;
+        this.scanPages = scanPages;
+        return this;
+    }
+
+    public AccessPath getPath() {
+
+        return path;
+    }
+
+    public String getReason() {
+
+        return reason;
+    }
+
+    public int getCriteriaCount() {
+
+        return criteriaCount;
+    }
+
+    public long getEstimatedItems() {
+
+        return estimatedItems;
+    }
+
+    public long getTableItems() {
+
+        return tableItems;
+    }
+
+    public double getIndexQueryPages() {
+
+        return indexQueryPages;
+    }
+
+    public double getScanPages() {
+
+        return scanPages;
+    }
+
+    @Override
+    public String toString() {
+
+        return "AccessPlan{" +
+                "path=" + path +
+                ", reason='" + reason + '\'' +
+                ", criteriaCount=" + criteriaCount +
+                ", estimatedItems=" + estimatedItems +
+                ", tableItems=" + tableItems +
+                ", indexQueryPages=" + indexQueryPages +
+                ", scanPages=" + scanPages +
+                '}';
+    }
+}
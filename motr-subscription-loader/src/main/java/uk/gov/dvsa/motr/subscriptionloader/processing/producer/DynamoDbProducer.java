@@ -4,19 +4,32 @@ import com.amazonaws.services.dynamodbv2.document.DynamoDB;
 import com.amazonaws.services.dynamodbv2.document.Index;
 import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.ItemCollection;
+import com.amazonaws.services.dynamodbv2.document.LowLevelResultListener;
+import com.amazonaws.services.dynamodbv2.document.PrimaryKey;
 import com.amazonaws.services.dynamodbv2.document.QueryOutcome;
+import com.amazonaws.services.dynamodbv2.document.Table;
 import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
+import com.amazonaws.services.dynamodbv2.document.utils.NameMap;
 import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.Select;
 
+import uk.gov.dvsa.motr.subscription.DueDateShardKey;
 import uk.gov.dvsa.motr.subscriptionloader.processing.model.ContactDetail;
 import uk.gov.dvsa.motr.subscriptionloader.processing.model.Subscription;
 import uk.gov.dvsa.motr.vehicledetails.VehicleType;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -26,10 +39,30 @@ public class DynamoDbProducer implements SubscriptionProducer {
 
     private static final String DUE_DATE_INDEX_NAME = "due-date-md-vehicle-type-gsi";
     private static final String DUE_DATE_AND_VEHICLE_TYPE_EXPRESSION = "mot_due_date_md = :due_date and vehicle_type = :vehicle_type";
+    private static final String SHARDED_DUE_DATE_AND_VEHICLE_TYPE_EXPRESSION =
+            DueDateShardKey.ATTRIBUTE + " = :due_date and vehicle_type = :vehicle_type";
+
+    /**
+     * Attributes making up the position of an item in the due date index: the table key followed by the index key
+     */
+    private static final List<String> INDEX_POSITION_ATTRIBUTES = Arrays.asList("vrm", "email", "mot_due_date_md", "vehicle_type");
+    private static final List<String> SHARDED_INDEX_POSITION_ATTRIBUTES =
+            Arrays.asList("vrm", "email", DueDateShardKey.ATTRIBUTE, "vehicle_type");
+
+    /**
+     * Attributes read from each item, so the rest of the subscription is not transferred
+     */
+    private static final List<String> PROJECTED_ATTRIBUTES = Arrays.asList("id", "vrm", "email", "contact_type", "mot_test_number",
+            "dvla_id", "mot_due_date", "mot_due_date_md", DueDateShardKey.ATTRIBUTE, "vehicle_type");
+
+    protected static final String PROJECTION_EXPRESSION = PROJECTED_ATTRIBUTES.stream()
+            .map(attribute -> "#" + attribute)
+            .collect(Collectors.joining(","));
 
     private String subscriptionTableName;
     private DynamoDB dynamoDb;
     private DateTimeFormatter dayMonthFormatter = DateTimeFormatter.ofPattern("MM-dd");
+    private Map<SubscriptionCriteria, Double> consumedCapacity = new ConcurrentHashMap<>();
 
     public DynamoDbProducer(DynamoDB dynamoDb, String subscriptionTableName) {
 
@@ -38,11 +71,11 @@ public class DynamoDbProducer implements SubscriptionProducer {
     }
 
     public Iterator<Subscription> searchSubscriptions(List<SubscriptionCriteria> criteriaList) {
-        Index dueDateIndex = dynamoDb.getTable(subscriptionTableName).getIndex(DUE_DATE_INDEX_NAME);
+        resetConsumedCapacity();
         // TODO do in one query
 
         final List<Iterator<Item>> outcomeIterators = criteriaList.stream().map(
-                criteria -> searchSubscriptionsInIndex(dueDateIndex, criteria).iterator()
+                criteria -> measuredSearch(criteria).iterator()
         ).collect(Collectors.toList());
 
         return new Iterator<Subscription>() {
@@ -53,30 +86,131 @@ public class DynamoDbProducer implements SubscriptionProducer {
 
             @Override
             public Subscription next() {
-                Item item = outcomeIterators.stream()
-                        .filter(Iterator::hasNext)
-                        .findFirst()
-                        .map(Iterator::next)
-                        .orElseThrow(NoSuchElementException::new);
+                for (int i = 0; i < outcomeIterators.size(); i++) {
+                    if (outcomeIterators.get(i).hasNext()) {
+                        return toSubscription(criteriaList.get(i), outcomeIterators.get(i).next());
+                    }
+                }
 
-                return mapItemToSubscription(item);
+                throw new NoSuchElementException();
             }
         };
     }
 
-    private ItemCollection<QueryOutcome> searchSubscriptionsInIndex(Index dueDateIndex, SubscriptionCriteria criteria) {
-        QuerySpec query = new QuerySpec()
-                .withKeyConditionExpression(DUE_DATE_AND_VEHICLE_TYPE_EXPRESSION)
+    @Override
+    public Map<SubscriptionCriteria, Double> getConsumedCapacity() {
+
+        return new HashMap<>(consumedCapacity);
+    }
+
+    protected void resetConsumedCapacity() {
+
+        consumedCapacity.clear();
+    }
+
+    protected void recordConsumedCapacity(SubscriptionCriteria criteria, QueryOutcome outcome) {
+
+        ConsumedCapacity capacity = outcome == null ? null : outcome.getQueryResult().getConsumedCapacity();
+        if (capacity != null && capacity.getCapacityUnits() != null) {
+            consumedCapacity.merge(criteria, capacity.getCapacityUnits(), Double::sum);
+        }
+    }
+
+    /**
+     * Counts the subscriptions matching the criteria, but reads no further than the given number of them
+     */
+    public int countUpTo(SubscriptionCriteria criteria, int limit) {
+
+        QuerySpec count = keyQuery(criteria)
+                .withSelect(Select.COUNT)
+                .withMaxPageSize(limit);
+
+        QueryResult result = getDueDateIndex(criteria).query(count).firstPage().getLowLevelResult().getQueryResult();
+        return result.getCount() == null ? 0 : result.getCount();
+    }
+
+    protected Table getSubscriptionTable() {
+
+        return dynamoDb.getTable(subscriptionTableName);
+    }
+
+    protected Index getDueDateIndex(SubscriptionCriteria criteria) {
+        String indexName = criteria.isSharded() ? DueDateShardKey.INDEX_NAME : DUE_DATE_INDEX_NAME;
+        return getSubscriptionTable().getIndex(indexName);
+    }
+
+    /**
+     * Names of the projected attributes, each under a "#attribute" placeholder
+     */
+    protected static NameMap projectedNames() {
+
+        NameMap projectedNames = new NameMap();
+        PROJECTED_ATTRIBUTES.forEach(attribute -> projectedNames.with("#" + attribute, attribute));
+        return projectedNames;
+    }
+
+    private QuerySpec keyQuery(SubscriptionCriteria criteria) {
+
+        return new QuerySpec()
+                .withKeyConditionExpression(criteria.isSharded()
+                        ? SHARDED_DUE_DATE_AND_VEHICLE_TYPE_EXPRESSION
+                        : DUE_DATE_AND_VEHICLE_TYPE_EXPRESSION)
                 .withValueMap(
                         new ValueMap()
-                                .withString(":due_date", criteria.getTestDueDate().format(dayMonthFormatter))
+                                .withString(":due_date", dueDateKey(criteria))
                                 .withString(":vehicle_type", criteria.getVehicleType().name())
 
                 );
-        return dueDateIndex.query(query);
     }
 
-    private Subscription mapItemToSubscription(Item item) {
+    protected QuerySpec buildQuery(SubscriptionCriteria criteria) {
+        QuerySpec query = keyQuery(criteria)
+                .withProjectionExpression(PROJECTION_EXPRESSION)
+                .withNameMap(projectedNames())
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+
+        if (criteria.getExclusiveStartKey() != null) {
+            PrimaryKey startKey = new PrimaryKey();
+            criteria.getExclusiveStartKey().forEach(startKey::addComponent);
+            query.withExclusiveStartKey(startKey);
+        }
+
+        return query;
+    }
+
+    protected ItemCollection<QueryOutcome> searchSubscriptionsInIndex(SubscriptionCriteria criteria) {
+        return getDueDateIndex(criteria).query(buildQuery(criteria));
+    }
+
+    private String dueDateKey(SubscriptionCriteria criteria) {
+
+        return criteria.isSharded()
+                ? DueDateShardKey.forShard(criteria.getTestDueDate(), criteria.getShard())
+                : criteria.getTestDueDate().format(dayMonthFormatter);
+    }
+
+    private ItemCollection<QueryOutcome> measuredSearch(SubscriptionCriteria criteria) {
+
+        ItemCollection<QueryOutcome> items = searchSubscriptionsInIndex(criteria);
+        items.registerLowLevelResultListener(new LowLevelResultListener<QueryOutcome>() {
+            @Override
+            public void onLowLevelResult(QueryOutcome outcome) {
+
+                recordConsumedCapacity(criteria, outcome);
+            }
+        });
+        return items;
+    }
+
+    protected Subscription toSubscription(SubscriptionCriteria criteria, Item item) {
+        List<String> positionAttributes = criteria.isSharded() ? SHARDED_INDEX_POSITION_ATTRIBUTES : INDEX_POSITION_ATTRIBUTES;
+        Map<String, String> position = new HashMap<>();
+        positionAttributes.forEach(attribute -> position.put(attribute, item.getString(attribute)));
+
+        return mapItemToSubscription(item).setSource(criteria, position);
+    }
+
+    protected Subscription mapItemToSubscription(Item item) {
         LocalDate motDueDate = LocalDate.parse(item.getString("mot_due_date"), DateTimeFormatter.ISO_DATE);
         ContactDetail contactDetail = new ContactDetail(
                 item.getString("email"),
@@ -0,0 +1,86 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.producer;
+
+import uk.gov.dvsa.motr.subscriptionloader.processing.model.Subscription;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands out subscriptions that several fetchers put in a shared buffer, until every fetcher has signalled its end with
+ * {@link #END_OF_SOURCE}. A failure recorded by any fetcher is rethrown to the consumer once that fetcher has finished.
+ */
+class MergingIterator implements Iterator<Subscription> {
+
+    static final Subscription END_OF_SOURCE = new Subscription();
+
+    /**
+     * Time after which a fetcher gives up waiting for buffer space, assuming the consumer has gone away.
+     */
+    private static final long ENQUEUE_TIMEOUT_MS = 60_000;
+
+    private BlockingQueue<Subscription> buffer;
+    private AtomicReference<RuntimeException> failure;
+    private int runningFetchers;
+    private Subscription nextSubscription;
+
+    MergingIterator(BlockingQueue<Subscription> buffer, int fetcherCount, AtomicReference<RuntimeException> failure) {
+
+        this.buffer = buffer;
+        this.runningFetchers = fetcherCount;
+        this.failure = failure;
+    }
+
+    static void enqueue(BlockingQueue<Subscription> buffer, Subscription subscription) {
+
+        try {
+            if (!buffer.offer(subscription, ENQUEUE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Timed out waiting for the loader to consume subscriptions");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted whilst buffering subscriptions", e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+
+        while (nextSubscription == null && runningFetchers > 0) {
+            Subscription subscription = take();
+            if (subscription == END_OF_SOURCE) {
+                runningFetchers--;
+                if (failure.get() != null) {
+                    throw failure.get();
+                }
+            } else {
+                nextSubscription = subscription;
+            }
+        }
+        return nextSubscription != null;
+    }
+
+    @Override
+    public Subscription next() {
+
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        Subscription subscription = nextSubscription;
+        nextSubscription = null;
+        return subscription;
+    }
+
+    private Subscription take() {
+
+        try {
+            return buffer.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted whilst waiting for subscriptions", e);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.producer;
+
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.Page;
+import com.amazonaws.services.dynamodbv2.document.QueryOutcome;
+import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.gov.dvsa.motr.eventlog.EventLogger;
+import uk.gov.dvsa.motr.subscriptionloader.event.CriteriaLoaded;
+import uk.gov.dvsa.motr.subscriptionloader.processing.model.Subscription;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Queries every criteria partition of the due date index concurrently instead of one after another.
+ * Each criteria is drained page by page by its own fetcher, which hands subscriptions over through a bounded buffer and
+ * requests the next page straight away, so pages are prefetched while the loader is still dispatching the previous ones.
+ * A full buffer blocks the fetchers, which keeps memory use flat regardless of how many items the criteria return.
+ * Criteria of the sharded due date index are fetched the same way, one fetcher per shard.
+ */
+public class ParallelDynamoDbProducer extends DynamoDbProducer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelDynamoDbProducer.class.getSimpleName());
+
+    private static final int PAGE_SIZE = 500;
+
+    private static final Subscription END_OF_CRITERIA = MergingIterator.END_OF_SOURCE;
+
+    private int concurrency;
+
+    public ParallelDynamoDbProducer(DynamoDB dynamoDb, String subscriptionTableName, int concurrency) {
+
+        super(dynamoDb, subscriptionTableName);
+        this.concurrency = concurrency;
+    }
+
+    @Override
+    public Iterator<Subscription> searchSubscriptions(List<SubscriptionCriteria> criteriaList) {
+
+        resetConsumedCapacity();
+        BlockingQueue<Subscription> buffer = new ArrayBlockingQueue<>(2 * PAGE_SIZE * concurrency);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        if (!criteriaList.isEmpty()) {
+            ExecutorService fetchers = Executors.newFixedThreadPool(
+                    Math.min(concurrency, criteriaList.size()),
+                    new ThreadFactoryBuilder().setNameFormat("criteria-fetcher-%d").setDaemon(true).build());
+
+            criteriaList.forEach(criteria -> fetchers.execute(() -> fetch(criteria, buffer, failure)));
+            fetchers.shutdown();
+        }
+
+        return new MergingIterator(buffer, criteriaList.size(), failure);
+    }
+
+    @Override
+    protected QuerySpec buildQuery(SubscriptionCriteria criteria) {
+
+        return super.buildQuery(criteria).withMaxPageSize(PAGE_SIZE);
+    }
+
+    private void fetch(SubscriptionCriteria criteria, BlockingQueue<Subscription> buffer, AtomicReference<RuntimeException> failure) {
+
+        long startedAt = System.currentTimeMillis();
+        long queryDuration = 0;
+        long maxPageLatency = 0;
+        int pages = 0;
+        int items = 0;
+
+        try {
+            long requestedAt = System.currentTimeMillis();
+            Page<Item, QueryOutcome> page = searchSubscriptionsInIndex(criteria).firstPage();
+
+            while (true) {
+                long pageLatency = System.currentTimeMillis() - requestedAt;
+                queryDuration += pageLatency;
+                maxPageLatency = Math.max(maxPageLatency, pageLatency);
+                pages++;
+                recordConsumedCapacity(criteria, page.getLowLevelResult());
+
+                for (Item item : page) {
+                    enqueue(buffer, toSubscription(criteria, item));
+                    items++;
+                }
+
+                if (!page.hasNextPage()) {
+                    break;
+                }
+
+                requestedAt = System.currentTimeMillis();
+                page = page.nextPage();
+            }
+
+            EventLogger.logEvent(new CriteriaLoaded()
+                    .setCriteria(criteria)
+                    .setPages(pages)
+                    .setItems(items)
+                    .setQueryDuration(queryDuration)
+                    .setMaxPageLatency(maxPageLatency)
+                    .setConsumedCapacity(getConsumedCapacity().getOrDefault(criteria, 0.0))
+                    .setDuration(System.currentTimeMillis() - startedAt));
+
+        } catch (RuntimeException e) {
+            logger.error("Fetching subscriptions failed for {}", criteria, e);
+            failure.compareAndSet(null, e);
+        } finally {
+            try {
+                enqueue(buffer, END_OF_CRITERIA);
+            } catch (RuntimeException e) {
+                logger.warn("Unable to signal end of {}", criteria, e);
+            }
+        }
+    }
+
+    private void enqueue(BlockingQueue<Subscription> buffer, Subscription subscription) {
+
+        MergingIterator.enqueue(buffer, subscription);
+    }
+}
@@ -0,0 +1,48 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.producer;
+
+import uk.gov.dvsa.motr.eventlog.EventLogger;
+import uk.gov.dvsa.motr.subscriptionloader.event.AccessPathChosen;
+import uk.gov.dvsa.motr.subscriptionloader.processing.model.Subscription;
+import uk.gov.dvsa.motr.subscriptionloader.processing.planner.AccessPath;
+import uk.gov.dvsa.motr.subscriptionloader.processing.planner.AccessPathPlanner;
+import uk.gov.dvsa.motr.subscriptionloader.processing.planner.AccessPlan;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the subscriptions for each load through whichever of the index and scan producers the planner expects to finish
+ * first
+ */
+public class PlannedDynamoDbProducer implements SubscriptionProducer {
+
+    private AccessPathPlanner planner;
+    private SubscriptionProducer indexProducer;
+    private SubscriptionProducer scanProducer;
+    private SubscriptionProducer lastUsedProducer;
+
+    public PlannedDynamoDbProducer(AccessPathPlanner planner, SubscriptionProducer indexProducer, SubscriptionProducer scanProducer) {
+
+        this.planner = planner;
+        this.indexProducer = indexProducer;
+        this.scanProducer = scanProducer;
+    }
+
+    @Override
+    public Iterator<Subscription> searchSubscriptions(List<SubscriptionCriteria> criteria) {
+
+        AccessPlan plan = planner.plan(criteria);
+        EventLogger.logEvent(new AccessPathChosen().setPlan(plan));
+
+        lastUsedProducer = plan.getPath() == AccessPath.PARALLEL_SCAN ? scanProducer : indexProducer;
+        return lastUsedProducer.searchSubscriptions(criteria);
+    }
+
+    @Override
+    public Map<SubscriptionCriteria, Double> getConsumedCapacity() {
+
+        return lastUsedProducer == null ? Collections.emptyMap() : lastUsedProducer.getConsumedCapacity();
+    }
+}
@@ -0,0 +1,204 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.producer;
+
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.Page;
+import com.amazonaws.services.dynamodbv2.document.ScanOutcome;
+import com.amazonaws.services.dynamodbv2.document.spec.ScanSpec;
+import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.gov.dvsa.motr.eventlog.EventLogger;
+import uk.gov.dvsa.motr.subscription.DueDateShardKey;
+import uk.gov.dvsa.motr.subscriptionloader.event.SegmentScanned;
+import uk.gov.dvsa.motr.subscriptionloader.processing.model.Subscription;
+
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Finds subscriptions by scanning the whole subscription table in parallel segments instead of querying the due date index
+ * once per criteria. Every item is read once however many criteria there are, so this is the cheaper path when the criteria
+ * between them match a large part of the table, e.g. when a load catches up on several missed days.
+ * Items are matched to the criteria on due day, vehicle type and, for sharded criteria, shard, exactly as the index would
+ * match them. A scanned subscription has no position in the due date index, so scans are not checkpointed.
+ */
+public class ScanDynamoDbProducer extends DynamoDbProducer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScanDynamoDbProducer.class.getSimpleName());
+
+    private static final int BUFFER_SIZE = 1000;
+
+    private static final Subscription END_OF_SEGMENT = MergingIterator.END_OF_SOURCE;
+
+    private static final DateTimeFormatter DAY_MONTH_FORMATTER = DateTimeFormatter.ofPattern("MM-dd");
+
+    private int segments;
+
+    public ScanDynamoDbProducer(DynamoDB dynamoDb, String subscriptionTableName, int segments) {
+
+        super(dynamoDb, subscriptionTableName);
+        this.segments = segments;
+    }
+
+    @Override
+    public Iterator<Subscription> searchSubscriptions(List<SubscriptionCriteria> criteriaList) {
+
+        resetConsumedCapacity();
+        if (criteriaList.isEmpty()) {
+            return Collections.emptyIterator();
+        }
+
+        Map<String, List<SubscriptionCriteria>> criteriaByDayAndType = new LinkedHashMap<>();
+        criteriaList.forEach(criteria -> criteriaByDayAndType
+                .computeIfAbsent(dayAndType(criteria.getTestDueDate().format(DAY_MONTH_FORMATTER), criteria.getVehicleType().name()),
+                        key -> new ArrayList<>())
+                .add(criteria));
+
+        BlockingQueue<Subscription> buffer = new ArrayBlockingQueue<>(BUFFER_SIZE * segments);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        ExecutorService scanners = Executors.newFixedThreadPool(segments,
+                new ThreadFactoryBuilder().setNameFormat("segment-scanner-%d").setDaemon(true).build());
+        for (int segment = 0; segment < segments; segment++) {
+            int scannedSegment = segment;
+            scanners.execute(() -> scanSegment(buildScan(criteriaList), scannedSegment, criteriaByDayAndType, buffer, failure));
+        }
+        scanners.shutdown();
+
+        return new MergingIterator(buffer, segments, failure);
+    }
+
+    /**
+     * Builds a scan returning the projected attributes of items due on any of the criteria days for any of their vehicle
+     * types. This may let through a day and vehicle type pair that is not one of the criteria, which is filtered out later.
+     */
+    ScanSpec buildScan(List<SubscriptionCriteria> criteriaList) {
+
+        Set<String> days = new LinkedHashSet<>();
+        Set<String> vehicleTypes = new LinkedHashSet<>();
+        criteriaList.forEach(criteria -> {
+            days.add(criteria.getTestDueDate().format(DAY_MONTH_FORMATTER));
+            vehicleTypes.add(criteria.getVehicleType().name());
+        });
+
+        ValueMap values = new ValueMap();
+        List<String> dayPlaceholders = placeholders(":day", days, values);
+        List<String> vehicleTypePlaceholders = placeholders(":vehicle_type", vehicleTypes, values);
+
+        return new ScanSpec()
+                .withProjectionExpression(PROJECTION_EXPRESSION)
+                .withFilterExpression("#mot_due_date_md IN (" + String.join(",", dayPlaceholders) + ") AND " +
+                        "#vehicle_type IN (" + String.join(",", vehicleTypePlaceholders) + ")")
+                .withNameMap(projectedNames())
+                .withValueMap(values)
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+    }
+
+    /**
+     * @return the criteria the scanned item would have been found by in the due date index, or null when there is none
+     */
+    SubscriptionCriteria matchingCriteria(Item item, Map<String, List<SubscriptionCriteria>> criteriaByDayAndType) {
+
+        List<SubscriptionCriteria> candidates =
+                criteriaByDayAndType.get(dayAndType(item.getString("mot_due_date_md"), item.getString("vehicle_type")));
+        if (candidates == null) {
+            return null;
+        }
+
+        for (SubscriptionCriteria criteria : candidates) {
+            if (!criteria.isSharded()
+                    || criteria.getShard() == DueDateShardKey.shardOf(item.getString("vrm"), item.getString("email"))) {
+                return criteria;
+            }
+        }
+        return null;
+    }
+
+    private void scanSegment(ScanSpec scan, int segment, Map<String, List<SubscriptionCriteria>> criteriaByDayAndType,
+            BlockingQueue<Subscription> buffer, AtomicReference<RuntimeException> failure) {
+
+        long startedAt = System.currentTimeMillis();
+        double consumedCapacity = 0;
+        int pages = 0;
+        int scannedItems = 0;
+        int matchedItems = 0;
+
+        try {
+            ScanSpec segmentScan = scan.withSegment(segment).withTotalSegments(segments);
+            Page<Item, ScanOutcome> page = getSubscriptionTable().scan(segmentScan).firstPage();
+
+            while (true) {
+                pages++;
+                ConsumedCapacity capacity = page.getLowLevelResult().getScanResult().getConsumedCapacity();
+                if (capacity != null && capacity.getCapacityUnits() != null) {
+                    consumedCapacity += capacity.getCapacityUnits();
+                }
+
+                for (Item item : page) {
+                    scannedItems++;
+                    if (matchingCriteria(item, criteriaByDayAndType) != null) {
+                        MergingIterator.enqueue(buffer, mapItemToSubscription(item));
+                        matchedItems++;
+                    }
+                }
+
+                if (!page.hasNextPage()) {
+                    break;
+                }
+                page = page.nextPage();
+            }
+
+            EventLogger.logEvent(new SegmentScanned()
+                    .setSegment(segment, segments)
+                    .setPages(pages)
+                    .setScannedItems(scannedItems)
+                    .setMatchedItems(matchedItems)
+                    .setConsumedCapacity(consumedCapacity)
+                    .setDuration(System.currentTimeMillis() - startedAt));
+
+        } catch (RuntimeException e) {
+            logger.error("Scanning segment {} of {} failed", segment, segments, e);
+            failure.compareAndSet(null, e);
+        } finally {
+            try {
+                MergingIterator.enqueue(buffer, END_OF_SEGMENT);
+            } catch (RuntimeException e) {
+                logger.warn("Unable to signal end of segment {}", segment, e);
+            }
+        }
+    }
+
+    private static List<String> placeholders(String prefix, Set<String> values, ValueMap valueMap) {
+
+        List<String> placeholders = new ArrayList<>();
+        for (String value : values) {
+            String placeholder = prefix + "_" + placeholders.size();
+            valueMap.withString(placeholder, value);
+            placeholders.add(placeholder);
+        }
+        return placeholders;
+    }
+
+    private static String dayAndType(String dayMonth, String vehicleType) {
+
+        return dayMonth + "/" + vehicleType;
+    }
+}
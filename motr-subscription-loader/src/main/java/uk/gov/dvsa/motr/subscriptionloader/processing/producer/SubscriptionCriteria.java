@@ -1,17 +1,51 @@
 package uk.gov.dvsa.motr.subscriptionloader.processing.producer;
 
+import uk.gov.dvsa.motr.subscription.DueDateShardKey;
 import uk.gov.dvsa.motr.vehicledetails.VehicleType;
 
 import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class SubscriptionCriteria {
     private final LocalDate testDueDate;
     private final VehicleType vehicleType;
+    private final Integer shard;
+    private final Map<String, String> exclusiveStartKey;
 
     public SubscriptionCriteria(LocalDate testDueDate, VehicleType vehicleType) {
+        this(testDueDate, vehicleType, null, null);
+    }
+
+    private SubscriptionCriteria(LocalDate testDueDate, VehicleType vehicleType, Integer shard, Map<String, String> exclusiveStartKey) {
         this.testDueDate = testDueDate;
         this.vehicleType = vehicleType;
+        this.shard = shard;
+        this.exclusiveStartKey = exclusiveStartKey;
+    }
+
+    /**
+     * Same criteria, but only matching subscriptions that come after the one at the given index position
+     */
+    public SubscriptionCriteria resumeAfter(Map<String, String> position) {
+        return new SubscriptionCriteria(testDueDate, vehicleType, shard, position);
+    }
+
+    /**
+     * Same criteria, but only matching subscriptions in one shard of the sharded due date index
+     */
+    public SubscriptionCriteria forShard(int shard) {
+        return new SubscriptionCriteria(testDueDate, vehicleType, shard, exclusiveStartKey);
+    }
+
+    /**
+     * @return one criteria per shard of the sharded due date index, together matching the same subscriptions as this one
+     */
+    public List<SubscriptionCriteria> shards() {
+        return IntStream.range(0, DueDateShardKey.SHARD_COUNT).mapToObj(this::forShard).collect(Collectors.toList());
     }
 
     public LocalDate getTestDueDate() {
@@ -22,6 +56,18 @@ public class SubscriptionCriteria {
         return vehicleType;
     }
 
+    public boolean isSharded() {
+        return shard != null;
+    }
+
+    public Integer getShard() {
+        return shard;
+    }
+
+    public Map<String, String> getExclusiveStartKey() {
+        return exclusiveStartKey;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -32,12 +78,13 @@ public class SubscriptionCriteria {
         }
         SubscriptionCriteria that = (SubscriptionCriteria) o;
         return Objects.equals(testDueDate, that.testDueDate)
-                && vehicleType == that.vehicleType;
+                && vehicleType == that.vehicleType
+                && Objects.equals(shard, that.shard);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(testDueDate, vehicleType);
+        return Objects.hash(testDueDate, vehicleType, shard);
     }
 
     @Override
@@ -45,6 +92,7 @@ public class SubscriptionCriteria {
         return "SubscriptionCriteria{" +
                 "testDueDate=" + testDueDate +
                 ", vehicleType=" + vehicleType +
+                (isSharded() ? ", shard=" + shard : "") +
                 '}';
     }
 }
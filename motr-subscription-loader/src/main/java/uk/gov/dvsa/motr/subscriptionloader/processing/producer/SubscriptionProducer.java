@@ -5,8 +5,14 @@ import uk.gov.dvsa.motr.subscriptionloader.processing.model.Subscription;
 import java.time.LocalDate;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 public interface SubscriptionProducer {
 
     Iterator<Subscription> searchSubscriptions(List<SubscriptionCriteria> criteria);
+
+    /**
+     * Read capacity units consumed by the last search, per criteria
+     */
+    Map<SubscriptionCriteria, Double> getConsumedCapacity();
 }
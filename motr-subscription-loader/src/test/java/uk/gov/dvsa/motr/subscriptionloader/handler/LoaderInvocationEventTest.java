@@ -23,6 +23,22 @@ public class LoaderInvocationEventTest {
         assertEquals(LocalDateTime.parse(TEST_TIME_STRING, DateTimeFormatter.ISO_DATE_TIME), event.getTimeAsDateTime());
     }
 
+    @Test
+    public void whenUntilIsNotSet_thenOnlyTheReferenceDateIsLoaded() {
+
+        LoaderInvocationEvent event = new LoaderInvocationEvent().setTime(TEST_TIME_STRING);
+
+        assertEquals(event.getTimeAsDateTime(), event.getUntilAsDateTime());
+    }
+
+    @Test
+    public void whenSettingUntil_thenLastReferenceDateIsCorrectlySet() {
+
+        LoaderInvocationEvent event = new LoaderInvocationEvent().setTime(TEST_TIME_STRING).setUntil("2011-01-05T00:00:00Z");
+
+        assertEquals(LocalDateTime.of(2011, 1, 5, 0, 0), event.getUntilAsDateTime());
+    }
+
     @Test
     public void whenSettingPurgeFlagToFalse_flagIsSetToFalse() {
 
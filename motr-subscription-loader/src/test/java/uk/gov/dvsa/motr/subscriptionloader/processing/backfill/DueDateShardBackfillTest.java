@@ -0,0 +1,141 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.backfill;
+
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.ItemCollection;
+import com.amazonaws.services.dynamodbv2.document.Page;
+import com.amazonaws.services.dynamodbv2.document.ScanOutcome;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.ScanSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.lambda.runtime.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.dvsa.motr.subscription.DueDateShardKey;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DueDateShardBackfillTest {
+
+    private static final String TABLE_NAME = "subscriptions";
+    private static final LocalDate DUE_DATE = LocalDate.of(2018, 3, 28);
+
+    private DynamoDB dynamoDb = mock(DynamoDB.class);
+    private Table table = mock(Table.class);
+    private Context context = mock(Context.class);
+    private List<UpdateItemSpec> updates = new ArrayList<>();
+
+    private DueDateShardBackfill backfill = new DueDateShardBackfill(dynamoDb, TABLE_NAME);
+
+    @Before
+    public void setUp() {
+
+        when(dynamoDb.getTable(TABLE_NAME)).thenReturn(table);
+        when(context.getRemainingTimeInMillis()).thenReturn(300_000);
+        when(table.updateItem(any(UpdateItemSpec.class))).thenAnswer(invocation -> {
+            UpdateItemSpec update = (UpdateItemSpec) invocation.getArguments()[0];
+            updates.add(update);
+            if ("CHANGED".equals(update.getKeyComponents().iterator().next().getValue())) {
+                throw new ConditionalCheckFailedException("due date changed");
+            }
+            return null;
+        });
+    }
+
+    @Test
+    public void whenItemsHaveNoShardKey_thenKeyDerivedFromTheirDueDateIsWritten() {
+
+        Item alreadySharded = item("VRM1").withString(DueDateShardKey.ATTRIBUTE, DueDateShardKey.of(DUE_DATE, "VRM1", "a@b.com"));
+        whenScanned(new TestPage(Arrays.asList(item("VRM0"), alreadySharded, item("CHANGED")), null));
+
+        ShardBackfillReport report = backfill.run(0, 1, null, context);
+
+        assertEquals(2, updates.size());
+        assertEquals(DueDateShardKey.of(DUE_DATE, "VRM0", "a@b.com"), updates.get(0).getValueMap().get(":shard"));
+        assertEquals(DUE_DATE.toString(), updates.get(0).getValueMap().get(":due_date"));
+        assertEquals(3, report.getScanned());
+        assertEquals(1, report.getUpdated());
+        assertEquals(1, report.getChangedConcurrently());
+        assertTrue(report.isFinished());
+    }
+
+    @Test
+    public void whenInvocationIsRunningOutOfTime_thenBackfillStopsBetweenPagesWithKeyToResumeFrom() {
+
+        when(context.getRemainingTimeInMillis()).thenReturn(5_000);
+        Map<String, AttributeValue> lastEvaluatedKey = new HashMap<>();
+        lastEvaluatedKey.put("vrm", new AttributeValue("VRM0"));
+        lastEvaluatedKey.put("email", new AttributeValue("a@b.com"));
+        whenScanned(new TestPage(Collections.singletonList(item("VRM0")), lastEvaluatedKey,
+                new TestPage(Collections.singletonList(item("VRM1")), null)));
+
+        ShardBackfillReport report = backfill.run(0, 1, null, context);
+
+        assertEquals(1, report.getScanned());
+        assertFalse(report.isFinished());
+        assertEquals("VRM0", report.getNextStartKey().get("vrm"));
+        assertEquals("a@b.com", report.getNextStartKey().get("email"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void whenScanned(Page<Item, ScanOutcome> firstPage) {
+
+        ItemCollection<ScanOutcome> collection = mock(ItemCollection.class);
+        when(collection.firstPage()).thenReturn(firstPage);
+        when(table.scan(any(ScanSpec.class))).thenReturn(collection);
+    }
+
+    private Item item(String vrm) {
+
+        return new Item()
+                .withString("vrm", vrm)
+                .withString("email", "a@b.com")
+                .withString("mot_due_date", DUE_DATE.toString());
+    }
+
+    private static class TestPage extends Page<Item, ScanOutcome> {
+
+        private TestPage next;
+
+        TestPage(List<Item> content, TestPage next) {
+
+            this(content, null, next);
+        }
+
+        TestPage(List<Item> content, Map<String, AttributeValue> lastEvaluatedKey, TestPage next) {
+
+            super(content, new ScanOutcome(new ScanResult().withLastEvaluatedKey(lastEvaluatedKey)));
+            this.next = next;
+        }
+
+        @Override
+        public boolean hasNextPage() {
+
+            return next != null;
+        }
+
+        @Override
+        public Page<Item, ScanOutcome> nextPage() {
+
+            return next;
+        }
+    }
+}
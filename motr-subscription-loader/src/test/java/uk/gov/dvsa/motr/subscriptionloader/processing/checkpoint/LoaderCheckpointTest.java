@@ -0,0 +1,74 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.checkpoint;
+
+import org.junit.Test;
+
+import uk.gov.dvsa.motr.subscriptionloader.processing.model.Subscription;
+import uk.gov.dvsa.motr.subscriptionloader.processing.producer.SubscriptionCriteria;
+import uk.gov.dvsa.motr.vehicledetails.VehicleType;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LoaderCheckpointTest {
+
+    private static final LocalDate REFERENCE_DATE = LocalDate.of(2018, 3, 1);
+    private static final SubscriptionCriteria MOT = new SubscriptionCriteria(REFERENCE_DATE.plusDays(14), VehicleType.MOT);
+    private static final SubscriptionCriteria HGV = new SubscriptionCriteria(REFERENCE_DATE.plusDays(60), VehicleType.HGV);
+
+    private LoaderCheckpoint checkpoint = new LoaderCheckpoint(REFERENCE_DATE);
+
+    @Test
+    public void whenSubscriptionsCompleteOutOfOrder_thenPositionOnlyMovesPastContiguousCompletions() {
+
+        Subscription first = subscription(MOT, "VRM1");
+        Subscription second = subscription(MOT, "VRM2");
+        Subscription third = subscription(MOT, "VRM3");
+        Arrays.asList(first, second, third).forEach(checkpoint::dispatched);
+
+        checkpoint.completed(second);
+        assertTrue(checkpoint.getPositions().isEmpty());
+
+        checkpoint.completed(first);
+        assertEquals(second.getPosition(), checkpoint.getPositions().get(MOT));
+
+        checkpoint.completed(third);
+        assertEquals(third.getPosition(), checkpoint.getPositions().get(MOT));
+    }
+
+    @Test
+    public void whenCriteriaAreResumed_thenOnlyCriteriaWithPositionStartAfterIt() {
+
+        Subscription subscription = subscription(MOT, "VRM1");
+        checkpoint.dispatched(subscription);
+        checkpoint.completed(subscription);
+
+        List<SubscriptionCriteria> resumed = checkpoint.resume(Arrays.asList(MOT, HGV));
+
+        assertEquals(subscription.getPosition(), resumed.get(0).getExclusiveStartKey());
+        assertNull(resumed.get(1).getExclusiveStartKey());
+    }
+
+    @Test
+    public void whenSubscriptionHasNoSource_thenItIsNotTracked() {
+
+        Subscription subscription = new Subscription().setId("id");
+
+        checkpoint.dispatched(subscription);
+        checkpoint.completed(subscription);
+
+        assertTrue(checkpoint.getPositions().isEmpty());
+    }
+
+    private Subscription subscription(SubscriptionCriteria criteria, String vrm) {
+
+        Map<String, String> position = Collections.singletonMap("vrm", vrm);
+        return new Subscription().setId(vrm).setVrm(vrm).setSource(criteria, position);
+    }
+}
@@ -0,0 +1,151 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.dispatcher;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.dvsa.motr.subscriptionloader.processing.model.ContactDetail;
+import uk.gov.dvsa.motr.subscriptionloader.processing.model.Subscription;
+import uk.gov.dvsa.motr.vehicledetails.VehicleType;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BatchingDispatcherTest {
+
+    private static final String QUEUE_URL = "https://sqs.example/queue";
+
+    private AmazonSQSAsync sqsClient = mock(AmazonSQSAsync.class);
+    private List<SendMessageBatchRequest> sentBatches = new ArrayList<>();
+    private Set<String> bodiesToReject = new HashSet<>();
+    private boolean rejectAsSenderFault = false;
+
+    private BatchingDispatcher dispatcher;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+
+        when(sqsClient.sendMessageBatchAsync(any(SendMessageBatchRequest.class), any(AsyncHandler.class))).thenAnswer(invocation -> {
+            SendMessageBatchRequest request = (SendMessageBatchRequest) invocation.getArguments()[0];
+            AsyncHandler<SendMessageBatchRequest, SendMessageBatchResult> handler =
+                    (AsyncHandler<SendMessageBatchRequest, SendMessageBatchResult>) invocation.getArguments()[1];
+            sentBatches.add(request);
+            handler.onSuccess(request, respondTo(request));
+            return null;
+        });
+
+        dispatcher = new BatchingDispatcher(sqsClient, QUEUE_URL, "correlation-id");
+    }
+
+    @Test
+    public void whenMoreThanTenMessagesAreDispatched_thenTheyAreSentInBatchesOfTen() {
+
+        List<DispatchResult> results = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            results.add(dispatcher.dispatch(subscription("id-" + i, "VRM" + i)));
+        }
+
+        assertEquals(2, sentBatches.size());
+        assertFalse(results.get(24).isDone());
+
+        dispatcher.flush();
+
+        assertEquals(3, sentBatches.size());
+        assertEquals(5, sentBatches.get(2).getEntries().size());
+        results.forEach(result -> assertTrue(result.isDone() && !result.isFailed()));
+        assertEquals(3, dispatcher.getStats().getBatchesSent());
+        assertEquals(25, dispatcher.getStats().getBatchedMessages());
+    }
+
+    @Test
+    public void whenNextMessageWouldExceedPayloadLimit_thenCurrentBatchIsSentFirst() {
+
+        String largeVrm = new String(new char[100 * 1024]).replace('\0', 'A');
+
+        for (int i = 0; i < 3; i++) {
+            dispatcher.dispatch(subscription("id-" + i, largeVrm));
+        }
+        dispatcher.flush();
+
+        assertEquals(2, sentBatches.size());
+        assertEquals(2, sentBatches.get(0).getEntries().size());
+        assertEquals(1, sentBatches.get(1).getEntries().size());
+    }
+
+    @Test
+    public void whenSomeEntriesOfBatchFail_thenOnlyFailedEntriesAreResent() {
+
+        bodiesToReject.add("id-1");
+        DispatchResult first = dispatcher.dispatch(subscription("id-0", "VRM0"));
+        DispatchResult second = dispatcher.dispatch(subscription("id-1", "VRM1"));
+
+        dispatcher.flush();
+
+        assertEquals(BatchingDispatcher.MAX_SEND_ATTEMPTS, sentBatches.size());
+        assertEquals(1, sentBatches.get(1).getEntries().size());
+        assertFalse(first.isFailed());
+        assertTrue(second.isFailed());
+        assertEquals(BatchingDispatcher.MAX_SEND_ATTEMPTS - 1, dispatcher.getStats().getRetriedMessages());
+    }
+
+    @Test
+    public void whenEntryIsRejectedAsSenderFault_thenItIsNotResent() {
+
+        bodiesToReject.add("id-0");
+        rejectAsSenderFault = true;
+        DispatchResult result = dispatcher.dispatch(subscription("id-0", "VRM0"));
+
+        dispatcher.flush();
+
+        assertEquals(1, sentBatches.size());
+        assertTrue(result.isFailed());
+        assertEquals(0, dispatcher.getStats().getRetriedMessages());
+    }
+
+    private SendMessageBatchResult respondTo(SendMessageBatchRequest request) {
+
+        SendMessageBatchResult result = new SendMessageBatchResult();
+        for (SendMessageBatchRequestEntry entry : request.getEntries()) {
+            boolean rejected = bodiesToReject.stream().anyMatch(id -> entry.getMessageBody().contains("\"" + id + "\""));
+            if (rejected) {
+                result.withFailed(new BatchResultErrorEntry()
+                        .withId(entry.getId())
+                        .withCode("InternalError")
+                        .withSenderFault(rejectAsSenderFault));
+            } else {
+                result.withSuccessful(new SendMessageBatchResultEntry()
+                        .withId(entry.getId())
+                        .withMessageId("message-" + entry.getId()));
+            }
+        }
+        return result;
+    }
+
+    private Subscription subscription(String id, String vrm) {
+
+        return new Subscription()
+                .setId(id)
+                .setVrm(vrm)
+                .setContactDetail(new ContactDetail("test@example.com", Subscription.ContactType.EMAIL))
+                .setMotDueDate(LocalDate.of(2018, 3, 28))
+                .setVehicleType(VehicleType.MOT);
+    }
+}
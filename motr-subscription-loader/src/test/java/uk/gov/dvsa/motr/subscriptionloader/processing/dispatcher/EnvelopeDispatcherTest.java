@@ -0,0 +1,121 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.dispatcher;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.dvsa.motr.subscriptionloader.processing.model.ContactDetail;
+import uk.gov.dvsa.motr.subscriptionloader.processing.model.Subscription;
+import uk.gov.dvsa.motr.vehicledetails.VehicleType;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class EnvelopeDispatcherTest {
+
+    private static final String QUEUE_URL = "https://sqs.example/queue";
+
+    private AmazonSQSAsync sqsClient = mock(AmazonSQSAsync.class);
+    private List<SendMessageRequest> sentMessages = new ArrayList<>();
+    private boolean sendFails = false;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+
+        when(sqsClient.sendMessageAsync(any(SendMessageRequest.class), any(AsyncHandler.class))).thenAnswer(invocation -> {
+            SendMessageRequest request = (SendMessageRequest) invocation.getArguments()[0];
+            AsyncHandler<SendMessageRequest, SendMessageResult> handler =
+                    (AsyncHandler<SendMessageRequest, SendMessageResult>) invocation.getArguments()[1];
+            sentMessages.add(request);
+            if (sendFails) {
+                handler.onError(new IllegalStateException("queue unavailable"));
+            } else {
+                handler.onSuccess(request, new SendMessageResult().withMessageId("message-" + sentMessages.size()));
+            }
+            return null;
+        });
+    }
+
+    @Test
+    public void whenSubscriptionsAreDispatched_thenTheyArePackedIntoVersionedEnvelopes() throws Exception {
+
+        EnvelopeDispatcher dispatcher = new EnvelopeDispatcher(sqsClient, QUEUE_URL, "correlation-id", 4);
+
+        List<DispatchResult> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            results.add(dispatcher.dispatch(subscription("id-" + i, "VRM" + i)));
+        }
+
+        assertEquals(2, sentMessages.size());
+        assertFalse(results.get(9).isDone());
+
+        dispatcher.flush();
+
+        assertEquals(3, sentMessages.size());
+        JsonNode envelope = new ObjectMapper().readTree(sentMessages.get(0).getMessageBody());
+        assertEquals(EnvelopeDispatcher.ENVELOPE_VERSION, envelope.get("version").asInt());
+        assertEquals(4, envelope.get("subscriptions").size());
+        assertEquals("id-0", envelope.get("subscriptions").get(0).get("id").asText());
+        assertEquals("1", sentMessages.get(0).getMessageAttributes()
+                .get(EnvelopeDispatcher.ENVELOPE_VERSION_ATTRIBUTE).getStringValue());
+        assertEquals("correlation-id", sentMessages.get(0).getMessageAttributes().get("correlation-id").getStringValue());
+        results.forEach(result -> assertTrue(result.isDone() && !result.isFailed()));
+        assertEquals(3, dispatcher.getStats().getBatchesSent());
+    }
+
+    @Test
+    public void whenNextSubscriptionWouldExceedMessageSizeLimit_thenEnvelopeIsSentFirst() {
+
+        EnvelopeDispatcher dispatcher = new EnvelopeDispatcher(sqsClient, QUEUE_URL, "correlation-id", 100);
+        String largeVrm = new String(new char[100 * 1024]).replace('\0', 'A');
+
+        for (int i = 0; i < 3; i++) {
+            dispatcher.dispatch(subscription("id-" + i, largeVrm));
+        }
+        dispatcher.flush();
+
+        assertEquals(2, sentMessages.size());
+        sentMessages.forEach(message -> assertTrue(
+                message.getMessageBody().getBytes(StandardCharsets.UTF_8).length <= EnvelopeDispatcher.MAX_MESSAGE_BYTES));
+    }
+
+    @Test
+    public void whenEnvelopeCannotBeSent_thenEverySubscriptionInItFails() {
+
+        sendFails = true;
+        EnvelopeDispatcher dispatcher = new EnvelopeDispatcher(sqsClient, QUEUE_URL, "correlation-id", 10);
+
+        DispatchResult first = dispatcher.dispatch(subscription("id-0", "VRM0"));
+        DispatchResult second = dispatcher.dispatch(subscription("id-1", "VRM1"));
+        dispatcher.flush();
+
+        assertTrue(first.isFailed());
+        assertTrue(second.isFailed());
+    }
+
+    private Subscription subscription(String id, String vrm) {
+
+        return new Subscription()
+                .setId(id)
+                .setVrm(vrm)
+                .setContactDetail(new ContactDetail("test@example.com", Subscription.ContactType.EMAIL))
+                .setMotDueDate(LocalDate.of(2018, 3, 28))
+                .setVehicleType(VehicleType.MOT);
+    }
+}
@@ -1,6 +1,8 @@
 package uk.gov.dvsa.motr.subscriptionloader.processing.loader;
 
 import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.PurgeQueueRequest;
 import com.amazonaws.services.sqs.model.SendMessageResult;
 
 import org.hamcrest.Description;
@@ -14,7 +16,10 @@ import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 
+import uk.gov.dvsa.motr.subscription.DueDateShardKey;
+import uk.gov.dvsa.motr.subscriptionloader.processing.checkpoint.InMemoryCheckpointStore;
 import uk.gov.dvsa.motr.subscriptionloader.processing.dispatcher.DispatchResult;
+import uk.gov.dvsa.motr.subscriptionloader.processing.dispatcher.DispatchStats;
 import uk.gov.dvsa.motr.subscriptionloader.processing.dispatcher.Dispatcher;
 import uk.gov.dvsa.motr.subscriptionloader.processing.model.ContactDetail;
 import uk.gov.dvsa.motr.subscriptionloader.processing.model.Subscription;
@@ -24,15 +29,23 @@ import uk.gov.dvsa.motr.vehicledetails.VehicleType;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -65,12 +78,17 @@ public class DefaultLoaderTest {
 
     private Boolean hgvPsvSubscriptionLoader = true;
 
+    private int dispatchWindowSize = 10;
+
+    private InMemoryCheckpointStore checkpointStore = new InMemoryCheckpointStore();
+
 
     @Before
     public void setup() {
         initMocks(this);
         when(context.getRemainingTimeInMillis()).thenReturn(400000);
-        loader = new DefaultLoader(producer, dispatcher, hgvPsvSubscriptionLoader);
+        when(dispatcher.getStats()).thenReturn(new DispatchStats());
+        loader = new DefaultLoader(producer, dispatcher, hgvPsvSubscriptionLoader, dispatchWindowSize, checkpointStore, 100, false);
     }
 
     @Test
@@ -110,7 +128,7 @@ public class DefaultLoaderTest {
 
     @Test
     public void whenRunCalledWithLocalDate_AndHgvSubscriptionsTurnedOff_thenProducerCalledWithCorrectDateValuesOneMonth() throws Exception {
-        loader = new DefaultLoader(producer, dispatcher, false);
+        loader = new DefaultLoader(producer, dispatcher, false, dispatchWindowSize, checkpointStore, 100, false);
         when(this.producer.searchSubscriptions(any()))
                 .thenReturn(Collections.emptyIterator());
 
@@ -126,6 +144,22 @@ public class DefaultLoaderTest {
         assertThat(criteria, doesNotContainSubscriptionOneMonth(VehicleType.TRAILER, 1));
     }
 
+    @Test
+    public void whenDueDateIndexIsSharded_thenEveryCriteriaIsSplitIntoItsShards() throws Exception {
+        loader = new DefaultLoader(producer, dispatcher, false, dispatchWindowSize, checkpointStore, 100, true);
+        when(this.producer.searchSubscriptions(any()))
+                .thenReturn(Collections.emptyIterator());
+
+        loader.run(TEST_DATE_STANDARD_MONTH, context);
+
+        verify(producer, times(1))
+                .searchSubscriptions(criteriaCaptor.capture());
+        List<SubscriptionCriteria> criteria = criteriaCaptor.getValue();
+        assertEquals(3 * DueDateShardKey.SHARD_COUNT, criteria.size());
+        assertTrue(criteria.stream().allMatch(SubscriptionCriteria::isSharded));
+        assertThat(criteria, containsSubscriptionOneMonth(VehicleType.MOT, 1));
+    }
+
     @Test
     public void whenRunCalledWithLocalDate_thenProducerCalledWithCorrectDateValuesOneMonthLeapYear() throws Exception {
         when(this.producer.searchSubscriptions(any()))
@@ -204,7 +238,7 @@ public class DefaultLoaderTest {
 
         LoadReport report = loader.run(TEST_DATE_STANDARD_MONTH, context);
 
-        verify(dispatcher, times(2)).dispatch(subscription);
+        verify(dispatcher, times(2)).dispatch(any());
         assertEquals(2, report.getSubmittedForProcessing());
         assertEquals(2, report.getMotNonDvlaVehiclesProcessed());
 
@@ -221,7 +255,7 @@ public class DefaultLoaderTest {
 
         LoadReport report = loader.run(TEST_DATE_STANDARD_MONTH, context);
 
-        verify(dispatcher, times(3)).dispatch(subscription);
+        verify(dispatcher, times(3)).dispatch(any());
         assertEquals(3, report.getSubmittedForProcessing());
         assertEquals(3, report.getMotDvlaVehiclesProcessed());
         assertEquals(0, report.getMotNonDvlaVehiclesProcessed());
@@ -241,7 +275,7 @@ public class DefaultLoaderTest {
 
         LoadReport report = loader.run(TEST_DATE_STANDARD_MONTH, context);
 
-        verify(dispatcher, times(3)).dispatch(subscription);
+        verify(dispatcher, times(3)).dispatch(any());
         assertEquals(3, report.getSubmittedForProcessing());
         assertEquals(0, report.getMotDvlaVehiclesProcessed());
         assertEquals(0, report.getMotNonDvlaVehiclesProcessed());
@@ -261,10 +295,228 @@ public class DefaultLoaderTest {
         loader.run(TEST_DATE_STANDARD_MONTH, context);
     }
 
-    private <T> Iterator<T> createIterator(T item, int numberOfItems) {
-        List<T> subscriptions = new ArrayList<>(numberOfItems);
+    @Test(expected = LoadingException.class)
+    public void whenDispatchWindowIsFullAndNothingCompletes_thenLoadingTimesOut() throws Exception {
+        loader = new DefaultLoader(producer, dispatcher, hgvPsvSubscriptionLoader, 1, checkpointStore, 100, false);
+        when(context.getRemainingTimeInMillis()).thenReturn(2100);
+        Subscription subscription = getTestSubscription();
+        when(this.producer.searchSubscriptions(any()))
+                .thenReturn(createIterator(subscription, 2));
+        when(this.dispatcher.dispatch(any()))
+                .thenReturn(new DispatchResult(subscription, new CompletableFuture<>()));
+
+        loader.run(TEST_DATE_STANDARD_MONTH, context);
+    }
+
+    @Test
+    public void whenDispatchCompletesLater_thenReportIsUpdatedOnCompletion() throws Exception {
+        Subscription subscription = getTestSubscription().setMotTestNumber("123456");
+        CompletableFuture<SendMessageResult> pending = new CompletableFuture<>();
+        when(this.producer.searchSubscriptions(any()))
+                .thenReturn(createIterator(subscription, 1));
+        when(this.dispatcher.dispatch(any()))
+                .thenReturn(new DispatchResult(subscription, pending));
+        new Thread(() -> pending.complete(mock(SendMessageResult.class))).start();
+
+        LoadReport report = loader.run(TEST_DATE_STANDARD_MONTH, context);
+
+        assertEquals(1, report.getTotalProcessed());
+        assertEquals(1, report.getMotNonDvlaVehiclesProcessed());
+    }
+
+    @Test
+    public void whenDispatchWindowIsHeldByUnsentMessages_thenDispatcherIsFlushedBeforeWaiting() throws Exception {
+        loader = new DefaultLoader(producer, dispatcher, hgvPsvSubscriptionLoader, 1, checkpointStore, 100, false);
+        when(context.getRemainingTimeInMillis()).thenReturn(2100);
+        Subscription subscription = getTestSubscription();
+        List<CompletableFuture<SendMessageResult>> unsent = new ArrayList<>();
+        when(this.producer.searchSubscriptions(any()))
+                .thenReturn(createIterator(subscription, 3));
+        when(this.dispatcher.dispatch(any())).thenAnswer(invocation -> {
+            CompletableFuture<SendMessageResult> result = new CompletableFuture<>();
+            unsent.add(result);
+            return new DispatchResult(subscription, result);
+        });
+        doAnswer(invocation -> {
+            unsent.forEach(result -> result.complete(new SendMessageResult()));
+            unsent.clear();
+            return null;
+        }).when(this.dispatcher).flush();
+
+        LoadReport report = loader.run(TEST_DATE_STANDARD_MONTH, context);
+
+        assertEquals(3, report.getTotalProcessed());
+    }
+
+    @Test
+    public void whenLoadingTimesOut_thenNextRunResumesAfterLastDispatchedSubscription() throws Exception {
+        loader = new DefaultLoader(producer, dispatcher, hgvPsvSubscriptionLoader, 1, checkpointStore, 100, false);
+        when(context.getRemainingTimeInMillis()).thenReturn(2100);
+        SubscriptionCriteria criteria = new SubscriptionCriteria(TEST_DATE_STANDARD_MONTH.plusDays(14), VehicleType.MOT);
+        Subscription first = getTestSubscription().setId("id1").setSource(criteria, position("VRM1"));
+        Subscription second = getTestSubscription().setId("id2").setSource(criteria, position("VRM2"));
+        Subscription third = getTestSubscription().setId("id3").setSource(criteria, position("VRM3"));
+        when(this.producer.searchSubscriptions(any()))
+                .thenReturn(Arrays.asList(first, second, third).iterator())
+                .thenReturn(Collections.emptyIterator());
+        when(this.dispatcher.dispatch(first)).thenReturn(createDispatchResult(first));
+        when(this.dispatcher.dispatch(second)).thenReturn(new DispatchResult(second, new CompletableFuture<>()));
+
+        try {
+            loader.run(TEST_DATE_STANDARD_MONTH, context);
+        } catch (LoadingException e) {
+            // expected, the second subscription never completes
+        }
+
+        assertTrue(checkpointStore.load(TEST_DATE_STANDARD_MONTH).isPresent());
+
+        when(context.getRemainingTimeInMillis()).thenReturn(400000);
+        loader.run(TEST_DATE_STANDARD_MONTH, context);
+
+        verify(producer, times(2)).searchSubscriptions(criteriaCaptor.capture());
+        List<SubscriptionCriteria> resumedCriteria = criteriaCaptor.getValue();
+        for (SubscriptionCriteria resumed : resumedCriteria) {
+            if (resumed.equals(criteria)) {
+                assertEquals(position("VRM1"), resumed.getExclusiveStartKey());
+            } else {
+                assertNull(resumed.getExclusiveStartKey());
+            }
+        }
+        assertFalse(checkpointStore.load(TEST_DATE_STANDARD_MONTH).isPresent());
+    }
+
+    @Test
+    public void whenScanFails_thenNoCheckpointIsSavedAndNextRunPurgesTheQueueAndStartsOver() throws Exception {
+        AmazonSQS awsSqs = mock(AmazonSQS.class);
+        Loader purgingLoader = new PurgingLoader(loader, awsSqs, "queue-url", 0, 0, checkpointStore);
+        // scanned subscriptions have no position in the due date index
+        Subscription first = getTestSubscription().setId("id1");
+        Subscription second = getTestSubscription().setId("id2");
+        Iterator<Subscription> failingScan = new Iterator<Subscription>() {
+
+            private boolean returnedFirst;
+
+            @Override
+            public boolean hasNext() {
+                if (returnedFirst) {
+                    throw new IllegalStateException("Scanning segment failed");
+                }
+                return true;
+            }
+
+            @Override
+            public Subscription next() {
+                returnedFirst = true;
+                return first;
+            }
+        };
+        when(this.producer.searchSubscriptions(any()))
+                .thenReturn(failingScan)
+                .thenReturn(Arrays.asList(first, second).iterator());
+        when(this.dispatcher.dispatch(any())).thenAnswer(invocation ->
+                createDispatchResult((Subscription) invocation.getArguments()[0]));
+
+        try {
+            purgingLoader.run(TEST_DATE_STANDARD_MONTH, context);
+        } catch (IllegalStateException e) {
+            // expected, the scan fails after the first subscription
+        }
+
+        assertFalse(checkpointStore.load(TEST_DATE_STANDARD_MONTH).isPresent());
+
+        LoadReport report = purgingLoader.run(TEST_DATE_STANDARD_MONTH, context);
+
+        verify(awsSqs, times(2)).purgeQueue(any(PurgeQueueRequest.class));
+        verify(producer, times(2)).searchSubscriptions(criteriaCaptor.capture());
+        criteriaCaptor.getValue().forEach(criteria -> assertNull(criteria.getExclusiveStartKey()));
+        assertEquals(2, report.getTotalProcessed());
+    }
+
+    @Test
+    public void whenSubscriptionIsReturnedByMoreThanOneCriteria_thenItIsDispatchedOnce() throws Exception {
+        Subscription subscription = getTestSubscription();
+        Subscription sameSubscriptionWithUpdatedDueDate = getTestSubscription().setMotDueDate(LocalDate.now().plusDays(1));
+        Subscription otherSubscription = getTestSubscription().setId("otherId");
+        when(this.producer.searchSubscriptions(any()))
+                .thenReturn(Arrays.asList(subscription, sameSubscriptionWithUpdatedDueDate, otherSubscription).iterator());
+        when(this.dispatcher.dispatch(any())).thenAnswer(invocation ->
+                createDispatchResult((Subscription) invocation.getArguments()[0]));
+
+        LoadReport report = loader.run(TEST_DATE_STANDARD_MONTH, context);
+
+        verify(dispatcher, times(2)).dispatch(any());
+        assertEquals(2, report.getTotalProcessed());
+        assertEquals(1, report.getDuplicatesSuppressed());
+    }
+
+    @Test
+    public void whenRangeOfDaysIsLoaded_thenCriteriaAreMergedAndEachSubscriptionIsLoadedOnItsOwnDay() throws Exception {
+        LocalDate lastDay = TEST_DATE_STANDARD_MONTH.plusDays(2);
+        Subscription dueForSecondDay = getTestSubscription().setId("second").setMotDueDate(TEST_DATE_STANDARD_MONTH.plusDays(15));
+        Subscription dueForLastDay = getTestSubscription().setId("last").setMotDueDate(lastDay.plusDays(14));
+        when(this.producer.searchSubscriptions(any()))
+                .thenReturn(Arrays.asList(dueForSecondDay, dueForLastDay).iterator());
+        when(this.dispatcher.dispatch(any())).thenAnswer(invocation ->
+                createDispatchResult((Subscription) invocation.getArguments()[0]));
+
+        LoadReport report = loader.run(TEST_DATE_STANDARD_MONTH, lastDay, context);
+
+        verify(producer).searchSubscriptions(criteriaCaptor.capture());
+        List<SubscriptionCriteria> criteria = criteriaCaptor.getValue();
+        assertEquals(criteria.size(), new HashSet<>(criteria).size());
+        for (int day = 0; day < 3; day++) {
+            assertTrue(criteria.contains(new SubscriptionCriteria(TEST_DATE_STANDARD_MONTH.plusDays(day + 14), VehicleType.MOT)));
+        }
+        assertEquals(TEST_DATE_STANDARD_MONTH.plusDays(1), dueForSecondDay.getLoadedOnDate());
+        assertEquals(lastDay, dueForLastDay.getLoadedOnDate());
+        assertEquals(Integer.valueOf(1), report.getProcessedPerDay().get(lastDay));
+        assertFalse(report.getProcessedPerDay().containsKey(TEST_DATE_STANDARD_MONTH));
+    }
+
+    @Test
+    public void whenDueDateIsReachedByDifferentRemindersInTheRange_thenSubscriptionIsLoadedOnTheLatestDay() throws Exception {
+        // two weeks ahead of the first day and one day after the last
+        LocalDate lastDay = TEST_DATE_STANDARD_MONTH.plusDays(15);
+        Subscription subscription = getTestSubscription().setMotDueDate(TEST_DATE_STANDARD_MONTH.plusDays(14));
+        Subscription sameSubscriptionDueOnAnotherDay = getTestSubscription().setMotDueDate(TEST_DATE_STANDARD_MONTH.plusDays(16));
+        when(this.producer.searchSubscriptions(any()))
+                .thenReturn(Arrays.asList(subscription, sameSubscriptionDueOnAnotherDay).iterator());
+        when(this.dispatcher.dispatch(any())).thenAnswer(invocation ->
+                createDispatchResult((Subscription) invocation.getArguments()[0]));
+
+        LoadReport report = loader.run(TEST_DATE_STANDARD_MONTH, lastDay, context);
+
+        assertEquals(lastDay, subscription.getLoadedOnDate());
+        assertEquals(TEST_DATE_STANDARD_MONTH.plusDays(2), sameSubscriptionDueOnAnotherDay.getLoadedOnDate());
+        verify(dispatcher, times(2)).dispatch(any());
+        assertEquals(0, report.getDuplicatesSuppressed());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenRangeEndsBeforeItStarts_thenNothingIsLoaded() throws Exception {
+
+        loader.run(TEST_DATE_STANDARD_MONTH, TEST_DATE_STANDARD_MONTH.minusDays(1), context);
+    }
+
+    private Map<String, String> position(String vrm) {
+
+        Map<String, String> position = new HashMap<>();
+        position.put("vrm", vrm);
+        position.put("email", "test@test.com");
+        return position;
+    }
+
+    private Iterator<Subscription> createIterator(Subscription item, int numberOfItems) {
+        List<Subscription> subscriptions = new ArrayList<>(numberOfItems);
         for (int i = 0; i < numberOfItems; i++) {
-            subscriptions.add(item);
+            subscriptions.add(new Subscription()
+                    .setContactDetail(item.getContactDetail())
+                    .setId(item.getId() + "-" + i)
+                    .setMotDueDate(item.getMotDueDate())
+                    .setVrm(item.getVrm())
+                    .setMotTestNumber(item.getMotTestNumber())
+                    .setDvlaId(item.getDvlaId())
+                    .setVehicleType(item.getVehicleType()));
         }
         return subscriptions.iterator();
     }
@@ -0,0 +1,71 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.loader;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DispatchWindowTest {
+
+    private DispatchWindow window;
+
+    @Before
+    public void setup() {
+
+        this.window = new DispatchWindow(2);
+    }
+
+    @Test
+    public void whenWindowIsFull_thenAcquireTimesOut() throws Exception {
+
+        assertTrue(window.acquire(0));
+        assertTrue(window.acquire(0));
+
+        assertFalse(window.acquire(10));
+        assertEquals(2, window.getInFlight());
+    }
+
+    @Test
+    public void whenSlotIsReleased_thenItCanBeAcquiredAgain() throws Exception {
+
+        window.acquire(0);
+        window.acquire(0);
+        window.release();
+
+        assertTrue(window.acquire(0));
+    }
+
+    @Test
+    public void whenDispatchesAreStillInFlight_thenAwaitCompletionTimesOut() throws Exception {
+
+        window.acquire(0);
+
+        assertFalse(window.awaitCompletion(10));
+    }
+
+    @Test
+    public void whenAllDispatchesCompleted_thenAwaitCompletionReturnsAndWindowIsEmpty() throws Exception {
+
+        window.acquire(0);
+        window.release();
+
+        assertTrue(window.awaitCompletion(10));
+        assertEquals(0, window.getInFlight());
+    }
+
+    @Test
+    public void whenSeveralFailuresAreReported_thenFirstOneIsKept() {
+
+        Exception first = new Exception("first");
+
+        assertNull(window.getFailure());
+        window.fail(first);
+        window.fail(new Exception("second"));
+
+        assertSame(first, window.getFailure());
+    }
+}
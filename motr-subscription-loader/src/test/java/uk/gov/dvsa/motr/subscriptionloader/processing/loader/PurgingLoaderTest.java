@@ -8,7 +8,13 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import uk.gov.dvsa.motr.subscriptionloader.processing.checkpoint.InMemoryCheckpointStore;
+import uk.gov.dvsa.motr.subscriptionloader.processing.checkpoint.LoaderCheckpoint;
+import uk.gov.dvsa.motr.subscriptionloader.processing.producer.SubscriptionCriteria;
+import uk.gov.dvsa.motr.vehicledetails.VehicleType;
+
 import java.time.LocalDate;
+import java.util.Collections;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
@@ -26,12 +32,13 @@ public class PurgingLoaderTest {
     private int purgeInProgressDelayMs = 0;
     private PurgingLoader purgingLoader;
     private Context context = mock(Context.class);
+    private InMemoryCheckpointStore checkpointStore = new InMemoryCheckpointStore();
 
     @Before
     public void setup() {
         this.purgingLoader = new PurgingLoader(
                 this.wrappedLoader, this.awsSqs, this.queueUrl,
-                this.postPurgeDelayMs, this.purgeInProgressDelayMs);
+                this.postPurgeDelayMs, this.purgeInProgressDelayMs, this.checkpointStore);
     }
 
     @Test
@@ -59,4 +66,40 @@ public class PurgingLoaderTest {
         Assert.assertSame(report, returnedReport);
     }
 
+    @Test
+    public void whenCheckpointExistsForDate_thenQueueIsNotPurgedAndLoaderResumes() throws Exception {
+
+        LocalDate now = LocalDate.now();
+        checkpointStore.save(new LoaderCheckpoint(now, Collections.singletonMap(
+                new SubscriptionCriteria(now.plusDays(14), VehicleType.MOT), Collections.singletonMap("vrm", "VRM1"))));
+
+        this.purgingLoader.run(now, context);
+
+        verify(this.awsSqs, times(0)).purgeQueue(any(PurgeQueueRequest.class));
+        verify(this.wrappedLoader, times(1)).run(eq(now), any());
+    }
+
+    @Test
+    public void whenCheckpointForDateHasNoPositions_thenQueueIsPurged() throws Exception {
+
+        LocalDate now = LocalDate.now();
+        checkpointStore.save(new LoaderCheckpoint(now));
+
+        this.purgingLoader.run(now, context);
+
+        verify(this.awsSqs, times(1)).purgeQueue(any(PurgeQueueRequest.class));
+        verify(this.wrappedLoader, times(1)).run(eq(now), any());
+    }
+
+    @Test
+    public void whenRangeOfDaysIsLoaded_thenQueueIsPurgedOnceAndWholeRangeIsLoaded() throws Exception {
+
+        LocalDate firstDay = LocalDate.now();
+        LocalDate lastDay = firstDay.plusDays(3);
+
+        this.purgingLoader.run(firstDay, lastDay, context);
+
+        verify(this.awsSqs, times(1)).purgeQueue(any(PurgeQueueRequest.class));
+        verify(this.wrappedLoader, times(1)).run(eq(firstDay), eq(lastDay), any());
+    }
 }
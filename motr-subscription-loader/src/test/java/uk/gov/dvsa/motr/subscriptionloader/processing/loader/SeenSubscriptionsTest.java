@@ -0,0 +1,46 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.loader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SeenSubscriptionsTest {
+
+    @Test
+    public void whenIdIsSeenAgain_thenItIsNotFirstSighting() {
+
+        SeenSubscriptions seen = new SeenSubscriptions(10);
+
+        assertTrue(seen.firstSighting("id-1"));
+        assertTrue(seen.firstSighting("id-2"));
+        assertFalse(seen.firstSighting("id-1"));
+        assertEquals(2, seen.size());
+    }
+
+    @Test
+    public void whenMoreIdsThanExpectedAreSeen_thenTableGrowsAndKeepsEveryId() {
+
+        SeenSubscriptions seen = new SeenSubscriptions(1);
+
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(seen.firstSighting("id-" + i));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertFalse(seen.firstSighting("id-" + i));
+        }
+        assertEquals(10_000, seen.size());
+        assertEquals(0, seen.getUntracked());
+    }
+
+    @Test
+    public void whenIdIsMissing_thenSubscriptionIsLetThrough() {
+
+        SeenSubscriptions seen = new SeenSubscriptions(10);
+
+        assertTrue(seen.firstSighting(null));
+        assertTrue(seen.firstSighting(null));
+        assertEquals(0, seen.size());
+    }
+}
@@ -0,0 +1,104 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.planner;
+
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.dvsa.motr.subscriptionloader.processing.producer.DynamoDbProducer;
+import uk.gov.dvsa.motr.subscriptionloader.processing.producer.SubscriptionCriteria;
+import uk.gov.dvsa.motr.vehicledetails.VehicleType;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AccessPathPlannerTest {
+
+    private static final String TABLE_NAME = "subscriptions";
+    private static final LocalDate DUE_DATE = LocalDate.of(2018, 3, 28);
+    private static final long TABLE_ITEMS = 3_650_000;
+    private static final long TABLE_BYTES = 200L * 1024 * 1024;
+
+    private DynamoDB dynamoDb = mock(DynamoDB.class);
+    private Table table = mock(Table.class);
+    private DynamoDbProducer indexProducer = mock(DynamoDbProducer.class);
+
+    private AccessPathPlanner planner;
+
+    @Before
+    public void setUp() {
+
+        when(dynamoDb.getTable(TABLE_NAME)).thenReturn(table);
+        when(table.describe()).thenReturn(new TableDescription().withItemCount(TABLE_ITEMS).withTableSizeBytes(TABLE_BYTES));
+
+        planner = new AccessPathPlanner(dynamoDb, TABLE_NAME, indexProducer, 4, 16);
+    }
+
+    @Test
+    public void whenCriteriaMatchFewSubscriptions_thenIndexIsQueried() {
+
+        when(indexProducer.countUpTo(any(SubscriptionCriteria.class), anyInt())).thenReturn(300);
+
+        AccessPlan plan = planner.plan(criteriaForDays(3));
+
+        assertEquals(AccessPath.INDEX_QUERY, plan.getPath());
+        assertEquals(900, plan.getEstimatedItems());
+    }
+
+    @Test
+    public void whenCriteriaMatchALargePartOfTheTable_thenTableIsScanned() {
+
+        when(indexProducer.countUpTo(any(SubscriptionCriteria.class), anyInt())).thenReturn(AccessPathPlanner.SAMPLE_LIMIT);
+
+        AccessPlan plan = planner.plan(criteriaForDays(30));
+
+        assertEquals(AccessPath.PARALLEL_SCAN, plan.getPath());
+        assertEquals(30 * TABLE_ITEMS / 365, plan.getEstimatedItems());
+    }
+
+    @Test
+    public void whenAnyCriteriaIsResumed_thenIndexIsQueriedWithoutSampling() {
+
+        List<SubscriptionCriteria> criteria = criteriaForDays(30);
+        Map<String, String> position = new HashMap<>();
+        position.put("vrm", "VRM1");
+        criteria.set(0, criteria.get(0).resumeAfter(position));
+
+        AccessPlan plan = planner.plan(criteria);
+
+        assertEquals(AccessPath.INDEX_QUERY, plan.getPath());
+        verify(indexProducer, never()).countUpTo(any(SubscriptionCriteria.class), anyInt());
+    }
+
+    @Test
+    public void whenTableCannotBeDescribed_thenIndexIsQueried() {
+
+        when(table.describe()).thenThrow(new IllegalStateException("throttled"));
+
+        assertEquals(AccessPath.INDEX_QUERY, planner.plan(Collections.singletonList(
+                new SubscriptionCriteria(DUE_DATE, VehicleType.MOT))).getPath());
+    }
+
+    private List<SubscriptionCriteria> criteriaForDays(int days) {
+
+        List<SubscriptionCriteria> criteria = new ArrayList<>();
+        for (int day = 0; day < days; day++) {
+            criteria.add(new SubscriptionCriteria(DUE_DATE.plusDays(day), VehicleType.MOT));
+        }
+        return criteria;
+    }
+}
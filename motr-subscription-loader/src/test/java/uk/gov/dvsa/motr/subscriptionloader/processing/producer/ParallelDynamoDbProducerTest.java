@@ -0,0 +1,232 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.producer;
+
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Index;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.ItemCollection;
+import com.amazonaws.services.dynamodbv2.document.Page;
+import com.amazonaws.services.dynamodbv2.document.QueryOutcome;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.dvsa.motr.subscription.DueDateShardKey;
+import uk.gov.dvsa.motr.subscriptionloader.processing.model.Subscription;
+import uk.gov.dvsa.motr.vehicledetails.VehicleType;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ParallelDynamoDbProducerTest {
+
+    private static final String TABLE_NAME = "subscriptions";
+    private static final LocalDate DUE_DATE = LocalDate.of(2018, 3, 28);
+
+    private DynamoDB dynamoDb = mock(DynamoDB.class);
+    private Table table = mock(Table.class);
+    private Index index = mock(Index.class);
+
+    private ParallelDynamoDbProducer producer;
+
+    @Before
+    public void setUp() {
+
+        when(dynamoDb.getTable(TABLE_NAME)).thenReturn(table);
+        when(table.getIndex("due-date-md-vehicle-type-gsi")).thenReturn(index);
+
+        producer = new ParallelDynamoDbProducer(dynamoDb, TABLE_NAME, 2);
+    }
+
+    @Test
+    public void whenCriteriaSpanSeveralPages_thenAllItemsOfAllCriteriaAreReturned() {
+
+        when(index.query(any(QuerySpec.class))).thenAnswer(invocation -> {
+            QuerySpec spec = (QuerySpec) invocation.getArguments()[0];
+            String vehicleType = (String) spec.getValueMap().get(":vehicle_type");
+            return collectionOf(new TestPage(
+                    items(vehicleType, 0, 3),
+                    new TestPage(items(vehicleType, 3, 2), null)));
+        });
+
+        Iterator<Subscription> subscriptions = producer.searchSubscriptions(Arrays.asList(
+                new SubscriptionCriteria(DUE_DATE, VehicleType.MOT),
+                new SubscriptionCriteria(DUE_DATE, VehicleType.HGV),
+                new SubscriptionCriteria(DUE_DATE, VehicleType.PSV)));
+
+        Set<String> ids = new HashSet<>();
+        subscriptions.forEachRemaining(subscription -> {
+            ids.add(subscription.getId());
+            assertEquals(subscription.getVehicleType(), subscription.getCriteria().getVehicleType());
+            assertNotNull(subscription.getPosition());
+        });
+
+        assertEquals(15, ids.size());
+    }
+
+    @Test
+    public void whenCriteriaIsResumed_thenQueryStartsAfterItsPosition() {
+
+        List<QuerySpec> queries = new ArrayList<>();
+        when(index.query(any(QuerySpec.class))).thenAnswer(invocation -> {
+            queries.add((QuerySpec) invocation.getArguments()[0]);
+            return collectionOf(new TestPage(Collections.emptyList(), null));
+        });
+
+        Map<String, String> position = new HashMap<>();
+        position.put("vrm", "VRM1");
+        position.put("email", "test@example.com");
+        position.put("mot_due_date_md", "03-28");
+        position.put("vehicle_type", "MOT");
+
+        producer.searchSubscriptions(Collections.singletonList(
+                new SubscriptionCriteria(DUE_DATE, VehicleType.MOT).resumeAfter(position))).hasNext();
+
+        assertEquals(4, queries.get(0).getExclusiveStartKey().size());
+    }
+
+    @Test
+    public void whenCriteriaAreQueried_thenOnlyMappedAttributesAreRequestedAndCapacityIsReportedPerCriteria() {
+
+        List<QuerySpec> queries = new ArrayList<>();
+        when(index.query(any(QuerySpec.class))).thenAnswer(invocation -> {
+            QuerySpec spec = (QuerySpec) invocation.getArguments()[0];
+            queries.add(spec);
+            String vehicleType = (String) spec.getValueMap().get(":vehicle_type");
+            double capacityPerPage = "MOT".equals(vehicleType) ? 1.5 : 0.5;
+            return collectionOf(new TestPage(items(vehicleType, 0, 2), capacityPerPage,
+                    new TestPage(items(vehicleType, 2, 1), capacityPerPage, null)));
+        });
+
+        SubscriptionCriteria motCriteria = new SubscriptionCriteria(DUE_DATE, VehicleType.MOT);
+        SubscriptionCriteria hgvCriteria = new SubscriptionCriteria(DUE_DATE, VehicleType.HGV);
+        producer.searchSubscriptions(Arrays.asList(motCriteria, hgvCriteria)).forEachRemaining(subscription -> { });
+
+        QuerySpec query = queries.get(0);
+        assertEquals(ReturnConsumedCapacity.TOTAL.toString(), query.getReturnConsumedCapacity());
+        assertTrue(query.getNameMap().values().containsAll(Arrays.asList("id", "email", "mot_due_date", "mot_due_date_md")));
+        assertFalse(query.getNameMap().containsValue("created_at"));
+        assertEquals(3.0, producer.getConsumedCapacity().get(motCriteria), 0.001);
+        assertEquals(1.0, producer.getConsumedCapacity().get(hgvCriteria), 0.001);
+    }
+
+    @Test
+    public void whenCriteriaAreSharded_thenEveryShardIsQueriedInTheShardedIndex() {
+
+        Index shardedIndex = mock(Index.class);
+        when(table.getIndex(DueDateShardKey.INDEX_NAME)).thenReturn(shardedIndex);
+        List<String> queriedKeys = Collections.synchronizedList(new ArrayList<>());
+        when(shardedIndex.query(any(QuerySpec.class))).thenAnswer(invocation -> {
+            QuerySpec spec = (QuerySpec) invocation.getArguments()[0];
+            String shardKey = (String) spec.getValueMap().get(":due_date");
+            queriedKeys.add(shardKey);
+            return collectionOf(new TestPage(Collections.singletonList(items("MOT", 0, 1).get(0)
+                    .withString("id", shardKey)
+                    .withString(DueDateShardKey.ATTRIBUTE, shardKey)), null));
+        });
+
+        Iterator<Subscription> subscriptions = producer.searchSubscriptions(new SubscriptionCriteria(DUE_DATE, VehicleType.MOT).shards());
+
+        Set<String> ids = new HashSet<>();
+        subscriptions.forEachRemaining(subscription -> {
+            ids.add(subscription.getId());
+            assertTrue(subscription.getCriteria().isSharded());
+            assertEquals(subscription.getId(), subscription.getPosition().get(DueDateShardKey.ATTRIBUTE));
+        });
+
+        assertEquals(DueDateShardKey.SHARD_COUNT, ids.size());
+        assertTrue(queriedKeys.contains("03-28#0"));
+        assertTrue(queriedKeys.contains("03-28#" + (DueDateShardKey.SHARD_COUNT - 1)));
+    }
+
+    @Test
+    public void whenNoCriteriaAreGiven_thenNoSubscriptionsAreReturned() {
+
+        assertFalse(producer.searchSubscriptions(Collections.emptyList()).hasNext());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void whenQueryFails_thenIteratorRethrowsTheFailure() {
+
+        when(index.query(any(QuerySpec.class))).thenThrow(new IllegalStateException("throttled"));
+
+        Iterator<Subscription> subscriptions = producer.searchSubscriptions(
+                Collections.singletonList(new SubscriptionCriteria(DUE_DATE, VehicleType.MOT)));
+
+        subscriptions.hasNext();
+    }
+
+    @SuppressWarnings("unchecked")
+    private ItemCollection<QueryOutcome> collectionOf(Page<Item, QueryOutcome> firstPage) {
+
+        ItemCollection<QueryOutcome> collection = mock(ItemCollection.class);
+        when(collection.firstPage()).thenReturn(firstPage);
+        return collection;
+    }
+
+    private List<Item> items(String vehicleType, int from, int count) {
+
+        List<Item> items = new ArrayList<>();
+        for (int i = from; i < from + count; i++) {
+            items.add(new Item()
+                    .withString("id", vehicleType + "-" + i)
+                    .withString("vrm", "VRM" + i)
+                    .withString("email", "test@example.com")
+                    .withString("contact_type", "EMAIL")
+                    .withString("mot_due_date", DUE_DATE.toString())
+                    .withString("mot_test_number", "12345")
+                    .withString("vehicle_type", vehicleType));
+        }
+        return items;
+    }
+
+    private static class TestPage extends Page<Item, QueryOutcome> {
+
+        private TestPage next;
+
+        TestPage(List<Item> content, TestPage next) {
+
+            super(content, new QueryOutcome(new QueryResult()));
+            this.next = next;
+        }
+
+        TestPage(List<Item> content, double consumedCapacity, TestPage next) {
+
+            super(content, new QueryOutcome(new QueryResult()
+                    .withConsumedCapacity(new ConsumedCapacity().withCapacityUnits(consumedCapacity))));
+            this.next = next;
+        }
+
+        @Override
+        public boolean hasNextPage() {
+
+            return next != null;
+        }
+
+        @Override
+        public Page<Item, QueryOutcome> nextPage() {
+
+            return next;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package uk.gov.dvsa.motr.subscriptionloader.processing.producer;
+
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.ItemCollection;
+import com.amazonaws.services.dynamodbv2.document.Page;
+import com.amazonaws.services.dynamodbv2.document.ScanOutcome;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.ScanSpec;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.dvsa.motr.subscription.DueDateShardKey;
+import uk.gov.dvsa.motr.subscriptionloader.processing.model.Subscription;
+import uk.gov.dvsa.motr.vehicledetails.VehicleType;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ScanDynamoDbProducerTest {
+
+    private static final String TABLE_NAME = "subscriptions";
+    private static final LocalDate DUE_DATE = LocalDate.of(2018, 3, 28);
+
+    private DynamoDB dynamoDb = mock(DynamoDB.class);
+    private Table table = mock(Table.class);
+
+    private ScanDynamoDbProducer producer;
+
+    @Before
+    public void setUp() {
+
+        when(dynamoDb.getTable(TABLE_NAME)).thenReturn(table);
+
+        producer = new ScanDynamoDbProducer(dynamoDb, TABLE_NAME, 2);
+    }
+
+    @Test
+    public void whenTableIsScanned_thenOnlyItemsMatchingACriteriaAreReturnedFromEverySegment() {
+
+        List<Integer> scannedSegments = Collections.synchronizedList(new ArrayList<>());
+        when(table.scan(any(ScanSpec.class))).thenAnswer(invocation -> {
+            ScanSpec spec = (ScanSpec) invocation.getArguments()[0];
+            int segment = spec.getRequest().getSegment();
+            scannedSegments.add(segment);
+            return collectionOf(new TestPage(Arrays.asList(
+                    item("MOT-" + segment, "03-28", "MOT"),
+                    item("HGV-" + segment, "03-28", "HGV")),
+                    new TestPage(Collections.singletonList(item("HGV-next-" + segment, "03-29", "HGV")), null)));
+        });
+
+        Set<String> ids = new HashSet<>();
+        producer.searchSubscriptions(Arrays.asList(
+                new SubscriptionCriteria(DUE_DATE, VehicleType.MOT),
+                new SubscriptionCriteria(DUE_DATE.plusDays(1), VehicleType.HGV)))
+                .forEachRemaining((Subscription subscription) -> {
+                    ids.add(subscription.getId());
+                    assertNull(subscription.getCriteria());
+                });
+
+        assertEquals(new HashSet<>(Arrays.asList("MOT-0", "MOT-1", "HGV-next-0", "HGV-next-1")), ids);
+        assertEquals(new HashSet<>(Arrays.asList(0, 1)), new HashSet<>(scannedSegments));
+    }
+
+    @Test
+    public void whenScanIsBuilt_thenItFiltersOnEveryDayAndVehicleTypeOfTheCriteria() {
+
+        ScanSpec scan = producer.buildScan(Arrays.asList(
+                new SubscriptionCriteria(DUE_DATE, VehicleType.MOT),
+                new SubscriptionCriteria(DUE_DATE, VehicleType.HGV),
+                new SubscriptionCriteria(DUE_DATE.plusDays(1), VehicleType.MOT)));
+
+        assertEquals("#mot_due_date_md IN (:day_0,:day_1) AND #vehicle_type IN (:vehicle_type_0,:vehicle_type_1)",
+                scan.getFilterExpression());
+        assertEquals("03-29", scan.getValueMap().get(":day_1"));
+        assertEquals("HGV", scan.getValueMap().get(":vehicle_type_1"));
+        assertFalse(scan.getNameMap().containsValue("created_at"));
+    }
+
+    @Test
+    public void whenCriteriaAreSharded_thenItemIsMatchedToTheCriteriaOfItsShard() {
+
+        Item item = item("id", "03-28", "MOT");
+        int shard = DueDateShardKey.shardOf(item.getString("vrm"), item.getString("email"));
+
+        SubscriptionCriteria matched = producer.matchingCriteria(item, Collections.singletonMap("03-28/MOT",
+                new SubscriptionCriteria(DUE_DATE, VehicleType.MOT).shards()));
+
+        assertTrue(matched.isSharded());
+        assertEquals(shard, (int) matched.getShard());
+    }
+
+    @Test
+    public void whenNoCriteriaAreGiven_thenTableIsNotScanned() {
+
+        assertFalse(producer.searchSubscriptions(Collections.emptyList()).hasNext());
+    }
+
+    @SuppressWarnings("unchecked")
+    private ItemCollection<ScanOutcome> collectionOf(Page<Item, ScanOutcome> firstPage) {
+
+        ItemCollection<ScanOutcome> collection = mock(ItemCollection.class);
+        when(collection.firstPage()).thenReturn(firstPage);
+        return collection;
+    }
+
+    private Item item(String id, String dueDayMonth, String vehicleType) {
+
+        return new Item()
+                .withString("id", id)
+                .withString("vrm", "VRM-" + id)
+                .withString("email", "test@example.com")
+                .withString("contact_type", "EMAIL")
+                .withString("mot_due_date", "2018-" + dueDayMonth)
+                .withString("mot_due_date_md", dueDayMonth)
+                .withString("mot_test_number", "12345")
+                .withString("vehicle_type", vehicleType);
+    }
+
+    private static class TestPage extends Page<Item, ScanOutcome> {
+
+        private TestPage next;
+
+        TestPage(List<Item> content, TestPage next) {
+
+            super(content, new ScanOutcome(new ScanResult()));
+            this.next = next;
+        }
+
+        @Override
+        public boolean hasNextPage() {
+
+            return next != null;
+        }
+
+        @Override
+        public Page<Item, ScanOutcome> nextPage() {
+
+            return next;
+        }
+    }
+}
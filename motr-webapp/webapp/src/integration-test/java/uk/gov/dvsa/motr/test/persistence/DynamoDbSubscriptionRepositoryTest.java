@@ -8,6 +8,7 @@ import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
 import org.junit.Before;
 import org.junit.Test;
 
+import uk.gov.dvsa.motr.subscription.DueDateShardKey;
 import uk.gov.dvsa.motr.test.data.RandomDataUtil;
 import uk.gov.dvsa.motr.test.integration.dynamodb.fixture.core.DynamoDbFixture;
 import uk.gov.dvsa.motr.test.integration.dynamodb.fixture.model.SubscriptionItem;
@@ -123,6 +124,8 @@ public class DynamoDbSubscriptionRepositoryTest {
 
         String dueDateMd = savedItem.getString("mot_due_date_md");
         assertEquals("due date md fragment is incorrect", dueDateMd, subscription.getMotDueDate().format(ofPattern("MM-dd")));
+        assertEquals("due date shard key is incorrect", savedItem.getString(DueDateShardKey.ATTRIBUTE),
+                DueDateShardKey.of(subscription.getMotDueDate(), subscription.getVrm(), subscription.getContactDetail().getValue()));
     }
 
     @Test
@@ -12,6 +12,7 @@ import com.amazonaws.services.dynamodbv2.document.Table;
 import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
 import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
 
+import uk.gov.dvsa.motr.subscription.DueDateShardKey;
 import uk.gov.dvsa.motr.vehicledetails.MotIdentification;
 import uk.gov.dvsa.motr.vehicledetails.VehicleType;
 import uk.gov.dvsa.motr.web.component.subscription.model.ContactDetail;
@@ -117,6 +118,8 @@ public class DynamoDbSubscriptionRepository implements SubscriptionRepository {
                 .withString("vehicle_type", subscription.getVehicleType().toString())
                 .withString("mot_due_date", subscription.getMotDueDate().format(DateTimeFormatter.ISO_LOCAL_DATE))
                 .withString("mot_due_date_md", subscription.getMotDueDate().format(DateTimeFormatter.ofPattern("MM-dd")))
+                .withString(DueDateShardKey.ATTRIBUTE, DueDateShardKey.of(
+                        subscription.getMotDueDate(), subscription.getVrm(), subscription.getContactDetail().getValue()))
                 .withString("created_at", ZonedDateTime.now().format(DateTimeFormatter.ISO_INSTANT))
                 .withString("contact_type", subscription.getContactDetail().getContactType().getValue());
 